@@ -0,0 +1,243 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.extension;
+
+import alfio.model.WaitingQueueSubscription;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static alfio.extension.ScriptingExecutionService.EXTENSION_CONFIGURATION_PARAMETERS;
+
+/**
+ * Executes a typical extension (the bundled mailchimp extension, handling a subscription to the waiting list) when the
+ * script is compiled on each invocation, when the compiled script is reused, and when it is compiled to bytecode
+ * (optimized mode, for trusted scripts).
+ * <p>
+ * {@link #compileOnEachExecution()} is the baseline: it compiles and runs the whole source on each call, which is what
+ * the former {@code cx.evaluateString} did. No results are kept in the repository, so the gain of the compiled scripts
+ * cache has to be checked by running {@code ./gradlew jmh}.
+ * <p>
+ * The HTTP calls to mailchimp are answered by a stub: the requests and their JSON bodies are still built as in
+ * production, but no network time is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScriptingExecutionBenchmark {
+
+    private static final String INVOCATION = "executeScript(extensionEvent);";
+    private static final Map<String, Object> PARAMS = Map.of(
+        "extensionEvent", "WAITING_QUEUE_SUBSCRIPTION",
+        "event", new BenchmarkEvent(),
+        "waitingQueueSubscription", new WaitingQueueSubscription(1, ZonedDateTime.now(), 1, "WAITING", "Jane Doe",
+            "Jane", "Doe", "jane.doe@example.org", null, "en", null, WaitingQueueSubscription.Type.SOLD_OUT),
+        EXTENSION_CONFIGURATION_PARAMETERS, Map.of("apiKey", "0123456789abcdef-us1", "listId", "list"));
+
+    private ScriptingExecutionService scriptingExecutionService;
+    private ScriptingExecutionService optimizedScriptingExecutionService;
+    private String script;
+    private String hash;
+    private final ExtensionLogger extensionLogger = new ExtensionLogger() {};
+
+    @Setup
+    public void setUp() throws IOException {
+        scriptingExecutionService = new ScriptingExecutionService(new StubHttpClient(), null, () -> Runnable::run);
+        optimizedScriptingExecutionService = new ScriptingExecutionService(new StubHttpClient(), null, () -> Runnable::run, true);
+        try (InputStream is = new ClassPathResource("/alfio/extension/mailchimp.js").getInputStream()) {
+            script = StreamUtils.copyToString(is, StandardCharsets.UTF_8);
+        }
+        hash = DigestUtils.sha256Hex(script);
+    }
+
+    @Benchmark
+    public Object compileOnEachExecution() {
+        return scriptingExecutionService.executeScript("mailchimp", script + "\n;" + INVOCATION, PARAMS, Object.class, extensionLogger);
+    }
+
+    @Benchmark
+    public Object reuseCompiledScript() {
+        return scriptingExecutionService.executeScript("mailchimp", hash, () -> script, INVOCATION, false, PARAMS, Object.class, extensionLogger);
+    }
+
+    @Benchmark
+    public Object reuseOptimizedScript() {
+        return optimizedScriptingExecutionService.executeScript("mailchimp", hash, () -> script, INVOCATION, true, PARAMS, Object.class, extensionLogger);
+    }
+
+    @TearDown
+    public void tearDown() {
+        optimizedScriptingExecutionService.destroy();
+    }
+
+    /**
+     * The properties of the event used by the script.
+     */
+    public static class BenchmarkEvent {
+        public int getId() {
+            return 1;
+        }
+
+        public String getShortName() {
+            return "benchmark";
+        }
+
+        public boolean mustUseFirstAndLastName() {
+            return true;
+        }
+    }
+
+    /**
+     * Answers every request with 200 and a body containing the merge field of the event, as mailchimp does once
+     * the field has been created.
+     */
+    private static class StubHttpClient extends HttpClient {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+            return (HttpResponse<T>) new StubHttpResponse(request);
+        }
+
+        @Override
+        public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+            return CompletableFuture.completedFuture(send(request, responseBodyHandler));
+        }
+
+        @Override
+        public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler, HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+            return sendAsync(request, responseBodyHandler);
+        }
+
+        @Override
+        public Optional<CookieHandler> cookieHandler() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<Duration> connectTimeout() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Redirect followRedirects() {
+            return Redirect.NEVER;
+        }
+
+        @Override
+        public Optional<ProxySelector> proxy() {
+            return Optional.empty();
+        }
+
+        @Override
+        public SSLContext sslContext() {
+            return null;
+        }
+
+        @Override
+        public SSLParameters sslParameters() {
+            return null;
+        }
+
+        @Override
+        public Optional<Authenticator> authenticator() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Version version() {
+            return Version.HTTP_1_1;
+        }
+
+        @Override
+        public Optional<Executor> executor() {
+            return Optional.empty();
+        }
+    }
+
+    private static class StubHttpResponse implements HttpResponse<String> {
+
+        private final HttpRequest request;
+
+        private StubHttpResponse(HttpRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public int statusCode() {
+            return 200;
+        }
+
+        @Override
+        public HttpRequest request() {
+            return request;
+        }
+
+        @Override
+        public Optional<HttpResponse<String>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return HttpHeaders.of(Map.of(), (name, value) -> true);
+        }
+
+        @Override
+        public String body() {
+            return "{\"merge_fields\":[{\"tag\":\"ALFIO_EKEY\"}]}";
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+
+        @Override
+        public URI uri() {
+            return request.uri();
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_1_1;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.model.TicketCategory;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Proxy;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simulates the requests for a category which has been sold out, sent concurrently by many buyers.
+ * Every request is rejected by the gate; the number of requests which reached the repository is printed at the end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(8)
+public class TicketInventoryGateBenchmark {
+
+    private static final int EVENT_ID = 1;
+
+    private final AtomicInteger countQueries = new AtomicInteger();
+    private TicketInventoryGate gate;
+    private TicketCategory category;
+
+    @Setup
+    public void setUp() {
+        gate = new TicketInventoryGate(stub(TicketRepository.class), stub(TicketCategoryRepository.class), stub(EventRepository.class));
+        var now = ZonedDateTime.now();
+        category = new TicketCategory(2, now.minusDays(1), now.plusDays(1), 100, "sold out", false, TicketCategory.Status.ACTIVE,
+            EVENT_ID, true, 1000, null, null, null, null, null, "CHF", 0, null, null);
+    }
+
+    @Benchmark
+    public boolean rejectDuringSellOut() {
+        try {
+            gate.ensureAvailability(EVENT_ID, category, 1);
+            return true;
+        } catch (TicketReservationManager.NotEnoughTicketsException e) {
+            return false;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println("\ncount queries: " + countQueries.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T stub(Class<T> repositoryClass) {
+        return (T) Proxy.newProxyInstance(repositoryClass.getClassLoader(), new Class<?>[] { repositoryClass }, (proxy, method, args) -> {
+            if(method.getName().startsWith("countFreeTickets")) {
+                countQueries.incrementAndGet();
+                return 0;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+}
@@ -16,44 +16,63 @@
  */
 package alfio.config;
 
+import alfio.controller.api.v2.user.support.PublishedEventsCache;
+import alfio.extension.ExtensionCache;
+import alfio.manager.system.ConfigurationCache;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.DatabaseNotificationListener;
+import alfio.manager.system.EventCache;
 import alfio.manager.system.ExternalConfiguration;
 import alfio.manager.user.UserManager;
-import alfio.model.system.ConfigurationKeys;
 import alfio.repository.EventRepository;
 import alfio.repository.system.ConfigurationRepository;
+import alfio.util.ClockProvider;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 
 import java.time.Duration;
-import java.util.Map;
-import java.util.Set;
 
 @Configuration(proxyBeanMethods = false)
 public class BaseConfiguration {
 
+    @Bean
+    ConfigurationCache configurationCache(DatabaseNotificationListener databaseNotificationListener) {
+        return new ConfigurationCache(Duration.ofMinutes(5), databaseNotificationListener);
+    }
+
+    @Bean
+    EventCache eventCache(EventRepository eventRepository, DatabaseNotificationListener databaseNotificationListener) {
+        return new EventCache(eventRepository, Duration.ofMinutes(5), databaseNotificationListener);
+    }
+
+    @Bean
+    ExtensionCache extensionCache(DatabaseNotificationListener databaseNotificationListener) {
+        return new ExtensionCache(Duration.ofMinutes(5), databaseNotificationListener);
+    }
+
+    @Bean
+    PublishedEventsCache publishedEventsCache(DatabaseNotificationListener databaseNotificationListener, ClockProvider clockProvider) {
+        return new PublishedEventsCache(Duration.ofMinutes(5), databaseNotificationListener, clockProvider);
+    }
+
     @Bean
     ConfigurationManager configurationManager(ConfigurationRepository configurationRepository,
                                               UserManager userManager,
                                               EventRepository eventRepository,
                                               ExternalConfiguration externalConfiguration,
-                                              Environment environment) {
-        Cache<Set<ConfigurationKeys>, Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration>> cache = Caffeine.newBuilder()
-            .expireAfterWrite(Duration.ofMinutes(1))
-            .build();
+                                              Environment environment,
+                                              ConfigurationCache configurationCache) {
         return new ConfigurationManager(configurationRepository,
             userManager,
             eventRepository,
             externalConfiguration,
             environment,
-            cache);
+            configurationCache);
     }
 
     @Bean
@@ -22,6 +22,7 @@ import alfio.config.support.JSONColumnMapper;
 import alfio.config.support.PlatformProvider;
 import alfio.extension.ExtensionService;
 import alfio.job.Jobs;
+import alfio.job.ReleasedTicketsListener;
 import alfio.job.executor.AssignTicketToSubscriberJobExecutor;
 import alfio.job.executor.BillingDocumentJobExecutor;
 import alfio.job.executor.ReservationJobExecutor;
@@ -29,7 +30,9 @@ import alfio.job.executor.RetryFailedExtensionJobExecutor;
 import alfio.manager.*;
 import alfio.manager.i18n.MessageSourceManager;
 import alfio.manager.system.AdminJobManager;
+import alfio.manager.system.ConfigurationCache;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.DatabaseNotificationListener;
 import alfio.repository.EventDeleterRepository;
 import alfio.repository.EventRepository;
 import alfio.repository.SubscriptionRepository;
@@ -192,7 +195,8 @@ public class DataSourceConfiguration {
      }
 
     @Bean
-    public MessageSourceManager messageSourceManager(ConfigurationRepository configurationRepository) {
+    public MessageSourceManager messageSourceManager(ConfigurationRepository configurationRepository,
+                                                     ConfigurationCache configurationCache) {
 
         var source = new CustomResourceBundleMessageSource();
         source.setBasenames("alfio.i18n.public", "alfio.i18n.admin");
@@ -202,7 +206,7 @@ public class DataSourceConfiguration {
         source.setFallbackToSystemLocale(false);
         source.setAlwaysUseMessageFormat(true);
 
-        return new MessageSourceManager(source, configurationRepository);
+        return new MessageSourceManager(source, configurationRepository, configurationCache);
     }
 
     @Bean
@@ -240,12 +244,24 @@ public class DataSourceConfiguration {
                      SpecialPriceTokenGenerator specialPriceTokenGenerator,
                      WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor,
                      TicketReservationManager ticketReservationManager,
-                     AdminJobManager adminJobManager
+                     AdminJobManager adminJobManager,
+                     AdmissionQueueManager admissionQueueManager,
+                     ExpiredReservationSweeper expiredReservationSweeper
                      ) {
         return new Jobs(adminReservationRequestManager, fileUploadManager,
             notificationManager, specialPriceTokenGenerator, ticketReservationManager,
             waitingQueueSubscriptionProcessor,
-            adminJobManager);
+            adminJobManager,
+            admissionQueueManager,
+            expiredReservationSweeper);
+    }
+
+    @Bean
+    @DependsOn("migrator")
+    @Profile("!" + Initializer.PROFILE_DISABLE_JOBS)
+    public ReleasedTicketsListener releasedTicketsListener(DatabaseNotificationListener databaseNotificationListener,
+                                                           WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor) {
+        return new ReleasedTicketsListener(databaseNotificationListener, waitingQueueSubscriptionProcessor);
     }
 
     @Bean
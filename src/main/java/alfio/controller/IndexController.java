@@ -19,12 +19,14 @@ package alfio.controller;
 import alfio.config.Initializer;
 import alfio.config.WebSecurityConfig;
 import alfio.config.authentication.support.OpenIdAlfioAuthentication;
+import alfio.controller.support.StaticPageTemplate;
 import alfio.controller.api.v2.user.support.EventLoader;
 import alfio.manager.PurchaseContextManager;
 import alfio.manager.i18n.MessageSourceManager;
 import alfio.manager.openid.OpenIdAuthenticationManager;
 import alfio.manager.system.ConfigurationLevel;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.EventCache;
 import alfio.model.*;
 import alfio.model.system.ConfigurationKeys;
 import alfio.model.user.Role;
@@ -38,7 +40,6 @@ import ch.digitalfondue.jfiveparse.*;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.collections4.IterableUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
@@ -52,6 +53,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.util.HtmlUtils;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.servlet.http.HttpServletRequest;
@@ -59,7 +61,6 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.security.SecureRandom;
@@ -81,21 +82,50 @@ public class IndexController {
 
     private static final SecureRandom SECURE_RANDOM = new SecureRandom();
 
-    private static final Document INDEX_PAGE;
-    private static final Document OPEN_GRAPH_PAGE;
+    private static final String NONCE = "nonce";
+    private static final String HTML_ATTRIBUTES = "html-attributes";
+    private static final String HEAD = "head";
+    private static final String LANG = "lang";
+    private static final String TITLE = "title";
+    private static final String IMAGE = "image";
+    private static final String DESCRIPTION = "description";
+    private static final String AUTHOR = "author";
+
+    private static final StaticPageTemplate INDEX_PAGE;
+    private static final StaticPageTemplate OPEN_GRAPH_PAGE;
 
     static {
         try (var idxIs = new ClassPathResource("alfio-public-frontend-index.html").getInputStream();
              var idxOpenIs = new ClassPathResource("alfio/web-templates/event-open-graph-page.html").getInputStream();
              var idxIsR = new InputStreamReader(idxIs, StandardCharsets.UTF_8);
              var idxOpenGraphReader = new InputStreamReader(idxOpenIs, StandardCharsets.UTF_8)) {
-            INDEX_PAGE = JFiveParse.parse(idxIsR);
-            OPEN_GRAPH_PAGE = JFiveParse.parse(idxOpenGraphReader);
+            INDEX_PAGE = prepareIndexPage(JFiveParse.parse(idxIsR));
+            OPEN_GRAPH_PAGE = prepareOpenGraphPage(JFiveParse.parse(idxOpenGraphReader));
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
     }
 
+    private static StaticPageTemplate prepareIndexPage(Document index) {
+        index.getElementsByTagName("script").forEach(element -> element.setAttribute(NONCE, StaticPageTemplate.placeholder(NONCE)));
+        index.getElementsByTagName(HEAD).get(0).appendChild(new Text(StaticPageTemplate.placeholder(HEAD)));
+        // optional attributes are appended right after the tag name, so that they can be omitted
+        var page = StaticPageTemplate.serialize(index).replaceFirst("<html", "<html" + StaticPageTemplate.placeholder(HTML_ATTRIBUTES));
+        return StaticPageTemplate.from(page);
+    }
+
+    private static StaticPageTemplate prepareOpenGraphPage(Document eventOpenGraph) {
+        eventOpenGraph.getElementsByTagName("html").get(0).setAttribute(LANG, StaticPageTemplate.placeholder(LANG));
+        eventOpenGraph.getElementsByTagName(TITLE).get(0).appendChild(new Text(StaticPageTemplate.placeholder(TITLE)));
+        getMetaElement(eventOpenGraph, "name", "twitter:image").setAttribute("content", StaticPageTemplate.placeholder(IMAGE));
+        getMetaElement(eventOpenGraph, "property", "og:title").setAttribute("content", StaticPageTemplate.placeholder(TITLE));
+        getMetaElement(eventOpenGraph, "property", "og:image").setAttribute("content", StaticPageTemplate.placeholder(IMAGE));
+        getMetaElement(eventOpenGraph, "property", "og:description").setAttribute("content", StaticPageTemplate.placeholder(DESCRIPTION));
+        getMetaElement(eventOpenGraph, "name", "author").setAttribute("content", StaticPageTemplate.placeholder(AUTHOR));
+        eventOpenGraph.getElementsByTagName(HEAD).get(0).appendChild(new Text(StaticPageTemplate.placeholder(HEAD)));
+        return StaticPageTemplate.from(eventOpenGraph);
+    }
+
     private final ConfigurationManager configurationManager;
     private final EventRepository eventRepository;
     private final Environment environment;
@@ -108,6 +138,7 @@ public class IndexController {
     private final SubscriptionRepository subscriptionRepository;
     private final EventLoader eventLoader;
     private final PurchaseContextManager purchaseContextManager;
+    private final EventCache eventCache;
 
 
     @RequestMapping(value = "/", method = RequestMethod.HEAD)
@@ -206,35 +237,32 @@ public class IndexController {
         var nonce = addCspHeader(response, detectConfigurationLevel(eventShortName, subscriptionId), true);
 
         if (eventShortName != null && RequestUtils.isSocialMediaShareUA(userAgent) && eventRepository.existsByShortName(eventShortName)) {
-            try (var os = response.getOutputStream(); var osw = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
-                var res = getOpenGraphPage((Document) OPEN_GRAPH_PAGE.cloneNode(true), eventShortName, request, lang);
-                JFiveParse.serialize(res, osw);
+            try (var os = response.getOutputStream()) {
+                OPEN_GRAPH_PAGE.render(os, getOpenGraphPage(eventShortName, request, lang));
             }
         } else {
-            try (var os = response.getOutputStream(); var osw = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
+            try (var os = response.getOutputStream()) {
                 var baseCustomCss = configurationManager.getForSystem(BASE_CUSTOM_CSS).getValueOrNull();
-                var idx = INDEX_PAGE.cloneNode(true);
+                var values = new HashMap<String, String>();
+                values.put(NONCE, nonce);
                 if(session.getAttribute(OpenIdAuthenticationManager.USER_SIGNED_UP) != null) {
-                    Optional.ofNullable(IterableUtils.get(idx.getElementsByTagName("html"), 0))
-                            .ifPresent(html -> html.setAttribute("data-signed-up", "true"));
+                    values.put(HTML_ATTRIBUTES, " data-signed-up=\"true\"");
                     session.removeAttribute(OpenIdAuthenticationManager.USER_SIGNED_UP);
                 }
-                idx.getElementsByTagName("script").forEach(element -> element.setAttribute("nonce", nonce));
-                var head = idx.getElementsByTagName("head").get(0);
-                head.appendChild(buildScripTag(Json.toJson(configurationManager.getInfo(session)), "application/json", "preload-info", null));
-                head.appendChild(buildScripTag(Json.toJson(messageSourceManager.getBundleAsMap("alfio.i18n.public", true, "en")), "application/json", "preload-bundle", "en"));
+                var head = new StringBuilder();
+                head.append(buildScripTag(Json.toJson(configurationManager.getInfo(session)), "application/json", "preload-info", null, null));
+                var bundle = messageSourceManager.getSerializedBundle("alfio.i18n.public", true, "en");
+                head.append(buildScripTag(bundle.getJson(), "application/json", "preload-bundle", "en", bundle.getEtag()));
                 if (baseCustomCss != null) {
-                    var style = new Element("style");
-                    style.setAttribute("type", "text/css");
-                    style.appendChild(new Text(baseCustomCss));
-                    head.appendChild(style);
+                    head.append("<style type=\"text/css\">").append(baseCustomCss).append("</style>");
                 }
                 if (eventShortName != null) {
                     eventLoader.loadEventInfo(eventShortName, session).ifPresent(ev -> {
-                        head.appendChild(buildScripTag(Json.toJson(ev), "application/json", "preload-event", eventShortName));
+                        head.append(buildScripTag(Json.toJson(ev), "application/json", "preload-event", eventShortName, null));
                     });
                 }
-                JFiveParse.serialize(idx, osw);
+                values.put(HEAD, head.toString());
+                INDEX_PAGE.render(os, values);
             }
         }
     }
@@ -267,15 +295,22 @@ public class IndexController {
         }
     }
 
-    private static Element buildScripTag(String content, String type, String id, String param) {
-        var e = new Element("script");
-        e.appendChild(new Text(content));
-        e.setAttribute("type", type);
-        e.setAttribute("id", id);
+    private static String buildScripTag(String content, String type, String id, String param, String version) {
+        var sb = new StringBuilder("<script");
+        appendAttribute(sb, "type", type);
+        appendAttribute(sb, "id", id);
         if (param != null) {
-            e.setAttribute("data-param", param);
+            appendAttribute(sb, "data-param", param);
         }
-        return e;
+        if (version != null) {
+            appendAttribute(sb, "data-version", version);
+        }
+        // as for the serialized DOM, the content of a script element is not escaped
+        return sb.append('>').append(content).append("</script>").toString();
+    }
+
+    private static void appendAttribute(StringBuilder sb, String name, String value) {
+        sb.append(' ').append(name).append("=\"").append(HtmlUtils.htmlEscape(value, UTF_8)).append('"');
     }
 
     private static String reservationStatusToUrlMapping(TicketReservationStatusAndValidation status) {
@@ -294,8 +329,8 @@ public class IndexController {
 
     // see https://github.com/alfio-event/alf.io/issues/708
     // use ngrok to test the preview
-    private Document getOpenGraphPage(Document eventOpenGraph, String eventShortName, ServletWebRequest request, String lang) {
-        var event = eventRepository.findByShortName(eventShortName);
+    private Map<String, String> getOpenGraphPage(String eventShortName, ServletWebRequest request, String lang) {
+        var event = eventCache.findOptionalByShortName(eventShortName).orElseThrow();
         var locale = RequestUtils.getMatchingLocale(request, event);
         if (lang != null && event.getContentLanguages().stream().map(ContentLanguage::getLanguage).anyMatch(lang::equalsIgnoreCase)) {
             locale = Locale.forLanguageTag(lang);
@@ -305,44 +340,46 @@ public class IndexController {
 
         var title = messageSourceManager.getMessageSourceFor(event).getMessage("event.get-your-ticket-for", new String[] {event.getDisplayName()}, locale);
 
-        var head = eventOpenGraph.getElementsByTagName("head").get(0);
+        var values = new HashMap<String, String>();
 
-        eventOpenGraph.getElementsByTagName("html").get(0).setAttribute("lang", locale.getLanguage());
+        values.put(LANG, escape(locale.getLanguage()));
 
         //
 
-        getMetaElement(eventOpenGraph, "name", "twitter:image").setAttribute("content", baseUrl + "/file/" + event.getFileBlobId());
+        values.put(IMAGE, escape(baseUrl + "/file/" + event.getFileBlobId()));
         //
 
-        eventOpenGraph.getElementsByTagName("title").get(0).appendChild(new Text(title));
-        getMetaElement(eventOpenGraph, "property", "og:title").setAttribute("content", title);
-        getMetaElement(eventOpenGraph, "property","og:image").setAttribute("content", baseUrl + "/file/" + event.getFileBlobId());
+        values.put(TITLE, escape(title));
 
         var eventDesc = eventDescriptionRepository.findDescriptionByEventIdTypeAndLocale(event.getId(), EventDescription.EventDescriptionType.DESCRIPTION, locale.toLanguageTag()).orElse("").trim();
         var firstLine = Pattern.compile("\n").splitAsStream(MustacheCustomTag.renderToTextCommonmark(eventDesc)).findFirst().orElse("");
-        getMetaElement(eventOpenGraph, "property","og:description").setAttribute("content", firstLine);
+        values.put(DESCRIPTION, escape(firstLine));
 
 
         var org = organizationRepository.getById(event.getOrganizationId());
         var author = String.format("%s <%s>", org.getName(), org.getEmail());
-        getMetaElement(eventOpenGraph, "name", "author").setAttribute("content", author);
+        values.put(AUTHOR, escape(author));
 
         fileUploadRepository.findById(event.getFileBlobId()).ifPresent(metadata -> {
             var attributes = metadata.getAttributes();
             if (attributes.containsKey(FileBlobMetadata.ATTR_IMG_HEIGHT) && attributes.containsKey(FileBlobMetadata.ATTR_IMG_WIDTH)) {
-                head.appendChild(buildMetaTag("og:image:width", attributes.get(FileBlobMetadata.ATTR_IMG_WIDTH)));
-                head.appendChild(buildMetaTag("og:image:height", attributes.get(FileBlobMetadata.ATTR_IMG_HEIGHT)));
+                values.put(HEAD, buildMetaTag("og:image:width", attributes.get(FileBlobMetadata.ATTR_IMG_WIDTH))
+                    + buildMetaTag("og:image:height", attributes.get(FileBlobMetadata.ATTR_IMG_HEIGHT)));
             }
         });
 
-        return eventOpenGraph;
+        return values;
+    }
+
+    private static String buildMetaTag(String propertyValue, String contentValue) {
+        var sb = new StringBuilder("<meta");
+        appendAttribute(sb, "property", propertyValue);
+        appendAttribute(sb, "content", contentValue);
+        return sb.append('>').toString();
     }
 
-    private static Element buildMetaTag(String propertyValue, String contentValue) {
-        var meta = new Element("meta");
-        meta.setAttribute("property", propertyValue);
-        meta.setAttribute("content", contentValue);
-        return meta;
+    private static String escape(String value) {
+        return HtmlUtils.htmlEscape(value, UTF_8);
     }
 
     private static Element getMetaElement(Document document, String attrName, String propertyValue) {
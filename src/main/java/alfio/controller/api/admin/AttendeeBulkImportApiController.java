@@ -20,16 +20,33 @@ import alfio.manager.AdminReservationRequestManager;
 import alfio.model.AdminReservationRequestStats;
 import alfio.model.modification.AdminReservationModification;
 import alfio.model.result.Result;
+import alfio.model.modification.DateTimeModification;
+import alfio.util.AttendeeImportReader;
 import lombok.AllArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.security.Principal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 @RequestMapping("/admin/api/event/{eventName}/attendees/import")
 @RestController
 @AllArgsConstructor
 public class AttendeeBulkImportApiController {
 
+    private static final String TEXT_CSV = "text/csv";
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+
     private final AdminReservationRequestManager requestManager;
 
     @PostMapping("")
@@ -40,6 +57,38 @@ public class AttendeeBulkImportApiController {
         return requestManager.scheduleReservations(eventName, body, !oneReservationPerAttendee, principal.getName());
     }
 
+    /**
+     * Streaming import. Accepts a CSV file (with header) or a newline-delimited JSON file, one attendee per row.
+     * Each attendee will get a separate reservation. If a {@code requestId} is provided, the progress can be
+     * checked while the upload is still in progress.
+     */
+    @PostMapping(value = "/stream", consumes = { TEXT_CSV, APPLICATION_NDJSON })
+    public ResponseEntity<Result<String>> importAttendees(@PathVariable("eventName") String eventName,
+                                                          @RequestParam(name = "requestId", required = false) UUID requestId,
+                                                          @RequestParam("expiration") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime expiration,
+                                                          @RequestParam(name = "categoryId", required = false) Integer categoryId,
+                                                          @RequestParam(name = "language", required = false) String language,
+                                                          @RequestParam(name = "notifyCustomer", defaultValue = "false") boolean notifyCustomer,
+                                                          @RequestParam(name = "notifyAttendees", defaultValue = "false") boolean notifyAttendees,
+                                                          @RequestParam(name = "addSeatsIfNotAvailable", defaultValue = "false") boolean addSeatsIfNotAvailable,
+                                                          HttpServletRequest request,
+                                                          Principal principal) throws IOException {
+        var contentType = MediaType.parseMediaType(request.getContentType());
+        var charset = Optional.ofNullable(contentType.getCharset()).orElse(UTF_8);
+        var ticketsInfo = Optional.ofNullable(categoryId)
+            .map(id -> List.of(new AdminReservationModification.TicketsInfo(new AdminReservationModification.Category(id, null, null, null), List.of(), addSeatsIfNotAvailable, false)))
+            .orElse(List.of());
+        var template = new AdminReservationModification(new DateTimeModification(expiration.toLocalDate(), expiration.toLocalTime()),
+            null, ticketsInfo, language, false, false, null,
+            new AdminReservationModification.Notification(notifyCustomer, notifyAttendees), null, null);
+        var id = Optional.ofNullable(requestId).orElseGet(UUID::randomUUID).toString();
+        try (var reader = new InputStreamReader(request.getInputStream(), charset)) {
+            var rows = contentType.isCompatibleWith(MediaType.valueOf(TEXT_CSV)) ? AttendeeImportReader.csv(reader) : AttendeeImportReader.ndjson(reader);
+            var result = requestManager.importAttendees(eventName, id, template, rows, principal.getName());
+            return result.isSuccess() ? ResponseEntity.ok(result) : ResponseEntity.badRequest().body(result);
+        }
+    }
+
     @GetMapping("/{requestId}/status")
     public Result<AdminReservationRequestStats> getRequestsStatus(@PathVariable("eventName") String eventName,
                                                                   @PathVariable("requestId") String requestId,
@@ -17,20 +17,27 @@
 package alfio.controller.api.admin;
 
 import alfio.controller.api.support.TicketHelper;
+import alfio.controller.api.v2.user.support.PublishedEventsCache;
+import alfio.extension.ExtensionCache;
+import alfio.extension.ScriptingExecutionService;
 import alfio.job.executor.AssignTicketToSubscriberJobExecutor;
 import alfio.manager.BillingDocumentManager;
 import alfio.manager.EventManager;
+import alfio.manager.ExpiredReservationSweeper;
 import alfio.manager.system.AdminJobExecutor;
 import alfio.manager.system.AdminJobManager;
 import alfio.manager.system.ConfigurationLevel;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.EventCache;
 import alfio.manager.user.UserManager;
 import alfio.model.EventAndOrganizationId;
 import alfio.model.modification.ConfigurationModification;
+import alfio.model.system.CacheStatistics;
 import alfio.model.system.Configuration;
 import alfio.model.system.ConfigurationKeys;
 import alfio.model.user.Organization;
 import alfio.util.ClockProvider;
+import alfio.util.MustacheCustomTag;
 import alfio.util.RequestUtils;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -61,6 +68,11 @@ public class ConfigurationApiController {
     private final EventManager eventManager;
     private final ClockProvider clockProvider;
     private final UserManager userManager;
+    private final EventCache eventCache;
+    private final PublishedEventsCache publishedEventsCache;
+    private final ExtensionCache extensionCache;
+    private final ScriptingExecutionService scriptingExecutionService;
+    private final ExpiredReservationSweeper expiredReservationSweeper;
 
     @GetMapping(value = "/load")
     public Map<ConfigurationKeys.SettingCategory, List<Configuration>> loadConfiguration(Principal principal) {
@@ -201,6 +213,28 @@ public class ConfigurationApiController {
         return result;
     }
 
+    @GetMapping("/cache-statistics")
+    public ResponseEntity<List<CacheStatistics>> getCacheStatistics(Principal principal) {
+        if(!RequestUtils.isAdmin(principal)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        var statistics = new ArrayList<>(configurationManager.getCacheStatistics());
+        statistics.addAll(eventCache.getStatistics());
+        statistics.addAll(extensionCache.getStatistics());
+        statistics.add(scriptingExecutionService.getStatistics());
+        statistics.add(publishedEventsCache.getStatistics());
+        statistics.add(MustacheCustomTag.getCommonmarkCacheStatistics());
+        return ResponseEntity.ok(statistics);
+    }
+
+    @GetMapping("/expired-reservation-sweeper-statistics")
+    public ResponseEntity<ExpiredReservationSweeper.SweepStatistics> getExpiredReservationSweeperStatistics(Principal principal) {
+        if(!RequestUtils.isAdmin(principal)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(expiredReservationSweeper.getStatistics());
+    }
+
     @GetMapping("/setting-categories")
     public Collection<ConfigurationKeys.SettingCategory> getSettingCategories() {
         return EnumSet.allOf(ConfigurationKeys.SettingCategory.class);
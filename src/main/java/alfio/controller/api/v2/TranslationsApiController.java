@@ -26,6 +26,9 @@ import alfio.model.system.ConfigurationKeys;
 import alfio.util.LocaleUtil;
 import lombok.AllArgsConstructor;
 import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.text.Collator;
@@ -44,9 +47,15 @@ public class TranslationsApiController {
     private final I18nManager i18nManager;
 
     @GetMapping("/public/i18n/bundle/{lang}")
-    public Map<String, String> getPublicTranslations(@PathVariable("lang") String lang,
-                                                     @RequestParam(value = "withSystemOverride", defaultValue = "true", required = false) boolean withSystemOverride) {
-        return messageSourceManager.getBundleAsMap("alfio.i18n.public", withSystemOverride, lang);
+    public ResponseEntity<String> getPublicTranslations(@PathVariable("lang") String lang,
+                                                        @RequestParam(value = "withSystemOverride", defaultValue = "true", required = false) boolean withSystemOverride) {
+        var bundle = messageSourceManager.getSerializedBundle("alfio.i18n.public", withSystemOverride, lang);
+        // the ETag changes whenever the system override changes; a matching If-None-Match gets a 304
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .cacheControl(CacheControl.noCache().cachePublic())
+            .eTag(bundle.getEtag())
+            .body(bundle.getJson());
     }
 
     @GetMapping("/admin/i18n/bundle/{lang}")
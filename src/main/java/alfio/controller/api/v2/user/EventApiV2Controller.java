@@ -21,6 +21,8 @@ import alfio.controller.api.v2.model.EventWithAdditionalInfo;
 import alfio.controller.api.v2.model.TicketCategory;
 import alfio.controller.api.v2.model.*;
 import alfio.controller.api.v2.user.support.EventLoader;
+import alfio.controller.api.v2.user.support.PublicDataVersion;
+import alfio.controller.api.v2.user.support.PublishedEventsCache;
 import alfio.controller.decorator.SaleableAdditionalService;
 import alfio.controller.decorator.SaleableTicketCategory;
 import alfio.controller.form.ReservationForm;
@@ -32,6 +34,7 @@ import alfio.manager.i18n.I18nManager;
 import alfio.manager.i18n.MessageSourceManager;
 import alfio.manager.support.response.ValidatedResponse;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.EventCache;
 import alfio.model.*;
 import alfio.model.modification.TicketReservationModification;
 import alfio.model.result.ValidationResult;
@@ -61,6 +64,7 @@ import java.util.*;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static alfio.model.PromoCodeDiscount.categoriesOrNull;
 import static alfio.model.system.ConfigurationKeys.*;
@@ -72,8 +76,10 @@ import static java.util.stream.Collectors.*;
 @AllArgsConstructor
 public class EventApiV2Controller {
 
+    private static final String ADMISSION_QUEUE_TOKEN_ATTRIBUTE = "ADMISSION_QUEUE_TOKEN_";
+
     private final EventManager eventManager;
-    private final EventRepository eventRepository;
+    private final EventCache eventCache;
     private final ConfigurationManager configurationManager;
     private final EventDescriptionRepository eventDescriptionRepository;
     private final TicketCategoryDescriptionRepository ticketCategoryDescriptionRepository;
@@ -87,20 +93,35 @@ public class EventApiV2Controller {
     private final TicketRepository ticketRepository;
     private final TicketReservationManager ticketReservationManager;
     private final PromoCodeDiscountRepository promoCodeRepository;
-    private final EventStatisticsManager eventStatisticsManager;
     private final RecaptchaService recaptchaService;
     private final PromoCodeRequestManager promoCodeRequestManager;
     private final EventLoader eventLoader;
+    private final PublishedEventsCache publishedEventsCache;
     private final ExtensionManager extensionManager;
     private final ClockProvider clockProvider;
+    private final AdmissionQueueManager admissionQueueManager;
+    private final TicketSelectionCoalescer ticketSelectionCoalescer;
+    private final PublicDataVersion publicDataVersion;
 
 
     @GetMapping("events")
-    public ResponseEntity<List<BasicEventInfo>> listEvents(SearchOptions searchOptions) {
+    public ResponseEntity<List<BasicEventInfo>> listEvents(SearchOptions searchOptions,
+                                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        var version = publicDataVersion.current();
+        var events = publishedEventsCache.get(searchOptions, () -> loadPublishedEvents(searchOptions));
+        // events disappear from the list once they are over
+        var eTag = version.eTag(events.stream().map(BasicEventInfo::getShortName).collect(joining(",")));
+        if(PublicDataVersion.isNotModified(ifNoneMatch, eTag)) {
+            return notModified(eTag);
+        }
+        return ResponseEntity.ok().headers(getCorsHeaders()).eTag(eTag).body(events);
+    }
+
+    private List<BasicEventInfo> loadPublishedEvents(SearchOptions searchOptions) {
 
         var contentLanguages = i18nManager.getAvailableLanguages();
 
-        var events = eventManager.getPublishedEvents(searchOptions)
+        return eventManager.getPublishedEvents(searchOptions)
             .stream()
             .map(e -> {
                 var messageSource = messageSourceManager.getMessageSourceFor(e);
@@ -111,12 +132,18 @@ public class EventApiV2Controller {
                     e.getContentLanguages().stream().map(cl -> new Language(cl.getLocale().getLanguage(), cl.getDisplayLanguage())).collect(toList()));
             })
             .collect(Collectors.toList());
-        return new ResponseEntity<>(events, getCorsHeaders(), HttpStatus.OK);
     }
 
     @GetMapping("event/{eventName}")
-    public ResponseEntity<EventWithAdditionalInfo> getEvent(@PathVariable("eventName") String eventName, HttpSession session) {
-        return eventLoader.loadEventInfo(eventName, session).map(eventWithAdditionalInfo -> new ResponseEntity<>(eventWithAdditionalInfo, getCorsHeaders(), HttpStatus.OK))
+    public ResponseEntity<EventWithAdditionalInfo> getEvent(@PathVariable("eventName") String eventName,
+                                                            HttpSession session,
+                                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        var versionedEventInfo = eventLoader.loadVersionedEventInfo(eventName, session, publicDataVersion.current());
+        if(versionedEventInfo.filter(info -> PublicDataVersion.isNotModified(ifNoneMatch, info.getETag())).isPresent()) {
+            return notModified(versionedEventInfo.get().getETag());
+        }
+        return versionedEventInfo
+            .map(info -> ResponseEntity.ok().headers(getCorsHeaders()).eTag(info.getETag()).body(info.loadEventInfo()))
             .orElseGet(() -> ResponseEntity.notFound().headers(getCorsHeaders()).build());
     }
 
@@ -125,7 +152,7 @@ public class EventApiV2Controller {
                                                                              @RequestBody WaitingQueueSubscriptionForm subscription,
                                                                              BindingResult bindingResult) {
 
-        Optional<ResponseEntity<ValidatedResponse<Boolean>>> res = eventRepository.findOptionalByShortName(eventName).map(event -> {
+        Optional<ResponseEntity<ValidatedResponse<Boolean>>> res = eventCache.findOptionalByShortName(eventName).map(event -> {
             Validator.validateWaitingQueueSubscription(subscription, bindingResult, event);
             if (bindingResult.hasErrors()) {
                 return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(ValidatedResponse.toResponse(bindingResult, null));
@@ -139,10 +166,28 @@ public class EventApiV2Controller {
     }
 
     @GetMapping("event/{eventName}/ticket-categories")
-    public ResponseEntity<ItemsByCategory> getTicketCategories(@PathVariable("eventName") String eventName, @RequestParam(value = "code", required = false) String code) {
+    public ResponseEntity<ItemsByCategory> getTicketCategories(@PathVariable("eventName") String eventName,
+                                                               @RequestParam(value = "code", required = false) String code,
+                                                               @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
+        var version = publicDataVersion.current();
         //
-        return eventRepository.findOptionalByShortName(eventName).filter(e -> e.getStatus() != Event.Status.DISABLED).map(event -> {
+        return eventCache.findOptionalByShortName(eventName).filter(e -> e.getStatus() != Event.Status.DISABLED).map(event -> {
+
+            final ZonedDateTime now = event.now(clockProvider);
+            var ticketCategories = ticketCategoryRepository.findAllTicketCategories(event.getId());
+            // all the counts come from a single, short-lived snapshot of the event availability
+            var availability = ticketReservationManager.getAvailabilitySnapshot(event);
+            var additionalServices = additionalServiceRepository.loadAllForEvent(event.getId());
+
+            // the result of a code depends on its usage, which is not versioned
+            String eTag = null;
+            if(StringUtils.isBlank(code)) {
+                eTag = version.eTag(event.getId(), availability.getFingerprint(), countPassedSaleDates(now, event, ticketCategories, additionalServices));
+                if(PublicDataVersion.isNotModified(ifNoneMatch, eTag)) {
+                    return EventApiV2Controller.<ItemsByCategory>notModified(eTag);
+                }
+            }
 
             var configurations = configurationManager.getFor(List.of(DISPLAY_TICKETS_LEFT_INDICATOR, MAX_AMOUNT_OF_TICKETS_BY_RESERVATION, DISPLAY_EXPIRED_CATEGORIES), event.getConfigurationLevel());
             var ticketCategoryLevelConfiguration = configurationManager.getAllCategoriesAndValueWith(event, MAX_AMOUNT_OF_TICKETS_BY_RESERVATION);
@@ -153,10 +198,13 @@ public class EventApiV2Controller {
             Optional<SpecialPrice> specialCode = appliedPromoCode.getValue().getLeft();
             Optional<PromoCodeDiscount> promoCodeDiscount = appliedPromoCode.getValue().getRight();
 
-            final ZonedDateTime now = event.now(clockProvider);
-            //hide access restricted ticket categories
-            var ticketCategories = ticketCategoryRepository.findAllTicketCategories(event.getId());
+            // the usage depends only on the promo code, so we can count it once for all the categories
+            Integer promoCodeUsage = promoCodeDiscount
+                .filter(promoCode -> promoCode.getMaxUsage() != null)
+                .map(promoCode -> promoCodeRepository.countConfirmedPromoCode(promoCode.getId(), categoriesOrNull(promoCode), null, categoriesOrNull(promoCode) != null ? "X" : null))
+                .orElse(null);
 
+            //hide access restricted ticket categories
             List<SaleableTicketCategory> saleableTicketCategories = ticketCategories.stream()
                 .filter((c) -> !c.isAccessRestricted() || shouldDisplayRestrictedCategory(specialCode, c, promoCodeDiscount))
                 .map((category) -> {
@@ -165,10 +213,10 @@ public class EventApiV2Controller {
                     if (specialCode.isPresent()) {
                         maxTickets = Math.min(1, maxTickets);
                     } else if (filteredPromoCode != null && filteredPromoCode.getMaxUsage() != null) {
-                        maxTickets = filteredPromoCode.getMaxUsage() - promoCodeRepository.countConfirmedPromoCode(filteredPromoCode.getId(), categoriesOrNull(filteredPromoCode), null, categoriesOrNull(filteredPromoCode) != null ? "X" : null);
+                        maxTickets = filteredPromoCode.getMaxUsage() - promoCodeUsage;
                     }
                     return new SaleableTicketCategory(category,
-                        now, event, ticketReservationManager.countAvailableTickets(event, category), maxTickets,
+                        now, event, availability.countAvailableTickets(category), maxTickets,
                         filteredPromoCode);
                 })
                 .collect(Collectors.toList());
@@ -198,8 +246,7 @@ public class EventApiV2Controller {
                 .flatMap(Pair::getRight);
 
             //
-            var saleableAdditionalServices = additionalServiceRepository.loadAllForEvent(event.getId())
-                .stream()
+            var saleableAdditionalServices = additionalServices.stream()
                 .map(as -> new SaleableAdditionalService(event, as, promoCode.orElse(null)))
                 .filter(SaleableAdditionalService::isNotExpired)
                 .collect(Collectors.toList());
@@ -223,7 +270,7 @@ public class EventApiV2Controller {
             //
 
             // waiting queue parameters
-            boolean displayWaitingQueueForm = EventUtil.displayWaitingQueueForm(event, saleableTicketCategories, configurationManager, eventStatisticsManager.noSeatsAvailable());
+            boolean displayWaitingQueueForm = EventUtil.displayWaitingQueueForm(event, saleableTicketCategories, configurationManager, e -> availability.isNoSeatsAvailable());
             boolean preSales = EventUtil.isPreSales(event, saleableTicketCategories);
             Predicate<SaleableTicketCategory> waitingQueueTargetCategory = tc -> !tc.getExpired() && !tc.isBounded();
             List<SaleableTicketCategory> unboundedCategories = saleableTicketCategories.stream().filter(waitingQueueTargetCategory).collect(Collectors.toList());
@@ -232,10 +279,30 @@ public class EventApiV2Controller {
             var activeCategories = categoriesByExpiredFlag.get(false);
             var expiredCategories = configurations.get(DISPLAY_EXPIRED_CATEGORIES).getValueAsBooleanOrDefault() ? categoriesByExpiredFlag.get(true) : List.<TicketCategory>of();
 
-            return new ResponseEntity<>(new ItemsByCategory(activeCategories, expiredCategories, additionalServicesRes, displayWaitingQueueForm, preSales, tcForWaitingList), getCorsHeaders(), HttpStatus.OK);
+            var headers = getCorsHeaders();
+            if(eTag != null) {
+                headers.setETag(eTag);
+            }
+            return new ResponseEntity<>(new ItemsByCategory(activeCategories, expiredCategories, additionalServicesRes, displayWaitingQueueForm, preSales, tcForWaitingList), headers, HttpStatus.OK);
         }).orElseGet(() -> ResponseEntity.notFound().headers(getCorsHeaders()).build());
     }
 
+    /**
+     * Counts the sale dates of categories and additional services which are already in the past. The result changes
+     * whenever an item goes on sale or expires, so it can be used to version a response which depends on the time.
+     */
+    private static long countPassedSaleDates(ZonedDateTime now,
+                                             Event event,
+                                             List<alfio.model.TicketCategory> ticketCategories,
+                                             List<alfio.model.AdditionalService> additionalServices) {
+        var zoneId = event.getZoneId();
+        return Stream.concat(
+                ticketCategories.stream().flatMap(tc -> Stream.of(tc.getInception(zoneId), tc.getExpiration(zoneId))),
+                additionalServices.stream().flatMap(as -> Stream.of(as.getInception(zoneId), as.getExpiration(zoneId))))
+            .filter(date -> !date.isAfter(now))
+            .count();
+    }
+
     private static int getMaxAmountOfTicketsPerReservation(Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> eventLevelConf,
                                                            Map<Integer, String> ticketCategoryLevelConf,
                                                            int ticketCategory) {
@@ -246,6 +313,50 @@ public class EventApiV2Controller {
         return eventLevelConf.get(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION).getValueAsIntOrDefault(5);
     }
 
+    /**
+     * Enter the admission queue of the given event. If the current session already holds a valid token for the event,
+     * the status of that token is returned instead.
+     *
+     * @param eventName
+     * @param request
+     * @return the queue status, including the token to be sent back with the reservation request
+     */
+    @PostMapping("event/{eventName}/admission-queue")
+    public ResponseEntity<AdmissionQueueStatus> enterAdmissionQueue(@PathVariable("eventName") String eventName,
+                                                                    HttpServletRequest request) {
+        var session = request.getSession();
+        try {
+            return eventCache.findOptionalByShortName(eventName)
+                .flatMap(event -> {
+                    var attributeName = ADMISSION_QUEUE_TOKEN_ATTRIBUTE + event.getId();
+                    var status = admissionQueueManager.enqueue(event, (String) session.getAttribute(attributeName), RequestUtils.getClientAddress(request));
+                    status.ifPresent(s -> session.setAttribute(attributeName, s.getToken()));
+                    return status;
+                })
+                .map(status -> new ResponseEntity<>(status, getCorsHeaders(), HttpStatus.OK))
+                .orElseGet(() -> ResponseEntity.notFound().headers(getCorsHeaders()).build());
+        } catch (AdmissionQueueManager.TooManyAdmissionRequestsException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).headers(getCorsHeaders()).build();
+        }
+    }
+
+    /**
+     * Retrieve position and estimated waiting time for the given admission token.
+     *
+     * @param eventName
+     * @param token
+     * @return
+     */
+    @GetMapping("event/{eventName}/admission-queue/{token}")
+    public ResponseEntity<AdmissionQueueStatus> getAdmissionQueueStatus(@PathVariable("eventName") String eventName,
+                                                                        @PathVariable("token") String token) {
+        return eventCache.findOptionalByShortName(eventName)
+            .filter(admissionQueueManager::isEnabled)
+            .flatMap(event -> admissionQueueManager.getStatus(event, token))
+            .map(status -> new ResponseEntity<>(status, getCorsHeaders(), HttpStatus.OK))
+            .orElseGet(() -> ResponseEntity.notFound().headers(getCorsHeaders()).build());
+    }
+
     @GetMapping("event/{eventName}/calendar/{locale}")
     public void getCalendar(@PathVariable("eventName") String eventName,
                             @PathVariable("locale") String locale,
@@ -253,7 +364,7 @@ public class EventApiV2Controller {
                             @RequestParam(value = "ticketId", required = false) String ticketId,
                             HttpServletResponse response) {
 
-        eventRepository.findOptionalByShortName(eventName).ifPresentOrElse(ev -> {
+        eventCache.findOptionalByShortName(eventName).ifPresentOrElse(ev -> {
             var description = eventDescriptionRepository.findDescriptionByEventIdTypeAndLocale(ev.getId(), EventDescription.EventDescriptionType.DESCRIPTION, locale).orElse("");
             var category = ticketRepository.findOptionalByUUID(ticketId).map(t -> ticketCategoryRepository.getById(t.getCategoryId())).orElse(null);
             if ("google".equals(calendarType)) {
@@ -298,7 +409,12 @@ public class EventApiV2Controller {
 
 
 
-        Optional<ResponseEntity<ValidatedResponse<String>>> r = eventRepository.findOptionalByShortName(eventName).map(event -> {
+        Optional<ResponseEntity<ValidatedResponse<String>>> r = eventCache.findOptionalByShortName(eventName).map(event -> {
+
+            if (!admissionQueueManager.canProceed(event, reservation.getAdmissionToken())) {
+                bindingResult.reject(ErrorsCode.STEP_1_ADMISSION_QUEUE);
+                return new ResponseEntity<>(ValidatedResponse.toResponse(bindingResult, null), getCorsHeaders(), HttpStatus.UNPROCESSABLE_ENTITY);
+            }
 
             Locale locale = LocaleUtil.forLanguageTag(lang, event);
 
@@ -331,7 +447,11 @@ public class EventApiV2Controller {
                                                      Optional<String> promoCodeDiscount,
                                                      Principal principal) {
         return ReservationUtil.validateCreateRequest(reservation, bindingResult, ticketReservationManager, eventManager, promoCodeDiscount.orElse(null), event)
-            .flatMap(selected -> ticketReservationManager.createTicketReservation(event, selected.getLeft(), selected.getRight(), promoCodeDiscount, locale, bindingResult, principal));
+            .flatMap(selected -> {
+                // must be done before starting the reservation transaction
+                ticketSelectionCoalescer.awaitBatchWindow(event.getId(), selected.getLeft().stream().map(r -> r.getTicketCategoryId()).collect(toList()));
+                return ticketReservationManager.createTicketReservation(event, selected.getLeft(), selected.getRight(), promoCodeDiscount, locale, bindingResult, principal);
+            });
     }
 
     @GetMapping("event/{eventName}/validate-code")
@@ -358,7 +478,7 @@ public class EventApiV2Controller {
 
     @PostMapping("event/{eventName}/check-discount")
     public ResponseEntity<DynamicDiscount> checkDiscount(@PathVariable("eventName") String eventName, @RequestBody ReservationForm reservation) {
-        return eventRepository.findOptionalByShortName(eventName)
+        return eventCache.findOptionalByShortName(eventName)
             .flatMap(event -> {
                 Map<Integer, Long> quantityByCategory = reservation.getReservation().stream()
                     .filter(trm -> trm.getQuantity() > 0)
@@ -425,6 +545,10 @@ public class EventApiV2Controller {
         return ticketCategory.isAccessRestricted() && ticketCategory.getId() == promoCodeDiscount.getHiddenCategoryId();
     }
 
+    private static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(getCorsHeaders()).eTag(eTag).build();
+    }
+
     private static HttpHeaders getCorsHeaders() {
         HttpHeaders headers = new HttpHeaders();
         headers.add("Access-Control-Allow-Origin", "*");
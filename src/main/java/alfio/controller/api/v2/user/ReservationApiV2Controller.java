@@ -36,6 +36,7 @@ import alfio.manager.payment.StripeCreditCardManager;
 import alfio.manager.support.PaymentResult;
 import alfio.manager.support.response.ValidatedResponse;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.EventCache;
 import alfio.manager.user.PublicUserManager;
 import alfio.model.*;
 import alfio.model.PurchaseContext.PurchaseContextType;
@@ -85,7 +86,7 @@ import static java.util.stream.Collectors.toMap;
 public class ReservationApiV2Controller {
 
     private final EventManager eventManager;
-    private final EventRepository eventRepository;
+    private final EventCache eventCache;
     private final TicketReservationManager ticketReservationManager;
     private final TicketReservationRepository ticketReservationRepository;
     private final TicketFieldRepository ticketFieldRepository;
@@ -554,7 +555,7 @@ public class ReservationApiV2Controller {
 
 
 
-        return eventRepository.findOptionalByShortName(eventName).map(event -> {
+        return eventCache.findOptionalByShortName(eventName).map(event -> {
                 if(canAccessReceiptOrInvoice(event, authentication)) {
                     return ticketReservationManager.findById(reservationId).map(ticketReservation -> with.apply(event, ticketReservation)).orElse(notFound);
                 } else {
@@ -21,16 +21,20 @@ import alfio.controller.api.v2.model.EventWithAdditionalInfo;
 import alfio.controller.support.Formatters;
 import alfio.manager.i18n.MessageSourceManager;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.EventCache;
 import alfio.model.Event;
 import alfio.model.modification.support.LocationDescriptor;
 import alfio.model.system.ConfigurationKeys;
 import alfio.repository.*;
 import alfio.repository.user.OrganizationRepository;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
+import lombok.Getter;
 import org.springframework.stereotype.Component;
 
 import javax.servlet.http.HttpSession;
 import java.util.*;
+import java.util.function.Supplier;
 
 import static alfio.model.system.ConfigurationKeys.*;
 
@@ -38,7 +42,7 @@ import static alfio.model.system.ConfigurationKeys.*;
 @AllArgsConstructor
 public class EventLoader {
 
-    private final EventRepository eventRepository;
+    private final EventCache eventCache;
     private final MessageSourceManager messageSourceManager;
     private final EventDescriptionRepository eventDescriptionRepository;
     private final OrganizationRepository organizationRepository;
@@ -49,72 +53,113 @@ public class EventLoader {
     private final SubscriptionRepository subscriptionRepository;
 
     public Optional<EventWithAdditionalInfo> loadEventInfo(String eventName, HttpSession session) {
-        return eventRepository.findOptionalByShortName(eventName).filter(e -> e.getStatus() != Event.Status.DISABLED)//
+        return eventCache.findOptionalByShortName(eventName).filter(e -> e.getStatus() != Event.Status.DISABLED)//
             .map(event -> {
-                //
-                var messageSourceAndOverride = messageSourceManager.getMessageSourceForPurchaseContextAndOverride(event);
-                var messageSource = messageSourceAndOverride.getLeft();
-                var i18nOverride = messageSourceAndOverride.getRight();
+                var configurationsValues = PurchaseContextInfoBuilder.configurationsValues(event, configurationManager);
+                return buildEventInfo(event, session, configurationsValues, countAvailableTickets(event, configurationsValues));
+            });
+    }
+
+    /**
+     * Loads the event info together with its ETag. Besides the given version, the event info depends, if displayed,
+     * on the count of the available tickets, which is computed only once and shared between the ETag and the body.
+     * The ETag is weak, because the analytics client id depends on the session: the rest of the body doesn't.
+     * The body is built only if requested.
+     *
+     * @param eventName the event short name
+     * @param session the current session
+     * @param version the current version, which must be read before calling this method
+     * @return the versioned event info, or empty if the event is not visible
+     */
+    public Optional<VersionedEventInfo> loadVersionedEventInfo(String eventName, HttpSession session, PublicDataVersion.Version version) {
+        return eventCache.findOptionalByShortName(eventName).filter(e -> e.getStatus() != Event.Status.DISABLED)
+            .map(event -> {
+                var configurationsValues = PurchaseContextInfoBuilder.configurationsValues(event, configurationManager);
+                var availableTicketsCount = countAvailableTickets(event, configurationsValues);
+                return new VersionedEventInfo(version.weakETag(event.getId(), availableTicketsCount),
+                    () -> buildEventInfo(event, session, configurationsValues, availableTicketsCount));
+            });
+    }
 
-                var descriptions = Formatters.applyCommonMark(eventDescriptionRepository.findDescriptionByEventIdAsMap(event.getId()));
+    private EventWithAdditionalInfo buildEventInfo(Event event,
+                                                   HttpSession session,
+                                                   Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> configurationsValues,
+                                                   Integer availableTicketsCount) {
+        //
+        var messageSourceAndOverride = messageSourceManager.getMessageSourceForPurchaseContextAndOverride(event);
+        var messageSource = messageSourceAndOverride.getLeft();
+        var i18nOverride = messageSourceAndOverride.getRight();
 
-                var organization = organizationRepository.getContactById(event.getOrganizationId());
+        var descriptions = Formatters.applyCommonMark(eventDescriptionRepository.findDescriptionByEventIdAsMap(event.getId()));
 
-                var configurationsValues = PurchaseContextInfoBuilder.configurationsValues(event, configurationManager);
+        var organization = organizationRepository.getContactById(event.getOrganizationId());
 
-                var locationDescriptor = LocationDescriptor.fromGeoData(event.getFormat(), event.getLatLong(), TimeZone.getTimeZone(event.getTimeZone()), configurationsValues);
+        var locationDescriptor = LocationDescriptor.fromGeoData(event.getFormat(), event.getLatLong(), TimeZone.getTimeZone(event.getTimeZone()), configurationsValues);
 
-                //
-                var captchaConf = PurchaseContextInfoBuilder.captchaConfiguration(configurationManager, configurationsValues);
+        //
+        var captchaConf = PurchaseContextInfoBuilder.captchaConfiguration(configurationManager, configurationsValues);
 
 
-                //
-                String bankAccount = configurationsValues.get(BANK_ACCOUNT_NR).getValueOrDefault("");
-                List<String> bankAccountOwner = Arrays.asList(configurationsValues.get(BANK_ACCOUNT_OWNER).getValueOrDefault("").split("\n"));
-                //
+        //
+        String bankAccount = configurationsValues.get(BANK_ACCOUNT_NR).getValueOrDefault("");
+        List<String> bankAccountOwner = Arrays.asList(configurationsValues.get(BANK_ACCOUNT_OWNER).getValueOrDefault("").split("\n"));
+        //
 
-                var formattedDates = Formatters.getFormattedDates(event, messageSource, event.getContentLanguages());
+        var formattedDates = Formatters.getFormattedDates(event, messageSource, event.getContentLanguages());
 
-                //invoicing information
-                var invoicingConf = PurchaseContextInfoBuilder.invoicingInfo(configurationManager, configurationsValues);
-                //
+        //invoicing information
+        var invoicingConf = PurchaseContextInfoBuilder.invoicingInfo(configurationManager, configurationsValues);
+        //
 
-                //
-                boolean forceAssignment = configurationsValues.get(FORCE_TICKET_OWNER_ASSIGNMENT_AT_RESERVATION).getValueAsBooleanOrDefault();
-                boolean enableAttendeeAutocomplete = configurationsValues.get(ENABLE_ATTENDEE_AUTOCOMPLETE).getValueAsBooleanOrDefault();
-                boolean enableTicketTransfer = configurationsValues.get(ENABLE_TICKET_TRANSFER).getValueAsBooleanOrDefault();
-                var assignmentConf = new EventWithAdditionalInfo.AssignmentConfiguration(forceAssignment, enableAttendeeAutocomplete, enableTicketTransfer);
-                //
+        //
+        boolean forceAssignment = configurationsValues.get(FORCE_TICKET_OWNER_ASSIGNMENT_AT_RESERVATION).getValueAsBooleanOrDefault();
+        boolean enableAttendeeAutocomplete = configurationsValues.get(ENABLE_ATTENDEE_AUTOCOMPLETE).getValueAsBooleanOrDefault();
+        boolean enableTicketTransfer = configurationsValues.get(ENABLE_TICKET_TRANSFER).getValueAsBooleanOrDefault();
+        var assignmentConf = new EventWithAdditionalInfo.AssignmentConfiguration(forceAssignment, enableAttendeeAutocomplete, enableTicketTransfer);
+        //
 
 
-                //promotion codes
-                boolean hasAccessPromotions = configurationsValues.get(DISPLAY_DISCOUNT_CODE_BOX).getValueAsBooleanOrDefault() &&
-                    (ticketCategoryRepository.countAccessRestrictedRepositoryByEventId(event.getId()) > 0 ||
-                        promoCodeRepository.countByEventAndOrganizationId(event.getId(), event.getOrganizationId()) > 0);
-                boolean usePartnerCode = configurationsValues.get(USE_PARTNER_CODE_INSTEAD_OF_PROMOTIONAL).getValueAsBooleanOrDefault();
-                var promoConf = new EventWithAdditionalInfo.PromotionsConfiguration(hasAccessPromotions, usePartnerCode);
-                //
+        //promotion codes
+        boolean hasAccessPromotions = configurationsValues.get(DISPLAY_DISCOUNT_CODE_BOX).getValueAsBooleanOrDefault() &&
+            (ticketCategoryRepository.countAccessRestrictedRepositoryByEventId(event.getId()) > 0 ||
+                promoCodeRepository.countByEventAndOrganizationId(event.getId(), event.getOrganizationId()) > 0);
+        boolean usePartnerCode = configurationsValues.get(USE_PARTNER_CODE_INSTEAD_OF_PROMOTIONAL).getValueAsBooleanOrDefault();
+        var promoConf = new EventWithAdditionalInfo.PromotionsConfiguration(hasAccessPromotions, usePartnerCode);
+        //
 
-                //analytics configuration
-                var analyticsConf = AnalyticsConfiguration.build(configurationsValues, session);
-                //
+        //analytics configuration
+        var analyticsConf = AnalyticsConfiguration.build(configurationsValues, session);
+        //
 
-                Integer availableTicketsCount = null;
-                if (configurationsValues.get(DISPLAY_TICKETS_LEFT_INDICATOR).getValueAsBooleanOrDefault()) {
-                    availableTicketsCount = ticketRepository.countFreeTicketsForPublicStatistics(event.getId());
-                }
+        var customCss = configurationsValues.get(EVENT_CUSTOM_CSS).getValueOrNull();
 
-                var customCss = configurationsValues.get(EVENT_CUSTOM_CSS).getValueOrNull();
+        var hasLinkedSubscription = subscriptionRepository.hasLinkedSubscription(event.getId());
 
-                var hasLinkedSubscription = subscriptionRepository.hasLinkedSubscription(event.getId());
+        return new EventWithAdditionalInfo(event, locationDescriptor.getMapUrl(), organization, descriptions,
+            bankAccount, bankAccountOwner,
+            formattedDates.beginDate, formattedDates.beginTime,
+            formattedDates.endDate, formattedDates.endTime,
+            invoicingConf, captchaConf, assignmentConf, promoConf, analyticsConf,
+            MessageSourceManager.convertPlaceholdersForEachLanguage(i18nOverride), availableTicketsCount, customCss, hasLinkedSubscription);
+    }
 
-                return new EventWithAdditionalInfo(event, locationDescriptor.getMapUrl(), organization, descriptions,
-                    bankAccount, bankAccountOwner,
-                    formattedDates.beginDate, formattedDates.beginTime,
-                    formattedDates.endDate, formattedDates.endTime,
-                    invoicingConf, captchaConf, assignmentConf, promoConf, analyticsConf,
-                    MessageSourceManager.convertPlaceholdersForEachLanguage(i18nOverride), availableTicketsCount, customCss, hasLinkedSubscription);
-            });
+    private Integer countAvailableTickets(Event event, Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> configurationsValues) {
+        if (configurationsValues.get(DISPLAY_TICKETS_LEFT_INDICATOR).getValueAsBooleanOrDefault()) {
+            return ticketRepository.countFreeTicketsForPublicStatistics(event.getId());
+        }
+        return null;
+    }
+
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class VersionedEventInfo {
+        private final String eTag;
+        @Getter(AccessLevel.NONE)
+        private final Supplier<EventWithAdditionalInfo> eventInfoSupplier;
+
+        public EventWithAdditionalInfo loadEventInfo() {
+            return eventInfoSupplier.get();
+        }
     }
 
     public boolean isRecaptchaForTicketSelectionEnabled(Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> configurationValues) {
@@ -0,0 +1,118 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.v2.user.support;
+
+import alfio.manager.system.ConfigurationCache;
+import alfio.manager.system.DatabaseNotificationListener;
+import alfio.manager.system.EventCache;
+import alfio.repository.system.PublicDataVersionRepository;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+/**
+ * Builds the ETags of the public API responses.
+ * <p>
+ * An ETag is derived from the shared versions of the event and configuration data (see the public_data_version
+ * table, updated by the same triggers which notify the changes), and from the additional values which can change
+ * the response without a notification, e.g. the time or the availability. ETags are therefore valid across nodes
+ * and restarts.
+ * The shared versions are loaded again only when the local version of a notification channel changes (see
+ * {@link DatabaseNotificationListener#getVersion(String)}), i.e. after a change has been committed.
+ * The versions must be read <em>before</em> loading the data: a concurrent change could then produce a new response
+ * with an old ETag, which is harmless, but never an old response with a new ETag.
+ */
+@Component
+public class PublicDataVersion {
+
+    private final DatabaseNotificationListener databaseNotificationListener;
+    private final PublicDataVersionRepository publicDataVersionRepository;
+    private volatile LoadedVersion loaded;
+
+    public PublicDataVersion(DatabaseNotificationListener databaseNotificationListener,
+                             PublicDataVersionRepository publicDataVersionRepository) {
+        this.databaseNotificationListener = databaseNotificationListener;
+        this.publicDataVersionRepository = publicDataVersionRepository;
+    }
+
+    public Version current() {
+        var localVersion = databaseNotificationListener.getVersion(EventCache.CHANNEL)
+            + "|" + databaseNotificationListener.getVersion(ConfigurationCache.CHANNEL);
+        var current = loaded;
+        if(current == null || !current.localVersion.equals(localVersion)) {
+            current = new LoadedVersion(localVersion, publicDataVersionRepository.loadVersions());
+            loaded = current;
+        }
+        return new Version(current.sharedVersion);
+    }
+
+    /**
+     * Compares the ETags with the weak comparison function, as required for If-None-Match.
+     *
+     * @param ifNoneMatch the value of the If-None-Match header
+     * @param eTag the current ETag
+     * @return {@code true} if the client already has the current version of the response
+     */
+    public static boolean isNotModified(String ifNoneMatch, String eTag) {
+        if(StringUtils.isBlank(ifNoneMatch)) {
+            return false;
+        }
+        var opaqueTag = StringUtils.removeStart(eTag, "W/");
+        return Arrays.stream(ifNoneMatch.split(","))
+            .map(String::trim)
+            .map(tag -> StringUtils.removeStart(tag, "W/"))
+            .anyMatch(tag -> tag.equals("*") || tag.equals(opaqueTag));
+    }
+
+    private static class LoadedVersion {
+        private final String localVersion;
+        private final String sharedVersion;
+
+        private LoadedVersion(String localVersion, String sharedVersion) {
+            this.localVersion = localVersion;
+            this.sharedVersion = sharedVersion;
+        }
+    }
+
+    public static class Version {
+
+        private final String value;
+
+        private Version(String value) {
+            this.value = value;
+        }
+
+        public String eTag(Object... discriminators) {
+            var joiner = new StringJoiner("|").add(value);
+            for (Object discriminator : discriminators) {
+                joiner.add(String.valueOf(discriminator));
+            }
+            return "\"" + DigestUtils.sha256Hex(joiner.toString()) + "\"";
+        }
+
+        /**
+         * Builds a weak ETag, for responses which are semantically equivalent but not byte-for-byte identical,
+         * e.g. because they contain session-dependent values.
+         */
+        public String weakETag(Object... discriminators) {
+            return "W/" + eTag(discriminators);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.v2.user.support;
+
+import alfio.controller.api.v2.model.BasicEventInfo;
+import alfio.controller.form.SearchOptions;
+import alfio.manager.system.ConfigurationCache;
+import alfio.manager.system.DatabaseNotificationListener;
+import alfio.manager.system.EventCache;
+import alfio.model.system.CacheStatistics;
+import alfio.util.ClockProvider;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caches the public events listing, already converted to {@link BasicEventInfo} (i.e. with the formatted dates for
+ * every language), by {@link SearchOptions}.
+ * <p>
+ * The whole cache is invalidated on every node when the database notifies a change on the events or on the
+ * configuration. Each entry expires when the first of the listed events ends, since it won't be visible anymore,
+ * and in any case after the given duration.
+ */
+public class PublishedEventsCache implements InitializingBean {
+
+    private static final long MAX_SIZE = 1_000;
+
+    private final Cache<SearchOptions, PublishedEvents> cache;
+    private final DatabaseNotificationListener databaseNotificationListener;
+
+    public PublishedEventsCache(Duration expiration,
+                                DatabaseNotificationListener databaseNotificationListener,
+                                ClockProvider clockProvider) {
+        this.cache = Caffeine.newBuilder()
+            .expireAfter(new PublishedEventsExpiry(expiration.toNanos(), clockProvider))
+            .maximumSize(MAX_SIZE)
+            .recordStats()
+            .build();
+        this.databaseNotificationListener = databaseNotificationListener;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        databaseNotificationListener.subscribe(EventCache.CHANNEL, payload -> cache.invalidateAll());
+        databaseNotificationListener.subscribe(ConfigurationCache.CHANNEL, payload -> cache.invalidateAll());
+    }
+
+    public List<BasicEventInfo> get(SearchOptions searchOptions, Supplier<List<BasicEventInfo>> loader) {
+        return cache.get(copyOf(searchOptions), k -> {
+            var events = List.copyOf(loader.get());
+            long validUntil = events.stream().mapToLong(e -> e.getDatesWithOffset().getEndDateTime()).min().orElse(Long.MAX_VALUE);
+            return new PublishedEvents(events, validUntil);
+        }).events;
+    }
+
+    public CacheStatistics getStatistics() {
+        return CacheStatistics.of("published-events", cache);
+    }
+
+    // the request parameters are bound to a mutable object, which must not be shared with the cache
+    private static SearchOptions copyOf(SearchOptions searchOptions) {
+        var copy = new SearchOptions();
+        copy.setSubscription(searchOptions.getSubscription());
+        copy.setOrganizer(searchOptions.getOrganizer());
+        copy.setOrganizerSlug(searchOptions.getOrganizerSlug());
+        copy.setTags(searchOptions.getTags() != null ? List.copyOf(searchOptions.getTags()) : null);
+        return copy;
+    }
+
+    private static class PublishedEvents {
+        private final List<BasicEventInfo> events;
+        private final long validUntil;
+
+        private PublishedEvents(List<BasicEventInfo> events, long validUntil) {
+            this.events = events;
+            this.validUntil = validUntil;
+        }
+    }
+
+    private static class PublishedEventsExpiry implements Expiry<SearchOptions, PublishedEvents> {
+
+        private final long maxNanos;
+        private final ClockProvider clockProvider;
+
+        private PublishedEventsExpiry(long maxNanos, ClockProvider clockProvider) {
+            this.maxNanos = maxNanos;
+            this.clockProvider = clockProvider;
+        }
+
+        @Override
+        public long expireAfterCreate(SearchOptions key, PublishedEvents value, long currentTime) {
+            long remainingMillis = Math.max(0, value.validUntil - clockProvider.getClock().millis());
+            return remainingMillis >= TimeUnit.NANOSECONDS.toMillis(maxNanos) ? maxNanos : TimeUnit.MILLISECONDS.toNanos(remainingMillis);
+        }
+
+        @Override
+        public long expireAfterUpdate(SearchOptions key, PublishedEvents value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(SearchOptions key, PublishedEvents value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
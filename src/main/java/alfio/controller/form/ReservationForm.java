@@ -31,6 +31,7 @@ public class ReservationForm implements Serializable, ReservationCreate {
     private List<TicketReservationModification> reservation;
     private List<AdditionalServiceReservationModification> additionalService;
     private String captcha;
+    private String admissionToken;
 
     @Override
     public List<TicketReservationModification> getTickets() {
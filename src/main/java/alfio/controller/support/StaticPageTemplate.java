@@ -0,0 +1,101 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.support;
+
+import ch.digitalfondue.jfiveparse.Document;
+import ch.digitalfondue.jfiveparse.JFiveParse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A html page serialized only once and split into static byte segments around named insertion points.
+ * Rendering writes the segments and the values for the insertion points straight to the output, without building a DOM.
+ * <p>
+ * Insertion points are marked with {@link #placeholder(String)}, either in the parsed {@link Document} (as text or attribute value)
+ * or in its serialized form. The values are written as they are, the caller is responsible for escaping them.
+ */
+public final class StaticPageTemplate {
+
+    private static final String PLACEHOLDER_PREFIX = "__alfio_placeholder_";
+    private static final String PLACEHOLDER_SUFFIX = "__";
+    private static final Pattern PLACEHOLDER = Pattern.compile(PLACEHOLDER_PREFIX + "([a-z\\-]+)" + PLACEHOLDER_SUFFIX);
+
+    private final List<byte[]> segments;
+    private final List<String> insertionPoints;
+
+    private StaticPageTemplate(List<byte[]> segments, List<String> insertionPoints) {
+        this.segments = segments;
+        this.insertionPoints = insertionPoints;
+    }
+
+    public static String placeholder(String name) {
+        return PLACEHOLDER_PREFIX + name + PLACEHOLDER_SUFFIX;
+    }
+
+    public static String serialize(Document document) {
+        var writer = new StringWriter();
+        try {
+            JFiveParse.serialize(document, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    public static StaticPageTemplate from(String page) {
+        var segments = new ArrayList<byte[]>();
+        var insertionPoints = new ArrayList<String>();
+        var matcher = PLACEHOLDER.matcher(page);
+        int start = 0;
+        while (matcher.find()) {
+            segments.add(page.substring(start, matcher.start()).getBytes(StandardCharsets.UTF_8));
+            insertionPoints.add(matcher.group(1));
+            start = matcher.end();
+        }
+        segments.add(page.substring(start).getBytes(StandardCharsets.UTF_8));
+        return new StaticPageTemplate(List.copyOf(segments), List.copyOf(insertionPoints));
+    }
+
+    public static StaticPageTemplate from(Document document) {
+        return from(serialize(document));
+    }
+
+    /**
+     * Writes the page to the given stream. Insertion points without a value are left empty.
+     *
+     * @param os the output stream
+     * @param values the values for the insertion points, already escaped
+     * @throws IOException if the stream cannot be written
+     */
+    public void render(OutputStream os, Map<String, String> values) throws IOException {
+        for (int i = 0; i < insertionPoints.size(); i++) {
+            os.write(segments.get(i));
+            var value = values.get(insertionPoints.get(i));
+            if (value != null) {
+                os.write(value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        os.write(segments.get(segments.size() - 1));
+    }
+}
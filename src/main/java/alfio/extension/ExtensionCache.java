@@ -0,0 +1,115 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.extension;
+
+import alfio.manager.system.DatabaseNotificationListener;
+import alfio.manager.system.TransactionAwareCache;
+import alfio.model.ExtensionSupport.ScriptPathNameHash;
+import alfio.model.system.CacheStatistics;
+import com.github.benmanes.caffeine.cache.Cache;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Caches the active scripts by (event, base path, async flag), and the parameters of the scripts.
+ * <p>
+ * Entries are invalidated by {@link ExtensionService} whenever it modifies an extension or its settings, and on every
+ * node when the database notifies a change on one of the extension tables (see trigger "tr_notify_extension_change").
+ * Since notifications can be lost, entries expire anyway after the given duration.
+ * <p>
+ * Uncommitted changes are handled by {@link TransactionAwareCache}.
+ */
+public class ExtensionCache implements InitializingBean {
+
+    public static final String CHANNEL = "alfio_extension";
+    private static final long MAX_SIZE = 10_000;
+
+    private final Cache<Triple<String, String, Boolean>, List<ScriptPathNameHash>> activeScripts;
+    private final Cache<Triple<String, String, String>, Map<String, String>> parameters;
+    private final Cache<Pair<String, String>, Set<String>> mandatoryParameters;
+    private final DatabaseNotificationListener databaseNotificationListener;
+    private final TransactionAwareCache transactionAwareCache = new TransactionAwareCache(this::evictAll);
+
+    public ExtensionCache(Duration expiration, DatabaseNotificationListener databaseNotificationListener) {
+        this.activeScripts = TransactionAwareCache.newCache(expiration, MAX_SIZE);
+        this.parameters = TransactionAwareCache.newCache(expiration, MAX_SIZE);
+        this.mandatoryParameters = TransactionAwareCache.newCache(expiration, MAX_SIZE);
+        this.databaseNotificationListener = databaseNotificationListener;
+    }
+
+    /**
+     * Returns a cache which doesn't retain any entry, for the code running outside of the application context
+     * (e.g. the database migrations).
+     */
+    public static ExtensionCache noCache() {
+        return new ExtensionCache(Duration.ZERO, null);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        databaseNotificationListener.subscribe(CHANNEL, payload -> evictAll());
+    }
+
+    /**
+     * Returns the active scripts for the given event. The result must not be modified.
+     */
+    List<ScriptPathNameHash> getActiveScripts(String event, String basePath, boolean async, Supplier<List<ScriptPathNameHash>> loader) {
+        return transactionAwareCache.get(activeScripts, Triple.of(event, basePath, async), k -> List.copyOf(loader.get()));
+    }
+
+    /**
+     * Returns the parameters of the given script, resolved for the given base path. The result must not be modified.
+     */
+    Map<String, String> getParameters(String name, String path, String basePath, Supplier<Map<String, String>> loader) {
+        return transactionAwareCache.get(parameters, Triple.of(name, path, basePath), k -> Map.copyOf(loader.get()));
+    }
+
+    /**
+     * Returns the names of the mandatory parameters of the given script. The result must not be modified.
+     */
+    Set<String> getMandatoryParameters(String name, String path, Supplier<Set<String>> loader) {
+        return transactionAwareCache.get(mandatoryParameters, Pair.of(name, path), k -> Set.copyOf(loader.get()));
+    }
+
+    /**
+     * Invalidates all the entries. Extensions are modified rarely, and a change in a path can affect any of the
+     * more specific paths, so there is no point in a finer invalidation.
+     */
+    void invalidate() {
+        evictAll();
+        transactionAwareCache.markPendingChanges();
+    }
+
+    public List<CacheStatistics> getStatistics() {
+        return List.of(CacheStatistics.of("extension-active-scripts", activeScripts),
+            CacheStatistics.of("extension-parameters", parameters),
+            CacheStatistics.of("extension-mandatory-parameters", mandatoryParameters));
+    }
+
+    private void evictAll() {
+        activeScripts.invalidateAll();
+        parameters.invalidateAll();
+        mandatoryParameters.invalidateAll();
+    }
+}
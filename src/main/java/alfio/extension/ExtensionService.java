@@ -31,6 +31,7 @@ import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
@@ -53,7 +54,6 @@ import static java.util.stream.Collectors.toSet;
 
 @Service
 @Log4j2
-@AllArgsConstructor
 public class ExtensionService {
 
     private static final String EVALUATE_RESULT = "res = GSON.fromJson(JSON.stringify(res), returnClass);";
@@ -69,7 +69,38 @@ public class ExtensionService {
     private final PlatformTransactionManager platformTransactionManager;
     private final ExternalConfiguration externalConfiguration;
     private final NamedParameterJdbcTemplate jdbcTemplate;
-
+    private final ExtensionCache extensionCache;
+
+    @Autowired
+    public ExtensionService(ScriptingExecutionService scriptingExecutionService,
+                            ExtensionRepository extensionRepository,
+                            ExtensionLogRepository extensionLogRepository,
+                            PlatformTransactionManager platformTransactionManager,
+                            ExternalConfiguration externalConfiguration,
+                            NamedParameterJdbcTemplate jdbcTemplate,
+                            ExtensionCache extensionCache) {
+        this.scriptingExecutionService = scriptingExecutionService;
+        this.extensionRepository = extensionRepository;
+        this.extensionLogRepository = extensionLogRepository;
+        this.platformTransactionManager = platformTransactionManager;
+        this.externalConfiguration = externalConfiguration;
+        this.jdbcTemplate = jdbcTemplate;
+        this.extensionCache = extensionCache;
+    }
+
+    /**
+     * Creates an instance which doesn't cache the extensions, for the code running outside of the application context
+     * (e.g. the database migrations).
+     */
+    public ExtensionService(ScriptingExecutionService scriptingExecutionService,
+                            ExtensionRepository extensionRepository,
+                            ExtensionLogRepository extensionLogRepository,
+                            PlatformTransactionManager platformTransactionManager,
+                            ExternalConfiguration externalConfiguration,
+                            NamedParameterJdbcTemplate jdbcTemplate) {
+        this(scriptingExecutionService, extensionRepository, extensionLogRepository, platformTransactionManager,
+            externalConfiguration, jdbcTemplate, ExtensionCache.noCache());
+    }
 
     @AllArgsConstructor
     private static final class ExtensionLoggerImpl implements ExtensionLogger {
@@ -131,6 +162,7 @@ public class ExtensionService {
         Validate.notBlank(extensionMetadata.getDisplayName(), "Display Name is mandatory");
 
         validateCapabilities(extensionMetadata);
+        extensionCache.invalidate();
 
         if(previousPath != null && previousName != null) {
             extensionRepository.deleteEventsForPath(previousPath, previousName);
@@ -209,10 +241,12 @@ public class ExtensionService {
 
     @Transactional
     public void deleteSettingValue(int id, String path) {
+        extensionCache.invalidate();
         extensionRepository.deleteSettingValue(id, path);
     }
 
     private void deleteAndInsertSetting(String level, String path, List<ExtensionMetadataValue> toUpdate) {
+        extensionCache.invalidate();
         extensionRepository.deleteSettingValue(level, path);
         List<ExtensionMetadataValue> toUpdate2 = (toUpdate == null ? Collections.emptyList() : toUpdate);
         List<ExtensionMetadataValue> filtered = toUpdate2.stream()
@@ -228,11 +262,13 @@ public class ExtensionService {
 
     @Transactional
     public void toggle(String path, String name, boolean status) {
+        extensionCache.invalidate();
         extensionRepository.toggle(path, name, status);
     }
 
     @Transactional
     public void delete(String path, String name) {
+        extensionCache.invalidate();
         extensionRepository.deleteEventsForPath(path, name);
         extensionRepository.deleteScriptForPath(path, name);
     }
@@ -356,11 +392,13 @@ public class ExtensionService {
         ExtensionLogger extLogger = new ExtensionLoggerImpl(extensionLogRepository, platformTransactionManager, basePath, path, name);
 
         if(params.getLeft().isEmpty()) {
-            Supplier<String> scriptGetter = () -> getScript(path, name)+"\n;"+executeInstruction;
+            Supplier<String> scriptGetter = () -> getScript(path, name);
+            // only the scripts defined by the operator can be trusted
+            boolean trusted = ExternalConfiguration.isExternalPath(path);
             if(async) {
-                scriptingExecutionService.executeScriptAsync(path, name, activePath.getHash(), scriptGetter, context, extLogger);
+                scriptingExecutionService.executeScriptAsync(path, name, activePath.getHash(), scriptGetter, executeInstruction, trusted, context, extLogger);
             } else {
-                Object res = scriptingExecutionService.executeScript(name, activePath.getHash(), scriptGetter, context, expectedResult, extLogger);
+                Object res = scriptingExecutionService.executeScript(name, activePath.getHash(), scriptGetter, executeInstruction, trusted, context, expectedResult, extLogger);
                 context.put(OUTPUT, res);
             }
         } else {
@@ -393,15 +431,20 @@ public class ExtensionService {
 
     private Pair<Set<String>, Map<String, Object>> getExtensionParameters(Map<String, Object> input, String basePath, ScriptPathNameHash activePath) {
         Map<String, Object> copy = new HashMap<>(input);
-        Map<String, String> nameAndValues = extensionRepository.findParametersForScript(activePath.getName(), activePath.getPath(), generatePossiblePath(basePath))
-            .stream()
-            .collect(Collectors.toMap(NameAndValue::getName, NameAndValue::getValue));
+        String name = activePath.getName();
+        String path = activePath.getPath();
+        Map<String, String> nameAndValues = extensionCache.getParameters(name, path, basePath,
+            () -> extensionRepository.findParametersForScript(name, path, generatePossiblePath(basePath))
+                .stream()
+                .collect(Collectors.toMap(NameAndValue::getName, NameAndValue::getValue)));
 
-        Set<String> mandatory = new HashSet<>(extensionRepository.findMandatoryParametersForScript(activePath.getName(), activePath.getPath()));
+        Set<String> mandatory = new HashSet<>(extensionCache.getMandatoryParameters(name, path,
+            () -> new HashSet<>(extensionRepository.findMandatoryParametersForScript(name, path))));
 
         mandatory.removeAll(nameAndValues.keySet());
 
-        copy.put(EXTENSION_CONFIGURATION_PARAMETERS, nameAndValues);
+        // the script receives its own copy, as the cached parameters are shared
+        copy.put(EXTENSION_CONFIGURATION_PARAMETERS, new HashMap<>(nameAndValues));
         return Pair.of(mandatory, copy);
     }
 
@@ -414,10 +457,12 @@ public class ExtensionService {
         //  - -org
         //  - -
         // the one with the longest path win
-        Set<String> paths = generatePossiblePath(basePath);
-        var allExtensions = new ArrayList<>(externalConfiguration.getAllExtensionsFor(event, async));
-        allExtensions.addAll(extensionRepository.findActive(paths, async, event));
-        return allExtensions;
+        return extensionCache.getActiveScripts(event, basePath, async, () -> {
+            Set<String> paths = generatePossiblePath(basePath);
+            var allExtensions = new ArrayList<>(externalConfiguration.getAllExtensionsFor(event, async));
+            allExtensions.addAll(extensionRepository.findActive(paths, async, event));
+            return allExtensions;
+        });
     }
 
     private static Set<String> generatePossiblePath(String basePath, Comparator<String> comparator) {
@@ -18,11 +18,13 @@
 package alfio.extension;
 
 import alfio.extension.exception.AlfioScriptingException;
+import alfio.extension.exception.ExecutionTimeoutException;
 import alfio.extension.exception.InvalidScriptException;
 import alfio.extension.exception.OutOfBoundariesException;
 import alfio.extension.exception.ScriptRuntimeException;
 import alfio.extension.support.SandboxContextFactory;
 import alfio.manager.system.AdminJobManager;
+import alfio.model.system.CacheStatistics;
 import alfio.repository.system.AdminJobQueueRepository;
 import alfio.util.ClockProvider;
 import alfio.util.Json;
@@ -31,6 +33,9 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.RemovalCause;
 import lombok.extern.log4j.Log4j2;
 import org.mozilla.javascript.*;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.net.ConnectException;
@@ -38,8 +43,16 @@ import java.net.http.HttpClient;
 import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -55,7 +68,7 @@ import static alfio.manager.system.AdminJobExecutor.JobName.EXECUTE_EXTENSION;
 
 @Service
 @Log4j2
-public class ScriptingExecutionService {
+public class ScriptingExecutionService implements DisposableBean {
 
     public static final String EXTENSION_NAME = "extensionName";
     public static final String EXTENSION_PATH = "path";
@@ -63,10 +76,17 @@ public class ScriptingExecutionService {
     public static final String EXTENSION_CONFIGURATION_PARAMETERS = "extensionParameters";
     static final String CONNECT_EXCEPTION_MESSAGE = "Cannot connect to remote service. Please check your configuration";
     static final String DEFAULT_ERROR_MESSAGE = "Error while executing extension. Please retry.";
+    private static final long MAX_COMPILED_SCRIPTS = 1_000;
+    private static final String OPTIMIZED_PREFIX = "optimized:";
+    private static final int MAX_OPTIMIZED_EXECUTION_THREADS = 32;
+    // compiled to bytecode, with the instruction count observed by the generated code. See SandboxContextFactory
+    private static final ContextFactory OPTIMIZED_CONTEXT_FACTORY = new SandboxContextFactory(true);
 
     private final Supplier<Executor> executorSupplier;
     private final ScriptableObject sealedScope;
     private final AdminJobQueueRepository adminJobQueueRepository;
+    private final boolean optimizedExecution;
+    private final ExecutorService optimizedExecutor;
 
     private final Cache<String, Executor> asyncExecutors = Caffeine.newBuilder()
         .expireAfterAccess(Duration.ofHours(12))
@@ -77,6 +97,16 @@ public class ScriptingExecutionService {
         })
         .build();
 
+    // compiled scripts don't hold any state, so they can be shared across threads: each execution has its own scope.
+    // Scripts are identified by the hash of their source, invocations (e.g. "executeScript(extensionEvent);") by their source.
+    private final Cache<String, Script> compiledScripts = Caffeine.newBuilder()
+        .maximumSize(MAX_COMPILED_SCRIPTS)
+        .recordStats()
+        .build();
+    private final Cache<String, Script> compiledInvocations = Caffeine.newBuilder()
+        .maximumSize(MAX_COMPILED_SCRIPTS)
+        .build();
+
     static {
         ContextFactory.initGlobal(new SandboxContextFactory());
     }
@@ -85,8 +115,31 @@ public class ScriptingExecutionService {
     public ScriptingExecutionService(HttpClient httpClient,
                                      AdminJobQueueRepository adminJobQueueRepository,
                                      Supplier<Executor> executorSupplier) {
+        this(httpClient, adminJobQueueRepository, executorSupplier, false);
+    }
+
+    /**
+     * @param optimizedExecution if {@code true}, trusted scripts (i.e. the ones defined in the external configuration)
+     *                           are compiled to bytecode and run on a bounded pool of threads, which are interrupted after
+     *                           {@link SandboxContextFactory#EXECUTION_TIMEOUT_MILLIS}. All the other scripts are
+     *                           always interpreted.
+     */
+    @Autowired
+    public ScriptingExecutionService(HttpClient httpClient,
+                                     AdminJobQueueRepository adminJobQueueRepository,
+                                     Supplier<Executor> executorSupplier,
+                                     @Value("${alfio.extension.optimized-execution:false}") boolean optimizedExecution) {
         this.executorSupplier = executorSupplier;
         this.adminJobQueueRepository = adminJobQueueRepository;
+        this.optimizedExecution = optimizedExecution;
+        // when all the threads are busy the script runs on the caller thread, where the timeout is still enforced
+        // by SandboxContextFactory, but a script blocked on I/O is not interrupted
+        this.optimizedExecutor = optimizedExecution ? new ThreadPoolExecutor(0, MAX_OPTIMIZED_EXECUTION_THREADS,
+            60L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                var thread = new Thread(r, "extension-optimized-execution");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy()) : null;
         var simpleHttpClient = new SimpleHttpClient(httpClient);
         Context cx = ContextFactory.getGlobal().enterContext();
         try {
@@ -102,20 +155,73 @@ public class ScriptingExecutionService {
         }
     }
 
-    public <T> T executeScript(String name, String hash, Supplier<String> scriptFetcher, Map<String, Object> params, Class<T> clazz, ExtensionLogger extensionLogger) {
-        return executeScriptFinally(name, scriptFetcher.get(), params, clazz, extensionLogger);
+    /**
+     * Executes the given script, followed by the given invocation. Both are compiled only once: the script is
+     * fetched and compiled only if there is no compiled version for the given hash.
+     *
+     * @param name the name of the script
+     * @param hash the hash of the script source
+     * @param scriptFetcher supplier of the script source
+     * @param invocation the statement(s) to be executed after the script, whose result is returned
+     * @param trusted whether the script can be run in optimized mode, if enabled
+     */
+    public <T> T executeScript(String name,
+                               String hash,
+                               Supplier<String> scriptFetcher,
+                               String invocation,
+                               boolean trusted,
+                               Map<String, Object> params,
+                               Class<T> clazz,
+                               ExtensionLogger extensionLogger) {
+        boolean optimized = trusted && optimizedExecution;
+        // compiled scripts cannot be shared between the two modes
+        String prefix = optimized ? OPTIMIZED_PREFIX : "";
+        Function<Context, List<Script>> compiler = cx -> {
+            Function<String, Script> scriptCompiler = h -> cx.compileString(scriptFetcher.get(), name, 1, null);
+            var script = hash != null ? compiledScripts.get(prefix + hash, scriptCompiler) : scriptCompiler.apply(null);
+            return List.of(script, compiledInvocations.get(prefix + invocation, i -> cx.compileString(invocation, name, 1, null)));
+        };
+        if(optimized) {
+            return executeWithDeadline(() -> executeScriptFinally(OPTIMIZED_CONTEXT_FACTORY, name, compiler, params, clazz, extensionLogger), extensionLogger);
+        }
+        return executeScriptFinally(ContextFactory.getGlobal(), name, compiler, params, clazz, extensionLogger);
+    }
+
+    private <T> T executeWithDeadline(Callable<T> execution, ExtensionLogger extensionLogger) {
+        Future<T> future = optimizedExecutor.submit(execution);
+        try {
+            return future.get(SandboxContextFactory.EXECUTION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // the script is stopped by the next instruction count check, or as soon as it waits for I/O
+            future.cancel(true);
+            var timeout = new ExecutionTimeoutException("Script execution timeout.");
+            extensionLogger.logError("Error while executing script: " + timeout.getMessage());
+            throw new IllegalStateException(timeout);
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
     }
 
     public void executeScriptAsync(String path,
                                    String name,
                                    String hash,
                                    Supplier<String> scriptFetcher,
+                                   String invocation,
+                                   boolean trusted,
                                    Map<String, Object> params,
                                    ExtensionLogger extensionLogger) {
         Optional.ofNullable(asyncExecutors.get(path, key -> executorSupplier.get()))
             .ifPresent(it -> it.execute(() -> {
                 try {
-                    executeScript(name, hash, scriptFetcher, params, Object.class, extensionLogger);
+                    executeScript(name, hash, scriptFetcher, invocation, trusted, params, Object.class, extensionLogger);
                 } catch (AlfioScriptingException | IllegalStateException ex) {
                     // we got an error while executing the script. We must now re-schedule the script to be executed again
                     // at a later time
@@ -144,7 +250,11 @@ public class ScriptingExecutionService {
     }
 
     public <T> T executeScript(String name, String script, Map<String, Object> params, Class<T> clazz,  ExtensionLogger extensionLogger) {
-        return executeScriptFinally(name, script, params, clazz, extensionLogger);
+        return executeScriptFinally(ContextFactory.getGlobal(), name, cx -> List.of(cx.compileString(script, name, 1, null)), params, clazz, extensionLogger);
+    }
+
+    public CacheStatistics getStatistics() {
+        return CacheStatistics.of("compiled-scripts", compiledScripts);
     }
 
     public static class JavaClassInterop {
@@ -167,8 +277,13 @@ public class ScriptingExecutionService {
     }
 
     @SuppressWarnings("unchecked")
-    private <T> T executeScriptFinally(String name, String script, Map<String, Object> params, Class<T> clazz,  ExtensionLogger extensionLogger) {
-        Context cx = Context.enter();
+    private <T> T executeScriptFinally(ContextFactory contextFactory,
+                                       String name,
+                                       Function<Context, List<Script>> compiler,
+                                       Map<String, Object> params,
+                                       Class<T> clazz,
+                                       ExtensionLogger extensionLogger) {
+        Context cx = contextFactory.enterContext();
         try {
             if(params == null) {
                 params = Collections.emptyMap();
@@ -193,8 +308,10 @@ public class ScriptingExecutionService {
                     scope.put(entry.getKey(), scope, Context.javaToJS(value, scope));
                 }
             }
-            Object res;
-            res = cx.evaluateString(scope, script, name, 1, null);
+            Object res = null;
+            for (Script script : compiler.apply(cx)) {
+                res = script.exec(cx, scope);
+            }
             extensionLogger.logSuccess("Script executed successfully.");
             if (res instanceof NativeJavaObject) {
                 NativeJavaObject nativeRes = (NativeJavaObject) res;
@@ -232,6 +349,13 @@ public class ScriptingExecutionService {
         }
     }
 
+    @Override
+    public void destroy() {
+        if(optimizedExecutor != null) {
+            optimizedExecutor.shutdownNow();
+        }
+    }
+
     String getErrorMessage(Throwable ex) {
         if (ex.getMessage() != null) {
             return ex.getMessage();
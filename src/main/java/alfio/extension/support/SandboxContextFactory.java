@@ -26,6 +26,9 @@ import org.mozilla.javascript.Scriptable;
 //         https://www-archive.mozilla.org/rhino/apidocs/org/mozilla/javascript/contextfactory
 public class SandboxContextFactory extends ContextFactory {
 
+    public static final long EXECUTION_TIMEOUT_MILLIS = 15 * 1000L;
+    private static final String TIMEOUT_MESSAGE = "Script execution timeout.";
+
     // Custom Context to store execution time.
     private static class MyContext extends Context {
         long startTime;
@@ -36,12 +39,32 @@ public class SandboxContextFactory extends ContextFactory {
         }
     }
 
+    private final boolean optimized;
+
+    public SandboxContextFactory() {
+        this(false);
+    }
+
+    /**
+     * @param optimized if {@code true}, scripts are compiled to bytecode. The generated code counts the executed
+     *                  instructions as well, so the execution time is checked in both modes.
+     */
+    public SandboxContextFactory(boolean optimized) {
+        this.optimized = optimized;
+    }
+
     @Override
     protected Context makeContext() {
-        MyContext cx = new MyContext(ContextFactory.getGlobal());
+        MyContext cx = new MyContext(this);
         cx.setWrapFactory(new SandboxWrapFactory());
-        // Use pure interpreter mode to allow for observeInstructionCount(Context, int) to work
-        cx.setOptimizationLevel(-1);
+        if (optimized) {
+            cx.setOptimizationLevel(9);
+            // Generate the calls to observeInstructionCount(Context, int) in the compiled code
+            cx.setGenerateObserverCount(true);
+        } else {
+            // Use pure interpreter mode to allow for observeInstructionCount(Context, int) to work
+            cx.setOptimizationLevel(-1);
+        }
         // Make Rhino runtime to call observeInstructionCount each 10000 bytecode instructions
         cx.setInstructionObserverThreshold(10000);
         return cx;
@@ -49,22 +72,35 @@ public class SandboxContextFactory extends ContextFactory {
 
     @Override
     protected void observeInstructionCount(Context cx, int instructionCount) {
+        checkExecutionTime(cx);
+    }
+
+    @Override
+    protected Object doTopCall(Callable callable, Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+        MyContext mcx = (MyContext) cx;
+        mcx.startTime = System.currentTimeMillis();
+        return super.doTopCall(callable, cx, scope, thisObj, args);
+    }
+
+    /**
+     * Stops the script if it has been running for more than {@link #EXECUTION_TIMEOUT_MILLIS}, or, in optimized
+     * mode, if the current thread has been interrupted.
+     */
+    static void checkExecutionTime(Context cx) {
+        if (!(cx instanceof MyContext) || ((MyContext) cx).startTime == 0) {
+            // not executing yet
+            return;
+        }
         MyContext mcx = (MyContext)cx;
         long currentTime = System.currentTimeMillis();
         long executionTime = currentTime - mcx.startTime;
-        if (executionTime > 15*1000) {
+        boolean interrupted = cx.getOptimizationLevel() >= 0 && Thread.currentThread().isInterrupted();
+        if (executionTime > EXECUTION_TIMEOUT_MILLIS || interrupted) {
             // More than 15 seconds from Context creation time:
             // it is time to stop the script.
             // Throw Error instance to ensure that script will never
             // get control back through catch or finally.
-            throw new ExecutionTimeoutException("Script execution timeout.");
+            throw new ExecutionTimeoutException(TIMEOUT_MESSAGE);
         }
     }
-
-    @Override
-    protected Object doTopCall(Callable callable, Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-        MyContext mcx = (MyContext) cx;
-        mcx.startTime = System.currentTimeMillis();
-        return super.doTopCall(callable, cx, scope, thisObj, args);
-    }
 }
@@ -26,6 +26,8 @@ public class SandboxWrapFactory extends WrapFactory {
 
     @Override
     public Scriptable wrapAsJavaObject(Context cx, Scriptable scope, Object javaObject, Class<?> staticType) {
+        // every interaction with Java objects is a safepoint, where we can stop a script which is running for too long
+        SandboxContextFactory.checkExecutionTime(cx);
         if (List.class.isAssignableFrom(javaObject.getClass())) {
             return new SandboxNativeJavaList(scope, javaObject);
         }
@@ -59,6 +59,8 @@ public class Jobs {
     private final TicketReservationManager ticketReservationManager;
     private final WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor;
     private final AdminJobManager adminJobManager;
+    private final AdmissionQueueManager admissionQueueManager;
+    private final ExpiredReservationSweeper expiredReservationSweeper;
 
 
     //cron each minute: "0 0/1 * * * ?"
@@ -106,6 +108,16 @@ public class Jobs {
         }
     }
 
+    @Scheduled(cron = EVERY_HOUR)
+    public void cleanupAdmissionQueues() {
+        log.trace("running job cleanupAdmissionQueues");
+        try {
+            admissionQueueManager.cleanupExpiredTokens();
+        } finally {
+            log.trace("end job cleanupAdmissionQueues");
+        }
+    }
+
 
     @Scheduled(fixedRate = FIVE_SECONDS)
     public void sendEmails() {
@@ -159,7 +171,11 @@ public class Jobs {
         try {
             //cleanup reservation that have a expiration older than "now minus 10 minutes": this give some additional slack.
             final Date expirationDate = DateUtils.addMinutes(new Date(), -10);
-            ticketReservationManager.cleanupExpiredReservations(expirationDate);
+            var result = expiredReservationSweeper.sweep(expirationDate);
+            if(!result.isEmpty()) {
+                log.info("cleanupExpiredPendingReservation: removed {} of {} expired reservations in {} batches, {} payment checks ({} timed out). Elapsed {} ms",
+                    result.getRemovedReservations(), result.getExpiredReservations(), result.getBatches(), result.getPaymentChecks(), result.getPaymentCheckTimeouts(), result.getElapsed().toMillis());
+            }
             ticketReservationManager.cleanupExpiredOfflineReservations(expirationDate);
             ticketReservationManager.markExpiredInPaymentReservationAsStuck(expirationDate);
         } finally {
@@ -168,6 +184,8 @@ public class Jobs {
     }
 
 
+    // released tickets are distributed as soon as they are notified by the database (see ReleasedTicketsListener).
+    // This is a safety net for lost notifications and for time-based transitions, e.g. expired categories
     @Scheduled(fixedRate = THIRTY_SECONDS)
     public void processReleasedTickets() {
         log.trace("running job processReleasedTickets");
@@ -0,0 +1,91 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.job;
+
+import alfio.manager.WaitingQueueSubscriptionProcessor;
+import alfio.manager.system.DatabaseNotificationListener;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Distributes the released tickets to the waiting list as soon as the database notifies their release
+ * (see trigger "tr_notify_released_tickets"). {@link Jobs#processReleasedTickets()} is still active as a safety net.
+ */
+@Log4j2
+public class ReleasedTicketsListener implements InitializingBean, DisposableBean {
+
+    static final String CHANNEL = "alfio_released_tickets";
+
+    private final DatabaseNotificationListener databaseNotificationListener;
+    private final WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor;
+    private final ExecutorService executor;
+    private final Set<Integer> pendingEvents = ConcurrentHashMap.newKeySet();
+
+    public ReleasedTicketsListener(DatabaseNotificationListener databaseNotificationListener,
+                                   WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor) {
+        this(databaseNotificationListener, waitingQueueSubscriptionProcessor, Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder()
+            .namingPattern("released-tickets-%d")
+            .daemon(true)
+            .build()));
+    }
+
+    ReleasedTicketsListener(DatabaseNotificationListener databaseNotificationListener,
+                            WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor,
+                            ExecutorService executor) {
+        this.databaseNotificationListener = databaseNotificationListener;
+        this.waitingQueueSubscriptionProcessor = waitingQueueSubscriptionProcessor;
+        this.executor = executor;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        databaseNotificationListener.subscribe(CHANNEL, this::onTicketsReleased);
+    }
+
+    void onTicketsReleased(String payload) {
+        int eventId;
+        try {
+            eventId = Integer.parseInt(payload);
+        } catch (NumberFormatException e) {
+            log.warn("unexpected payload {} on channel {}", payload, CHANNEL);
+            return;
+        }
+        // if the event is already queued, the pending execution will take care of the new tickets as well
+        if(pendingEvents.add(eventId)) {
+            executor.execute(() -> {
+                pendingEvents.remove(eventId);
+                try {
+                    waitingQueueSubscriptionProcessor.handleReleasedTickets(eventId);
+                } catch (Exception e) {
+                    log.error("cannot distribute released tickets for event {}", eventId, e);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -404,6 +404,20 @@ public class AdminReservationManager {
 
     @Transactional
     Result<Pair<Event, AdminReservationModification>> validateTickets(AdminReservationModification input, Event event) {
+        return validateTickets(input, event, keys -> ticketFieldRepository.getExistingFields(event.getId(), keys));
+    }
+
+    /**
+     * Checks that the additional fields of the attendees are defined for the event.
+     *
+     * @param input the reservation to validate
+     * @param event the event
+     * @param existingFieldsLoader returns the fields, among the given (lowercase) ones, that exist for the event
+     * @return the result of the validation
+     */
+    static Result<Pair<Event, AdminReservationModification>> validateTickets(AdminReservationModification input,
+                                                                             Event event,
+                                                                             Function<Set<String>, Collection<String>> existingFieldsLoader) {
         Set<String> keys = input.getTicketsInfo().stream().flatMap(ti -> ti.getAttendees().stream())
             .flatMap(a -> a.getAdditionalInfo().keySet().stream())
             .map(String::toLowerCase)
@@ -413,7 +427,7 @@ public class AdminReservationManager {
             return Result.success(Pair.of(event, input));
         }
 
-        List<String> existing = ticketFieldRepository.getExistingFields(event.getId(), keys);
+        Collection<String> existing = existingFieldsLoader.apply(keys);
         if(existing.size() == keys.size()) {
             return Result.success(Pair.of(event, input));
         }
@@ -19,30 +19,39 @@ package alfio.manager;
 import alfio.model.*;
 import alfio.model.modification.AdminReservationModification;
 import alfio.model.modification.AdminReservationModification.CustomerData;
+import alfio.model.modification.AttendeeImportRow;
 import alfio.model.result.ErrorCode;
 import alfio.model.result.Result;
 import alfio.model.user.User;
 import alfio.repository.AdminReservationRequestRepository;
 import alfio.repository.EventRepository;
+import alfio.repository.TicketFieldRepository;
 import alfio.repository.user.UserRepository;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -53,8 +62,11 @@ import static java.util.Optional.ofNullable;
 @Component
 @Transactional
 @Log4j2
-@RequiredArgsConstructor
-public class AdminReservationRequestManager {
+public class AdminReservationRequestManager implements DisposableBean {
+
+    private static final int WORKER_THREADS = 4;
+    private static final int MAX_REQUESTS_PER_EVENT = 1000;
+    static final int IMPORT_CHUNK_SIZE = 500;
 
     private final AdminReservationManager adminReservationManager;
     private final EventManager eventManager;
@@ -62,6 +74,41 @@ public class AdminReservationRequestManager {
     private final AdminReservationRequestRepository adminReservationRequestRepository;
     private final EventRepository eventRepository;
     private final PlatformTransactionManager transactionManager;
+    private final TicketFieldRepository ticketFieldRepository;
+    private final ExecutorService executor;
+
+    @Autowired
+    public AdminReservationRequestManager(AdminReservationManager adminReservationManager,
+                                          EventManager eventManager,
+                                          UserRepository userRepository,
+                                          AdminReservationRequestRepository adminReservationRequestRepository,
+                                          EventRepository eventRepository,
+                                          PlatformTransactionManager transactionManager,
+                                          TicketFieldRepository ticketFieldRepository) {
+        this(adminReservationManager, eventManager, userRepository, adminReservationRequestRepository, eventRepository, transactionManager, ticketFieldRepository,
+            Executors.newFixedThreadPool(WORKER_THREADS, new BasicThreadFactory.Builder()
+                .namingPattern("admin-reservation-request-%d")
+                .daemon(true)
+                .build()));
+    }
+
+    AdminReservationRequestManager(AdminReservationManager adminReservationManager,
+                                   EventManager eventManager,
+                                   UserRepository userRepository,
+                                   AdminReservationRequestRepository adminReservationRequestRepository,
+                                   EventRepository eventRepository,
+                                   PlatformTransactionManager transactionManager,
+                                   TicketFieldRepository ticketFieldRepository,
+                                   ExecutorService executor) {
+        this.adminReservationManager = adminReservationManager;
+        this.eventManager = eventManager;
+        this.userRepository = userRepository;
+        this.adminReservationRequestRepository = adminReservationRequestRepository;
+        this.eventRepository = eventRepository;
+        this.transactionManager = transactionManager;
+        this.ticketFieldRepository = ticketFieldRepository;
+        this.executor = executor;
+    }
 
     public Result<AdminReservationRequestStats> getRequestStatus(String requestId, String eventName, String username) {
         return eventManager.getOptionalEventAndOrganizationIdByName(eventName, username)
@@ -103,29 +150,150 @@ public class AdminReservationRequestManager {
             .orElseGet(() -> Result.error(ErrorCode.ReservationError.UPDATE_FAILED));
     }
 
-    //TODO: rewrite, and add test!
-    public Pair<Integer, Integer> processPendingReservations() {
-        Map<Boolean, List<MapSqlParameterSource>> result = adminReservationRequestRepository.findPendingForUpdate(1000)
-            .stream()
-            .map(id -> {
-                AdminReservationRequest request = adminReservationRequestRepository.fetchCompleteById(id);
+    /**
+     * Imports attendees from a stream of rows, one reservation per attendee. Rows are validated and inserted in chunks
+     * of {@value #IMPORT_CHUNK_SIZE}, each one in its own transaction, so that memory usage doesn't depend on the size of
+     * the import and the progress can be checked with {@link #getRequestStatus(String, String, String)} while the upload
+     * is still running. Invalid rows are saved with status {@code ERROR}.
+     *
+     * @param eventName the event for which we need to create reservations
+     * @param requestId requestId, must be unique
+     * @param template the options shared by all reservations. If it contains a category, it will be used for the rows without one
+     * @param rows the rows to import
+     * @param username user requesting the import
+     * @return {@code Result} the operation result
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Result<String> importAttendees(String eventName,
+                                          String requestId,
+                                          AdminReservationModification template,
+                                          Stream<Result<AttendeeImportRow>> rows,
+                                          String username) {
+        var optionalEvent = eventManager.getOptionalByName(eventName, username);
+        if(optionalEvent.isEmpty()) {
+            return Result.error(ErrorCode.EventError.NOT_FOUND);
+        }
+        var event = optionalEvent.get();
+        if(adminReservationRequestRepository.findStatsByRequestIdAndEventId(requestId, event.getId()).isPresent()) {
+            return Result.error(ErrorCode.custom("DUPLICATE_REQUEST_ID", "Request "+requestId+" already exists"));
+        }
+        long userId = userRepository.findIdByUserName(username).orElseThrow(IllegalArgumentException::new);
+        var validator = new ImportValidator(event, template, eventManager.loadTicketCategories(event));
+        var transactionTemplate = new TransactionTemplate(transactionManager);
+        var chunk = new ArrayList<Result<AttendeeImportRow>>(IMPORT_CHUNK_SIZE);
+        try {
+            for (Iterator<Result<AttendeeImportRow>> iterator = rows.iterator(); iterator.hasNext(); ) {
+                chunk.add(iterator.next());
+                if(chunk.size() == IMPORT_CHUNK_SIZE) {
+                    insertChunk(requestId, userId, event, validator, chunk, transactionTemplate);
+                    chunk.clear();
+                }
+            }
+            if(!chunk.isEmpty()) {
+                insertChunk(requestId, userId, event, validator, chunk, transactionTemplate);
+            }
+            return Result.success(requestId);
+        } catch (Exception e) {
+            log.error("can't import attendees for request "+requestId, e);
+            return Result.error(ErrorCode.custom("internal_server_error", e.getMessage()));
+        }
+    }
 
-                Result<Triple<TicketReservation, List<Ticket>, Event>> reservationResult = Result.fromNullable(eventRepository.findOptionalById((int) request.getEventId()).orElse(null), ErrorCode.EventError.NOT_FOUND)
-                    .flatMap(e -> Result.fromNullable(userRepository.findOptionalById((int) request.getUserId()).map(u -> Pair.of(e, u)).orElse(null), ErrorCode.EventError.ACCESS_DENIED))
-                    .flatMap(p -> processReservation(request, p.getLeft(), p.getRight()));
-                return buildParameterSource(id, reservationResult);
-            }).collect(Collectors.partitioningBy(ps -> AdminReservationRequest.Status.SUCCESS.name().equals(ps.getValue("status"))));
+    private void insertChunk(String requestId,
+                             long userId,
+                             Event event,
+                             ImportValidator validator,
+                             List<Result<AttendeeImportRow>> chunk,
+                             TransactionTemplate transactionTemplate) {
+        validator.loadFields(chunk);
+        var requests = chunk.stream()
+            .map(validator::validate)
+            .collect(Collectors.toList());
+        transactionTemplate.executeWithoutResult(status -> adminReservationRequestRepository.insertImportedRequests(requestId, userId, event, requests));
+    }
 
-        result.values().forEach(list -> {
+    /**
+     * Processes the pending requests. Requests are partitioned by event and each partition is handled by a worker,
+     * so that a big import for one event doesn't delay the others. Every request is committed on its own, therefore the
+     * progress is immediately visible through {@link #getRequestStatus(String, String, String)}.
+     * <p>
+     * If there is already an active transaction, partitions are processed sequentially on the current thread.
+     *
+     * @return a {@link Pair} containing the number of successful and failed requests
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Pair<Integer, Integer> processPendingReservations() {
+        var eventIds = adminReservationRequestRepository.findEventsWithPendingRequests();
+        if(eventIds.isEmpty()) {
+            return Pair.of(0, 0);
+        }
+        if(TransactionSynchronizationManager.isActualTransactionActive()) {
+            return eventIds.stream()
+                .map(this::processPendingReservationsForEvent)
+                .reduce(Pair.of(0, 0), AdminReservationRequestManager::sum);
+        }
+        var tasks = eventIds.stream()
+            .map(eventId -> (Callable<Pair<Integer, Integer>>) () -> processPendingReservationsForEvent(eventId))
+            .collect(Collectors.toList());
+        try {
+            var result = Pair.of(0, 0);
+            for (Future<Pair<Integer, Integer>> future : executor.invokeAll(tasks)) {
+                result = sum(result, getPartitionResult(future));
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Pair.of(0, 0);
+        }
+    }
+
+    private Pair<Integer, Integer> processPendingReservationsForEvent(long eventId) {
+        var ids = adminReservationRequestRepository.findPendingIdsForEvent(eventId, MAX_REQUESTS_PER_EVENT);
+        var event = eventRepository.findOptionalById((int) eventId);
+        var users = new HashMap<Long, Optional<User>>();
+        var template = new TransactionTemplate(transactionManager);
+        int success = 0;
+        int failure = 0;
+        for (Long id : ids) {
             try {
-                adminReservationRequestRepository.updateStatus(list);
+                Boolean result = template.execute(status -> adminReservationRequestRepository.lockPendingById(id)
+                    .map(request -> {
+                        Result<Triple<TicketReservation, List<Ticket>, Event>> reservationResult = Result.fromNullable(event.orElse(null), ErrorCode.EventError.NOT_FOUND)
+                            .flatMap(e -> Result.fromNullable(users.computeIfAbsent(request.getUserId(), userId -> userRepository.findOptionalById((int) userId)).map(u -> Pair.of(e, u)).orElse(null), ErrorCode.EventError.ACCESS_DENIED))
+                            .flatMap(p -> processReservation(request, p.getLeft(), p.getRight()));
+                        adminReservationRequestRepository.updateStatus(singletonList(buildParameterSource(id, reservationResult)));
+                        return reservationResult.isSuccess();
+                    }).orElse(null));
+                // null means that the request has been picked up by someone else in the meantime
+                if(Boolean.TRUE.equals(result)) {
+                    success++;
+                } else if(result != null) {
+                    failure++;
+                }
             } catch(Exception e) {
-                log.fatal("cannot update the status of "+list.size()+" reservations", e);
+                log.fatal("cannot process reservation request "+id, e);
+                failure++;
             }
-        });
+        }
+        return Pair.of(success, failure);
+    }
 
-        return Pair.of(CollectionUtils.size(result.get(true)), CollectionUtils.size(result.get(false)));
+    private static Pair<Integer, Integer> getPartitionResult(Future<Pair<Integer, Integer>> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            log.error("unexpected error while processing reservation requests", e.getCause());
+            return Pair.of(0, 0);
+        }
+    }
+
+    private static Pair<Integer, Integer> sum(Pair<Integer, Integer> a, Pair<Integer, Integer> b) {
+        return Pair.of(a.getLeft() + b.getLeft(), a.getRight() + b.getRight());
+    }
 
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
     }
 
     private Result<Triple<TicketReservation, List<Ticket>, Event>> processReservation(AdminReservationRequest request, Event event, User user) {
@@ -207,23 +375,102 @@ public class AdminReservationRequestManager {
         }
         return src.getTicketsInfo()
             .stream()
-            .flatMap(ti -> ti.getAttendees().stream().map(a -> Pair.of(a, new AdminReservationModification.TicketsInfo(ti.getCategory(), singletonList(a), ti.isAddSeatsIfNotAvailable(), ti.isUpdateAttendees()))))
-            .map(p -> {
-                AdminReservationModification.Attendee attendee = p.getLeft();
-                String language = StringUtils.defaultIfBlank(attendee.getLanguage(), src.getLanguage());
-
-                CustomerData cd = new CustomerData(attendee.getFirstName(), attendee.getLastName(), attendee.getEmailAddress(), null, language, null, null, null, null);
-                return new AdminReservationModification(src.getExpiration(),
-                    cd,
-                    singletonList(p.getRight()),
-                    language,
-                    src.isUpdateContactData(),
-                    false,
-                    null,
-                    src.getNotification(),
-                    null,
-                    attendee.getSubscriptionId());
+            .flatMap(ti -> ti.getAttendees().stream().map(a -> toSingleAttendeeRequest(src, ti.getCategory(), ti, a)));
+    }
+
+    private static AdminReservationModification toSingleAttendeeRequest(AdminReservationModification src,
+                                                                        AdminReservationModification.Category category,
+                                                                        AdminReservationModification.TicketsInfo ti,
+                                                                        AdminReservationModification.Attendee attendee) {
+        String language = StringUtils.defaultIfBlank(attendee.getLanguage(), src.getLanguage());
+        CustomerData cd = new CustomerData(attendee.getFirstName(), attendee.getLastName(), attendee.getEmailAddress(), null, language, null, null, null, null);
+        return new AdminReservationModification(src.getExpiration(),
+            cd,
+            singletonList(new AdminReservationModification.TicketsInfo(category, singletonList(attendee), ti.isAddSeatsIfNotAvailable(), ti.isUpdateAttendees())),
+            language,
+            src.isUpdateContactData(),
+            false,
+            null,
+            src.getNotification(),
+            null,
+            attendee.getSubscriptionId());
+    }
+
+    /**
+     * Validates the rows of an import. Additional fields are checked by {@link AdminReservationManager#validateTickets},
+     * loading them once per chunk; known fields and references are kept across chunks.
+     */
+    private class ImportValidator {
+
+        private final Event event;
+        private final AdminReservationModification template;
+        private final AdminReservationModification.TicketsInfo defaultTicketsInfo;
+        private final Map<String, TicketCategory> categories = new HashMap<>();
+        private final Set<String> existingFields = new HashSet<>();
+        private final Set<String> missingFields = new HashSet<>();
+        private final Set<String> references = new HashSet<>();
+
+        private ImportValidator(Event event, AdminReservationModification template, List<TicketCategory> ticketCategories) {
+            this.event = event;
+            this.template = template;
+            this.defaultTicketsInfo = CollectionUtils.isEmpty(template.getTicketsInfo()) ? null : template.getTicketsInfo().get(0);
+            ticketCategories.forEach(tc -> {
+                categories.put(String.valueOf(tc.getId()), tc);
+                categories.putIfAbsent(tc.getName().trim().toLowerCase(Locale.ROOT), tc);
             });
+        }
+
+        private void loadFields(List<Result<AttendeeImportRow>> chunk) {
+            Set<String> keys = chunk.stream()
+                .filter(Result::isSuccess)
+                .flatMap(r -> r.getData().getAttendee().getAdditionalInfo().keySet().stream())
+                .map(String::toLowerCase)
+                .collect(Collectors.toSet());
+            existingFields(keys);
+        }
+
+        private Collection<String> existingFields(Set<String> keys) {
+            var unknown = keys.stream()
+                .filter(k -> !existingFields.contains(k) && !missingFields.contains(k))
+                .collect(Collectors.toSet());
+            if(!unknown.isEmpty()) {
+                var existing = ticketFieldRepository.getExistingFields(event.getId(), unknown);
+                existingFields.addAll(existing);
+                unknown.stream().filter(k -> !existing.contains(k)).forEach(missingFields::add);
+            }
+            return keys.stream().filter(existingFields::contains).collect(Collectors.toList());
+        }
+
+        private Result<AdminReservationModification> validate(Result<AttendeeImportRow> row) {
+            return row.flatMap(r -> {
+                var attendee = r.getAttendee();
+                if(attendee.isEmpty()) {
+                    return Result.error(ErrorCode.custom("error.invalid.attendee", "first name, last name and email are required"));
+                }
+                var category = resolveCategory(r.getCategory());
+                if(category == null) {
+                    return Result.error(ErrorCode.custom("error.notfound.category", "category not found"));
+                }
+                // #620 - validate reference
+                if(StringUtils.isNotEmpty(attendee.getReference()) && !references.add(attendee.getReference().trim())) {
+                    return Result.error(ErrorCode.custom("DUPLICATE_REFERENCE", "The following code is duplicate:" + attendee.getReference()));
+                }
+                var ticketsInfo = defaultTicketsInfo != null ? defaultTicketsInfo : new AdminReservationModification.TicketsInfo(null, List.of(), false, false);
+                var request = toSingleAttendeeRequest(template, category, ticketsInfo, attendee);
+                return AdminReservationManager.validateTickets(request, event, this::existingFields).map(Pair::getRight);
+            });
+        }
+
+        private AdminReservationModification.Category resolveCategory(String key) {
+            var lookupKey = key != null ? key : Optional.ofNullable(defaultTicketsInfo)
+                .map(ti -> ti.getCategory().getExistingCategoryId())
+                .map(String::valueOf)
+                .orElse(null);
+            return Optional.ofNullable(lookupKey)
+                .map(k -> categories.get(k.toLowerCase(Locale.ROOT)))
+                .map(tc -> new AdminReservationModification.Category(tc.getId(), tc.getName(), tc.getPrice(), tc.getTicketAccessType()))
+                .orElse(null);
+        }
     }
 
 }
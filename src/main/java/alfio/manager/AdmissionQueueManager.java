@@ -0,0 +1,162 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.controller.api.v2.model.AdmissionQueueStatus;
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.AdmissionQueueToken;
+import alfio.model.Event;
+import alfio.model.EventAndOrganizationId;
+import alfio.repository.AdmissionQueueRepository;
+import alfio.util.ClockProvider;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static alfio.model.system.ConfigurationKeys.*;
+
+/**
+ * Admission queue ("virtual waiting room") for the reservation process.
+ * <p>
+ * Every buyer gets an ordered token with a pre-computed admission time, spaced according to the configured rate.
+ * The whole state lives in the database and the slot assignment is done by a single statement, so all the nodes of a
+ * cluster share the same queue and give the same answer for a given token.
+ * <p>
+ * A client which still holds a valid token gets it back instead of a new one, and each client can obtain at most
+ * {@link #MAX_NEW_TOKENS_PER_CLIENT} new tokens per minute for a given event. The tokens are counted in the database,
+ * so the limit applies to the whole cluster.
+ */
+@Component
+@Transactional
+@AllArgsConstructor
+@Log4j2
+public class AdmissionQueueManager {
+
+    private static final int DEFAULT_RATE_PER_MINUTE = 60;
+    private static final int DEFAULT_TOKEN_VALIDITY_MINUTES = 30;
+    static final int MAX_NEW_TOKENS_PER_CLIENT = 5;
+
+    private final AdmissionQueueRepository admissionQueueRepository;
+    private final ConfigurationManager configurationManager;
+    private final ClockProvider clockProvider;
+
+    public boolean isEnabled(EventAndOrganizationId event) {
+        return configurationManager.getFor(ENABLE_ADMISSION_QUEUE, event.getConfigurationLevel()).getValueAsBooleanOrDefault();
+    }
+
+    /**
+     * Enters the admission queue of the given event, unless the client already holds a valid token.
+     *
+     * @param event the event
+     * @param existingToken the token previously assigned to the client. Can be null
+     * @param clientId the client identifier, used for limiting the number of new tokens
+     * @return the status of the existing token, or of the new one. Empty if the queue is not enabled
+     * @throws TooManyAdmissionRequestsException if the client has requested too many tokens
+     */
+    public Optional<AdmissionQueueStatus> enqueue(Event event, String existingToken, String clientId) {
+        if(!isEnabled(event)) {
+            return Optional.empty();
+        }
+        var now = event.now(clockProvider);
+        int validity = getTokenValidity(event);
+        if(findToken(event, existingToken).filter(t -> !isExpired(t, now, validity)).isPresent()) {
+            return getStatus(event, existingToken);
+        }
+        admissionQueueRepository.lockQueue(event.getId(), event.getOrganizationId(), now);
+        if(admissionQueueRepository.countTokensCreatedByClientSince(event.getId(), clientId, now.minusMinutes(1)) >= MAX_NEW_TOKENS_PER_CLIENT) {
+            log.debug("too many admission requests from {} for event {}", clientId, event.getShortName());
+            throw new TooManyAdmissionRequestsException();
+        }
+        int ratePerMinute = Math.max(1, configurationManager.getFor(ADMISSION_QUEUE_RATE_PER_MINUTE, event.getConfigurationLevel()).getValueAsIntOrDefault(DEFAULT_RATE_PER_MINUTE));
+        long slotMillis = Duration.ofMinutes(1).toMillis() / ratePerMinute;
+        var token = UUID.randomUUID();
+        int result = admissionQueueRepository.enqueue(token, event.getId(), event.getOrganizationId(), clientId, now, slotMillis);
+        if(result != 1) {
+            throw new IllegalStateException("Cannot enqueue token for event " + event.getShortName());
+        }
+        return getStatus(event, token.toString());
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<AdmissionQueueStatus> getStatus(Event event, String token) {
+        var now = event.now(clockProvider);
+        return findToken(event, token).map(t -> {
+            long lastAdmitted = admissionQueueRepository.findLastAdmittedPosition(event.getId(), now);
+            boolean admitted = t.isAdmitted(now);
+            long peopleAhead = admitted ? 0 : Math.max(0, t.getPosition() - lastAdmitted - 1);
+            long waitSeconds = admitted ? 0 : Math.max(1, Duration.between(now, t.getAdmission()).toSeconds());
+            return new AdmissionQueueStatus(token, t.getPosition(), peopleAhead, admitted, waitSeconds);
+        });
+    }
+
+    /**
+     * Checks whether the holder of the given token can create a reservation for the event.
+     *
+     * @param event the event
+     * @param token the admission token. Can be null if the queue is not enabled
+     * @return {@code true} if the queue is disabled, or if the token has been admitted and is still valid
+     */
+    @Transactional(readOnly = true)
+    public boolean canProceed(Event event, String token) {
+        if(!isEnabled(event)) {
+            return true;
+        }
+        var now = event.now(clockProvider);
+        int validity = getTokenValidity(event);
+        boolean result = findToken(event, token)
+            .filter(t -> t.isAdmitted(now) && !isExpired(t, now, validity))
+            .isPresent();
+        if(!result) {
+            log.trace("admission token {} for event {} is not valid", token, event.getShortName());
+        }
+        return result;
+    }
+
+    public void cleanupExpiredTokens() {
+        var threshold = ZonedDateTime.now(clockProvider.getClock()).minusDays(1);
+        int tokens = admissionQueueRepository.deleteTokensAdmittedBefore(threshold);
+        int queues = admissionQueueRepository.deleteQueuesIdleSince(threshold);
+        if(tokens > 0 || queues > 0) {
+            log.debug("removed {} expired admission tokens and {} idle queues", tokens, queues);
+        }
+    }
+
+    private int getTokenValidity(Event event) {
+        return configurationManager.getFor(ADMISSION_QUEUE_TOKEN_VALIDITY, event.getConfigurationLevel()).getValueAsIntOrDefault(DEFAULT_TOKEN_VALIDITY_MINUTES);
+    }
+
+    private static boolean isExpired(AdmissionQueueToken token, ZonedDateTime now, int validityMinutes) {
+        return !token.getAdmission().plusMinutes(validityMinutes).isAfter(now);
+    }
+
+    private Optional<AdmissionQueueToken> findToken(Event event, String token) {
+        try {
+            return Optional.ofNullable(token).flatMap(t -> admissionQueueRepository.findToken(UUID.fromString(t), event.getId()));
+        } catch(IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    public static class TooManyAdmissionRequestsException extends RuntimeException {
+    }
+}
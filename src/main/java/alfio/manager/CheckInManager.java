@@ -18,6 +18,7 @@ package alfio.manager;
 
 import alfio.manager.support.*;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.EventCache;
 import alfio.model.*;
 import alfio.model.Ticket.TicketStatus;
 import alfio.model.audit.ScanAudit;
@@ -86,6 +87,7 @@ public class CheckInManager {
     private final AdditionalServiceItemRepository additionalServiceItemRepository;
     private final PollRepository pollRepository;
     private final ClockProvider clockProvider;
+    private final EventCache eventCache;
 
 
     private void checkIn(String uuid) {
@@ -130,7 +132,7 @@ public class CheckInManager {
     }
 
     public TicketAndCheckInResult confirmOnSitePayment(String eventName, String ticketIdentifier, Optional<String> ticketCode, String username, String auditUser) {
-        return eventRepository.findOptionalByShortName(eventName)
+        return eventCache.findOptionalByShortName(eventName)
             .filter(EventManager.checkOwnership(username, organizationRepository))
             .flatMap(e -> confirmOnSitePayment(ticketIdentifier).map((String s) -> Pair.of(s, e)))
             .map(p -> checkIn(p.getRight().getId(), ticketIdentifier, ticketCode, auditUser))
@@ -148,7 +150,7 @@ public class CheckInManager {
 
     public TicketAndCheckInResult checkIn(String eventShortName, String ticketIdentifier, Optional<String> ticketCode, String username, String auditUser,
                                           boolean automaticallyConfirmOnSitePayment) {
-        return eventRepository.findOptionalByShortName(eventShortName)
+        return eventCache.findOptionalByShortName(eventShortName)
             .filter(EventManager.checkOwnership(username, organizationRepository))
             .map(e -> {
                 if (automaticallyConfirmOnSitePayment && CheckInStatus.MUST_PAY == evaluateTicketStatus(eventShortName, ticketIdentifier, ticketCode).getResult().getStatus()) {
@@ -218,15 +220,15 @@ public class CheckInManager {
     }
 
     public TicketAndCheckInResult evaluateTicketStatus(int eventId, String ticketIdentifier, Optional<String> ticketCode) {
-        return extractStatus(eventRepository.findOptionalById(eventId), ticketRepository.findOptionalByUUID(ticketIdentifier), ticketIdentifier, ticketCode);
+        return extractStatus(eventCache.findOptionalById(eventId), ticketRepository.findOptionalByUUID(ticketIdentifier), ticketIdentifier, ticketCode);
     }
 
     public TicketAndCheckInResult evaluateTicketStatus(String eventName, String ticketIdentifier, Optional<String> ticketCode) {
-        return extractStatus(eventRepository.findOptionalByShortName(eventName), ticketRepository.findOptionalByUUID(ticketIdentifier), ticketIdentifier, ticketCode);
+        return extractStatus(eventCache.findOptionalByShortName(eventName), ticketRepository.findOptionalByUUID(ticketIdentifier), ticketIdentifier, ticketCode);
     }
 
     private TicketAndCheckInResult extractStatus(int eventId, Optional<Ticket> maybeTicket, String ticketIdentifier, Optional<String> ticketCode) {
-        return extractStatus(eventRepository.findOptionalById(eventId), maybeTicket, ticketIdentifier, ticketCode);
+        return extractStatus(eventCache.findOptionalById(eventId), maybeTicket, ticketIdentifier, ticketCode);
     }
 
     private TicketAndCheckInResult extractStatus(Optional<? extends EventCheckInInfo> maybeEvent, Optional<Ticket> maybeTicket, String ticketIdentifier, Optional<String> ticketCode) {
@@ -346,14 +348,14 @@ public class CheckInManager {
     }
 
     public List<Integer> getAttendeesIdentifiers(int eventId, Date changedSince, String username) {
-        return eventRepository.findOptionalById(eventId)
+        return eventCache.findOptionalById(eventId)
             .filter(EventManager.checkOwnership(username, organizationRepository))
             .map(event -> ticketRepository.findAllAssignedByEventIdForCheckIn(event.getId(), changedSince))
             .orElse(Collections.emptyList());
     }
 
     public List<FullTicketInfo> getAttendeesInformation(int eventId, List<Integer> ids, String username) {
-        return eventRepository.findOptionalById(eventId)
+        return eventCache.findOptionalById(eventId)
             .filter(EventManager.checkOwnership(username, organizationRepository))
             .map(event -> ticketRepository.findAllFullTicketInfoAssignedByEventId(event.getId(), ids))
             .orElse(Collections.emptyList());
@@ -499,7 +501,7 @@ public class CheckInManager {
     }
 
     public CheckInStatistics getStatistics(String eventName, String username) {
-        return eventRepository.findOptionalByShortName(eventName)
+        return eventCache.findOptionalByShortName(eventName)
             .filter(this::areStatsEnabled)
             .filter(EventManager.checkOwnership(username, organizationRepository))
             .map(event -> eventRepository.retrieveCheckInStatisticsForEvent(event.getId()))
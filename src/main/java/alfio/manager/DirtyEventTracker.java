@@ -0,0 +1,112 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.repository.DirtyEventRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Keeps track of the events having changes relevant to the periodic per-event jobs.
+ * <p>
+ * Events are flagged by database triggers on the ticket, tickets_reservation and configuration tables (see the
+ * event_dirty_flag table), or explicitly through {@link #markDirty(int, Job)}. A job then visits only the events flagged for it.
+ * The flag is cleared in a separate transaction <em>before</em> visiting the event, so that changes happening
+ * during the visit set it again instead of being lost, and write paths are never blocked by a running job.
+ * If needed, the flag is set again in a separate transaction as well, once the caller's transaction has completed,
+ * so that a rollback cannot lose it.
+ */
+@Component
+@Log4j2
+public class DirtyEventTracker {
+
+    public enum Job {
+        WAITING_LIST,
+        TICKET_ASSIGNMENT_REMINDER,
+        OPTIONAL_DATA_REMINDER,
+        OFFLINE_PAYMENTS
+    }
+
+    private final DirtyEventRepository dirtyEventRepository;
+    private final TransactionTemplate requiresNewTransactionTemplate;
+
+    public DirtyEventTracker(DirtyEventRepository dirtyEventRepository,
+                             PlatformTransactionManager transactionManager) {
+        this.dirtyEventRepository = dirtyEventRepository;
+        this.requiresNewTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+    }
+
+    public void markDirty(int eventId, Job job) {
+        dirtyEventRepository.markDirty(eventId, job.name());
+    }
+
+    public List<Integer> findDirtyEvents(Job job) {
+        return dirtyEventRepository.findDirtyEvents(job.name());
+    }
+
+    /**
+     * Visits the events flagged for the given job.
+     * The visitor returns {@code true} if the event still has pending work (e.g. a reminder which can be sent only
+     * at a later time), in which case the flag is set again. The flag is set again also if the visitor fails, or if
+     * the caller's transaction is rolled back.
+     *
+     * @param job the job
+     * @param visitor the visitor
+     * @return the number of visited events
+     */
+    public int visitDirtyEvents(Job job, IntPredicate visitor) {
+        List<Integer> eventIds = findDirtyEvents(job);
+        for (int eventId : eventIds) {
+            requiresNewTransactionTemplate.execute(status -> dirtyEventRepository.clear(eventId, job.name()));
+            boolean pendingWork = true;
+            try {
+                pendingWork = visitor.test(eventId);
+            } catch (Exception e) {
+                log.error("Error while processing event {} for job {}", eventId, job, e);
+            } finally {
+                markDirtyAfterCompletion(eventId, job, pendingWork);
+            }
+        }
+        return eventIds.size();
+    }
+
+    private void markDirtyAfterCompletion(int eventId, Job job, boolean pendingWork) {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            if(pendingWork) {
+                markDirty(eventId, job);
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if(pendingWork || status != STATUS_COMMITTED) {
+                    requiresNewTransactionTemplate.execute(s -> dirtyEventRepository.markDirty(eventId, job.name()));
+                }
+            }
+        });
+    }
+}
@@ -21,6 +21,7 @@ import alfio.controller.form.SearchOptions;
 import alfio.manager.support.CategoryEvaluator;
 import alfio.manager.support.extension.ExtensionCapability;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.EventCache;
 import alfio.manager.user.UserManager;
 import alfio.model.*;
 import alfio.model.Event.EventFormat;
@@ -122,6 +123,9 @@ public class EventManager {
     private final PaymentManager paymentManager;
     private final ClockProvider clockProvider;
     private final SubscriptionRepository subscriptionRepository;
+    private final TicketRowMaterializer ticketRowMaterializer;
+    private final EventCache eventCache;
+    private final TicketInventoryGate ticketInventoryGate;
 
 
     public Event getSingleEvent(String eventName, String username) {
@@ -233,6 +237,7 @@ public class EventManager {
         }
         Event.Status status = activate ? Event.Status.PUBLIC : Event.Status.DRAFT;
         eventRepository.updateEventStatus(id, status);
+        eventCache.invalidate(id);
         extensionManager.handleEventStatusChange(event, status);
     }
 
@@ -356,6 +361,7 @@ public class EventManager {
         eventRepository.updateHeader(eventId, em.getDisplayName(), em.getWebsiteUrl(), em.getExternalUrl(), em.getTermsAndConditionsUrl(),
             em.getPrivacyPolicyUrl(), em.getImageUrl(), em.getFileBlobId(), em.getLocation(), latitude, longitude,
             begin, end, timeZone, em.getOrganizationId(), em.getLocales(), em.getFormat());
+        eventCache.invalidate(eventId);
 
         createOrUpdateEventDescription(eventId, em);
 
@@ -397,6 +403,7 @@ public class EventManager {
         String paymentProxies = collectPaymentProxies(em);
         BigDecimal vat = em.isFreeOfCharge() ? BigDecimal.ZERO : em.getVatPercentage();
         eventRepository.updatePrices(em.getCurrency(), em.getAvailableSeats(), em.isVatIncluded(), vat, paymentProxies, eventId, em.getVatStatus(), em.getPriceInCents());
+        eventCache.invalidate(eventId);
         if(seatsDifference != 0) {
             Event modified = eventRepository.findById(eventId);
             if(seatsDifference > 0) {
@@ -408,6 +415,7 @@ public class EventManager {
                 int invalidatedTickets = ticketRepository.invalidateTickets(ids);
                 Validate.isTrue(ids.size() == invalidatedTickets, String.format("error during ticket invalidation: expected %d, got %d", ids.size(), invalidatedTickets));
             }
+            ticketInventoryGate.invalidate(eventId);
         }
         int organizationId = original.getOrganizationId();
         if(CollectionUtils.isNotEmpty(em.getLinkedSubscriptions())) {
@@ -564,6 +572,8 @@ public class EventManager {
     }
 
     void reallocateTickets(TicketCategoryStatisticView src, Optional<TicketCategory> target, EventAndOrganizationId event) {
+        // all the remaining tickets of the source category are going to be moved
+        ticketRowMaterializer.materializeCategory(event, src.getId());
         int notSoldTickets = src.getNotSoldTicketsCount();
         if(notSoldTickets == 0) {
             log.debug("since all the ticket have been sold, ticket moving is not needed anymore.");
@@ -579,6 +589,7 @@ public class EventManager {
             TicketCategory targetCategory = target.get();
             ticketCategoryRepository.updateSeatsAvailability(targetCategory.getId(), targetCategory.getMaxTickets() + locked);
             ticketRepository.moveToAnotherCategory(lockedTickets, targetCategory.getId(), targetCategory.getSrcPriceCts());
+            ticketRowMaterializer.ticketsMovedIn(targetCategory.getId(), locked);
             if(targetCategory.isAccessRestricted()) {
                 insertTokens(targetCategory, locked);
             } else {
@@ -590,6 +601,7 @@ public class EventManager {
             ticketRepository.resetTickets(lockedTickets);
         }
         specialPriceRepository.cancelExpiredTokens(src.getId());
+        ticketInventoryGate.invalidate(event.getId());
     }
 
     public void unbindTickets(String eventName, int categoryId, String username) {
@@ -602,6 +614,16 @@ public class EventManager {
 
     MapSqlParameterSource[] prepareTicketsBulkInsertParameters(ZonedDateTime creation,
                                                                Event event, int requestedTickets, TicketStatus ticketStatus) {
+        return prepareTicketsBulkInsertParameters(creation, event, requestedTickets, ticketStatus, false);
+    }
+
+    /**
+     * @param ticketRowsOnDemand if true, the rows of bounded categories are not generated. They will be created
+     *                           by {@link TicketRowMaterializer} during the reservation process.
+     */
+    MapSqlParameterSource[] prepareTicketsBulkInsertParameters(ZonedDateTime creation,
+                                                               Event event, int requestedTickets, TicketStatus ticketStatus,
+                                                               boolean ticketRowsOnDemand) {
 
         //FIXME: the date should be inserted as ZonedDateTime !
         Date creationDate = Date.from(creation.toInstant());
@@ -609,6 +631,7 @@ public class EventManager {
         List<TicketCategory> categories = ticketCategoryRepository.findAllTicketCategories(event.getId());
         Stream<MapSqlParameterSource> boundedTickets = categories.stream()
                 .filter(IS_CATEGORY_BOUNDED)
+                .filter(tc -> !ticketRowsOnDemand)
                 .flatMap(tc -> generateTicketsForCategory(tc, event, creationDate, 0));
         int generatedTickets = categories.stream()
                 .filter(IS_CATEGORY_BOUNDED)
@@ -691,6 +714,7 @@ public class EventManager {
             } else {
                 ticketRepository.resetTickets(lockedTickets);//reset to RELEASED
             }
+            ticketInventoryGate.invalidate(eventId);
         }
 
         insertOrUpdateTicketCategoryDescription(category.getKey(), tc, event);
@@ -781,6 +805,7 @@ public class EventManager {
         }
         handleTokenModification(original, updated, addedTickets);
         handlePriceChange(event, original, updated);
+        ticketInventoryGate.invalidate(eventId);
 
         insertOrUpdateTicketCategoryDescription(tc.getId(), tc, event);
 
@@ -813,8 +838,10 @@ public class EventManager {
         if(original.getSrcPriceCts() == updated.getSrcPriceCts() || !original.isBounded()) {
             return;
         }
-        final List<Integer> ids = ticketRepository.selectTicketInCategoryForUpdate(event.getId(), updated.getId(), updated.getMaxTickets(), singletonList(TicketStatus.FREE.name()));
-        if(ids.size() < updated.getMaxTickets()) {
+        // the tickets which have not been created yet will get the new price
+        int existingTickets = updated.getMaxTickets() - ticketRowMaterializer.countNotMaterialized(updated.getId());
+        final List<Integer> ids = ticketRepository.selectTicketInCategoryForUpdate(event.getId(), updated.getId(), existingTickets, singletonList(TicketStatus.FREE.name()));
+        if(ids.size() < existingTickets) {
             throw new IllegalStateException("Tickets have already been sold (or are in the process of being sold) for this category. Therefore price update is not allowed.");
         }
         //there's no need to calculate final price, vat etc, since these values will be updated at the time of reservation
@@ -854,6 +881,7 @@ public class EventManager {
             List<Integer> lockedTickets = ticketRepository.selectNotAllocatedTicketsForUpdate(event.getId(), addedTickets, asList(TicketStatus.FREE.name(), TicketStatus.RELEASED.name()));
             Validate.isTrue(addedTickets == lockedTickets.size(), "Cannot add %d tickets. There are only %d free tickets.", addedTickets, lockedTickets.size());
             ticketRepository.bulkTicketUpdate(lockedTickets, updated);
+            ticketRowMaterializer.ticketsMovedIn(updated.getId(), lockedTickets.size());
             if(updated.isAccessRestricted()) {
                 //since the updated category is not public, the tickets shouldn't be distributed to waiting people.
                 ticketRepository.revertToFree(event.getId(), updated.getId(), lockedTickets);
@@ -863,12 +891,16 @@ public class EventManager {
 
         } else {
             int absDifference = Math.abs(addedTickets);
-            final List<Integer> ids = ticketRepository.lockTicketsToInvalidate(event.getId(), updated.getId(), absDifference);
-            int actualDifference = ids.size();
-            if(actualDifference < absDifference) {
-                throw new IllegalStateException("Cannot invalidate "+absDifference+" tickets. There are only "+actualDifference+" free tickets");
+            // if the rows are created on demand, the tickets which have not been created yet are removed first
+            int toInvalidate = ticketRowMaterializer.shrinkToMaxTickets(updated.getId()).orElse(absDifference);
+            if(toInvalidate > 0) {
+                final List<Integer> ids = ticketRepository.lockTicketsToInvalidate(event.getId(), updated.getId(), toInvalidate);
+                int actualDifference = ids.size();
+                if(actualDifference < toInvalidate) {
+                    throw new IllegalStateException("Cannot invalidate "+toInvalidate+" tickets. There are only "+actualDifference+" free tickets");
+                }
+                ticketRepository.invalidateTickets(ids);
             }
-            ticketRepository.invalidateTickets(ids);
             final MapSqlParameterSource[] params = generateEmptyTickets(event, Date.from(event.now(clockProvider).toInstant()), absDifference, TicketStatus.RELEASED).toArray(MapSqlParameterSource[]::new);
             ticketRepository.bulkTicketInitialization(params);
         }
@@ -876,8 +908,12 @@ public class EventManager {
 
     private void createAllTicketsForEvent(Event event, EventModification em) {
         Validate.notNull(em.getAvailableSeats());
-        final MapSqlParameterSource[] params = prepareTicketsBulkInsertParameters(event.now(clockProvider), event, em.getAvailableSeats(), TicketStatus.FREE);
+        boolean ticketRowsOnDemand = ticketRowMaterializer.isEnabled(event.getOrganizationId());
+        final MapSqlParameterSource[] params = prepareTicketsBulkInsertParameters(event.now(clockProvider), event, em.getAvailableSeats(), TicketStatus.FREE, ticketRowsOnDemand);
         ticketRepository.bulkTicketInitialization(params);
+        if(ticketRowsOnDemand) {
+            ticketRowMaterializer.registerBoundedCategories(event, ticketCategoryRepository.findAllTicketCategories(event.getId()));
+        }
     }
 
     private int insertEvent(EventModification em) {
@@ -1014,9 +1050,17 @@ public class EventManager {
         return getActiveEventsStream().collect(toList());
     }
 
+    public Optional<Event> getActiveEventById(int eventId) {
+        return eventRepository.findOptionalById(eventId).filter(this::isActive);
+    }
+
     private Stream<Event> getActiveEventsStream() {
         return eventRepository.findAll().stream()
-            .filter(e -> e.getEnd().truncatedTo(ChronoUnit.DAYS).plusDays(1).isAfter(ZonedDateTime.now(clockProvider.withZone(e.getZoneId())).truncatedTo(ChronoUnit.DAYS)));
+            .filter(this::isActive);
+    }
+
+    private boolean isActive(Event e) {
+        return e.getEnd().truncatedTo(ChronoUnit.DAYS).plusDays(1).isAfter(ZonedDateTime.now(clockProvider.withZone(e.getZoneId())).truncatedTo(ChronoUnit.DAYS));
     }
 
     public Function<Ticket, Boolean> checkTicketCancellationPrerequisites() {
@@ -1073,6 +1117,7 @@ public class EventManager {
 		final Event event = eventRepository.findById(eventId);
 		checkOwnership(event, username, event.getOrganizationId());
         eventDeleterRepository.deleteAllForEvent(eventId);
+        eventCache.invalidate(eventId);
     }
 
     public Optional<TicketCategory> getOptionalByIdAndActive(int ticketCategoryId, int eventId) {
@@ -1096,12 +1141,14 @@ public class EventManager {
             throw new IllegalStateException("Cannot delete category");
         }
         if(category.isBounded()) {
+            ticketRowMaterializer.materializeCategory(optionalEvent.get(), categoryId);
             int ticketsCount = category.getMaxTickets();
             var ticketIds = ticketRepository.selectTicketInCategoryForUpdate(eventId, categoryId, ticketsCount, List.of(TicketStatus.FREE.name(), TicketStatus.RELEASED.name()));
             Validate.isTrue(ticketIds.size() == ticketsCount, "Error while deleting category. Please ensure that there is no pending reservation.");
             ticketRepository.resetTickets(ticketIds);
             Validate.isTrue(ticketsCount == ticketRepository.unbindTicketsFromCategory(eventId, categoryId, ticketIds), "Cannot remove tickets from category.");
         }
+        ticketInventoryGate.invalidate(eventId);
     }
 
     public void rearrangeCategories(String eventName, List<CategoryOrdinalModification> categories, String username) {
@@ -1137,6 +1184,7 @@ public class EventManager {
     public boolean updateMetadata(Event event, AlfioMetadata metadata) {
         var updatedMetadata = extensionManager.handleMetadataUpdate(event, organizationRepository.getById(event.getOrganizationId()), metadata);
         eventRepository.updateMetadata(Objects.requireNonNullElse(updatedMetadata, metadata), event.getId());
+        eventCache.invalidate(event.getId());
         return true;
     }
 
@@ -1163,6 +1211,7 @@ public class EventManager {
                     return extensionManager.handleGenerateMeetingLinkCapability(event, organization, getMetadataForEvent(event), requestParams)
                         .map(metadata -> {
                             eventRepository.updateMetadata(requireNonNullElseGet(metadata, AlfioMetadata::empty), event.getId());
+                            eventCache.invalidate(event.getId());
                             return "metadata updated";
                         });
                 } else {
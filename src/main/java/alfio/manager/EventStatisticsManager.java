@@ -165,10 +165,7 @@ public class EventStatisticsManager {
         return event -> {
             Map<Integer, TicketCategoryStatisticView> stats = ticketCategoryRepository.findStatisticsForEventIdByCategoryId(event.getId());
             EventStatisticView eventStatisticView = eventRepository.findStatisticsFor(event.getId());
-            return ticketCategoryRepository.findAllTicketCategories(event.getId())
-                .stream()
-                .filter(tc -> !tc.isAccessRestricted())
-                .allMatch(tc -> EventUtil.determineAvailableSeats(stats.get(tc.getId()), eventStatisticView) == 0);
+            return EventUtil.noSeatsAvailable(ticketCategoryRepository.findAllTicketCategories(event.getId()), stats, eventStatisticView);
         };
     }
 
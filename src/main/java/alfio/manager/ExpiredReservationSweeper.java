@@ -0,0 +1,204 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.model.TicketReservation;
+import alfio.repository.TicketReservationRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Removes the expired reservations in bounded batches.
+ * <p>
+ * Each batch is first claimed by setting a short lease on its rows ("skip locked", committed immediately), so that
+ * multiple nodes can sweep at the same time without processing the same reservations. The remote check of pending
+ * transactions is then done outside of any transaction, in parallel and with a timeout. Finally, the batch is locked
+ * and removed in its own transaction. Reservations whose check did not complete are skipped, and will be retried
+ * once their lease has expired.
+ */
+@Component
+@Log4j2
+public class ExpiredReservationSweeper implements DisposableBean {
+
+    static final int BATCH_SIZE = 100;
+    static final int MAX_BATCHES_PER_RUN = 20;
+    private static final int PAYMENT_CHECK_THREADS = 4;
+    private static final Duration PAYMENT_CHECK_TIMEOUT = Duration.ofSeconds(10);
+    static final Duration CLAIM_LEASE = Duration.ofMinutes(2);
+
+    private final TicketReservationManager ticketReservationManager;
+    private final TicketReservationRepository ticketReservationRepository;
+    private final ExecutorService paymentCheckExecutor;
+    private final Duration paymentCheckTimeout;
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder expiredReservations = new LongAdder();
+    private final LongAdder removedReservations = new LongAdder();
+    private final LongAdder paymentChecks = new LongAdder();
+    private final LongAdder paymentCheckTimeouts = new LongAdder();
+    private final AtomicReference<SweepResult> lastResult = new AtomicReference<>();
+
+    @Autowired
+    public ExpiredReservationSweeper(TicketReservationManager ticketReservationManager,
+                                     TicketReservationRepository ticketReservationRepository) {
+        this(ticketReservationManager, ticketReservationRepository, Executors.newFixedThreadPool(PAYMENT_CHECK_THREADS, new BasicThreadFactory.Builder()
+            .namingPattern("expired-reservation-check-%d")
+            .daemon(true)
+            .build()), PAYMENT_CHECK_TIMEOUT);
+    }
+
+    ExpiredReservationSweeper(TicketReservationManager ticketReservationManager,
+                              TicketReservationRepository ticketReservationRepository,
+                              ExecutorService paymentCheckExecutor,
+                              Duration paymentCheckTimeout) {
+        this.ticketReservationManager = ticketReservationManager;
+        this.ticketReservationRepository = ticketReservationRepository;
+        this.paymentCheckExecutor = paymentCheckExecutor;
+        this.paymentCheckTimeout = paymentCheckTimeout;
+    }
+
+    public SweepResult sweep(Date expirationDate) {
+        long start = System.nanoTime();
+        String lastId = "";
+        int batches = 0;
+        int found = 0;
+        int removed = 0;
+        var checks = new PaymentChecks();
+        List<String> candidates;
+        do {
+            candidates = ticketReservationRepository.claimExpiredReservations(expirationDate, lastId, BATCH_SIZE, (int) CLAIM_LEASE.toSeconds());
+            if(candidates.isEmpty()) {
+                break;
+            }
+            // "returning" does not preserve the order of the inner select
+            lastId = Collections.max(candidates);
+            found += candidates.size();
+            var checked = checkPendingTransactions(ticketReservationRepository.findReservationsWithPendingTransaction(candidates), checks);
+            removed += ticketReservationManager.cleanupExpiredReservationsBatch(candidates, expirationDate, checked);
+            batches++;
+        } while(candidates.size() == BATCH_SIZE && batches < MAX_BATCHES_PER_RUN);
+        var result = new SweepResult(batches, found, removed, checks.performed, checks.timedOut, Duration.ofNanos(System.nanoTime() - start));
+        publish(result);
+        return result;
+    }
+
+    private void publish(SweepResult result) {
+        runs.increment();
+        expiredReservations.add(result.expiredReservations);
+        removedReservations.add(result.removedReservations);
+        paymentChecks.add(result.paymentChecks);
+        paymentCheckTimeouts.add(result.paymentCheckTimeouts);
+        lastResult.set(result);
+    }
+
+    public SweepStatistics getStatistics() {
+        return new SweepStatistics(runs.sum(), expiredReservations.sum(), removedReservations.sum(),
+            paymentChecks.sum(), paymentCheckTimeouts.sum(), lastResult.get());
+    }
+
+    /**
+     * @return the IDs of the reservations that can be safely removed
+     */
+    private Set<String> checkPendingTransactions(List<TicketReservation> reservations, PaymentChecks checks) {
+        if(reservations.isEmpty()) {
+            return Set.of();
+        }
+        List<Callable<Boolean>> tasks = reservations.stream()
+            .map(r -> (Callable<Boolean>) () -> ticketReservationManager.checkPendingTransactionBeforeExpiration(r))
+            .collect(toList());
+        List<Future<Boolean>> results;
+        try {
+            results = paymentCheckExecutor.invokeAll(tasks, paymentCheckTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Set.of();
+        }
+        var removable = new HashSet<String>();
+        for (int i = 0; i < results.size(); i++) {
+            var future = results.get(i);
+            var reservationId = reservations.get(i).getId();
+            checks.performed++;
+            if(future.isCancelled()) {
+                checks.timedOut++;
+                log.warn("Timeout while checking the pending transaction of reservation {}. Will retry later.", reservationId);
+                continue;
+            }
+            try {
+                if(Boolean.TRUE.equals(future.get())) {
+                    removable.add(reservationId);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                log.warn("Error while checking the pending transaction of reservation " + reservationId, e.getCause());
+            }
+        }
+        return removable;
+    }
+
+    @Override
+    public void destroy() {
+        paymentCheckExecutor.shutdownNow();
+    }
+
+    private static class PaymentChecks {
+        private int performed;
+        private int timedOut;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class SweepResult {
+        private final int batches;
+        private final int expiredReservations;
+        private final int removedReservations;
+        private final int paymentChecks;
+        private final int paymentCheckTimeouts;
+        private final Duration elapsed;
+
+        public boolean isEmpty() {
+            return expiredReservations == 0;
+        }
+    }
+
+    /**
+     * Cumulative statistics since the application startup
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class SweepStatistics {
+        private final long runs;
+        private final long expiredReservations;
+        private final long removedReservations;
+        private final long paymentChecks;
+        private final long paymentCheckTimeouts;
+        private final SweepResult lastRun;
+    }
+}
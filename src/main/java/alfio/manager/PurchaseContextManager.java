@@ -17,6 +17,7 @@
 package alfio.manager;
 
 import alfio.manager.system.ConfigurationLevel;
+import alfio.manager.system.EventCache;
 import alfio.model.PurchaseContext;
 import alfio.model.TicketReservation;
 import alfio.repository.EventRepository;
@@ -39,18 +40,21 @@ public class PurchaseContextManager {
     private final EventRepository eventRepository;
     private final SubscriptionRepository subscriptionRepository;
     private final TicketReservationRepository ticketReservationRepository;
+    private final EventCache eventCache;
 
     public PurchaseContextManager(EventRepository eventRepository,
                                   SubscriptionRepository subscriptionRepository,
-                                  TicketReservationRepository ticketReservationRepository) {
+                                  TicketReservationRepository ticketReservationRepository,
+                                  EventCache eventCache) {
         this.eventRepository = eventRepository;
         this.subscriptionRepository = subscriptionRepository;
         this.ticketReservationRepository = ticketReservationRepository;
+        this.eventCache = eventCache;
     }
 
     public Optional<? extends PurchaseContext> findBy(PurchaseContext.PurchaseContextType purchaseContextType, String publicIdentifier) {
         switch (purchaseContextType) {
-            case event: return eventRepository.findOptionalByShortName(publicIdentifier);
+            case event: return eventCache.findOptionalByShortName(publicIdentifier);
             case subscription: return subscriptionRepository.findOne(UUID.fromString(publicIdentifier));
             default: throw new IllegalStateException("not a covered type " + purchaseContextType);
         }
@@ -58,14 +62,14 @@ public class PurchaseContextManager {
 
     Optional<? extends PurchaseContext> findById(PurchaseContext.PurchaseContextType purchaseContextType, String idAsString) {
         switch (purchaseContextType) {
-            case event: return eventRepository.findOptionalById(Integer.parseInt(idAsString));
+            case event: return eventCache.findOptionalById(Integer.parseInt(idAsString));
             case subscription: return subscriptionRepository.findOne(UUID.fromString(idAsString));
             default: throw new IllegalStateException("not a covered type " + purchaseContextType);
         }
     }
 
     public Optional<PurchaseContext> findByReservationId(String reservationId) {
-        return ticketReservationRepository.findEventIdFor(reservationId).map(eventRepository::findById)
+        return ticketReservationRepository.findEventIdFor(reservationId).flatMap(eventCache::findOptionalById)
             .map(PurchaseContext.class::cast)
             .or(() -> subscriptionRepository.findDescriptorByReservationId(reservationId));
     }
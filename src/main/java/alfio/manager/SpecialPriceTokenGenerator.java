@@ -26,25 +26,34 @@ import alfio.repository.EventRepository;
 import alfio.repository.SpecialPriceRepository;
 import alfio.repository.TicketCategoryRepository;
 import lombok.extern.log4j.Log4j2;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.commons.text.RandomStringGenerator;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.stream.Collectors.*;
 
 /**
  * Class SpecialPriceTokenGenerator.
  * This class generates a bunch of tokens which will be used for
  * granting a special price to a specific user category.
+ * Codes are generated in memory and set on the WAITING tokens in batches; the few which collide with existing codes are generated again.
+ * Each batch is committed on its own, unless the generation is part of an outer transaction.
  */
 @Component
 @Log4j2
-@Transactional
 public class SpecialPriceTokenGenerator {
 
+    private static final int BATCH_SIZE = 1000;
+    private static final int MAX_ATTEMPTS = 10;
     private static final SecureRandom RANDOM = new SecureRandom();
     private static final char[] ADMITTED_CHARACTERS = new char[]{
             'A', 'B', 'C', 'D', 'E', 'F',
@@ -62,53 +71,75 @@ public class SpecialPriceTokenGenerator {
     private final TicketCategoryRepository ticketCategoryRepository;
     private final EventRepository eventRepository;
     private final ConfigurationManager configurationManager;
+    private final TransactionTemplate transactionTemplate;
 
     @Autowired
     public SpecialPriceTokenGenerator(ConfigurationManager configurationManager,
                                       SpecialPriceRepository specialPriceRepository,
                                       TicketCategoryRepository ticketCategoryRepository,
-                                      EventRepository eventRepository) {
+                                      EventRepository eventRepository,
+                                      PlatformTransactionManager transactionManager) {
         this.specialPriceRepository = specialPriceRepository;
         this.configurationManager = configurationManager;
         this.ticketCategoryRepository = ticketCategoryRepository;
         this.eventRepository = eventRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     public void generatePendingCodes() {
         StopWatch stopWatch = new StopWatch();
         log.trace("start pending codes generation");
         stopWatch.start();
-        specialPriceRepository.findWaitingElements().forEach(this::generateCode);
+        generateCodes(specialPriceRepository.findWaitingElements());
         stopWatch.stop();
         log.trace("end. Took {} ms", stopWatch.getTime());
     }
 
     public void generatePendingCodesForCategory(int categoryId) {
-        specialPriceRepository.findWaitingElementsForCategory(categoryId).forEach(this::generateCode);
+        generateCodes(specialPriceRepository.findWaitingElementsForCategory(categoryId));
     }
 
-    private void generateCode(SpecialPrice.SpecialPriceTicketCategoryId specialPrice) {
+    private void generateCodes(List<SpecialPrice.SpecialPriceTicketCategoryId> waitingTokens) {
+        waitingTokens.stream()
+            .collect(groupingBy(SpecialPrice.SpecialPriceTicketCategoryId::getTicketCategoryId, mapping(SpecialPrice.SpecialPriceTicketCategoryId::getId, toList())))
+            .forEach(this::generateCodesForCategory);
+    }
 
-        TicketCategory ticketCategory = ticketCategoryRepository.getByIdAndActive(specialPrice.getTicketCategoryId()).orElseThrow(IllegalStateException::new);
+    private void generateCodesForCategory(int categoryId, List<Integer> waitingTokenIds) {
+        TicketCategory ticketCategory = ticketCategoryRepository.getByIdAndActive(categoryId).orElseThrow(IllegalStateException::new);
         EventAndOrganizationId event = eventRepository.findEventAndOrganizationIdById(ticketCategory.getEventId());
         int maxLength = configurationManager.getFor(ConfigurationKeys.SPECIAL_PRICE_CODE_LENGTH, ConfigurationLevel.ticketCategory(event, ticketCategory.getId())).getValueAsIntOrDefault(6);
+        log.trace("generating {} codes for category {}", waitingTokenIds.size(), categoryId);
+        Set<String> generatedCodes = new HashSet<>();
+        ListUtils.partition(waitingTokenIds, BATCH_SIZE)
+            .forEach(ids -> transactionTemplate.execute(status -> {
+                generateCodes(ids, maxLength, generatedCodes);
+                return null;
+            }));
+    }
 
-        while (true) {
-            try {
-                log.trace("generate code for special price with id {}", specialPrice.getId());
-                specialPriceRepository.updateCode(nextValidCode(maxLength), specialPrice.getId());
-                log.trace("done.");
+    private void generateCodes(List<Integer> waitingTokenIds, int maxLength, Set<String> generatedCodes) {
+        // tokens which are being processed by someone else are skipped
+        List<Integer> pending = specialPriceRepository.lockWaitingTokens(waitingTokenIds);
+        for (int attempt = 0; !pending.isEmpty(); attempt++) {
+            if(attempt == MAX_ATTEMPTS) {
+                log.warn("cannot generate unique codes for {} tokens. They will be processed again later", pending.size());
                 return;
-            } catch (DataAccessException e) {
-                log.warn("got a duplicate. Retrying...", e);
             }
+            List<String> codes = pending.stream().map(id -> nextUniqueCode(maxLength, generatedCodes)).collect(toList());
+            Set<Integer> done = new HashSet<>(specialPriceRepository.updateWaitingCodes(pending, codes));
+            List<Integer> duplicates = pending.stream().filter(id -> !done.contains(id)).collect(toList());
+            if(!duplicates.isEmpty()) {
+                log.debug("got {} duplicates. Retrying...", duplicates.size());
+            }
+            pending = duplicates;
         }
     }
 
-    private String nextValidCode(int maxLength) {
+    private String nextUniqueCode(int maxLength, Set<String> generatedCodes) {
         while (true) {
             String code = generateRandomCode(maxLength);
-            if (specialPriceRepository.countByCode(code) == 0) {
+            if (generatedCodes.add(code)) {
                 return code;
             }
         }
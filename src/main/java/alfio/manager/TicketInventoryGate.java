@@ -0,0 +1,175 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.support.AvailabilitySnapshot;
+import alfio.manager.system.TransactionAwareCache;
+import alfio.model.FreeTicketsByCategory;
+import alfio.model.TicketCategory;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
+import alfio.util.EventUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory availability counters, one for each bounded (event, category) pair and one for the unbounded pool of each event.
+ * <p>
+ * The counters are only used to reject requests which cannot be satisfied, before hitting the database with the
+ * {@code select ... for update skip locked} queries. The database is always the source of truth: a counter is loaded from it
+ * the first time it is needed, re-synced after tickets have been released or expired or after the categories have been
+ * modified by an administrator, and in any case dropped after
+ * {@link #MAX_STALENESS}, which bounds the effect of changes made by other nodes.
+ * <p>
+ * The gate also keeps a read-only {@link AvailabilitySnapshot} for each event, which is used for displaying the categories.
+ * Snapshots are dropped whenever tickets are reserved, released or expired, and after {@link #MAX_STALENESS}.
+ * A transaction which has modified the availability doesn't use the snapshots until it completes.
+ */
+@Component
+@Log4j2
+public class TicketInventoryGate {
+
+    static final Duration MAX_STALENESS = Duration.ofSeconds(5);
+
+    private final TicketRepository ticketRepository;
+    private final TicketCategoryRepository ticketCategoryRepository;
+    private final EventRepository eventRepository;
+    private final Cache<Pair<Integer, Integer>, AtomicInteger> counters;
+    private final Cache<Integer, AvailabilitySnapshot> snapshots;
+    // snapshots are dropped after commit by ticketsReserved and invalidate
+    private final TransactionAwareCache transactionAwareCache = new TransactionAwareCache(() -> {});
+
+    public TicketInventoryGate(TicketRepository ticketRepository,
+                               TicketCategoryRepository ticketCategoryRepository,
+                               EventRepository eventRepository) {
+        this.ticketRepository = ticketRepository;
+        this.ticketCategoryRepository = ticketCategoryRepository;
+        this.eventRepository = eventRepository;
+        this.counters = TransactionAwareCache.newCache(MAX_STALENESS, 10_000);
+        this.snapshots = TransactionAwareCache.newCache(MAX_STALENESS, 1_000);
+    }
+
+    /**
+     * Rejects the request if the last known availability for the given category is lower than the requested quantity.
+     *
+     * @param eventId the event ID
+     * @param category the category
+     * @param requested requested quantity
+     * @throws TicketReservationManager.NotEnoughTicketsException if there are not enough tickets
+     */
+    public void ensureAvailability(int eventId, TicketCategory category, int requested) {
+        var key = key(eventId, category);
+        var counter = counters.get(key, k -> new AtomicInteger(loadAvailability(k)));
+        if(counter.get() < requested) {
+            log.trace("rejecting request for {} tickets in category {}. Available: {}", requested, category.getId(), counter.get());
+            throw new TicketReservationManager.NotEnoughTicketsException();
+        }
+    }
+
+    /**
+     * Decrements the availability counter, once the current transaction (if any) has been committed.
+     *
+     * @param eventId the event ID
+     * @param category the category
+     * @param quantity reserved quantity
+     */
+    public void ticketsReserved(int eventId, TicketCategory category, int quantity) {
+        var key = key(eventId, category);
+        transactionAwareCache.markPendingChanges();
+        afterCommit(() -> {
+            var counter = counters.getIfPresent(key);
+            if(counter != null) {
+                counter.accumulateAndGet(quantity, (current, q) -> Math.max(0, current - q));
+            }
+            snapshots.invalidate(eventId);
+        });
+    }
+
+    /**
+     * Drops all the counters for the given event, once the current transaction (if any) has been committed.
+     * The counters will be re-synced from the database on the next request.
+     *
+     * @param eventId the event ID
+     */
+    public void invalidate(int eventId) {
+        transactionAwareCache.markPendingChanges();
+        afterCommit(() -> {
+            counters.asMap().keySet().removeIf(k -> k.getLeft() == eventId);
+            snapshots.invalidate(eventId);
+        });
+    }
+
+    /**
+     * Returns the availability of all the categories of the given event, which is at most {@link #MAX_STALENESS} old.
+     *
+     * @param eventId the event ID
+     * @return the availability snapshot
+     */
+    public AvailabilitySnapshot getAvailabilitySnapshot(int eventId) {
+        return transactionAwareCache.get(snapshots, eventId, this::loadSnapshot);
+    }
+
+    private AvailabilitySnapshot loadSnapshot(int eventId) {
+        var freeTicketsByCategory = new HashMap<Integer, Integer>();
+        int freeUnboundedTickets = 0;
+        for (FreeTicketsByCategory row : ticketRepository.countFreeTicketsByCategory(eventId)) {
+            if(row.getCategoryId() == null) {
+                freeUnboundedTickets = row.getFreeTickets();
+            } else {
+                freeTicketsByCategory.put(row.getCategoryId(), row.getFreeTickets());
+            }
+        }
+        boolean noSeatsAvailable = EventUtil.noSeatsAvailable(ticketCategoryRepository.findAllTicketCategories(eventId),
+            ticketCategoryRepository.findStatisticsForEventIdByCategoryId(eventId),
+            eventRepository.findStatisticsFor(eventId));
+        return new AvailabilitySnapshot(freeTicketsByCategory, freeUnboundedTickets, noSeatsAvailable);
+    }
+
+    private int loadAvailability(Pair<Integer, Integer> key) {
+        int eventId = key.getLeft();
+        Integer categoryId = key.getRight();
+        Integer result = categoryId != null ? ticketRepository.countFreeTickets(eventId, categoryId) : ticketRepository.countFreeTicketsForUnbounded(eventId);
+        return result != null ? result : 0;
+    }
+
+    private static Pair<Integer, Integer> key(int eventId, TicketCategory category) {
+        // unbounded categories share the same pool of tickets
+        return Pair.of(eventId, category.isBounded() ? category.getId() : null);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -76,6 +76,7 @@ import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.time.DateUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.UncategorizedSQLException;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
@@ -83,6 +84,7 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
@@ -100,9 +102,11 @@ import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -137,6 +141,7 @@ public class TicketReservationManager {
     private static final String STUCK_TICKETS_SUBJECT = "warning: stuck tickets found";
     private static final String ORGANIZATION = "organization";
     private static final String RESERVATION_ID = "reservationId";
+    private static final int MAX_ACCESS_CODE_ATTEMPTS = 5;
 
     private final EventRepository eventRepository;
     private final OrganizationRepository organizationRepository;
@@ -155,6 +160,7 @@ public class TicketReservationManager {
     private final TransactionTemplate requiresNewTransactionTemplate;
     private final TransactionTemplate serializedTransactionTemplate;
     private final TransactionTemplate nestedTransactionTemplate;
+    private final TransactionTemplate transactionTemplate;
     private final WaitingQueueManager waitingQueueManager;
     private final TicketFieldRepository ticketFieldRepository;
     private final AdditionalServiceRepository additionalServiceRepository;
@@ -173,6 +179,10 @@ public class TicketReservationManager {
     private final PurchaseContextManager purchaseContextManager;
     private final SubscriptionRepository subscriptionRepository;
     private final UserManager userManager;
+    private final TicketInventoryGate ticketInventoryGate;
+    private final TicketSelectionCoalescer ticketSelectionCoalescer;
+    private final TicketRowMaterializer ticketRowMaterializer;
+    private final DirtyEventTracker dirtyEventTracker;
 
     public static class NotEnoughTicketsException extends RuntimeException {
 
@@ -188,6 +198,12 @@ public class TicketReservationManager {
     public static class TooManyTicketsForDiscountCodeException extends RuntimeException {
     }
 
+    /**
+     * Thrown when the access code has slots left, but all of them are being claimed by other reservations.
+     */
+    public static class AccessCodeSlotsBusyException extends RuntimeException {
+    }
+
     public static class CannotProceedWithPayment extends RuntimeException {
         CannotProceedWithPayment(String message) {
             super(message);
@@ -225,7 +241,11 @@ public class TicketReservationManager {
                                     ClockProvider clockProvider,
                                     PurchaseContextManager purchaseContextManager,
                                     SubscriptionRepository subscriptionRepository,
-                                    UserManager userManager) {
+                                    UserManager userManager,
+                                    TicketInventoryGate ticketInventoryGate,
+                                    TicketSelectionCoalescer ticketSelectionCoalescer,
+                                    TicketRowMaterializer ticketRowMaterializer,
+                                    DirtyEventTracker dirtyEventTracker) {
         this.eventRepository = eventRepository;
         this.organizationRepository = organizationRepository;
         this.ticketRepository = ticketRepository;
@@ -246,6 +266,7 @@ public class TicketReservationManager {
         serialized.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
         this.serializedTransactionTemplate = new TransactionTemplate(transactionManager, serialized);
         this.nestedTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED));
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
         this.ticketFieldRepository = ticketFieldRepository;
         this.additionalServiceRepository = additionalServiceRepository;
         this.additionalServiceItemRepository = additionalServiceItemRepository;
@@ -263,6 +284,10 @@ public class TicketReservationManager {
         this.purchaseContextManager = purchaseContextManager;
         this.subscriptionRepository = subscriptionRepository;
         this.userManager = userManager;
+        this.ticketInventoryGate = ticketInventoryGate;
+        this.ticketSelectionCoalescer = ticketSelectionCoalescer;
+        this.ticketRowMaterializer = ticketRowMaterializer;
+        this.dirtyEventTracker = dirtyEventTracker;
     }
 
     private String createSubscriptionReservation(SubscriptionDescriptor subscriptionDescriptor,
@@ -413,6 +438,13 @@ public class TicketReservationManager {
                                    PromoCodeDiscount accessCodeOrDiscount,
                                    PromoCodeDiscount dynamicDiscount) {
 
+        TicketCategory category = ticketCategoryRepository.getByIdAndActive(ticketReservation.getTicketCategoryId(), event.getId());
+        int requested = ticketReservation.getQuantity();
+        if(!forWaitingQueue) {
+            // fail fast if we already know that there aren't enough tickets left
+            ticketInventoryGate.ensureAvailability(event.getId(), category, requested);
+        }
+
         List<SpecialPrice> specialPrices;
         if(accessCodeOrDiscount != null && accessCodeOrDiscount.getCodeType() == CodeType.ACCESS
             && ticketReservation.getTicketCategoryId().equals(accessCodeOrDiscount.getHiddenCategoryId())
@@ -425,16 +457,19 @@ public class TicketReservationManager {
             specialPrices = specialPrice.stream().collect(toList());
         }
 
-        List<Integer> reservedForUpdate = reserveTickets(event.getId(), ticketReservation, forWaitingQueue ? asList(TicketStatus.RELEASED, TicketStatus.PRE_RESERVED) : singletonList(TicketStatus.FREE));
-        int requested = ticketReservation.getQuantity();
-        if (reservedForUpdate.size() != requested) {
-            throw new NotEnoughTicketsException();
-        }
-
-        TicketCategory category = ticketCategoryRepository.getByIdAndActive(ticketReservation.getTicketCategoryId(), event.getId());
         List<Map<String, String>> ticketMetadata = requireNonNullElse(ticketReservation.getMetadata(), List.of());
-        if (!specialPrices.isEmpty()) {
-            if(specialPrices.size() != reservedForUpdate.size()) {
+        var discountToApply = ObjectUtils.firstNonNull(dynamicDiscount, accessCodeOrDiscount);
+        var priceContainer = TicketPriceContainer.forReservation(category, event.getVat(), event.getVatStatus(), discountToApply);
+        List<TicketStatus> requiredStatuses = forWaitingQueue ? asList(TicketStatus.RELEASED, TicketStatus.PRE_RESERVED) : singletonList(TicketStatus.FREE);
+
+        if (specialPrices.isEmpty()) {
+            var reserved = reserveAndPriceTickets(event, reservationId, category, requested, requiredStatuses, forWaitingQueue, locale, priceContainer, ticketMetadata);
+            if (reserved.size() != requested) {
+                throw new NotEnoughTicketsException();
+            }
+        } else {
+            List<Integer> reservedForUpdate = reserveTickets(event.getId(), ticketReservation, requiredStatuses);
+            if (reservedForUpdate.size() != requested || specialPrices.size() != reservedForUpdate.size()) {
                 throw new NotEnoughTicketsException();
             }
 
@@ -485,29 +520,68 @@ public class TicketReservationManager {
                     Status.PENDING,
                     Objects.requireNonNull(accessCodeOrDiscount).getId());
             }
-        } else {
-            int reserved = ticketRepository.reserveTickets(reservationId, reservedForUpdate, category, locale.getLanguage(), event.getVatStatus(), idx -> {
-                var metadata = getAtIndexOrNull(ticketMetadata, idx);
-                if (metadata != null) {
-                    return json.asJsonString(TicketMetadataContainer.fromMetadata(new TicketMetadata(null, null, metadata)));
-                }
-                return null;
-            });
-            Validate.isTrue(reserved == reservedForUpdate.size(), "Cannot reserve all tickets");
+            ticketRepository.updateTicketPrice(reservedForUpdate,
+                category.getId(),
+                event.getId(),
+                category.getSrcPriceCts(),
+                unitToCents(priceContainer.getFinalPrice(), priceContainer.getCurrencyCode()),
+                unitToCents(priceContainer.getVAT(), priceContainer.getCurrencyCode()),
+                unitToCents(priceContainer.getAppliedDiscount(), priceContainer.getCurrencyCode()),
+                category.getCurrencyCode(),
+                priceContainer.getVatStatus());
         }
-        Ticket ticket = ticketRepository.findById(reservedForUpdate.get(0), category.getId());
-        var discountToApply = ObjectUtils.firstNonNull(dynamicDiscount, accessCodeOrDiscount);
-        TicketPriceContainer priceContainer = TicketPriceContainer.from(ticket, null, event.getVat(), event.getVatStatus(), discountToApply);
-        var currencyCode = priceContainer.getCurrencyCode();
-        ticketRepository.updateTicketPrice(reservedForUpdate,
-            category.getId(),
-            event.getId(),
-            category.getSrcPriceCts(),
-            MonetaryUtil.unitToCents(priceContainer.getFinalPrice(), currencyCode),
-            MonetaryUtil.unitToCents(priceContainer.getVAT(), currencyCode),
-            MonetaryUtil.unitToCents(priceContainer.getAppliedDiscount(), currencyCode),
-            category.getCurrencyCode(),
-            priceContainer.getVatStatus());
+        if(!forWaitingQueue) {
+            ticketInventoryGate.ticketsReserved(event.getId(), category, requested);
+        }
+    }
+
+    /**
+     * Claims, prices and returns the requested tickets. Each statement reserves and prices the tickets in a single round-trip.
+     * If the ticket selection has been coalesced with other requests, we try first to reserve the candidates we got,
+     * then we reserve the missing tickets with the standard {@code for update skip locked} selection.
+     */
+    private List<Integer> reserveAndPriceTickets(Event event,
+                                                 String reservationId,
+                                                 TicketCategory category,
+                                                 int requested,
+                                                 List<TicketStatus> requiredStatuses,
+                                                 boolean forWaitingQueue,
+                                                 Locale locale,
+                                                 TicketPriceContainer priceContainer,
+                                                 List<Map<String, String>> ticketMetadata) {
+        var metadataList = ticketMetadata.stream()
+            .map(m -> m != null ? TicketMetadataContainer.fromMetadata(new TicketMetadata(null, null, m)) : null)
+            .collect(toList());
+        var parameters = new MapSqlParameterSource(RESERVATION_ID, reservationId)
+            .addValue("eventId", event.getId())
+            .addValue("categoryId", category.getId())
+            .addValue("userLanguage", locale.getLanguage())
+            .addValue("srcPriceCts", category.getSrcPriceCts())
+            .addValue("finalPriceCts", unitToCents(priceContainer.getFinalPrice(), priceContainer.getCurrencyCode()))
+            .addValue("vatCts", unitToCents(priceContainer.getVAT(), priceContainer.getCurrencyCode()))
+            .addValue("discountCts", unitToCents(priceContainer.getAppliedDiscount(), priceContainer.getCurrencyCode()))
+            .addValue("currencyCode", category.getCurrencyCode())
+            .addValue("vatStatus", priceContainer.getVatStatus().name())
+            .addValue("ticketMetadata", json.asJsonString(metadataList))
+            .addValue("metadataOffset", 0);
+
+        var candidates = forWaitingQueue ? List.<Integer>of() : ticketSelectionCoalescer.claimCandidates(event.getId(), category, requested);
+        var reserved = new ArrayList<Integer>(requested);
+        if(!candidates.isEmpty()) {
+            reserved.addAll(ticketRepository.reserveAndPriceCandidates(candidates, parameters));
+        }
+        if(reserved.size() < requested) {
+            parameters.addValue("metadataOffset", reserved.size());
+            var statuses = requiredStatuses.stream().map(TicketStatus::name).collect(toList());
+            reserved.addAll(ticketRepository.reserveAndPriceTickets(category.isBounded(), requested - reserved.size(), statuses, parameters));
+        }
+        if(reserved.size() < requested && canMaterialize(category, requiredStatuses)
+            && ticketRowMaterializer.materialize(event, category, requested - reserved.size()) > 0) {
+            parameters.addValue("metadataOffset", reserved.size());
+            var statuses = requiredStatuses.stream().map(TicketStatus::name).collect(toList());
+            reserved.addAll(ticketRepository.reserveAndPriceTickets(true, requested - reserved.size(), statuses, parameters));
+        }
+        return reserved;
     }
 
     private static <T> T getAtIndexOrNull(List<T> elements, int index) {
@@ -518,24 +592,69 @@ public class TicketReservationManager {
     }
 
     List<SpecialPrice> reserveTokensForAccessCode(TicketReservationWithOptionalCodeModification ticketReservation, PromoCodeDiscount accessCode) {
+        int quantity = ticketReservation.getQuantity();
+        int categoryId = ticketReservation.getTicketCategoryId();
         try {
-            // since we're going to get some tokens for an access code, we lock the access code itself until we're done.
-            // This will allow us to serialize the requests and limit the contention
-            Validate.isTrue(promoCodeDiscountRepository.lockAccessCodeForUpdate(accessCode.getId()).equals(accessCode.getId()));
-            List<SpecialPrice> boundSpecialPrices = specialPriceRepository.bindToAccessCode(ticketReservation.getTicketCategoryId(), accessCode.getId(), ticketReservation.getQuantity());
-            if(boundSpecialPrices.size() != ticketReservation.getQuantity()) {
+            List<SpecialPrice> boundSpecialPrices;
+            if(accessCode.getMaxUsage() == null) {
+                // tokens are claimed with "skip locked"
+                boundSpecialPrices = specialPriceRepository.bindToAccessCode(categoryId, accessCode.getId(), quantity);
+            } else {
+                // the max usage is split into stripes (see the access_code_stripe table). The slots are claimed in a single
+                // statement which never waits for other transactions, so that concurrent requests don't wait for each other
+                var stripes = promoCodeDiscountRepository.claimAccessCodeSlots(accessCode.getId(), quantity);
+                if(stripes.size() != quantity) {
+                    if(promoCodeDiscountRepository.countAvailableAccessCodeSlots(accessCode.getId()) < quantity) {
+                        throw new TooManyTicketsForDiscountCodeException();
+                    }
+                    // the slots left are locked by other reservations, which could be rolled back
+                    throw new AccessCodeSlotsBusyException();
+                }
+                boundSpecialPrices = specialPriceRepository.bindToAccessCodeStripes(categoryId, accessCode.getId(), stripes, quantity);
+            }
+            if(boundSpecialPrices.size() != quantity) {
                 throw new NotEnoughTicketsException();
             }
             return boundSpecialPrices;
-        } catch (Exception e) {
+        } catch (DataAccessException e) {
             log.trace("constraints violated", e);
-            if(e instanceof NotEnoughTicketsException) {
-                throw e;
-            }
             throw new TooManyTicketsForDiscountCodeException();
         }
     }
 
+    /**
+     * Runs the given attempt in a new transaction, retrying it while the slots of the access code are locked by other
+     * reservations. The transaction of a failed attempt is rolled back, so that its locks are released before retrying.
+     * If a transaction is already active, the attempt is run only once.
+     *
+     * @param attempt the operation to run
+     * @return the result of the first successful attempt
+     * @throws AccessCodeSlotsBusyException if all the attempts failed
+     */
+    <T> T retryIfAccessCodeIsBusy(Supplier<T> attempt) {
+        if(TransactionSynchronizationManager.isActualTransactionActive()) {
+            // the locks of a failed attempt would be kept until the end of the current transaction
+            return attempt.get();
+        }
+        for (int i = 1; ; i++) {
+            try {
+                return transactionTemplate.execute(status -> attempt.get());
+            } catch (AccessCodeSlotsBusyException e) {
+                if(i == MAX_ACCESS_CODE_ATTEMPTS) {
+                    throw e;
+                }
+                log.trace("access code slots are busy, attempt {}", i);
+                try {
+                    // outside of the transaction, so that we don't hold any lock or connection
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(5, 20) * i);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
     private void reserveAdditionalServicesForReservation(int eventId, String transactionId, ASReservationWithOptionalCodeModification additionalServiceReservation, PromoCodeDiscount discount) {
         Optional.ofNullable(additionalServiceReservation.getAdditionalServiceId())
             .flatMap(id -> additionalServiceRepository.getOptionalById(id, eventId))
@@ -572,11 +691,21 @@ public class TicketReservationManager {
         TicketCategory category = ticketCategoryRepository.getByIdAndActive(categoryId, eventId);
         List<String> statusesAsString = requiredStatuses.stream().map(TicketStatus::name).collect(toList());
         if(category.isBounded()) {
-            return ticketRepository.selectTicketInCategoryForUpdateSkipLocked(eventId, categoryId, qty, statusesAsString);
+            var selected = ticketRepository.selectTicketInCategoryForUpdateSkipLocked(eventId, categoryId, qty, statusesAsString);
+            if(selected.size() < qty && canMaterialize(category, requiredStatuses)
+                && ticketRowMaterializer.materialize(eventRepository.findEventAndOrganizationIdById(eventId), category, qty - selected.size()) > 0) {
+                // rows locked by the current transaction are not skipped, so we can select again the whole quantity
+                return ticketRepository.selectTicketInCategoryForUpdateSkipLocked(eventId, categoryId, qty, statusesAsString);
+            }
+            return selected;
         }
         return ticketRepository.selectNotAllocatedTicketsForUpdateSkipLocked(eventId, qty, statusesAsString);
     }
 
+    private static boolean canMaterialize(TicketCategory category, List<TicketStatus> requiredStatuses) {
+        return category.isBounded() && requiredStatuses.contains(TicketStatus.FREE);
+    }
+
     Optional<SpecialPrice> fixToken(Optional<SpecialPrice> token, int ticketCategoryId, int eventId, TicketReservationWithOptionalCodeModification ticketReservation) {
 
         TicketCategory ticketCategory = ticketCategoryRepository.getByIdAndActive(ticketCategoryId, eventId);
@@ -701,8 +830,11 @@ public class TicketReservationManager {
             .orElse(true);
 
         if(remoteDeleteResult) {
-            reTransitionToPending(reservationId);
-            auditingRepository.insert(reservationId, null, purchaseContext.event().map(Event::getId).orElse(null), RESET_PAYMENT, new Date(), RESERVATION, reservationId);
+            // joins the current transaction, if any. See checkPendingTransactionBeforeExpiration
+            transactionTemplate.executeWithoutResult(status -> {
+                reTransitionToPending(reservationId);
+                auditingRepository.insert(reservationId, null, purchaseContext.event().map(Event::getId).orElse(null), RESET_PAYMENT, new Date(), RESERVATION, reservationId);
+            });
             return true;
         }
         log.warn("Cannot delete payment with ID {} for reservation {}", transaction.getPaymentId(), reservationId);
@@ -1376,47 +1508,75 @@ public class TicketReservationManager {
         };
     }
 
+    /**
+     * Removes a batch of expired reservations. The given candidates are locked with "skip locked", so that
+     * reservations which are being processed by another node (or by the user) are not touched.
+     * Reservations with a pending transaction are removed only if they are contained in {@code checkedReservations}
+     *
+     * @param candidates expired reservation IDs
+     * @param expirationDate expiration date
+     * @param checkedReservations reservations whose pending transaction has been already checked
+     * @return the number of removed reservations
+     */
     @Transactional
-    public void cleanupExpiredReservations(Date expirationDate) {
-        List<String> expiredReservationIds = ticketReservationRepository.findExpiredReservationForUpdate(expirationDate);
-        if(expiredReservationIds.isEmpty()) {
-            return;
-        }
-
-        List<String> reservationsToIgnore = new ArrayList<>();
-        // check if any of the above reservation has a pending transaction with a webhook-capable payment provider.
-        // if so, we'll force the remote status check in order to prevent deletion of paid (or pending) reservations
-        ticketReservationRepository.findReservationsWithPendingTransaction(expiredReservationIds)
-            .forEach(reservation -> {
-                var purchaseContextOptional = purchaseContextManager.findByReservationId(reservation.getId());
-                if (purchaseContextOptional.isPresent()) {
-                    var purchaseContext = purchaseContextOptional.get();
-                    var resultOptional = forceTransactionCheck(purchaseContext, reservation);
-                    var reservationId = reservation.getId();
-                    if (resultOptional.isPresent()) {
-                        var result = resultOptional.get();
-                        if (result.isSuccessful()) {
-                            // payment is successful, so reservation must not be deleted
-                            log.debug("Force check for expired reservation ID {} revealed a completed transaction. Will not delete.", reservationId);
-                            reservationsToIgnore.add(reservationId);
-                        } else {
-                            // we need to cancel the pending payment, otherwise we could end up with a mismatch
-                            boolean cancelPendingPaymentResult = cancelPendingPayment(reservationId, purchaseContext);
-                            log.warn("Trying to force pending payment cancellation for reservation ID {}. Successful: {}", reservationId, cancelPendingPaymentResult);
-                        }
-                    } else {
-                        log.trace("No result from forceTransactionCheck for reservation ID {}", reservationId);
-                    }
-
-                } else {
-                    log.warn("PurchaseContext not found for reservation ID {}", reservation.getId());
-                }
-            });
-
-        var toDelete = expiredReservationIds.stream()
-            .filter(id -> !reservationsToIgnore.contains(id))
+    public int cleanupExpiredReservationsBatch(List<String> candidates, Date expirationDate, Set<String> checkedReservations) {
+        if(candidates.isEmpty()) {
+            return 0;
+        }
+        List<String> locked = ticketReservationRepository.lockExpiredReservationsForUpdate(candidates, expirationDate);
+        if(locked.isEmpty()) {
+            return 0;
+        }
+        var notChecked = ticketReservationRepository.findReservationsWithPendingTransaction(locked).stream()
+            .map(TicketReservation::getId)
+            .filter(id -> !checkedReservations.contains(id))
+            .collect(toSet());
+        var toDelete = locked.stream()
+            .filter(id -> !notChecked.contains(id))
             .collect(toList());
+        removeExpiredReservations(toDelete);
+        return toDelete.size();
+    }
 
+    /**
+     * Forces the remote check of the pending transaction of an expired reservation, if the payment provider supports it.
+     * If the transaction has not been completed, it will be cancelled.
+     * <p>
+     * The remote calls can take several seconds, therefore this method does not run in a transaction, so that
+     * no database connection is held while waiting for the payment provider.
+     *
+     * @param reservation the expired reservation
+     * @return {@code true} if the reservation can be removed
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public boolean checkPendingTransactionBeforeExpiration(TicketReservation reservation) {
+        var reservationId = reservation.getId();
+        var purchaseContextOptional = purchaseContextManager.findByReservationId(reservationId);
+        if (purchaseContextOptional.isEmpty()) {
+            log.warn("PurchaseContext not found for reservation ID {}", reservationId);
+            return true;
+        }
+        var purchaseContext = purchaseContextOptional.get();
+        var resultOptional = forceTransactionCheck(purchaseContext, reservation);
+        if (resultOptional.isEmpty()) {
+            log.trace("No result from forceTransactionCheck for reservation ID {}", reservationId);
+            return true;
+        }
+        if (resultOptional.get().isSuccessful()) {
+            // payment is successful, so reservation must not be deleted
+            log.debug("Force check for expired reservation ID {} revealed a completed transaction. Will not delete.", reservationId);
+            return false;
+        }
+        // we need to cancel the pending payment, otherwise we could end up with a mismatch
+        boolean cancelPendingPaymentResult = cancelPendingPayment(reservationId, purchaseContext);
+        log.warn("Trying to force pending payment cancellation for reservation ID {}. Successful: {}", reservationId, cancelPendingPaymentResult);
+        return true;
+    }
+
+    private void removeExpiredReservations(List<String> toDelete) {
+        if(toDelete.isEmpty()) {
+            return;
+        }
         subscriptionRepository.deleteSubscriptionWithReservationId(toDelete);
         specialPriceRepository.resetToFreeAndCleanupForReservation(toDelete);
         ticketRepository.resetCategoryIdForUnboundedCategories(toDelete);
@@ -1435,6 +1595,7 @@ public class TicketReservationManager {
             extensionManager.handleReservationsExpiredForEvent(event, reservationIds);
             billingDocumentRepository.deleteForReservations(reservationIds, eventId);
             transactionRepository.deleteForReservations(reservationIds);
+            ticketInventoryGate.invalidate(eventId);
         });
         //
         ticketReservationRepository.remove(toDelete);
@@ -1932,6 +2093,7 @@ public class TicketReservationManager {
                 tickedId -> ticketRepository.releaseExpiredTicket(reservationId, event.getId(), tickedId, UUID.randomUUID().toString())
             ).sum();
             Validate.isTrue(updatedTickets  + updatedAS > 0, "no items have been updated");
+            ticketInventoryGate.invalidate(event.getId());
         });
         transactionRepository.deleteForReservations(List.of(reservationId));
         waitingQueueManager.fireReservationExpired(reservationId);
@@ -2154,19 +2316,58 @@ public class TicketReservationManager {
     }
 
     public void sendReminderForTicketAssignment() {
-        getNotifiableEventsStream()
-                .map(e -> Pair.of(e, ticketRepository.findAllReservationsConfirmedButNotAssignedForUpdate(e.getId())))
-                .filter(p -> !p.getRight().isEmpty())
-                .forEach(p -> Wrappers.voidTransactionWrapper(this::sendAssignmentReminder, p));
+        dirtyEventTracker.visitDirtyEvents(DirtyEventTracker.Job.TICKET_ASSIGNMENT_REMINDER, eventId -> eventRepository.findOptionalById(eventId)
+            .map(this::sendTicketAssignmentReminderForEvent)
+            .orElse(false));
+    }
+
+    /**
+     * @return {@code true} if the event must be visited again
+     */
+    private boolean sendTicketAssignmentReminderForEvent(Event event) {
+        int days = daysBeforeEventStart(event);
+        if(days <= 0) {
+            return false;
+        }
+        if(days > getAssignmentReminderStart(event)) {
+            // too early, we'll try again later
+            return true;
+        }
+        var reservations = ticketRepository.findAllReservationsConfirmedButNotAssignedForUpdate(event.getId());
+        if(reservations.isEmpty()) {
+            return false;
+        }
+        Wrappers.voidTransactionWrapper(this::sendAssignmentReminder, Pair.of(event, reservations));
+        // the reminder is repeated until all the tickets have been assigned
+        return true;
     }
 
     public void sendReminderForOptionalData() {
-        getNotifiableEventsStream()
-                .filter(e -> configurationManager.getFor(OPTIONAL_DATA_REMINDER_ENABLED, ConfigurationLevel.event(e)).getValueAsBooleanOrDefault())
-                .filter(e -> ticketFieldRepository.countAdditionalFieldsForEvent(e.getId()) > 0)
-                .map(e -> Pair.of(e, ticketRepository.findAllAssignedButNotYetNotifiedForUpdate(e.getId())))
-                .filter(p -> !p.getRight().isEmpty())
-                .forEach(p -> Wrappers.voidTransactionWrapper(this::sendOptionalDataReminder, p));
+        dirtyEventTracker.visitDirtyEvents(DirtyEventTracker.Job.OPTIONAL_DATA_REMINDER, eventId -> eventRepository.findOptionalById(eventId)
+            .map(this::sendOptionalDataReminderForEvent)
+            .orElse(false));
+    }
+
+    /**
+     * @return {@code true} if the event must be visited again
+     */
+    private boolean sendOptionalDataReminderForEvent(Event event) {
+        int days = daysBeforeEventStart(event);
+        if(days <= 0) {
+            return false;
+        }
+        if(days > getAssignmentReminderStart(event)
+            || !configurationManager.getFor(OPTIONAL_DATA_REMINDER_ENABLED, ConfigurationLevel.event(event)).getValueAsBooleanOrDefault()
+            || ticketFieldRepository.countAdditionalFieldsForEvent(event.getId()) == 0) {
+            // the configuration might change before the event starts
+            return true;
+        }
+        var tickets = ticketRepository.findAllAssignedButNotYetNotifiedForUpdate(event.getId());
+        if(tickets.isEmpty()) {
+            return false;
+        }
+        Wrappers.voidTransactionWrapper(this::sendOptionalDataReminder, Pair.of(event, tickets));
+        return true;
     }
 
     private void sendOptionalDataReminder(Pair<Event, List<Ticket>> eventAndTickets) {
@@ -2192,11 +2393,20 @@ public class TicketReservationManager {
 
     Stream<Event> getNotifiableEventsStream() {
         return eventRepository.findAll().stream()
-                .filter(e -> {
-                    int daysBeforeStart = configurationManager.getFor(ASSIGNMENT_REMINDER_START, ConfigurationLevel.event(e)).getValueAsIntOrDefault(10);
-                    int days = (int) ChronoUnit.DAYS.between(ZonedDateTime.now(clockProvider.withZone(e.getZoneId())).toLocalDate(), e.getBegin().toLocalDate());
-                    return days > 0 && days <= daysBeforeStart;
-                });
+                .filter(this::isNotifiable);
+    }
+
+    private boolean isNotifiable(Event event) {
+        int days = daysBeforeEventStart(event);
+        return days > 0 && days <= getAssignmentReminderStart(event);
+    }
+
+    private int getAssignmentReminderStart(Event event) {
+        return configurationManager.getFor(ASSIGNMENT_REMINDER_START, ConfigurationLevel.event(event)).getValueAsIntOrDefault(10);
+    }
+
+    private int daysBeforeEventStart(Event event) {
+        return (int) ChronoUnit.DAYS.between(ZonedDateTime.now(clockProvider.withZone(event.getZoneId())).toLocalDate(), event.getBegin().toLocalDate());
     }
 
     private void sendAssignmentReminder(Pair<Event, Set<String>> p) {
@@ -2241,6 +2451,14 @@ public class TicketReservationManager {
         return configurationManager.getShortReservationID(event, reservation);
     }
 
+    /**
+     * Returns the availability of all the categories of the given event, for display purposes.
+     * The result can be slightly stale, see {@link TicketInventoryGate#MAX_STALENESS}.
+     */
+    public AvailabilitySnapshot getAvailabilitySnapshot(EventAndOrganizationId event) {
+        return ticketInventoryGate.getAvailabilitySnapshot(event.getId());
+    }
+
     public int countAvailableTickets(EventAndOrganizationId event, TicketCategory category) {
         if(category.isBounded()) {
             return ticketRepository.countFreeTickets(event.getId(), category.getId());
@@ -2270,6 +2488,7 @@ public class TicketReservationManager {
         if(category.isAccessRestricted() || !category.isBounded()) {
             ticketRepository.unbindTicketsFromCategory(event.getId(), category.getId(), singletonList(ticket.getId()));
         }
+        ticketInventoryGate.invalidate(event.getId());
         Organization organization = organizationRepository.getById(event.getOrganizationId());
         Map<String, Object> model = TemplateResource.buildModelForTicketHasBeenCancelled(organization, event, ticket);
         Locale locale = LocaleUtil.forLanguageTag(Optional.ofNullable(ticket.getUserLanguage()).orElse("en"));
@@ -2722,8 +2941,11 @@ public class TicketReservationManager {
     }
 
     public void checkOfflinePaymentsStatus() {
-        eventRepository.findAllActives(ZonedDateTime.now(clockProvider.getClock()))
-            .forEach(this::checkOfflinePaymentsForEvent);
+        var now = ZonedDateTime.now(clockProvider.getClock());
+        dirtyEventTracker.visitDirtyEvents(DirtyEventTracker.Job.OFFLINE_PAYMENTS, eventId -> eventRepository.findOptionalById(eventId)
+            .filter(event -> event.getEnd().isAfter(now))
+            .map(this::checkOfflinePaymentsForEvent)
+            .orElse(false));
     }
 
     public Optional<String> createSubscriptionReservation(SubscriptionDescriptor subscriptionDescriptor,
@@ -2743,6 +2965,7 @@ public class TicketReservationManager {
         return Optional.empty();
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public Optional<String> createTicketReservation(Event event,
                                                     List<TicketReservationWithOptionalCodeModification> list,
                                                     List<ASReservationWithOptionalCodeModification> additionalServices,
@@ -2752,14 +2975,14 @@ public class TicketReservationManager {
                                                     Principal principal) {
         Date expiration = DateUtils.addMinutes(new Date(), getReservationTimeout(event));
         try {
-            var reservationId = createTicketReservation(event,
+            var reservationId = retryIfAccessCodeIsBusy(() -> createTicketReservation(event,
                 list,
                 additionalServices,
                 expiration,
                 promoCodeDiscount,
                 locale,
                 false,
-                principal);
+                principal));
             return Optional.of(reservationId);
         } catch (TicketReservationManager.NotEnoughTicketsException nete) {
             bindingResult.reject(ErrorsCode.STEP_1_NOT_ENOUGH_TICKETS);
@@ -2769,6 +2992,8 @@ public class TicketReservationManager {
             bindingResult.reject(ErrorsCode.STEP_1_CODE_NOT_FOUND);
         } catch (TicketReservationManager.TooManyTicketsForDiscountCodeException tooMany) {
             bindingResult.reject(ErrorsCode.STEP_2_DISCOUNT_CODE_USAGE_EXCEEDED);
+        } catch (AccessCodeSlotsBusyException busy) {
+            bindingResult.reject(ErrorsCode.STEP_1_ACCESS_CODE_BUSY);
         } catch (CannotProceedWithPayment cannotProceedWithPayment) {
             bindingResult.reject(ErrorsCode.STEP_1_CATEGORIES_NOT_COMPATIBLE);
             log.error("missing payment methods", cannotProceedWithPayment);
@@ -2812,21 +3037,25 @@ public class TicketReservationManager {
         }
     }
 
-    private void checkOfflinePaymentsForEvent(Event event) {
+    /**
+     * @return {@code true} if the event must be visited again
+     */
+    private boolean checkOfflinePaymentsForEvent(Event event) {
         log.trace("check offline payments for event {}", event.getShortName());
         var paymentContext = new PaymentContext(event);
         var providers = paymentManager.streamActiveProvidersByProxyAndCapabilities(PaymentProxy.OFFLINE, paymentContext, List.of(OfflineProcessor.class))
             .collect(toList());
         if(providers.isEmpty()) {
             log.trace("No active offline provider has been found. Exiting...");
-            return;
+            // the event is flagged again if an offline provider is configured later (see V204_2.0.0.63)
+            return false;
         }
         var pendingReservationsMap = ticketSearchRepository.findOfflineReservationsWithPendingTransaction(event.getId()).stream()
             .collect(toMap(tr -> tr.getTicketReservation().getId(), Function.identity()));
 
         if(pendingReservationsMap.isEmpty()) {
             log.trace("no pending reservations found. Exiting...");
-            return;
+            return false;
         }
 
         var errors = new ArrayList<String>();
@@ -2863,8 +3092,8 @@ public class TicketReservationManager {
             notificationManager.sendSimpleEmail(event, null, organization.getEmail(), cc, subject,
             	() -> templateManager.renderTemplate(event, TemplateResource.OFFLINE_PAYMENT_MATCHES_FOUND, model, Locale.ENGLISH));
         }
-
-
+        // unmatched reservations will be checked again during the next run
+        return !pendingReservationsMap.isEmpty();
     }
 
     private void processResults(Event event, Map<String, TicketReservationWithTransaction> pendingReservationsMap, ArrayList<String> errors, ArrayList<String> confirmed, ArrayList<String> pendingReview, Result<List<String>> matching) {
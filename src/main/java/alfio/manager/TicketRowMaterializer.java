@@ -0,0 +1,151 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.system.ConfigurationLevel;
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.EventAndOrganizationId;
+import alfio.model.TicketCategory;
+import alfio.repository.TicketCategoryCapacityRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
+import alfio.util.ClockProvider;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import static alfio.model.system.ConfigurationKeys.TICKET_ROWS_ON_DEMAND;
+import static alfio.util.EventUtil.buildTicketParams;
+import static alfio.util.EventUtil.generateStreamForTicketCreation;
+
+/**
+ * Creates the ticket rows of bounded categories on demand.
+ * <p>
+ * When {@link alfio.model.system.ConfigurationKeys#TICKET_ROWS_ON_DEMAND} is active, the bounded categories of a new event
+ * are registered in the ticket_category_capacity table instead of being expanded to one row per seat. Rows are then
+ * created in chunks by the reservation process, as soon as the existing ones have been consumed.
+ * <p>
+ * Admin operations touch only the rows they actually move:
+ * <ul>
+ *     <li>before moving all the remaining tickets of a category somewhere else (re-allocation, deletion), the rows of
+ *     that category only are created with {@link #materializeCategory(EventAndOrganizationId, int)}</li>
+ *     <li>existing rows moved into a category are accounted with {@link #ticketsMovedIn(int, int)}</li>
+ *     <li>when a category is shrunk, the capacity which has not been materialized is reduced first,
+ *     see {@link #shrinkToMaxTickets(int)}</li>
+ * </ul>
+ */
+@Component
+@Transactional
+@AllArgsConstructor
+@Log4j2
+public class TicketRowMaterializer {
+
+    static final int MATERIALIZATION_CHUNK = 50;
+
+    private final TicketCategoryCapacityRepository ticketCategoryCapacityRepository;
+    private final TicketRepository ticketRepository;
+    private final TicketCategoryRepository ticketCategoryRepository;
+    private final ConfigurationManager configurationManager;
+    private final ClockProvider clockProvider;
+
+    public boolean isEnabled(int organizationId) {
+        return configurationManager.getFor(TICKET_ROWS_ON_DEMAND, ConfigurationLevel.organization(organizationId)).getValueAsBooleanOrDefault();
+    }
+
+    public void registerBoundedCategories(EventAndOrganizationId event, List<TicketCategory> categories) {
+        categories.stream()
+            .filter(TicketCategory::isBounded)
+            .forEach(tc -> ticketCategoryCapacityRepository.insert(tc.getId(), event.getId(), event.getOrganizationId()));
+    }
+
+    /**
+     * Creates at least {@code requested} FREE tickets for the given category, if there is enough capacity left.
+     * <p>
+     * The tickets are created and committed in a dedicated transaction, so that the capacity row is locked only while
+     * the rows are being created, and not until the end of the caller's transaction. Concurrent callers therefore wait
+     * only for a short materialization. Tickets created for a reservation which is then rolled back stay FREE.
+     *
+     * @return the number of created tickets
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int materialize(EventAndOrganizationId event, TicketCategory category, int requested) {
+        if(!category.isBounded()) {
+            return 0;
+        }
+        int toCreate = ticketCategoryCapacityRepository.tryReserveCapacity(category.getId(), Math.max(requested, MATERIALIZATION_CHUNK)).orElse(0);
+        if(toCreate > 0) {
+            createTickets(event, category, toCreate);
+            log.trace("created {} tickets for category {}", toCreate, category.getId());
+        }
+        return toCreate;
+    }
+
+    /**
+     * Creates all the remaining rows of the given category and stops the on-demand creation for it.
+     * Nothing is done if the rows of the category have already been created.
+     */
+    public void materializeCategory(EventAndOrganizationId event, int categoryId) {
+        int toCreate = ticketCategoryCapacityRepository.reserveCapacity(categoryId, Integer.MAX_VALUE).orElse(0);
+        if(toCreate > 0) {
+            createTickets(event, ticketCategoryRepository.getById(categoryId), toCreate);
+            log.debug("materialized {} tickets for category {}", toCreate, categoryId);
+        }
+        ticketCategoryCapacityRepository.delete(categoryId);
+    }
+
+    /**
+     * Accounts {@code amount} existing rows which have been moved into the given category, and whose seats have been
+     * added to its size.
+     */
+    public void ticketsMovedIn(int categoryId, int amount) {
+        if(amount > 0) {
+            ticketCategoryCapacityRepository.addMaterializedTickets(categoryId, amount);
+        }
+    }
+
+    /**
+     * Adjusts the capacity of the given category after its size has been reduced.
+     *
+     * @return the number of existing rows to be removed from the category, or empty if the rows of the category
+     * are not created on demand
+     */
+    public Optional<Integer> shrinkToMaxTickets(int categoryId) {
+        return ticketCategoryCapacityRepository.shrinkToMaxTickets(categoryId);
+    }
+
+    /**
+     * @return the number of tickets of the given category which don't have a row yet
+     */
+    public int countNotMaterialized(int categoryId) {
+        return ticketCategoryCapacityRepository.countNotMaterialized(categoryId).orElse(0);
+    }
+
+    private void createTickets(EventAndOrganizationId event, TicketCategory category, int amount) {
+        var creation = Date.from(clockProvider.getClock().instant());
+        var params = generateStreamForTicketCreation(amount)
+            .map(ps -> buildTicketParams(event.getId(), creation, Optional.of(category), category.getSrcPriceCts(), ps))
+            .toArray(MapSqlParameterSource[]::new);
+        ticketRepository.bulkTicketInitialization(params);
+    }
+}
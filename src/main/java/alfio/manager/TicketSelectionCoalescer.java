@@ -0,0 +1,217 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.model.TicketCategory;
+import alfio.repository.TicketRepository;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces the ticket selection of concurrent reservation requests for the same category.
+ * <p>
+ * Only one selection query at a time runs for a given category. The requests arriving while it runs are queued, and the
+ * first of them which gets the turn runs a single, non-locking, selection query for all the queued requests, handing each
+ * caller a disjoint set of ticket IDs. Each caller then locks and reserves its own tickets by primary key, within its own transaction.
+ * Since {@link #claimCandidates(int, TicketCategory, int)} is called within the reservation transaction, a caller waits for
+ * the running selection query at most for {@link #BATCH_WINDOW_NANOS}: if it doesn't get the turn in time, it falls back
+ * immediately to the standard {@code select ... for update skip locked} query, which doesn't wait either.
+ * <p>
+ * In order to let the requests pile up, callers are expected to invoke {@link #awaitBatchWindow(int, Collection)} before
+ * starting the reservation transaction: if other requests for the same categories are in progress, it waits for
+ * {@link #BATCH_WINDOW_NANOS}.
+ * <p>
+ * Since the candidates are not locked by the selection query, a candidate can be taken in the meantime by another node.
+ * In that case the caller reserves less tickets than requested and must fall back to the standard
+ * {@code select ... for update skip locked} query.
+ * <p>
+ * The state of a category is dropped as soon as there are no more requests in progress for it.
+ */
+@Component
+@Log4j2
+public class TicketSelectionCoalescer {
+
+    static final long BATCH_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final TicketRepository ticketRepository;
+    private final ConcurrentHashMap<Pair<Integer, Integer>, CategoryState> states = new ConcurrentHashMap<>();
+
+    public TicketSelectionCoalescer(TicketRepository ticketRepository) {
+        this.ticketRepository = ticketRepository;
+    }
+
+    /**
+     * Waits for {@link #BATCH_WINDOW_NANOS} if other requests for the given categories are in progress, so that the requests
+     * arriving in the meantime can be served by a single selection query. This method must be called outside of any
+     * transaction, since it doesn't make sense to hold a database connection while waiting.
+     *
+     * @param eventId the event ID
+     * @param categoryIds the requested categories
+     */
+    public void awaitBatchWindow(int eventId, Collection<Integer> categoryIds) {
+        // we don't know here whether a category is bounded, so we check the unbounded pool as well
+        boolean busy = states.containsKey(Pair.of(eventId, null))
+            || categoryIds.stream().anyMatch(categoryId -> states.containsKey(Pair.of(eventId, categoryId)));
+        if(busy) {
+            LockSupport.parkNanos(BATCH_WINDOW_NANOS);
+        }
+    }
+
+    /**
+     * Claims {@code quantity} candidate FREE tickets for the given category. The candidates are not locked, but they won't be
+     * handed out to other requests coming to this node until the current transaction (if any) has been completed.
+     *
+     * @param eventId the event ID
+     * @param category the category
+     * @param quantity requested quantity
+     * @return the candidate ticket IDs. The list can contain less elements than requested, in which case the caller
+     * has to fall back to the standard selection query.
+     */
+    public List<Integer> claimCandidates(int eventId, TicketCategory category, int quantity) {
+        var key = key(eventId, category);
+        var state = states.compute(key, (k, existing) -> {
+            var result = existing != null ? existing : new CategoryState();
+            result.activeRequests++;
+            return result;
+        });
+        List<Integer> candidates = List.of();
+        try {
+            candidates = claim(key, state, quantity);
+            return candidates;
+        } finally {
+            releaseAfterCompletion(key, candidates);
+        }
+    }
+
+    private List<Integer> claim(Pair<Integer, Integer> key, CategoryState state, int quantity) {
+        var request = new Request(quantity);
+        state.queue(request);
+        try {
+            // we are in a transaction: we don't wait longer than the batch window
+            if(state.selectionLock.tryLock(BATCH_WINDOW_NANOS, TimeUnit.NANOSECONDS)) {
+                try {
+                    // our request could have been served by the previous query
+                    if(!request.result.isDone()) {
+                        executeBatch(key, state, state.drainQueue());
+                    }
+                } finally {
+                    state.selectionLock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // if the request has not been served yet, we give up. A later query will skip it.
+        request.result.complete(List.of());
+        return request.result.join();
+    }
+
+    private void executeBatch(Pair<Integer, Integer> key, CategoryState state, List<Request> requests) {
+        try {
+            int total = requests.stream().mapToInt(r -> r.quantity).sum();
+            var excluded = Set.copyOf(state.inFlight);
+            int amount = total + excluded.size();
+            var categoryId = key.getRight();
+            var found = categoryId != null ? ticketRepository.findFreeTicketCandidatesInCategory(key.getLeft(), categoryId, amount)
+                : ticketRepository.findFreeNotAllocatedTicketCandidates(key.getLeft(), amount);
+            var available = found.stream().filter(id -> !excluded.contains(id)).iterator();
+            for (var request : requests) {
+                var ids = new ArrayList<Integer>(request.quantity);
+                while(ids.size() < request.quantity && available.hasNext()) {
+                    ids.add(available.next());
+                }
+                state.inFlight.addAll(ids);
+                if(!request.result.complete(ids)) {
+                    // the caller gave up in the meantime
+                    ids.forEach(state.inFlight::remove);
+                }
+            }
+            if(requests.size() > 1) {
+                log.trace("coalesced {} requests for {} tickets of {}", requests.size(), total, key);
+            }
+        } catch (RuntimeException e) {
+            log.warn("error while selecting tickets for {}", key, e);
+            requests.forEach(r -> r.result.complete(List.of()));
+        }
+    }
+
+    private void releaseAfterCompletion(Pair<Integer, Integer> key, List<Integer> ids) {
+        Runnable release = () -> states.computeIfPresent(key, (k, state) -> {
+            ids.forEach(state.inFlight::remove);
+            return --state.activeRequests == 0 ? null : state;
+        });
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    release.run();
+                }
+            });
+        } else {
+            release.run();
+        }
+    }
+
+    int countTrackedCategories() {
+        return states.size();
+    }
+
+    private static Pair<Integer, Integer> key(int eventId, TicketCategory category) {
+        // unbounded categories share the same pool of tickets
+        return Pair.of(eventId, category.isBounded() ? category.getId() : null);
+    }
+
+    private static class Request {
+        private final int quantity;
+        private final CompletableFuture<List<Integer>> result = new CompletableFuture<>();
+
+        private Request(int quantity) {
+            this.quantity = quantity;
+        }
+    }
+
+    private static class CategoryState {
+        // guarded by the map: modified only within compute / computeIfPresent
+        private int activeRequests;
+        private final ReentrantLock selectionLock = new ReentrantLock();
+        private final Set<Integer> inFlight = ConcurrentHashMap.newKeySet();
+        private List<Request> queue = new ArrayList<>();
+
+        private synchronized void queue(Request request) {
+            queue.add(request);
+        }
+
+        private synchronized List<Request> drainQueue() {
+            var result = queue;
+            queue = new ArrayList<>();
+            return result;
+        }
+    }
+}
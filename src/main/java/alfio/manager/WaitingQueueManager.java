@@ -64,6 +64,7 @@ public class WaitingQueueManager {
     private final EventRepository eventRepository;
     private final ExtensionManager extensionManager;
     private final ClockProvider clockProvider;
+    private final TicketRowMaterializer ticketRowMaterializer;
 
     public boolean subscribe(Event event, CustomerName customerName, String email, Integer selectedCategoryId, Locale userLanguage) {
         try {
@@ -189,17 +190,23 @@ public class WaitingQueueManager {
                 .map(tc -> Pair.of(determineAvailableSeats(ticketCategoriesStats.get(tc.getId()), eventStatisticView), ticketCategoriesStats.get(tc.getId())))
                 .collect(new PreReservedTicketDistributor(toBeGenerated));
         List<Integer> ids = collectedTickets.stream()
-                .flatMap(p -> selectTicketsForPreReservation(eventId, p).stream())
+                .flatMap(p -> selectTicketsForPreReservation(event, p).stream())
                 .collect(Collectors.toList());
 
         ticketRepository.preReserveTicket(ids);
     }
 
-    private List<Integer> selectTicketsForPreReservation(int eventId, Pair<Integer, TicketCategoryStatisticView> p) {
+    private List<Integer> selectTicketsForPreReservation(Event event, Pair<Integer, TicketCategoryStatisticView> p) {
+        int eventId = event.getId();
         TicketCategoryStatisticView category = p.getValue();
         Integer amount = p.getKey();
         if(category.isBounded()) {
-            return ticketRepository.selectFreeTicketsForPreReservation(eventId, amount, category.getId());
+            var ids = ticketRepository.selectFreeTicketsForPreReservation(eventId, amount, category.getId());
+            // the available seats include the tickets which have not been created yet
+            if(ids.size() < amount && ticketRowMaterializer.materialize(event, ticketCategoryRepository.getById(category.getId()), amount - ids.size()) > 0) {
+                ids = ticketRepository.selectFreeTicketsForPreReservation(eventId, amount, category.getId());
+            }
+            return ids;
         }
         return ticketRepository.selectNotAllocatedFreeTicketsForPreReservation(eventId, amount);
     }
@@ -41,6 +41,7 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 
 import java.sql.Date;
+import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -55,6 +56,9 @@ import static java.util.stream.Collectors.toList;
 @Log4j2
 public class WaitingQueueSubscriptionProcessor {
 
+    // events whose sales start before the next run are processed as well
+    private static final Duration SALES_START_LOOKAHEAD = Duration.ofMinutes(1);
+
     private final EventManager eventManager;
     private final TicketReservationManager ticketReservationManager;
     private final ConfigurationManager configurationManager;
@@ -66,25 +70,77 @@ public class WaitingQueueSubscriptionProcessor {
     private final TicketRepository ticketRepository;
     private final PlatformTransactionManager transactionManager;
     private final ClockProvider clockProvider;
+    private final TicketInventoryGate ticketInventoryGate;
+    private final DirtyEventTracker dirtyEventTracker;
 
+    /**
+     * Processes the events which have released tickets, or subscribers waiting for a ticket.
+     */
     public void handleWaitingTickets() {
-        Map<Boolean, List<Event>> activeEvents = eventManager.getActiveEvents().stream()
-            .collect(Collectors.partitioningBy(this::isWaitingListFormEnabled));
-        activeEvents.get(true).forEach(event -> {
-            TransactionStatus transaction = transactionManager.getTransaction(new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
-            try {
-                ticketReservationManager.revertTicketsToFreeIfAccessRestricted(event.getId());
-                revertTicketToFreeIfCategoryIsExpired(event);
-                distributeAvailableSeats(event);
-                transactionManager.commit(transaction);
-            } catch(Exception ex) {
-                if(!(ex instanceof TransactionException)) {
-                    transactionManager.rollback(transaction);
-                }
-                log.error("cannot process waiting list for event {}", event.getShortName(), ex);
-            }
+        Set<Integer> visited = new HashSet<>();
+        dirtyEventTracker.visitDirtyEvents(DirtyEventTracker.Job.WAITING_LIST, eventId -> {
+            visited.add(eventId);
+            return eventManager.getActiveEventById(eventId)
+                .map(this::handleReleasedTickets)
+                .orElse(false);
         });
-        activeEvents.get(false).forEach(eventManager::resetReleasedTickets);
+        // seats might become available for the subscribers also without any change to the tickets, e.g. when the sales start
+        var now = ZonedDateTime.now(clockProvider.getClock());
+        waitingQueueRepository.findEventsWithWaitingSubscribers(now, now.plus(SALES_START_LOOKAHEAD)).stream()
+            .filter(eventId -> !visited.contains(eventId))
+            .forEach(this::handleReleasedTickets);
+    }
+
+    /**
+     * Handles the tickets released for a single event. Called as soon as the release has been notified by the database.
+     *
+     * @param eventId the event ID
+     */
+    public void handleReleasedTickets(int eventId) {
+        eventManager.getActiveEventById(eventId).ifPresent(this::handleReleasedTickets);
+    }
+
+    /**
+     * @return {@code true} if there are still released tickets to be processed
+     */
+    private boolean handleReleasedTickets(Event event) {
+        if(isWaitingListFormEnabled(event)) {
+            // released tickets of categories which are not yet expired are kept for the subscribers
+            return !processWaitingList(event) || ticketRepository.countWaiting(event.getId()) > 0;
+        }
+        resetReleasedTickets(event);
+        return false;
+    }
+
+    /**
+     * @return {@code false} if the waiting list is being processed by another node
+     */
+    private boolean processWaitingList(Event event) {
+        TransactionStatus transaction = transactionManager.getTransaction(new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        try {
+            if(!waitingQueueRepository.tryLockForDistribution(event.getId())) {
+                log.debug("waiting list for event {} is already being processed", event.getShortName());
+                transactionManager.rollback(transaction);
+                return false;
+            }
+            ticketReservationManager.revertTicketsToFreeIfAccessRestricted(event.getId());
+            revertTicketToFreeIfCategoryIsExpired(event);
+            distributeAvailableSeats(event);
+            transactionManager.commit(transaction);
+            // released tickets might have been reverted to FREE
+            ticketInventoryGate.invalidate(event.getId());
+        } catch(Exception ex) {
+            if(!(ex instanceof TransactionException)) {
+                transactionManager.rollback(transaction);
+            }
+            log.error("cannot process waiting list for event {}", event.getShortName(), ex);
+        }
+        return true;
+    }
+
+    private void resetReleasedTickets(Event event) {
+        eventManager.resetReleasedTickets(event);
+        ticketInventoryGate.invalidate(event.getId());
     }
 
     public void revertTicketToFreeIfCategoryIsExpired(Event event) {
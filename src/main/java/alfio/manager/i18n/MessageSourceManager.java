@@ -16,13 +16,21 @@
  */
 package alfio.manager.i18n;
 
-import alfio.model.Event;
+import alfio.manager.system.ConfigurationCache;
+import alfio.manager.system.ConfigurationLevel;
+import alfio.model.EventAndOrganizationId;
 import alfio.model.PurchaseContext;
 import alfio.repository.system.ConfigurationRepository;
 import alfio.util.CustomResourceBundleMessageSource;
+import alfio.util.Json;
 import alfio.util.LocaleUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
 import org.springframework.context.MessageSource;
 import org.springframework.context.support.AbstractMessageSource;
 
@@ -39,13 +47,25 @@ import java.util.stream.Collectors;
 public class MessageSourceManager {
 
     private static final Pattern ARGUMENT_FINDER = Pattern.compile("\\{+(\\d+)}+");
+    private static final long MAX_MESSAGE_FORMATS = 10_000;
+    private static final long MAX_SERIALIZED_BUNDLES = 200;
     private final CustomResourceBundleMessageSource messageSource;
     private final ConfigurationRepository configurationRepository;
+    private final ConfigurationCache configurationCache;
+    // MessageFormat instances are shared: AbstractMessageSource synchronizes on them while formatting
+    private final Cache<Pair<Locale, String>, MessageFormat> messageFormats = Caffeine.newBuilder()
+        .maximumSize(MAX_MESSAGE_FORMATS)
+        .build();
+    private final Cache<Triple<String, Locale, Map<String, String>>, SerializedBundle> serializedBundles = Caffeine.newBuilder()
+        .maximumSize(MAX_SERIALIZED_BUNDLES)
+        .build();
 
     public MessageSourceManager(CustomResourceBundleMessageSource messageSource,
-                                ConfigurationRepository configurationRepository) {
+                                ConfigurationRepository configurationRepository,
+                                ConfigurationCache configurationCache) {
         this.messageSource = messageSource;
         this.configurationRepository = configurationRepository;
+        this.configurationCache = configurationCache;
     }
 
     public Set<String> getKeys(String basename, Locale locale) {
@@ -54,9 +74,10 @@ public class MessageSourceManager {
 
     public Pair<MessageSource, Map<String, Map<String, String>>> getMessageSourceForPurchaseContextAndOverride(PurchaseContext purchaseContext) {
         Map<String, Map<String, String>> override = purchaseContext.event()
-            .map(event -> configurationRepository.getEventOverrideMessages(event.getOrganizationId(), event.getId()))
-            .orElseGet(() -> configurationRepository.getOrganizationOverrideMessages(purchaseContext.getOrganizationId()));
-        return Pair.of(new MessageSourceWithOverride(messageSource, override), override);
+            .map(event -> getEventOverride(event.getOrganizationId(), event.getId()))
+            .orElseGet(() -> configurationCache.getTranslationOverride(ConfigurationLevel.organization(purchaseContext.getOrganizationId()),
+                () -> configurationRepository.getOrganizationOverrideMessages(purchaseContext.getOrganizationId())));
+        return Pair.of(new MessageSourceWithOverride(messageSource, override, messageFormats), override);
     }
 
     public MessageSource getMessageSourceFor(PurchaseContext purchaseContext) {
@@ -64,8 +85,16 @@ public class MessageSourceManager {
     }
 
     public MessageSource getMessageSourceFor(int orgId, int eventId) {
-        var override = configurationRepository.getEventOverrideMessages(orgId, eventId);
-        return new MessageSourceWithOverride(messageSource, override);
+        return new MessageSourceWithOverride(messageSource, getEventOverride(orgId, eventId), messageFormats);
+    }
+
+    private Map<String, Map<String, String>> getSystemOverride() {
+        return configurationCache.getTranslationOverride(ConfigurationLevel.system(), configurationRepository::getSystemOverrideMessages);
+    }
+
+    private Map<String, Map<String, String>> getEventOverride(int orgId, int eventId) {
+        return configurationCache.getTranslationOverride(ConfigurationLevel.event(new EventAndOrganizationId(eventId, orgId)),
+            () -> configurationRepository.getEventOverrideMessages(orgId, eventId));
     }
 
     public MessageSource getRootMessageSource() {
@@ -74,7 +103,7 @@ public class MessageSourceManager {
 
     public MessageSource getRootMessageSource(boolean withSystemOverride) {
         if (withSystemOverride) {
-            return new MessageSourceWithOverride(messageSource, configurationRepository.getSystemOverrideMessages());
+            return new MessageSourceWithOverride(messageSource, getSystemOverride(), messageFormats);
         } else {
             return messageSource;
         }
@@ -102,20 +131,57 @@ public class MessageSourceManager {
 
     public Map<String, String> getBundleAsMap(String baseName, boolean withSystemOverride, String lang) {
         var locale = LocaleUtil.forLanguageTag(lang);
-        var messageSource = getRootMessageSource(withSystemOverride);
+        return buildBundle(baseName, locale, getRootMessageSource(withSystemOverride));
+    }
+
+    /**
+     * Returns the bundle for the given language, already serialized as JSON.
+     * Bundles are built only once for each version of the system override, which is identified by the ETag.
+     *
+     * @param baseName the bundle base name
+     * @param withSystemOverride whether the system override should be applied
+     * @param lang the language
+     * @return the serialized bundle
+     */
+    public SerializedBundle getSerializedBundle(String baseName, boolean withSystemOverride, String lang) {
+        var locale = LocaleUtil.forLanguageTag(lang);
+        Map<String, String> override = withSystemOverride ? getSystemOverride().getOrDefault(locale.getLanguage(), Map.of()) : Map.of();
+        return serializedBundles.get(Triple.of(baseName, locale, override), key -> {
+            var source = new MessageSourceWithOverride(messageSource, Map.of(locale.getLanguage(), override), messageFormats);
+            var json = Json.toJson(buildBundle(baseName, locale, source));
+            return new SerializedBundle(json, DigestUtils.sha256Hex(json));
+        });
+    }
+
+    private Map<String, String> buildBundle(String baseName, Locale locale, MessageSource source) {
         return getKeys(baseName, locale)
             .stream()
-            .collect(Collectors.toMap(Function.identity(), k -> convertPlaceholder(messageSource.getMessage(k, EMPTY_ARRAY, locale))));
+            .collect(Collectors.toMap(Function.identity(), k -> convertPlaceholder(source.getMessage(k, EMPTY_ARRAY, locale))));
+    }
+
+    @Getter
+    public static class SerializedBundle {
+        private final String json;
+        private final String etag;
+
+        private SerializedBundle(String json, String etag) {
+            this.json = json;
+            this.etag = etag;
+        }
     }
 
     private static class MessageSourceWithOverride extends AbstractMessageSource {
 
         private final CustomResourceBundleMessageSource messageSource;
         private final Map<String, Map<String, String>> override;
+        private final Cache<Pair<Locale, String>, MessageFormat> messageFormats;
 
-        private MessageSourceWithOverride(CustomResourceBundleMessageSource messageSource, Map<String, Map<String, String>> override) {
+        private MessageSourceWithOverride(CustomResourceBundleMessageSource messageSource,
+                                          Map<String, Map<String, String>> override,
+                                          Cache<Pair<Locale, String>, MessageFormat> messageFormats) {
             this.messageSource = messageSource;
             this.override = override;
+            this.messageFormats = messageFormats;
         }
 
         @Override
@@ -123,7 +189,7 @@ public class MessageSourceManager {
             var language = locale.getLanguage();
             if (override.containsKey(language) && override.get(language).containsKey(s)) {
                 var pattern = cleanArguments(override.get(language).get(s), "{$1}");
-                return new MessageFormat(pattern, locale);
+                return messageFormats.get(Pair.of(locale, pattern), k -> new MessageFormat(k.getRight(), k.getLeft()));
             }
             return messageSource.getMessageFormatFor(s, locale);
         }
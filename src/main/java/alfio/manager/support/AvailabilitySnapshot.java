@@ -0,0 +1,54 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import alfio.model.TicketCategory;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Availability of all the categories of an event, as loaded at a given point in time.
+ */
+public class AvailabilitySnapshot {
+
+    private final Map<Integer, Integer> freeTicketsByCategory;
+    private final int freeUnboundedTickets;
+    private final boolean noSeatsAvailable;
+
+    public AvailabilitySnapshot(Map<Integer, Integer> freeTicketsByCategory, int freeUnboundedTickets, boolean noSeatsAvailable) {
+        this.freeTicketsByCategory = Map.copyOf(freeTicketsByCategory);
+        this.freeUnboundedTickets = freeUnboundedTickets;
+        this.noSeatsAvailable = noSeatsAvailable;
+    }
+
+    public int countAvailableTickets(TicketCategory category) {
+        // unbounded categories share the same pool of tickets
+        return category.isBounded() ? freeTicketsByCategory.getOrDefault(category.getId(), 0) : freeUnboundedTickets;
+    }
+
+    public boolean isNoSeatsAvailable() {
+        return noSeatsAvailable;
+    }
+
+    /**
+     * @return a string which changes whenever the availability of at least one category changes
+     */
+    public String getFingerprint() {
+        return new TreeMap<>(freeTicketsByCategory) + ";" + freeUnboundedTickets + ";" + noSeatsAvailable;
+    }
+}
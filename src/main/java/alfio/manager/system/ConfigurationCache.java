@@ -0,0 +1,120 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.manager.system.ConfigurationManager.MaybeConfiguration;
+import alfio.model.system.CacheStatistics;
+import alfio.model.system.ConfigurationKeys;
+import alfio.model.system.ConfigurationPathLevel;
+import com.github.benmanes.caffeine.cache.Cache;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Caches the resolved configuration values by {@link ConfigurationLevel} and set of keys, and the merged
+ * translation overrides by {@link ConfigurationLevel}.
+ * <p>
+ * Entries are invalidated by {@link ConfigurationManager} whenever it modifies the configuration, and on every node
+ * when the database notifies a change on one of the configuration tables (see trigger "tr_notify_configuration_change").
+ * Since notifications can be lost, entries expire anyway after the given duration.
+ * <p>
+ * Uncommitted changes are handled by {@link TransactionAwareCache}.
+ */
+@Log4j2
+public class ConfigurationCache implements InitializingBean {
+
+    public static final String CHANNEL = "alfio_configuration";
+    private static final long MAX_SIZE = 10_000;
+    private static final Map<String, ConfigurationPathLevel> LEVEL_BY_TABLE = Map.of(
+        "configuration", ConfigurationPathLevel.SYSTEM,
+        "configuration_organization", ConfigurationPathLevel.ORGANIZATION,
+        "configuration_event", ConfigurationPathLevel.EVENT,
+        "configuration_ticket_category", ConfigurationPathLevel.TICKET_CATEGORY
+    );
+
+    private final Cache<Pair<ConfigurationLevel, Set<ConfigurationKeys>>, Map<ConfigurationKeys, MaybeConfiguration>> cache;
+    private final Cache<ConfigurationLevel, Map<String, Map<String, String>>> translationOverrides;
+    private final DatabaseNotificationListener databaseNotificationListener;
+    private final TransactionAwareCache transactionAwareCache = new TransactionAwareCache(() -> evict(ConfigurationPathLevel.SYSTEM));
+
+    public ConfigurationCache(Duration expiration, DatabaseNotificationListener databaseNotificationListener) {
+        this.cache = TransactionAwareCache.newCache(expiration, MAX_SIZE);
+        this.translationOverrides = TransactionAwareCache.newCache(expiration, MAX_SIZE);
+        this.databaseNotificationListener = databaseNotificationListener;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        databaseNotificationListener.subscribe(CHANNEL, this::onConfigurationChanged);
+    }
+
+    Map<ConfigurationKeys, MaybeConfiguration> get(ConfigurationLevel level,
+                                                    Collection<ConfigurationKeys> keys,
+                                                    Supplier<Map<ConfigurationKeys, MaybeConfiguration>> loader) {
+        // the result is copied, so that callers cannot modify the cached value
+        return new EnumMap<>(transactionAwareCache.get(cache, Pair.of(level, Set.copyOf(keys)), k -> loader.get()));
+    }
+
+    /**
+     * Returns the translation overrides for the given level. The result must not be modified.
+     */
+    public Map<String, Map<String, String>> getTranslationOverride(ConfigurationLevel level,
+                                                                   Supplier<Map<String, Map<String, String>>> loader) {
+        return transactionAwareCache.get(translationOverrides, level, k -> unmodifiable(loader.get()));
+    }
+
+    /**
+     * Invalidates all the entries which could be affected by a change at the given level,
+     * i.e. the entries for the same level and the more specific ones.
+     *
+     * @param level the modified level
+     */
+    void invalidate(ConfigurationPathLevel level) {
+        evict(level);
+        transactionAwareCache.markPendingChanges();
+    }
+
+    public List<CacheStatistics> getStatistics() {
+        return List.of(CacheStatistics.of("configuration", cache), CacheStatistics.of("translation-override", translationOverrides));
+    }
+
+    void onConfigurationChanged(String payload) {
+        var level = LEVEL_BY_TABLE.get(payload);
+        if(level == null) {
+            log.warn("unexpected payload {} on channel {}", payload, CHANNEL);
+            evict(ConfigurationPathLevel.SYSTEM);
+        } else {
+            evict(level);
+        }
+    }
+
+    private void evict(ConfigurationPathLevel level) {
+        cache.asMap().keySet().removeIf(k -> k.getLeft().getPathLevel().getPriority() >= level.getPriority());
+        translationOverrides.asMap().keySet().removeIf(k -> k.getPathLevel().getPriority() >= level.getPriority());
+    }
+
+    private static Map<String, Map<String, String>> unmodifiable(Map<String, Map<String, String>> override) {
+        var result = new HashMap<String, Map<String, String>>(override.size());
+        override.forEach((language, translations) -> result.put(language, Collections.unmodifiableMap(translations)));
+        return Collections.unmodifiableMap(result);
+    }
+}
@@ -18,6 +18,7 @@ package alfio.manager.system;
 
 import alfio.model.system.ConfigurationPathLevel;
 import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 
 import java.util.OptionalInt;
 
@@ -25,6 +26,7 @@ import static alfio.model.system.ConfigurationPathLevel.*;
 
 class ConfigurationLevels {
 
+    @EqualsAndHashCode
     static class ExternalLevel implements ConfigurationLevel {
         @Override
         public ConfigurationPathLevel getPathLevel() {
@@ -32,6 +34,7 @@ class ConfigurationLevels {
         }
     }
 
+    @EqualsAndHashCode
     static class SystemLevel implements ConfigurationLevel {
         @Override
         public ConfigurationPathLevel getPathLevel() {
@@ -40,6 +43,7 @@ class ConfigurationLevels {
     }
 
     @AllArgsConstructor
+    @EqualsAndHashCode
     static class OrganizationLevel implements ConfigurationLevel {
         final int organizationId;
 
@@ -55,6 +59,7 @@ class ConfigurationLevels {
     }
 
     @AllArgsConstructor
+    @EqualsAndHashCode
     static class EventLevel implements ConfigurationLevel {
         final int organizationId;
         final int eventId;
@@ -76,6 +81,7 @@ class ConfigurationLevels {
     }
 
     @AllArgsConstructor
+    @EqualsAndHashCode
     static class CategoryLevel implements ConfigurationLevel {
         final int organizationId;
         final int eventId;
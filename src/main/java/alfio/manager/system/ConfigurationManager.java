@@ -31,6 +31,7 @@ import alfio.model.TicketReservation;
 import alfio.model.modification.ConfigurationModification;
 import alfio.model.system.Configuration;
 import alfio.model.system.Configuration.*;
+import alfio.model.system.CacheStatistics;
 import alfio.model.system.ConfigurationKeyValuePathLevel;
 import alfio.model.system.ConfigurationKeys;
 import alfio.model.system.ConfigurationPathLevel;
@@ -39,7 +40,6 @@ import alfio.model.transaction.PaymentProxy;
 import alfio.model.user.User;
 import alfio.repository.EventRepository;
 import alfio.repository.system.ConfigurationRepository;
-import com.github.benmanes.caffeine.cache.Cache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.collections4.IterableUtils;
@@ -77,7 +77,7 @@ public class ConfigurationManager {
     private final EventRepository eventRepository;
     private final ExternalConfiguration externalConfiguration;
     private final Environment environment;
-    private final Cache<Set<ConfigurationKeys>, Map<ConfigurationKeys, MaybeConfiguration>> oneMinuteCache;
+    private final ConfigurationCache configurationCache;
 
     //TODO: refactor, not the most beautiful code, find a better solution...
     private Optional<Configuration> findByConfigurationPathAndKey(ConfigurationPath path, ConfigurationKeys key) {
@@ -145,6 +145,7 @@ public class ConfigurationManager {
     }
 
     private void saveOrganizationConfiguration(int organizationId, String key, String optionValue) {
+        configurationCache.invalidate(ORGANIZATION);
         Optional<String> value = evaluateValue(key, optionValue);
         Optional<Configuration> existing = configurationRepository.findByKeyAtOrganizationLevel(organizationId, key);
         if (value.isEmpty()) {
@@ -164,6 +165,7 @@ public class ConfigurationManager {
     }
 
     private void saveEventConfiguration(int eventId, int organizationId, String key, String optionValue) {
+        configurationCache.invalidate(ConfigurationPathLevel.EVENT);
         Optional<Configuration> existing = configurationRepository.findByKeyAtEventLevel(eventId, organizationId, key);
         Optional<String> value = evaluateValue(key, optionValue);
         if(value.isEmpty()) {
@@ -193,6 +195,7 @@ public class ConfigurationManager {
         EventAndOrganizationId event = eventRepository.findEventAndOrganizationIdById(eventId);
         Validate.notNull(event, "event does not exist");
         Validate.isTrue(userManager.isOwnerOfOrganization(user, event.getOrganizationId()), "Cannot update settings, user is not owner of event");
+        configurationCache.invalidate(ConfigurationPathLevel.TICKET_CATEGORY);
         list.stream()
             .filter(ConfigurationManager::toBeSaved)
             .forEach(c -> {
@@ -220,6 +223,7 @@ public class ConfigurationManager {
     }
 
     public void saveSystemConfiguration(ConfigurationKeys key, String value) {
+        configurationCache.invalidate(SYSTEM);
         Optional<Configuration> conf = findByConfigurationPathAndKey(Configuration.system(), key);
         if(key.isBooleanComponentType()) {
             Optional<Boolean> state = getThreeStateValue(value);
@@ -412,11 +416,13 @@ public class ConfigurationManager {
     }
 
     public void deleteKey(String key) {
+        configurationCache.invalidate(SYSTEM);
         configurationRepository.deleteByKey(key);
     }
 
     public void deleteOrganizationLevelByKey(String key, int organizationId, String username) {
         Validate.isTrue(userManager.isOwnerOfOrganization(userManager.findUserByUsername(username), organizationId), "User is not owner of the organization. Therefore, delete is not allowed.");
+        configurationCache.invalidate(ORGANIZATION);
         configurationRepository.deleteOrganizationLevelByKey(key, organizationId);
     }
 
@@ -424,6 +430,7 @@ public class ConfigurationManager {
         EventAndOrganizationId event = eventRepository.findEventAndOrganizationIdById(eventId);
         Validate.notNull(event, "Wrong event id");
         Validate.isTrue(userManager.isOwnerOfOrganization(userManager.findUserByUsername(username), event.getOrganizationId()), "User is not owner of the organization. Therefore, delete is not allowed.");
+        configurationCache.invalidate(ConfigurationPathLevel.EVENT);
         configurationRepository.deleteEventLevelByKey(key, eventId);
     }
 
@@ -431,6 +438,7 @@ public class ConfigurationManager {
         EventAndOrganizationId event = eventRepository.findEventAndOrganizationIdById(eventId);
         Validate.notNull(event, "Wrong event id");
         Validate.isTrue(userManager.isOwnerOfOrganization(userManager.findUserByUsername(username), event.getOrganizationId()), "User is not owner of the organization. Therefore, delete is not allowed.");
+        configurationCache.invalidate(ConfigurationPathLevel.TICKET_CATEGORY);
         configurationRepository.deleteCategoryLevelByKey(key, eventId, categoryId);
     }
 
@@ -530,6 +538,14 @@ public class ConfigurationManager {
     }
 
     public Map<ConfigurationKeys, MaybeConfiguration> getFor(Collection<ConfigurationKeys> keys, ConfigurationLevel configurationLevel) {
+        return configurationCache.get(configurationLevel, keys, () -> loadFor(keys, configurationLevel));
+    }
+
+    public List<CacheStatistics> getCacheStatistics() {
+        return configurationCache.getStatistics();
+    }
+
+    private Map<ConfigurationKeys, MaybeConfiguration> loadFor(Collection<ConfigurationKeys> keys, ConfigurationLevel configurationLevel) {
         var keysAsString = keys.stream().map(ConfigurationKeys::getValue).collect(Collectors.toSet());
         List<ConfigurationKeyValuePathLevel> found = new ArrayList<>(externalConfiguration.getAll(keysAsString));
         switch(configurationLevel.getPathLevel()) {
@@ -704,8 +720,7 @@ public class ConfigurationManager {
     }
 
     public Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> getPublicOpenIdConfiguration() {
-        return oneMinuteCache.get(EnumSet.of(OPENID_PUBLIC_ENABLED, OPENID_CONFIGURATION_JSON),
-            k -> getFor(k, ConfigurationLevel.system()));
+        return getFor(EnumSet.of(OPENID_PUBLIC_ENABLED, OPENID_CONFIGURATION_JSON), ConfigurationLevel.system());
     }
 
     public boolean isPublicOpenIdEnabled() {
@@ -0,0 +1,167 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import lombok.extern.log4j.Log4j2;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.commons.lang3.Validate;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Receives PostgreSQL notifications (LISTEN/NOTIFY) and dispatches them to the registered handlers.
+ * <p>
+ * A dedicated connection, which is not part of the pool, is opened and kept open by a background thread, as soon as
+ * the first handler has been registered. If the connection is lost, the listener reconnects after a short delay: notifications sent
+ * in the meantime are lost, so handlers must not rely on them for correctness.
+ * Handlers are called on the listener thread, therefore they should hand off any expensive work.
+ * <p>
+ * Each channel has a version, which is incremented once all the handlers have processed a notification, and for all
+ * the channels whenever the listener (re)connects, since notifications could have been lost in the meantime.
+ */
+@Component
+@Log4j2
+public class DatabaseNotificationListener implements DisposableBean {
+
+    private static final Pattern CHANNEL_NAME = Pattern.compile("^[a-z_]+$");
+    private static final int POLL_TIMEOUT_MILLIS = 1000;
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+
+    private final DataSource dataSource;
+    private final Map<String, List<Consumer<String>>> handlers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean running = true;
+
+    public DatabaseNotificationListener(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public void subscribe(String channel, Consumer<String> handler) {
+        Validate.isTrue(CHANNEL_NAME.matcher(channel).matches(), "invalid channel name: " + channel);
+        handlers.computeIfAbsent(channel, k -> new CopyOnWriteArrayList<>()).add(handler);
+        if(started.compareAndSet(false, true)) {
+            var thread = new Thread(this::listen, "db-notification-listener");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Returns the current version of the given channel. Versions are local to this node.
+     */
+    public long getVersion(String channel) {
+        return versions.computeIfAbsent(channel, k -> new AtomicLong()).get();
+    }
+
+    private void listen() {
+        while(running) {
+            try (Connection connection = openDedicatedConnection()) {
+                connection.setAutoCommit(true);
+                var pgConnection = connection.unwrap(PGConnection.class);
+                Set<String> listening = new HashSet<>();
+                log.debug("database notification listener connected");
+                boolean versionsUpdated = false;
+                while(running) {
+                    for (String channel : handlers.keySet()) {
+                        if(listening.add(channel)) {
+                            try (Statement statement = connection.createStatement()) {
+                                statement.execute("LISTEN " + channel);
+                            }
+                        }
+                    }
+                    if(!versionsUpdated) {
+                        // we are now listening: changes made while we were disconnected must be visible
+                        versions.values().forEach(AtomicLong::incrementAndGet);
+                        versionsUpdated = true;
+                    }
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if(notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            dispatch(notification.getName(), notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if(running) {
+                    log.warn("database notification listener disconnected. Will retry in {} ms", RECONNECT_DELAY_MILLIS, e);
+                    try {
+                        Thread.sleep(RECONNECT_DELAY_MILLIS);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The listening connection is never released, so it must not take a slot of the connection pool.
+     */
+    private Connection openDedicatedConnection() throws SQLException {
+        if(dataSource.isWrapperFor(HikariDataSource.class)) {
+            var pool = dataSource.unwrap(HikariDataSource.class);
+            var properties = new Properties();
+            properties.putAll(pool.getDataSourceProperties());
+            if(pool.getUsername() != null) {
+                properties.setProperty("user", pool.getUsername());
+            }
+            if(pool.getPassword() != null) {
+                properties.setProperty("password", pool.getPassword());
+            }
+            return DriverManager.getConnection(pool.getJdbcUrl(), properties);
+        }
+        // not a pool
+        return dataSource.getConnection();
+    }
+
+    private void dispatch(String channel, String payload) {
+        handlers.getOrDefault(channel, List.of()).forEach(handler -> {
+            try {
+                handler.accept(payload);
+            } catch (Exception e) {
+                log.warn("error while handling notification on channel {}", channel, e);
+            }
+        });
+        versions.computeIfAbsent(channel, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+    }
+}
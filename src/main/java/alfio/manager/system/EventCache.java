@@ -0,0 +1,105 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.model.Event;
+import alfio.model.system.CacheStatistics;
+import alfio.repository.EventRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Caches the {@link Event}s by id and by short name.
+ * <p>
+ * Entries are invalidated by {@link alfio.manager.EventManager} whenever it modifies an event, and on every node
+ * when the database notifies a change on the event table (see trigger "tr_notify_event_change").
+ * Since notifications can be lost, entries expire anyway after the given duration.
+ * <p>
+ * Missing events are never cached. Uncommitted changes are handled by {@link TransactionAwareCache}.
+ */
+@Log4j2
+public class EventCache implements InitializingBean {
+
+    public static final String CHANNEL = "alfio_event";
+    private static final long MAX_SIZE = 1_000;
+
+    private final EventRepository eventRepository;
+    private final Cache<Integer, Event> byId;
+    private final Cache<String, Event> byShortName;
+    private final DatabaseNotificationListener databaseNotificationListener;
+    private final TransactionAwareCache transactionAwareCache = new TransactionAwareCache(this::evictAll);
+
+    public EventCache(EventRepository eventRepository,
+                      Duration expiration,
+                      DatabaseNotificationListener databaseNotificationListener) {
+        this.eventRepository = eventRepository;
+        this.byId = TransactionAwareCache.newCache(expiration, MAX_SIZE);
+        this.byShortName = TransactionAwareCache.newCache(expiration, MAX_SIZE);
+        this.databaseNotificationListener = databaseNotificationListener;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        databaseNotificationListener.subscribe(CHANNEL, this::onEventChanged);
+    }
+
+    public Optional<Event> findOptionalById(int eventId) {
+        return Optional.ofNullable(transactionAwareCache.get(byId, eventId, id -> eventRepository.findOptionalById(id).orElse(null)));
+    }
+
+    public Optional<Event> findOptionalByShortName(String shortName) {
+        return Optional.ofNullable(transactionAwareCache.get(byShortName, shortName, name -> eventRepository.findOptionalByShortName(name).orElse(null)));
+    }
+
+    /**
+     * Invalidates the cached entries for the given event.
+     *
+     * @param eventId the modified event
+     */
+    public void invalidate(int eventId) {
+        evict(eventId);
+        transactionAwareCache.markPendingChanges();
+    }
+
+    public List<CacheStatistics> getStatistics() {
+        return List.of(CacheStatistics.of("event-by-id", byId), CacheStatistics.of("event-by-short-name", byShortName));
+    }
+
+    void onEventChanged(String payload) {
+        try {
+            evict(Integer.parseInt(payload));
+        } catch (NumberFormatException e) {
+            log.warn("unexpected payload {} on channel {}", payload, CHANNEL);
+            evictAll();
+        }
+    }
+
+    private void evict(int eventId) {
+        byId.invalidate(eventId);
+        byShortName.asMap().values().removeIf(event -> event.getId() == eventId);
+    }
+
+    private void evictAll() {
+        byId.invalidateAll();
+        byShortName.invalidateAll();
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Keeps the caches of a component consistent with the current transaction.
+ * <p>
+ * Once a transaction has modified the cached data (see {@link #markPendingChanges()}), the caches are bypassed for that
+ * transaction until it completes, so that uncommitted values are never shared with other threads. On completion, the given
+ * callback is invoked, since other threads could have loaded the old values in the meantime.
+ */
+public class TransactionAwareCache {
+
+    private final Object transactionKey = new Object();
+    private final Runnable onCompletion;
+
+    /**
+     * @param onCompletion invoked after the completion of each transaction which has modified the cached data
+     */
+    public TransactionAwareCache(Runnable onCompletion) {
+        this.onCompletion = onCompletion;
+    }
+
+    /**
+     * Builds a cache whose entries expire after the given duration, recording the statistics.
+     *
+     * @param expiration the expiration
+     * @param maximumSize the maximum number of entries
+     * @return a new cache
+     */
+    public static <K, V> Cache<K, V> newCache(Duration expiration, long maximumSize) {
+        return Caffeine.newBuilder()
+            .expireAfterWrite(expiration)
+            .maximumSize(maximumSize)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Returns the value for the given key, loading it if needed. If the current transaction has pending changes, the
+     * value is always loaded and it is not cached.
+     *
+     * @param cache the cache
+     * @param key the key
+     * @param loader loads the value, may return {@code null}
+     * @return the value, or {@code null}
+     */
+    public <K, V> V get(Cache<K, V> cache, K key, Function<? super K, ? extends V> loader) {
+        if(hasPendingChanges()) {
+            return loader.apply(key);
+        }
+        return cache.get(key, loader);
+    }
+
+    /**
+     * @return {@code true} if the current transaction has modified the cached data
+     */
+    public boolean hasPendingChanges() {
+        return TransactionSynchronizationManager.hasResource(transactionKey);
+    }
+
+    /**
+     * Records that the current transaction, if any, has modified the cached data.
+     */
+    public void markPendingChanges() {
+        if(TransactionSynchronizationManager.isSynchronizationActive() && !hasPendingChanges()) {
+            TransactionSynchronizationManager.bindResource(transactionKey, Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(transactionKey);
+                    onCompletion.run();
+                }
+            });
+        }
+    }
+}
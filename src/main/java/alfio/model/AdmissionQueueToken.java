@@ -0,0 +1,48 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model;
+
+import ch.digitalfondue.npjt.ConstructorAnnotationRowMapper.Column;
+import lombok.Getter;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+@Getter
+public class AdmissionQueueToken {
+    private final UUID token;
+    private final int eventId;
+    private final long position;
+    private final ZonedDateTime creation;
+    private final ZonedDateTime admission;
+
+    public AdmissionQueueToken(@Column("token") UUID token,
+                               @Column("event_id_fk") int eventId,
+                               @Column("position") long position,
+                               @Column("creation_ts") ZonedDateTime creation,
+                               @Column("admission_ts") ZonedDateTime admission) {
+        this.token = token;
+        this.eventId = eventId;
+        this.position = position;
+        this.creation = creation;
+        this.admission = admission;
+    }
+
+    public boolean isAdmitted(ZonedDateTime now) {
+        return !admission.isAfter(now);
+    }
+}
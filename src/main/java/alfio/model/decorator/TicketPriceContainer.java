@@ -19,12 +19,14 @@ package alfio.model.decorator;
 import alfio.model.PromoCodeDiscount;
 import alfio.model.SummaryPriceContainer;
 import alfio.model.Ticket;
+import alfio.model.TicketCategory;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.Delegate;
 import org.apache.commons.lang3.ObjectUtils;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Optional;
 
 import static alfio.util.MonetaryUtil.unitToCents;
@@ -66,6 +68,17 @@ public class TicketPriceContainer implements SummaryPriceContainer {
         return new TicketPriceContainer(t, discount, vat, vatStatus);
     }
 
+    /**
+     * Price of a ticket of the given category which is being reserved, computed before the ticket is actually reserved.
+     * The price is computed on a copy of the ticket as it will be once reserved.
+     */
+    public static TicketPriceContainer forReservation(TicketCategory category, BigDecimal vat, VatStatus eventVatStatus, PromoCodeDiscount discount) {
+        var ticket = new Ticket(0, null, null, category.getId(), Ticket.TicketStatus.PENDING.name(), category.getEventId(), null,
+            null, null, null, null, false, null, category.getSrcPriceCts(), 0, 0, 0, null,
+            category.getCurrencyCode(), List.of(), null, eventVatStatus);
+        return from(ticket, null, vat, eventVatStatus, discount);
+    }
+
     @Override
     public BigDecimal getTaxablePrice() {
         if(vatStatus != VatStatus.INCLUDED_EXEMPT && vatStatus != VatStatus.NOT_INCLUDED_EXEMPT) {
@@ -0,0 +1,53 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model.modification;
+
+import alfio.model.modification.AdminReservationModification.Attendee;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.apache.commons.lang3.StringUtils.trimToNull;
+
+/**
+ * A single line of a streamed attendee import. The category can be either the ID or the name of an existing category.
+ */
+@Getter
+public class AttendeeImportRow {
+
+    private final String category;
+    private final Attendee attendee;
+
+    @JsonCreator
+    public AttendeeImportRow(@JsonProperty("category") String category,
+                             @JsonProperty("firstName") String firstName,
+                             @JsonProperty("lastName") String lastName,
+                             @JsonProperty("emailAddress") String emailAddress,
+                             @JsonProperty("language") String language,
+                             @JsonProperty("forbidReassignment") Boolean reassignmentForbidden,
+                             @JsonProperty("reference") String reference,
+                             @JsonProperty("subscriptionId") UUID subscriptionId,
+                             @JsonProperty("additionalInfo") Map<String, List<String>> additionalInfo) {
+        this.category = trimToNull(category);
+        this.attendee = new Attendee(null, firstName, lastName, emailAddress, trimToNull(language), reassignmentForbidden,
+            trimToNull(reference), subscriptionId, additionalInfo);
+    }
+}
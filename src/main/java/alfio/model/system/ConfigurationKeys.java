@@ -111,6 +111,10 @@ public enum ConfigurationKeys {
     SEND_RESERVATION_EMAIL_IF_NECESSARY("Send reservation email only if there is a transaction or if contact person differs from ticket holder (default: true)", false, SettingCategory.RESERVATION_UI, ComponentType.BOOLEAN, false, EnumSet.of(SYSTEM, EVENT), BooleanUtils.TRUE),
     ENABLE_TICKET_TRANSFER("Enable ticket transfer after confirmation (default: true)", false, SettingCategory.RESERVATION_UI, ComponentType.BOOLEAN, false, EnumSet.of(SYSTEM, ORGANIZATION, EVENT), BooleanUtils.TRUE),
     ALLOW_FREE_TICKETS_CANCELLATION("Allow cancellation for free tickets (default: false)", false, SettingCategory.RESERVATION_UI, ComponentType.BOOLEAN, false, EnumSet.of(SYSTEM, ORGANIZATION, EVENT, TICKET_CATEGORY), BooleanUtils.FALSE),
+    ENABLE_ADMISSION_QUEUE("Enable the admission queue (virtual waiting room) for ticket reservations (default: false)", false, SettingCategory.RESERVATION_UI, ComponentType.BOOLEAN, false, EnumSet.of(SYSTEM, ORGANIZATION, EVENT), BooleanUtils.FALSE),
+    ADMISSION_QUEUE_RATE_PER_MINUTE("How many buyers per minute are admitted from the admission queue (default: 60)", false, SettingCategory.RESERVATION_UI, ComponentType.NUMBER, false, EnumSet.of(SYSTEM, ORGANIZATION, EVENT)),
+    ADMISSION_QUEUE_TOKEN_VALIDITY("For how long, in MINUTES, an admitted buyer can create reservations (default: 30)", false, SettingCategory.RESERVATION_UI, ComponentType.NUMBER, false, EnumSet.of(SYSTEM, ORGANIZATION, EVENT)),
+    TICKET_ROWS_ON_DEMAND("Create the ticket rows of bounded categories on demand, when tickets are reserved, instead of at event creation. Recommended for very large events (default: false)", false, SettingCategory.GENERAL, ComponentType.BOOLEAN, false, EnumSet.of(SYSTEM, ORGANIZATION), BooleanUtils.FALSE),
     INCLUDE_CHECK_IN_URL_ICAL("Include check-in URL for online tickets in the iCal invitation (default: true)", false, SettingCategory.RESERVATION_UI, ComponentType.BOOLEAN, false, EnumSet.of(SYSTEM, ORGANIZATION, EVENT), BooleanUtils.TRUE),
 
     //
@@ -20,6 +20,8 @@ import alfio.model.AdminReservationRequest;
 import alfio.model.AdminReservationRequestStats;
 import alfio.model.EventAndOrganizationId;
 import alfio.model.modification.AdminReservationModification;
+import alfio.model.result.ErrorCode;
+import alfio.model.result.Result;
 import alfio.util.Json;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
@@ -46,14 +48,35 @@ public interface AdminReservationRequestRepository {
         getNamedParameterJdbcTemplate().batchUpdate("insert into admin_reservation_request(user_id, request_id, event_id, request_type, status, body) values(:userId, :requestId, :eventId, :requestType, :status, :body)", requests);
     }
 
-    @Query("select id from admin_reservation_request where status = 'PENDING' order by request_id limit :limit for update skip locked")
-    List<Long> findPendingForUpdate(@Bind("limit") int limit);
+    /**
+     * Inserts a chunk of imported requests. Requests which failed validation are saved with status {@code ERROR},
+     * so that they are reported in {@link AdminReservationRequestStats}.
+     */
+    default void insertImportedRequests(String requestId, long userId, EventAndOrganizationId event, List<Result<AdminReservationModification>> requests) {
+        MapSqlParameterSource[] params = requests.stream().map(res -> new MapSqlParameterSource("userId", userId)
+                .addValue("requestId", requestId)
+                .addValue("requestType", AdminReservationRequest.RequestType.IMPORT.name())
+                .addValue("status", res.isSuccess() ? AdminReservationRequest.Status.PENDING.name() : AdminReservationRequest.Status.ERROR.name())
+                .addValue("eventId", event.getId())
+                .addValue("body", res.isSuccess() ? Json.toJson(res.getData()) : null)
+                .addValue("failureCode", Optional.ofNullable(res.getFirstErrorOrNull()).map(ErrorCode::getCode).orElse(null)))
+            .toArray(MapSqlParameterSource[]::new);
+
+        getNamedParameterJdbcTemplate().batchUpdate("insert into admin_reservation_request(user_id, request_id, event_id, request_type, status, body, failure_code) values(:userId, :requestId, :eventId, :requestType, :status, :body, :failureCode)", params);
+    }
+
+    @Query("select distinct event_id from admin_reservation_request where status = 'PENDING'")
+    List<Long> findEventsWithPendingRequests();
+
+    @Query("select id from admin_reservation_request where status = 'PENDING' and event_id = :eventId order by request_id, id limit :limit")
+    List<Long> findPendingIdsForEvent(@Bind("eventId") long eventId, @Bind("limit") int limit);
+
+    @Query("select * from admin_reservation_request where id = :id and status = 'PENDING' for update skip locked")
+    Optional<AdminReservationRequest> lockPendingById(@Bind("id") long id);
 
     @Query("select count(*) from admin_reservation_request where status = 'PENDING'")
     Integer countPending();
 
-    @Query("select * from admin_reservation_request where id = :id")
-    AdminReservationRequest fetchCompleteById(@Bind("id") long id);
 
     //todo, would be better to have more sane parameters, we are leaking the details here
     default void updateStatus(List<MapSqlParameterSource> params) {
@@ -0,0 +1,78 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.model.AdmissionQueueToken;
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+@QueryRepository
+public interface AdmissionQueueRepository {
+
+    /**
+     * Locks the queue of the given event, creating it if needed. The lock is held until the end of the transaction,
+     * so that the checks done before {@link #enqueue} are consistent across multiple nodes.
+     */
+    @Query("insert into admission_queue(event_id_fk, organization_id_fk, next_slot_ts, last_position)" +
+        " values(:eventId, :organizationId, :now, 0)" +
+        " on conflict(event_id_fk) do update set last_position = admission_queue.last_position")
+    int lockQueue(@Bind("eventId") int eventId,
+                  @Bind("organizationId") int organizationId,
+                  @Bind("now") ZonedDateTime now);
+
+    @Query("select count(*) from admission_queue_token where event_id_fk = :eventId and client_id = :clientId and creation_ts > :since")
+    int countTokensCreatedByClientSince(@Bind("eventId") int eventId,
+                                        @Bind("clientId") String clientId,
+                                        @Bind("since") ZonedDateTime since);
+
+    /**
+     * Assigns the next admission slot to the given token. The per-event row is locked until the end of the transaction,
+     * so that positions and slots are consistent across multiple nodes.
+     */
+    @Query("with slot as (" +
+        "    insert into admission_queue(event_id_fk, organization_id_fk, next_slot_ts, last_position)" +
+        "    values(:eventId, :organizationId, :now + :slotMillis * interval '1 millisecond', 1)" +
+        "    on conflict(event_id_fk) do update set" +
+        "        next_slot_ts = greatest(admission_queue.next_slot_ts, :now) + :slotMillis * interval '1 millisecond'," +
+        "        last_position = admission_queue.last_position + 1" +
+        "    returning last_position, next_slot_ts" +
+        ") insert into admission_queue_token(token, event_id_fk, organization_id_fk, client_id, position, creation_ts, admission_ts)" +
+        " select :token, :eventId, :organizationId, :clientId, last_position, :now, next_slot_ts - :slotMillis * interval '1 millisecond' from slot")
+    int enqueue(@Bind("token") UUID token,
+                @Bind("eventId") int eventId,
+                @Bind("organizationId") int organizationId,
+                @Bind("clientId") String clientId,
+                @Bind("now") ZonedDateTime now,
+                @Bind("slotMillis") long slotMillis);
+
+    @Query("select * from admission_queue_token where token = :token and event_id_fk = :eventId")
+    Optional<AdmissionQueueToken> findToken(@Bind("token") UUID token, @Bind("eventId") int eventId);
+
+    @Query("select coalesce((select position from admission_queue_token where event_id_fk = :eventId and admission_ts <= :now order by admission_ts desc limit 1), 0)")
+    long findLastAdmittedPosition(@Bind("eventId") int eventId, @Bind("now") ZonedDateTime now);
+
+    @Query("delete from admission_queue_token where admission_ts < :threshold")
+    int deleteTokensAdmittedBefore(@Bind("threshold") ZonedDateTime threshold);
+
+    @Query("delete from admission_queue where next_slot_ts < :threshold")
+    int deleteQueuesIdleSince(@Bind("threshold") ZonedDateTime threshold);
+}
@@ -0,0 +1,36 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+
+import java.util.List;
+
+@QueryRepository
+public interface DirtyEventRepository {
+
+    @Query("insert into event_dirty_flag(event_id_fk, organization_id_fk, job_name) select id, org_id, :jobName from event where id = :eventId on conflict do nothing")
+    int markDirty(@Bind("eventId") int eventId, @Bind("jobName") String jobName);
+
+    @Query("select event_id_fk from event_dirty_flag where job_name = :jobName order by dirty_since")
+    List<Integer> findDirtyEvents(@Bind("jobName") String jobName);
+
+    @Query("delete from event_dirty_flag where event_id_fk = :eventId and job_name = :jobName")
+    int clear(@Bind("eventId") int eventId, @Bind("jobName") String jobName);
+}
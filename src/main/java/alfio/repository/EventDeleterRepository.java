@@ -110,8 +110,23 @@ public interface EventDeleterRepository {
     @Query("delete from subscription_event where event_id_fk = :eventId")
     int deleteSubscriptionLinks(@Bind("eventId") int eventId);
 
+    @Query("delete from admission_queue_token where event_id_fk = :eventId")
+    int deleteAdmissionQueueTokens(@Bind("eventId") int eventId);
+
+    @Query("delete from admission_queue where event_id_fk = :eventId")
+    int deleteAdmissionQueue(@Bind("eventId") int eventId);
+
+    @Query("delete from ticket_category_capacity where event_id_fk = :eventId")
+    int deleteTicketCategoryCapacity(@Bind("eventId") int eventId);
+
+    @Query("delete from event_dirty_flag where event_id_fk = :eventId")
+    int deleteDirtyFlags(@Bind("eventId") int eventId);
+
     default void deleteAllForEvent(int eventId) {
         deletePolls(eventId);
+        deleteAdmissionQueueTokens(eventId);
+        deleteAdmissionQueue(eventId);
+        deleteTicketCategoryCapacity(eventId);
         deleteWaitingQueue(eventId);
         deleteWhitelistedTickets(eventId);
         deleteGroupLinks(eventId);
@@ -139,6 +154,7 @@ public interface EventDeleterRepository {
         deleteResources(eventId);
         deleteScanAudit(eventId);
         deleteSubscriptionLinks(eventId);
+        deleteDirtyFlags(eventId);
         deleteEvent(eventId);
     }
 
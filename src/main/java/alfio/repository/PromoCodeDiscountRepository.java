@@ -20,6 +20,7 @@ import alfio.model.PromoCodeDiscount;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
+import ch.digitalfondue.npjt.QueryType;
 
 import java.time.ZonedDateTime;
 import java.util.Collection;
@@ -93,9 +94,15 @@ public interface PromoCodeDiscountRepository {
     @Query("select count(*) from promo_code where event_id_fk = :eventId or (event_id_fk is null and organization_id_fk = :organizationId)")
     Integer countByEventAndOrganizationId(@Bind("eventId") int eventId, @Bind("organizationId") int organizationId);
 
-    @Query("select count(b.id) from tickets_reservation a, ticket b" +
-        " where (:currentId is null or a.id <> :currentId) and a.status in ('OFFLINE_PAYMENT', 'DEFERRED_OFFLINE_PAYMENT', 'COMPLETE', 'STUCK') and a.promo_code_id_fk = :id" +
-        " and b.tickets_reservation_id = a.id and (:categoriesJson is null or b.category_id in (:categories))")
+    /**
+     * Counts the confirmed tickets for the given promo code, using the counters maintained by the database
+     * (see the promo_code_usage table). The tickets of the reservation {@code currentId}, if confirmed, are excluded.
+     */
+    @Query("select (select coalesce(sum(confirmed_tickets), 0) from promo_code_usage" +
+        "   where promo_code_id_fk = :id and (:categoriesJson is null or category_id in (:categories)))" +
+        " - (select count(b.id) from tickets_reservation a, ticket b" +
+        "   where a.id = :currentId and a.status in ('OFFLINE_PAYMENT', 'DEFERRED_OFFLINE_PAYMENT', 'COMPLETE', 'STUCK') and a.promo_code_id_fk = :id" +
+        "   and b.tickets_reservation_id = a.id and (:categoriesJson is null or b.category_id in (:categories)))")
     Integer countConfirmedPromoCode(@Bind("id") int id, @Bind("categories") Collection<Integer> categories, @Bind("currentId") String currentReservationId, @Bind("categoriesJson") String categoriesJson);
 
     @Query("update promo_code set valid_to = :end where id = :id")
@@ -111,6 +118,26 @@ public interface PromoCodeDiscountRepository {
                              @Bind("emailReference") String emailReference,
                              @Bind("hiddenCategoryId") Integer hiddenCategoryId);
 
-    @Query("select id from promo_code where code_type = 'ACCESS' and id = :id for update")
-    Integer lockAccessCodeForUpdate(@Bind("id") int id);
+    /**
+     * Claims {@code quantity} slots of an access code with limited usage, spread among the first stripes having
+     * capacity left which are not locked by other transactions. At most {@code quantity} stripes are locked, in stripe
+     * order, and never waited for. Slots are claimed only if all of them can be claimed.
+     *
+     * @return the stripe of each claimed slot, or an empty list if there are not enough unlocked slots
+     */
+    @Query(type = QueryType.MODIFYING_WITH_RETURN, value = "with free as (" +
+        "   select stripe, quota - allocated as available from access_code_stripe" +
+        "   where access_code_id_fk = :accessCodeId and allocated < quota order by stripe limit :quantity for update skip locked" +
+        "), claim as (" +
+        "   select stripe, least(available, :quantity - (sum(available) over (order by stripe) - available)) as amount from free" +
+        "), claimed as (" +
+        "   update access_code_stripe s set allocated = s.allocated + claim.amount from claim" +
+        "   where s.access_code_id_fk = :accessCodeId and s.stripe = claim.stripe and claim.amount > 0" +
+        "   and (select sum(available) from free) >= :quantity" +
+        "   returning s.stripe, claim.amount" +
+        ") select claimed.stripe from claimed, generate_series(1, claimed.amount) order by claimed.stripe")
+    List<Integer> claimAccessCodeSlots(@Bind("accessCodeId") int accessCodeId, @Bind("quantity") int quantity);
+
+    @Query("select coalesce(sum(quota - allocated), 0) from access_code_stripe where access_code_id_fk = :accessCodeId")
+    int countAvailableAccessCodeSlots(@Bind("accessCodeId") int accessCodeId);
 }
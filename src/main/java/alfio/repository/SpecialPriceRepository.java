@@ -52,10 +52,26 @@ public interface SpecialPriceRepository {
     Integer countFreeTokens(@Bind("ticketCategoryId") int ticketCategoryId);
 
     @Query(type= QueryType.MODIFYING_WITH_RETURN, value = "update special_price set access_code_id_fk = :accessCodeId where id in (" +
-        "select id from special_price where ticket_category_id = :ticketCategoryId and " +IS_FREE+ " and access_code_id_fk is null limit :limitTo" +
+        "select id from special_price where ticket_category_id = :ticketCategoryId and " +IS_FREE+ " and access_code_id_fk is null limit :limitTo for update skip locked" +
         ") returning *")
     List<SpecialPrice> bindToAccessCode(@Bind("ticketCategoryId") int ticketCategoryId, @Bind("accessCodeId") int accessCodeId, @Bind("limitTo") int limitTo);
 
+    /**
+     * Binds one free token for each of the given stripes, which must have been claimed already
+     * (see {@link PromoCodeDiscountRepository#claimAccessCodeSlots(int, int)}).
+     */
+    @Query(type= QueryType.MODIFYING_WITH_RETURN, value = "update special_price set access_code_id_fk = :accessCodeId, access_code_stripe = slot.stripe from (" +
+        " select token.id, stripe.stripe from" +
+        "   (select id, row_number() over (order by id) as rn from (" +
+        "       select id from special_price where ticket_category_id = :ticketCategoryId and " +IS_FREE+ " order by id limit :limitTo for update skip locked" +
+        "   ) free) token" +
+        "   join (select s.stripe, s.rn from unnest(array[:stripes]) with ordinality as s(stripe, rn)) stripe on stripe.rn = token.rn" +
+        ") slot where special_price.id = slot.id returning special_price.*")
+    List<SpecialPrice> bindToAccessCodeStripes(@Bind("ticketCategoryId") int ticketCategoryId,
+                                               @Bind("accessCodeId") int accessCodeId,
+                                               @Bind("stripes") List<Integer> stripes,
+                                               @Bind("limitTo") int limitTo);
+
     @Query("update special_price set sent_ts = :timestamp, recipient_name = :recipientName, recipient_email = :recipientAddress where code = :code")
     int markAsSent(@Bind("timestamp") ZonedDateTime timestamp, @Bind("recipientName") String recipientName, @Bind("recipientAddress") String recipientAddress, @Bind("code") String code);
 
@@ -110,6 +126,28 @@ public interface SpecialPriceRepository {
     }
 
 
+    @Query("select id from special_price where id in (:ids) and status = 'WAITING' order by id for update skip locked")
+    List<Integer> lockWaitingTokens(@Bind("ids") List<Integer> ids);
+
+    /**
+     * Sets the given codes on the corresponding WAITING tokens, with a single statement.
+     * Codes which are already in use are skipped, therefore the returned list contains only the ids of the updated tokens.
+     * The tokens must be locked beforehand, see {@link #lockWaitingTokens(List)}
+     */
+    default List<Integer> updateWaitingCodes(List<Integer> waitingTokenIds, List<String> codes) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringJoiner values = new StringJoiner(", ");
+        for (int i = 0; i < waitingTokenIds.size(); i++) {
+            params.addValue("id" + i, waitingTokenIds.get(i)).addValue("code" + i, codes.get(i));
+            values.add("(:id" + i + ", :code" + i + ")");
+        }
+        return getNamedParameterJdbcTemplate()
+            .queryForList("update special_price set code = v.code, status = 'FREE', sent_ts = null from (values " + values + ") v(id, code)" +
+                " where special_price.id = v.id and special_price.status = 'WAITING'" +
+                " and not exists(select 1 from special_price existing where existing.code = v.code)" +
+                " returning special_price.id", params, Integer.class);
+    }
+
     @Query("update special_price set status = 'CANCELLED' where ticket_category_id = :categoryId and status in ('FREE', 'WAITING')")
     int cancelExpiredTokens(@Bind("categoryId") int categoryId);
 
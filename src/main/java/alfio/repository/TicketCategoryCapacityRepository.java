@@ -0,0 +1,83 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+
+import java.util.Optional;
+
+@QueryRepository
+public interface TicketCategoryCapacityRepository {
+
+    @Query("insert into ticket_category_capacity(category_id_fk, event_id_fk, organization_id_fk, materialized_tickets) values(:categoryId, :eventId, :organizationId, 0)")
+    int insert(@Bind("categoryId") int categoryId, @Bind("eventId") int eventId, @Bind("organizationId") int organizationId);
+
+    /**
+     * Reserves up to {@code amount} tickets from the capacity which has not been materialized yet, with a single
+     * conditional update: the capacity row is not updated at all if the category is fully materialized.
+     * This method is meant to be called in a short, dedicated, transaction, so that the row is not locked for long.
+     *
+     * @return the amount of tickets to be created, or empty if the category is fully materialized
+     */
+    @Query("update ticket_category_capacity set materialized_tickets = materialized_tickets + remaining.to_create from (" +
+        "    select category_id_fk, least(:amount, tc.max_tickets - materialized_tickets) as to_create from ticket_category_capacity" +
+        "    inner join ticket_category tc on tc.id = category_id_fk where category_id_fk = :categoryId" +
+        "    for update of ticket_category_capacity" +
+        ") remaining where ticket_category_capacity.category_id_fk = remaining.category_id_fk and remaining.to_create > 0" +
+        " returning remaining.to_create")
+    Optional<Integer> tryReserveCapacity(@Bind("categoryId") int categoryId, @Bind("amount") int amount);
+
+    /**
+     * Reserves up to {@code amount} tickets from the capacity which has not been materialized yet.
+     * The capacity row stays locked until the end of the current transaction.
+     *
+     * @return the amount of tickets to be created, or empty if the category is fully materialized
+     */
+    @Query("with remaining as (" +
+        "    select category_id_fk, least(:amount, tc.max_tickets - materialized_tickets) as to_create from ticket_category_capacity" +
+        "    inner join ticket_category tc on tc.id = category_id_fk where category_id_fk = :categoryId for update of ticket_category_capacity" +
+        ") update ticket_category_capacity set materialized_tickets = materialized_tickets + greatest(remaining.to_create, 0)" +
+        " from remaining where ticket_category_capacity.category_id_fk = remaining.category_id_fk" +
+        " returning greatest(remaining.to_create, 0)")
+    Optional<Integer> reserveCapacity(@Bind("categoryId") int categoryId, @Bind("amount") int amount);
+
+    @Query("select tc.max_tickets - materialized_tickets from ticket_category_capacity" +
+        " inner join ticket_category tc on tc.id = category_id_fk where category_id_fk = :categoryId")
+    Optional<Integer> countNotMaterialized(@Bind("categoryId") int categoryId);
+
+    @Query("update ticket_category_capacity set materialized_tickets = materialized_tickets + :amount where category_id_fk = :categoryId")
+    int addMaterializedTickets(@Bind("categoryId") int categoryId, @Bind("amount") int amount);
+
+    /**
+     * Adjusts the materialized tickets after the category has been shrunk. The capacity which has not been materialized
+     * is reduced first; the rows exceeding the new size of the category are removed from the counter.
+     *
+     * @return the number of existing rows which must be removed from the category, or empty if the category is fully materialized
+     */
+    @Query("with excess as (" +
+        "    select category_id_fk, greatest(materialized_tickets - tc.max_tickets, 0) as to_remove from ticket_category_capacity" +
+        "    inner join ticket_category tc on tc.id = category_id_fk where category_id_fk = :categoryId for update of ticket_category_capacity" +
+        ") update ticket_category_capacity set materialized_tickets = materialized_tickets - excess.to_remove" +
+        " from excess where ticket_category_capacity.category_id_fk = excess.category_id_fk" +
+        " returning excess.to_remove")
+    Optional<Integer> shrinkToMaxTickets(@Bind("categoryId") int categoryId);
+
+    @Query("delete from ticket_category_capacity where category_id_fk = :categoryId")
+    int delete(@Bind("categoryId") int categoryId);
+}
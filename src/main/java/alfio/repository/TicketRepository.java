@@ -48,6 +48,11 @@ public interface TicketRepository {
     String SORT_TICKETS = "order by category_id asc, uuid asc";
 
     String RESET_TICKET = " TICKETS_RESERVATION_ID = null, FULL_NAME = null, EMAIL_ADDRESS = null, SPECIAL_PRICE_ID_FK = null, LOCKED_ASSIGNMENT = false, USER_LANGUAGE = null, REMINDER_SENT = false, SRC_PRICE_CTS = 0, FINAL_PRICE_CTS = 0, VAT_CTS = 0, DISCOUNT_CTS = 0, FIRST_NAME = null, LAST_NAME = null, EXT_REFERENCE = null, TAGS = array[]::text[], VAT_STATUS = null, METADATA = '{}'::jsonb ";
+    String RESERVE_AND_PRICE_SELECTED_TICKETS = "update ticket set tickets_reservation_id = :reservationId, status = 'PENDING', category_id = :categoryId," +
+        " user_language = :userLanguage, src_price_cts = :srcPriceCts, final_price_cts = :finalPriceCts, vat_cts = :vatCts, discount_cts = :discountCts," +
+        " currency_code = :currencyCode, vat_status = :vatStatus::VAT_STATUS," +
+        " metadata = coalesce(nullif(cast(:ticketMetadata as jsonb) -> selected.idx, 'null'::jsonb), '{}'::jsonb)" +
+        " from selected where ticket.id = selected.id returning ticket.id";
     String RELEASE_TICKET_QUERY = "update ticket set status = 'RELEASED', uuid = :newUuid, " + RESET_TICKET + " where id = :ticketId and status in('ACQUIRED', 'PENDING', 'TO_BE_PAID') and tickets_reservation_id = :reservationId and event_id = :eventId";
 
 
@@ -77,6 +82,62 @@ public interface TicketRepository {
     @Query("select id from ticket where status in(:requiredStatuses) and category_id is null and event_id = :eventId and tickets_reservation_id is null order by id limit :amount for update skip locked")
     List<Integer> selectNotAllocatedTicketsForUpdateSkipLocked(@Bind("eventId") int eventId, @Bind("amount") int amount, @Bind("requiredStatuses") List<String> requiredStatuses);
 
+    @Query("select id from ticket where status = 'FREE' and category_id = :categoryId and event_id = :eventId and tickets_reservation_id is null order by id limit :amount")
+    List<Integer> findFreeTicketCandidatesInCategory(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId, @Bind("amount") int amount);
+
+    @Query("select id from ticket where status = 'FREE' and category_id is null and event_id = :eventId and tickets_reservation_id is null order by id limit :amount")
+    List<Integer> findFreeNotAllocatedTicketCandidates(@Bind("eventId") int eventId, @Bind("amount") int amount);
+
+    /**
+     * Claims, prices and returns up to {@code amount} tickets in a single statement.
+     * The ticket metadata is passed as a JSON array, the element at index {@code metadataOffset + n} is assigned to the n-th ticket.
+     *
+     * @param bounded whether the category is bounded or not
+     * @param amount the amount of tickets to reserve
+     * @param requiredStatuses the required statuses
+     * @param parameters reservation, category and price parameters
+     * @return the IDs of the reserved tickets
+     */
+    default List<Integer> reserveAndPriceTickets(boolean bounded, int amount, List<String> requiredStatuses, MapSqlParameterSource parameters) {
+        var params = new MapSqlParameterSource(parameters.getValues())
+            .addValue("amount", amount)
+            .addValue("requiredStatuses", requiredStatuses);
+        var query = bounded ? reserveAndPriceTicketsInCategory() : reserveAndPriceNotAllocatedTickets();
+        var ids = new ArrayList<>(getNamedParameterJdbcTemplate().queryForList(query, params, Integer.class));
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Claims, prices and returns the given candidates, skipping the ones which have been locked or reserved in the meantime.
+     *
+     * @param candidates the candidate ticket IDs
+     * @param parameters reservation, category and price parameters
+     * @return the IDs of the reserved tickets
+     */
+    default List<Integer> reserveAndPriceCandidates(List<Integer> candidates, MapSqlParameterSource parameters) {
+        var params = new MapSqlParameterSource(parameters.getValues()).addValue("ids", candidates);
+        var ids = new ArrayList<>(getNamedParameterJdbcTemplate().queryForList(reserveAndPriceCandidateTickets(), params, Integer.class));
+        Collections.sort(ids);
+        return ids;
+    }
+
+    @Query(type = QueryType.TEMPLATE, value = "with selected as (select id, (row_number() over (order by id) - 1 + :metadataOffset)::int as idx from (" +
+        " select id from ticket where status in (:requiredStatuses) and category_id = :categoryId and event_id = :eventId and tickets_reservation_id is null" +
+        " order by id limit :amount for update skip locked) locked) " + RESERVE_AND_PRICE_SELECTED_TICKETS)
+    String reserveAndPriceTicketsInCategory();
+
+    @Query(type = QueryType.TEMPLATE, value = "with selected as (select id, (row_number() over (order by id) - 1 + :metadataOffset)::int as idx from (" +
+        " select id from ticket where status in (:requiredStatuses) and category_id is null and event_id = :eventId and tickets_reservation_id is null" +
+        " order by id limit :amount for update skip locked) locked) " + RESERVE_AND_PRICE_SELECTED_TICKETS)
+    String reserveAndPriceNotAllocatedTickets();
+
+    @Query(type = QueryType.TEMPLATE, value = "with selected as (select id, (row_number() over (order by id) - 1 + :metadataOffset)::int as idx from (" +
+        " select id from ticket where id in (:ids) and event_id = :eventId and status = 'FREE' and tickets_reservation_id is null" +
+        " order by id for update skip locked) locked) " + RESERVE_AND_PRICE_SELECTED_TICKETS)
+    String reserveAndPriceCandidateTickets();
+
+
     @Query("select id from ticket where status = 'FREE' and category_id = :categoryId and event_id = :eventId and tickets_reservation_id is null order by id desc limit :amount for update")
     List<Integer> lockTicketsToInvalidate(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId, @Bind("amount") int amount);
 
@@ -93,12 +154,26 @@ public interface TicketRepository {
     @Query("select count(*) from ticket where status in ('PENDING', 'RELEASED') and category_id = :categoryId and event_id = :eventId")
     Integer countPendingOrReleasedForCategory(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId);
     
-    @Query("select count(*) from ticket where status = 'FREE'  and category_id = :categoryId and event_id = :eventId")
+    @Query("select (select count(*) from ticket where status = 'FREE'  and category_id = :categoryId and event_id = :eventId) + " +
+        " coalesce((select tc.max_tickets - materialized_tickets from ticket_category_capacity inner join ticket_category tc on tc.id = category_id_fk" +
+        "  where category_id_fk = :categoryId and event_id_fk = :eventId), 0)")
     Integer countFreeTickets(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId);
 
     @Query("select count(*) from ticket where status = 'FREE' and category_id is null and event_id = :eventId")
     Integer countFreeTicketsForUnbounded(@Bind("eventId") int eventId);
 
+    /**
+     * Counts the free tickets of all the categories at once, including the ones which have not been materialized yet.
+     * The tickets of the unbounded categories are returned with a null category_id.
+     */
+    @Query("select category_id, sum(free_tickets)::integer as free_tickets from (" +
+        " select category_id, count(*) as free_tickets from ticket where status = 'FREE' and event_id = :eventId group by category_id" +
+        " union all" +
+        " select category_id_fk, tc.max_tickets - materialized_tickets from ticket_category_capacity inner join ticket_category tc on tc.id = category_id_fk" +
+        "  where event_id_fk = :eventId" +
+        ") free_by_category group by category_id")
+    List<FreeTicketsByCategory> countFreeTicketsByCategory(@Bind("eventId") int eventId);
+
     @Query("select case(show_public_statistics) when true then dynamic_allocation else 0 end from events_statistics where id = :eventId")
     Integer countFreeTicketsForPublicStatistics(@Bind("eventId") int eventId);
 
@@ -398,7 +473,9 @@ public interface TicketRepository {
     @Query("select * from ticket where status = 'FREE' and event_id = :eventId")
     List<Ticket> findFreeByEventId(@Bind("eventId") int eventId);
 
-    @Query("select count(*) from ticket where event_id = :eventId and category_id is not null and status <> 'INVALIDATED'")
+    @Query("select (select count(*) from ticket where event_id = :eventId and category_id is not null and status <> 'INVALIDATED') + " +
+        " coalesce((select sum(tc.max_tickets - materialized_tickets) from ticket_category_capacity inner join ticket_category tc on tc.id = category_id_fk" +
+        "  where event_id_fk = :eventId), 0)")
     Integer countAllocatedTicketsForEvent(@Bind("eventId") int eventId);
 
     @Query("update ticket set status = 'FREE' where event_id = :eventId and category_id in(:categoryId) and status = '"+RELEASED+"'")
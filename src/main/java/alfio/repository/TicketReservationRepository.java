@@ -21,6 +21,7 @@ import alfio.model.support.UserIdAndOrganizationId;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
+import ch.digitalfondue.npjt.QueryType;
 
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
@@ -123,8 +124,18 @@ public interface TicketReservationRepository {
     @Query("select status, validated_for_overview from tickets_reservation where id = :id")
     Optional<TicketReservationStatusAndValidation> findOptionalStatusAndValidationById(@Bind("id") String id);
 
-    @Query("select id from tickets_reservation where validity < :date and status = 'PENDING' for update skip locked")
-    List<String> findExpiredReservationForUpdate(@Bind("date") Date date);
+    @Query(value = "update tickets_reservation set sweep_lease_until = now() + make_interval(secs => :leaseSeconds)" +
+        " where id in (select id from tickets_reservation where validity < :date and status = 'PENDING' and id > :lastId" +
+        "   and (sweep_lease_until is null or sweep_lease_until < now())" +
+        "   order by id limit :limit for update skip locked)" +
+        " returning id", type = QueryType.MODIFYING_WITH_RETURN)
+    List<String> claimExpiredReservations(@Bind("date") Date date,
+                                          @Bind("lastId") String lastId,
+                                          @Bind("limit") int limit,
+                                          @Bind("leaseSeconds") int leaseSeconds);
+
+    @Query("select id from tickets_reservation where id in (:ids) and validity < :date and status = 'PENDING' for update skip locked")
+    List<String> lockExpiredReservationsForUpdate(@Bind("ids") Collection<String> ids, @Bind("date") Date date);
 
     @Query("select distinct tr.* from tickets_reservation tr join b_transaction tx on tx.reservation_id = tr.id where tr.id in (:reservationIds) and tr.status = 'PENDING'")
     List<TicketReservation> findReservationsWithPendingTransaction(@Bind("reservationIds") Collection<String> reservationIds);
@@ -25,6 +25,15 @@ import java.util.List;
 @QueryRepository
 public interface WaitingQueueRepository {
 
+    int DISTRIBUTION_LOCK_NAMESPACE = 0x5751;
+
+    /**
+     * Acquires a transaction-scoped advisory lock on the waiting list of the given event, if available.
+     * Used to make sure that only one node at a time distributes the seats of an event.
+     */
+    @Query("select pg_try_advisory_xact_lock(" + DISTRIBUTION_LOCK_NAMESPACE + ", :eventId)")
+    boolean tryLockForDistribution(@Bind("eventId") int eventId);
+
     @Query("select * from waiting_queue where event_id = :eventId and status = 'WAITING' order by creation")
     List<WaitingQueueSubscription> loadAllWaiting(@Bind("eventId") int eventId);
 
@@ -50,6 +59,16 @@ public interface WaitingQueueRepository {
     @Query("update waiting_queue set status = 'EXPIRED', ticket_reservation_id = null where ticket_reservation_id in (:ticketReservationIds)")
     int bulkUpdateExpiredReservations(@Bind("ticketReservationIds") List<String> ticketReservationIds);
 
+    /**
+     * Finds the events having subscribers waiting for a ticket, limited to the events which are not yet over and
+     * have at least one category on sale, or going on sale before {@code salesStartLimit}.
+     */
+    @Query("select distinct wq.event_id from waiting_queue wq join event e on e.id = wq.event_id" +
+        " where wq.status = 'WAITING' and e.end_ts > :now" +
+        " and exists(select 1 from ticket_category tc where tc.event_id = e.id and tc.tc_status = 'ACTIVE'" +
+        "   and tc.inception <= :salesStartLimit and tc.expiration > :now)")
+    List<Integer> findEventsWithWaitingSubscribers(@Bind("now") ZonedDateTime now, @Bind("salesStartLimit") ZonedDateTime salesStartLimit);
+
     @Query("select count(*) from waiting_queue where event_id = :eventId and status = 'WAITING'")
     Integer countWaitingPeople(@Bind("eventId") int eventId);
 
@@ -0,0 +1,120 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.util;
+
+import alfio.model.modification.AttendeeImportRow;
+import alfio.model.result.ErrorCode;
+import alfio.model.result.Result;
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily parses the rows of a streamed attendee import, so that the whole file never needs to be kept in memory.
+ * Rows that cannot be parsed are returned as errors, in order to let the caller record them without aborting the import.
+ */
+@Log4j2
+public final class AttendeeImportReader {
+
+    public static final ErrorCode INVALID_ROW = ErrorCode.custom("error.invalid.row", "Row cannot be parsed");
+
+    private static final List<String> KNOWN_COLUMNS = List.of("category", "firstName", "lastName", "emailAddress",
+        "language", "forbidReassignment", "reference", "subscriptionId");
+
+    private AttendeeImportReader() {
+    }
+
+    /**
+     * Parses a CSV file. The first line must contain the column names. Columns not in {@link #KNOWN_COLUMNS}
+     * are treated as additional fields.
+     */
+    public static Stream<Result<AttendeeImportRow>> csv(Reader reader) throws IOException {
+        var csvReader = new CSVReader(reader);
+        String[] header;
+        try {
+            header = csvReader.readNext();
+        } catch (CsvValidationException e) {
+            throw new IOException(e);
+        }
+        if(header == null) {
+            return Stream.empty();
+        }
+        var columns = Arrays.stream(header).map(StringUtils::trim).toArray(String[]::new);
+        return StreamSupport.stream(csvReader.spliterator(), false)
+            .filter(line -> !isBlank(line))
+            .map(line -> parseCsvLine(columns, line));
+    }
+
+    /**
+     * Parses a newline-delimited JSON file, one {@link AttendeeImportRow} per line.
+     */
+    public static Stream<Result<AttendeeImportRow>> ndjson(Reader reader) {
+        return new BufferedReader(reader).lines()
+            .filter(StringUtils::isNotBlank)
+            .map(AttendeeImportReader::parseJsonLine);
+    }
+
+    private static Result<AttendeeImportRow> parseJsonLine(String line) {
+        try {
+            return Result.success(Json.fromJson(line, AttendeeImportRow.class));
+        } catch (Exception e) {
+            log.trace("cannot parse row", e);
+            return Result.error(INVALID_ROW);
+        }
+    }
+
+    private static Result<AttendeeImportRow> parseCsvLine(String[] columns, String[] line) {
+        try {
+            var values = new HashMap<String, String>();
+            var additionalInfo = new HashMap<String, List<String>>();
+            for (int i = 0; i < Math.min(columns.length, line.length); i++) {
+                var column = columns[i];
+                var value = StringUtils.trimToNull(line[i]);
+                var knownColumn = KNOWN_COLUMNS.stream().filter(column::equalsIgnoreCase).findFirst();
+                if(knownColumn.isPresent()) {
+                    values.put(knownColumn.get(), value);
+                } else if(value != null) {
+                    additionalInfo.put(column, List.of(value));
+                }
+            }
+            return Result.success(new AttendeeImportRow(values.get("category"),
+                values.get("firstName"),
+                values.get("lastName"),
+                values.get("emailAddress"),
+                values.get("language"),
+                Boolean.parseBoolean(values.get("forbidReassignment")),
+                values.get("reference"),
+                Optional.ofNullable(values.get("subscriptionId")).map(UUID::fromString).orElse(null),
+                additionalInfo));
+        } catch (Exception e) {
+            log.trace("cannot parse row", e);
+            return Result.error(INVALID_ROW);
+        }
+    }
+
+    private static boolean isBlank(String[] line) {
+        return Arrays.stream(line).allMatch(StringUtils::isBlank);
+    }
+}
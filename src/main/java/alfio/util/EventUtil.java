@@ -159,6 +159,12 @@ public final class EventUtil {
         return tc.isBounded() ? tc.getNotSoldTicketsCount() : e.getDynamicAllocation();
     }
 
+    public static boolean noSeatsAvailable(List<TicketCategory> categories, Map<Integer, TicketCategoryStatisticView> stats, EventStatisticView eventStatisticView) {
+        return categories.stream()
+            .filter(tc -> !tc.isAccessRestricted())
+            .allMatch(tc -> determineAvailableSeats(stats.get(tc.getId()), eventStatisticView) == 0);
+    }
+
     public static Optional<byte[]> getIcalForEvent(Event event, TicketCategory ticketCategory, String description, Organization organization) {
     	 ICalendar ical = new ICalendar();
     	 ical.setProductId("-//Alf.io//Alf.io v2.0//EN");
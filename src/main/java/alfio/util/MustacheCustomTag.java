@@ -17,8 +17,12 @@
 package alfio.util;
 
 import alfio.controller.api.support.TicketHelper;
+import alfio.model.system.CacheStatistics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.samskivert.mustache.Mustache;
 import lombok.extern.log4j.Log4j2;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.text.StringEscapeUtils;
@@ -141,6 +145,14 @@ public class MustacheCustomTag {
     private static final HtmlRenderer COMMONMARK_RENDERER = HtmlRenderer.builder().extensions(COMMONMARK_EXTENSIONS).attributeProviderFactory((ctx) -> new TargetBlankProvider()).build();
     private static final TextContentRenderer COMMONMARK_TEXT_RENDERER = TextContentRenderer.builder().extensions(COMMONMARK_EXTENSIONS).build();
 
+    // rendered descriptions, keyed by the sha256 of their source. Bounded by the total length of the cached HTML.
+    private static final long COMMONMARK_CACHE_MAX_WEIGHT = 10_000_000L;
+    private static final Cache<String, String> COMMONMARK_HTML_CACHE = Caffeine.newBuilder()
+        .maximumWeight(COMMONMARK_CACHE_MAX_WEIGHT)
+        .weigher((String key, String html) -> key.length() + html.length())
+        .recordStats()
+        .build();
+
     //Open in a new window if the link contains an absolute url
     private static class TargetBlankProvider implements AttributeProvider {
         @Override
@@ -157,6 +169,17 @@ public class MustacheCustomTag {
     }
 
     public static String renderToHtmlCommonmarkEscaped(String input) {
+        if(input == null) {
+            return renderHtmlCommonmarkEscaped(null);
+        }
+        return COMMONMARK_HTML_CACHE.get(DigestUtils.sha256Hex(input), k -> renderHtmlCommonmarkEscaped(input));
+    }
+
+    public static CacheStatistics getCommonmarkCacheStatistics() {
+        return CacheStatistics.of("commonmark-html", COMMONMARK_HTML_CACHE);
+    }
+
+    private static String renderHtmlCommonmarkEscaped(String input) {
         Node document = COMMONMARK_PARSER.parse(StringEscapeUtils.escapeHtml4(input));
         return COMMONMARK_RENDERER.render(document);
     }
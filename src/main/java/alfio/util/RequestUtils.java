@@ -74,6 +74,21 @@ public class RequestUtils {
         return LocaleUtil.forLanguageTag(selectedLocale);
     }
 
+    /**
+     * Returns the address of the client which sent the request, as seen by the reverse proxy in front of alf.io.
+     * The embedded server already applies the X-Forwarded-For header (server.forward-headers-strategy=native), but
+     * the header is read here too, so that the client is correctly resolved also when deployed in an external container.
+     *
+     * @param request
+     * @return the first address of the X-Forwarded-For header, or the remote address if the header is not present
+     */
+    public static String getClientAddress(HttpServletRequest request) {
+        return Optional.ofNullable(request.getHeader("X-Forwarded-For"))
+            .map(header -> header.split(",")[0].trim())
+            .filter(address -> !address.isEmpty())
+            .orElseGet(request::getRemoteAddr);
+    }
+
     public static boolean isAdmin(Principal principal) {
         if (principal instanceof Authentication) {
             return ((Authentication) principal).getAuthorities().stream()
@@ -0,0 +1,47 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- one row for each event having an active admission queue. next_slot_ts is the admission time for the next buyer
+create table admission_queue (
+    event_id_fk integer primary key not null constraint admission_queue_event_id_fk references event(id),
+    organization_id_fk integer not null constraint admission_queue_organization_id_fk references organization(id),
+    next_slot_ts timestamp with time zone not null,
+    last_position bigint not null
+);
+
+create table admission_queue_token (
+    token uuid primary key not null,
+    event_id_fk integer not null constraint admission_queue_token_event_id_fk references event(id),
+    organization_id_fk integer not null constraint admission_queue_token_organization_id_fk references organization(id),
+    position bigint not null,
+    creation_ts timestamp with time zone not null,
+    admission_ts timestamp with time zone not null
+);
+
+create index admission_queue_token_event_admission_idx on admission_queue_token(event_id_fk, admission_ts);
+
+alter table admission_queue enable row level security;
+alter table admission_queue force row level security;
+create policy admission_queue_access_policy on admission_queue to public
+    using (alfio_check_row_access(organization_id_fk))
+    with check (alfio_check_row_access(organization_id_fk));
+
+alter table admission_queue_token enable row level security;
+alter table admission_queue_token force row level security;
+create policy admission_queue_token_access_policy on admission_queue_token to public
+    using (alfio_check_row_access(organization_id_fk))
+    with check (alfio_check_row_access(organization_id_fk));
@@ -0,0 +1,32 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+-- one row for each bounded category whose ticket rows are created on demand.
+-- The category has max_tickets - materialized_tickets tickets which don't have a row (yet) in the ticket table
+create table ticket_category_capacity (
+    category_id_fk integer primary key not null constraint ticket_category_capacity_category_id_fk references ticket_category(id),
+    event_id_fk integer not null constraint ticket_category_capacity_event_id_fk references event(id),
+    organization_id_fk integer not null constraint ticket_category_capacity_organization_id_fk references organization(id),
+    materialized_tickets integer not null default 0
+);
+
+create index ticket_category_capacity_event_id_idx on ticket_category_capacity(event_id_fk);
+
+alter table ticket_category_capacity enable row level security;
+alter table ticket_category_capacity force row level security;
+create policy ticket_category_capacity_access_policy on ticket_category_capacity to public
+    using (alfio_check_row_access(organization_id_fk))
+    with check (alfio_check_row_access(organization_id_fk));
@@ -0,0 +1,41 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- notify the application whenever tickets become available for the waiting list.
+-- Notifications are delivered on commit, and duplicates within the same transaction are collapsed by PostgreSQL,
+-- so the listener receives one message per event and transaction
+CREATE OR REPLACE FUNCTION trf_notify_released_tickets()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    PERFORM pg_notify('alfio_released_tickets', NEW.event_id::text);
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_notify_released_tickets
+    AFTER UPDATE OF status ON ticket
+    FOR EACH ROW
+    WHEN (NEW.status = 'RELEASED' AND OLD.status <> 'RELEASED')
+    EXECUTE PROCEDURE trf_notify_released_tickets();
+
+CREATE TRIGGER tr_notify_inserted_released_tickets
+    AFTER INSERT ON ticket
+    FOR EACH ROW
+    WHEN (NEW.status = 'RELEASED')
+    EXECUTE PROCEDURE trf_notify_released_tickets();
@@ -0,0 +1,91 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- tracks the events having changes relevant to the periodic per-event jobs, so that each job
+-- needs to visit only the events flagged for it. Flags are set by the triggers below and cleared by the jobs.
+create table event_dirty_flag (
+    event_id_fk integer not null references event(id),
+    job_name varchar(64) not null,
+    dirty_since timestamp with time zone not null default now(),
+    primary key(event_id_fk, job_name)
+);
+
+-- flag all the events which have not yet ended, so that the first run after the upgrade processes them
+insert into event_dirty_flag(event_id_fk, job_name)
+    select e.id, j.job_name from event e,
+        (values ('WAITING_LIST'), ('TICKET_ASSIGNMENT_REMINDER'), ('OPTIONAL_DATA_REMINDER'), ('OFFLINE_PAYMENTS')) as j(job_name)
+    where e.end_ts > now();
+
+CREATE OR REPLACE FUNCTION trf_flag_dirty_events_for_updated_tickets()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    insert into event_dirty_flag(event_id_fk, job_name)
+        select distinct n.event_id, 'WAITING_LIST' from new_rows n join old_rows o on o.id = n.id
+        where n.status = 'RELEASED' and o.status <> 'RELEASED'
+        on conflict do nothing;
+    insert into event_dirty_flag(event_id_fk, job_name)
+        select distinct n.event_id, j.job_name from new_rows n join old_rows o on o.id = n.id,
+            (values ('TICKET_ASSIGNMENT_REMINDER'), ('OPTIONAL_DATA_REMINDER')) as j(job_name)
+        where n.status in ('ACQUIRED', 'TO_BE_PAID')
+            and (o.status <> n.status or o.email_address is distinct from n.email_address or o.full_name is distinct from n.full_name)
+        on conflict do nothing;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_flag_dirty_events_for_updated_tickets
+    AFTER UPDATE ON ticket
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+    EXECUTE PROCEDURE trf_flag_dirty_events_for_updated_tickets();
+
+CREATE OR REPLACE FUNCTION trf_flag_dirty_events_for_inserted_tickets()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    insert into event_dirty_flag(event_id_fk, job_name)
+        select distinct n.event_id, 'WAITING_LIST' from new_rows n where n.status = 'RELEASED'
+        on conflict do nothing;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_flag_dirty_events_for_inserted_tickets
+    AFTER INSERT ON ticket
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+    EXECUTE PROCEDURE trf_flag_dirty_events_for_inserted_tickets();
+
+CREATE OR REPLACE FUNCTION trf_flag_dirty_events_for_offline_payments()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    insert into event_dirty_flag(event_id_fk, job_name) values (NEW.event_id_fk, 'OFFLINE_PAYMENTS')
+        on conflict do nothing;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_flag_dirty_events_for_offline_payments
+    AFTER INSERT OR UPDATE OF status ON tickets_reservation
+    FOR EACH ROW
+    WHEN (NEW.status = 'OFFLINE_PAYMENT' AND NEW.event_id_fk IS NOT NULL)
+    EXECUTE PROCEDURE trf_flag_dirty_events_for_offline_payments();
@@ -0,0 +1,118 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- number of confirmed tickets per promo code and category, maintained by the triggers below.
+-- A ticket is counted if its reservation has a promo code and is in one of the confirmed statuses:
+-- 'OFFLINE_PAYMENT', 'DEFERRED_OFFLINE_PAYMENT', 'COMPLETE', 'STUCK'
+create table promo_code_usage (
+    promo_code_id_fk integer not null references promo_code(id) on delete cascade,
+    category_id integer not null,
+    confirmed_tickets integer not null default 0,
+    primary key(promo_code_id_fk, category_id)
+);
+
+insert into promo_code_usage(promo_code_id_fk, category_id, confirmed_tickets)
+    select r.promo_code_id_fk, coalesce(t.category_id, 0), count(*) from tickets_reservation r
+        join ticket t on t.tickets_reservation_id = r.id
+    where r.promo_code_id_fk is not null and r.status in ('OFFLINE_PAYMENT', 'DEFERRED_OFFLINE_PAYMENT', 'COMPLETE', 'STUCK')
+    group by 1, 2;
+
+-- tickets added to or removed from a confirmed reservation, or moved to another category
+CREATE OR REPLACE FUNCTION trf_update_promo_code_usage_for_tickets()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        insert into promo_code_usage as u (promo_code_id_fk, category_id, confirmed_tickets)
+            select r.promo_code_id_fk, coalesce(n.category_id, 0), count(*) from new_rows n
+                join tickets_reservation r on r.id = n.tickets_reservation_id
+            where r.promo_code_id_fk is not null and r.status in ('OFFLINE_PAYMENT', 'DEFERRED_OFFLINE_PAYMENT', 'COMPLETE', 'STUCK')
+            group by 1, 2
+        on conflict (promo_code_id_fk, category_id) do update set confirmed_tickets = u.confirmed_tickets + excluded.confirmed_tickets;
+    ELSIF TG_OP = 'DELETE' THEN
+        update promo_code_usage u set confirmed_tickets = u.confirmed_tickets - d.removed from (
+            select r.promo_code_id_fk, coalesce(o.category_id, 0) as category_id, count(*) as removed from old_rows o
+                join tickets_reservation r on r.id = o.tickets_reservation_id
+            where r.promo_code_id_fk is not null and r.status in ('OFFLINE_PAYMENT', 'DEFERRED_OFFLINE_PAYMENT', 'COMPLETE', 'STUCK')
+            group by 1, 2
+        ) d where u.promo_code_id_fk = d.promo_code_id_fk and u.category_id = d.category_id;
+    ELSE
+        insert into promo_code_usage as u (promo_code_id_fk, category_id, confirmed_tickets)
+            select promo_code_id_fk, category_id, sum(delta) from (
+                select r.promo_code_id_fk, coalesce(n.category_id, 0) as category_id, 1 as delta from new_rows n
+                    join tickets_reservation r on r.id = n.tickets_reservation_id
+                where r.promo_code_id_fk is not null and r.status in ('OFFLINE_PAYMENT', 'DEFERRED_OFFLINE_PAYMENT', 'COMPLETE', 'STUCK')
+                union all
+                select r.promo_code_id_fk, coalesce(o.category_id, 0) as category_id, -1 as delta from old_rows o
+                    join tickets_reservation r on r.id = o.tickets_reservation_id
+                where r.promo_code_id_fk is not null and r.status in ('OFFLINE_PAYMENT', 'DEFERRED_OFFLINE_PAYMENT', 'COMPLETE', 'STUCK')
+            ) changes
+            group by 1, 2
+            having sum(delta) <> 0
+        on conflict (promo_code_id_fk, category_id) do update set confirmed_tickets = u.confirmed_tickets + excluded.confirmed_tickets;
+    END IF;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_update_promo_code_usage_for_inserted_tickets
+    AFTER INSERT ON ticket
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+    EXECUTE PROCEDURE trf_update_promo_code_usage_for_tickets();
+
+CREATE TRIGGER tr_update_promo_code_usage_for_updated_tickets
+    AFTER UPDATE ON ticket
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+    EXECUTE PROCEDURE trf_update_promo_code_usage_for_tickets();
+
+CREATE TRIGGER tr_update_promo_code_usage_for_deleted_tickets
+    AFTER DELETE ON ticket
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+    EXECUTE PROCEDURE trf_update_promo_code_usage_for_tickets();
+
+-- reservation confirmed, cancelled or expired, or promo code changed
+CREATE OR REPLACE FUNCTION trf_update_promo_code_usage_for_reservation()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    insert into promo_code_usage as u (promo_code_id_fk, category_id, confirmed_tickets)
+        select promo_code_id_fk, category_id, sum(delta) from (
+            select NEW.promo_code_id_fk as promo_code_id_fk, coalesce(t.category_id, 0) as category_id, 1 as delta from ticket t
+            where t.tickets_reservation_id = NEW.id and NEW.promo_code_id_fk is not null
+                and NEW.status in ('OFFLINE_PAYMENT', 'DEFERRED_OFFLINE_PAYMENT', 'COMPLETE', 'STUCK')
+            union all
+            select OLD.promo_code_id_fk as promo_code_id_fk, coalesce(t.category_id, 0) as category_id, -1 as delta from ticket t
+            where t.tickets_reservation_id = OLD.id and OLD.promo_code_id_fk is not null
+                and OLD.status in ('OFFLINE_PAYMENT', 'DEFERRED_OFFLINE_PAYMENT', 'COMPLETE', 'STUCK')
+        ) changes
+        group by 1, 2
+        having sum(delta) <> 0
+    on conflict (promo_code_id_fk, category_id) do update set confirmed_tickets = u.confirmed_tickets + excluded.confirmed_tickets;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_update_promo_code_usage_for_reservation
+    AFTER UPDATE OF status, promo_code_id_fk ON tickets_reservation
+    FOR EACH ROW
+    WHEN (OLD.status IS DISTINCT FROM NEW.status OR OLD.promo_code_id_fk IS DISTINCT FROM NEW.promo_code_id_fk)
+    EXECUTE PROCEDURE trf_update_promo_code_usage_for_reservation();
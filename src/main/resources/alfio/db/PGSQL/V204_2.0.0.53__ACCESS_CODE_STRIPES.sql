@@ -0,0 +1,126 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- the max usage of an access code is split into stripes, each with its own quota and counter.
+-- A token bound to the access code is accounted in one stripe, which is locked with "skip locked", so that
+-- concurrent reservations for the same access code don't have to wait for each other.
+-- The sum of the quotas never exceeds the max usage of the access code.
+create table access_code_stripe (
+    access_code_id_fk integer not null references promo_code(id) on delete cascade,
+    stripe integer not null,
+    quota integer not null,
+    allocated integer not null default 0,
+    primary key(access_code_id_fk, stripe),
+    constraint access_code_stripe_quota check (allocated <= quota)
+);
+
+alter table special_price add column access_code_stripe integer;
+
+-- (re)creates the stripes of an access code, distributing the remaining capacity among them.
+-- Tokens which are not assigned to a stripe are accounted in the first one.
+CREATE OR REPLACE FUNCTION alfio_rebalance_access_code_stripes(p_access_code_id integer, p_max_usage integer)
+    RETURNS void AS
+$body$
+DECLARE
+    v_stripes integer;
+    v_remaining integer;
+BEGIN
+    PERFORM * from access_code_stripe where access_code_id_fk = p_access_code_id order by stripe for update;
+    delete from access_code_stripe where access_code_id_fk = p_access_code_id;
+    IF p_max_usage IS NULL THEN
+        RETURN;
+    END IF;
+    -- tokens are allocated one by one, so a reservation can span multiple stripes
+    v_stripes = least(8, greatest(1, p_max_usage));
+    insert into access_code_stripe(access_code_id_fk, stripe, quota, allocated)
+        select p_access_code_id, s.stripe, 0, (select count(*) from special_price sp
+            where sp.access_code_id_fk = p_access_code_id and least(coalesce(sp.access_code_stripe, 0), v_stripes - 1) = s.stripe)
+        from generate_series(0, v_stripes - 1) as s(stripe);
+    v_remaining = greatest(p_max_usage - (select sum(allocated) from access_code_stripe where access_code_id_fk = p_access_code_id), 0);
+    update access_code_stripe set quota = allocated + (v_remaining / v_stripes) + (case when stripe < v_remaining % v_stripes then 1 else 0 end)
+        where access_code_id_fk = p_access_code_id;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION trf_rebalance_access_code_stripes()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    IF NEW.code_type = 'ACCESS' THEN
+        PERFORM alfio_rebalance_access_code_stripes(NEW.id, NEW.max_usage);
+    ELSIF TG_OP = 'UPDATE' AND OLD.code_type = 'ACCESS' THEN
+        delete from access_code_stripe where access_code_id_fk = NEW.id;
+    END IF;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_rebalance_access_code_stripes
+    AFTER INSERT OR UPDATE OF max_usage, code_type ON promo_code
+    FOR EACH ROW EXECUTE PROCEDURE trf_rebalance_access_code_stripes();
+
+-- replaces the check which locked all the tokens of the category
+DROP TRIGGER tr_check_access_code_allocation ON special_price;
+DROP FUNCTION trf_check_access_code_allocation();
+
+CREATE OR REPLACE FUNCTION trf_allocate_access_code_stripe()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    IF NEW.access_code_id_fk IS NOT DISTINCT FROM OLD.access_code_id_fk AND NEW.access_code_stripe IS NOT DISTINCT FROM OLD.access_code_stripe THEN
+        RETURN NEW;
+    END IF;
+    IF OLD.access_code_id_fk IS NOT NULL THEN
+        update access_code_stripe set allocated = allocated - 1
+            where access_code_id_fk = OLD.access_code_id_fk and stripe = coalesce(OLD.access_code_stripe, 0) and allocated > 0;
+    END IF;
+    IF NEW.access_code_id_fk IS NULL THEN
+        NEW.access_code_stripe = NULL;
+        RETURN NEW;
+    END IF;
+    IF NOT EXISTS (select 1 from access_code_stripe where access_code_id_fk = NEW.access_code_id_fk) THEN
+        -- no max usage defined
+        NEW.access_code_stripe = NULL;
+        RETURN NEW;
+    END IF;
+    IF NEW.access_code_stripe IS NULL THEN
+        -- stripes already locked by the current transaction are returned as well
+        NEW.access_code_stripe = (select stripe from access_code_stripe
+            where access_code_id_fk = NEW.access_code_id_fk and allocated < quota order by stripe limit 1 for update skip locked);
+    END IF;
+    IF NEW.access_code_stripe IS NULL THEN
+        -- all the stripes having capacity left are locked by other transactions. We wait for the first one.
+        NEW.access_code_stripe = (select stripe from access_code_stripe
+            where access_code_id_fk = NEW.access_code_id_fk and allocated < quota order by stripe limit 1 for update);
+    END IF;
+    update access_code_stripe set allocated = allocated + 1
+        where access_code_id_fk = NEW.access_code_id_fk and stripe = NEW.access_code_stripe and allocated < quota;
+    IF NOT FOUND THEN
+        raise EXCEPTION USING MESSAGE = ('Max usage exceeded for access code ' || NEW.access_code_id_fk);
+    END IF;
+    RETURN NEW;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_allocate_access_code_stripe
+    BEFORE UPDATE OF access_code_id_fk, access_code_stripe ON special_price
+    FOR EACH ROW EXECUTE PROCEDURE trf_allocate_access_code_stripe();
+
+select alfio_rebalance_access_code_stripes(id, max_usage) from promo_code where code_type = 'ACCESS';
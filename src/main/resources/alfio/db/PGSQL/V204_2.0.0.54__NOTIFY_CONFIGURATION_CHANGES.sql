@@ -0,0 +1,48 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- notify the application whenever the configuration changes, so that every node can invalidate its configuration cache.
+-- The payload is the name of the modified table. Notifications are delivered on commit, once per table and transaction.
+CREATE OR REPLACE FUNCTION trf_notify_configuration_change()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    PERFORM pg_notify('alfio_configuration', TG_TABLE_NAME);
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_notify_configuration_change
+    AFTER INSERT OR UPDATE OR DELETE ON configuration
+    FOR EACH STATEMENT
+    EXECUTE PROCEDURE trf_notify_configuration_change();
+
+CREATE TRIGGER tr_notify_configuration_change
+    AFTER INSERT OR UPDATE OR DELETE ON configuration_organization
+    FOR EACH STATEMENT
+    EXECUTE PROCEDURE trf_notify_configuration_change();
+
+CREATE TRIGGER tr_notify_configuration_change
+    AFTER INSERT OR UPDATE OR DELETE ON configuration_event
+    FOR EACH STATEMENT
+    EXECUTE PROCEDURE trf_notify_configuration_change();
+
+CREATE TRIGGER tr_notify_configuration_change
+    AFTER INSERT OR UPDATE OR DELETE ON configuration_ticket_category
+    FOR EACH STATEMENT
+    EXECUTE PROCEDURE trf_notify_configuration_change();
@@ -0,0 +1,37 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- notify the application whenever an event is modified, so that every node can invalidate its event cache.
+-- The payload is the id of the modified event. Notifications are delivered on commit.
+CREATE OR REPLACE FUNCTION trf_notify_event_change()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('alfio_event', OLD.id::text);
+    ELSE
+        PERFORM pg_notify('alfio_event', NEW.id::text);
+    END IF;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_notify_event_change
+    AFTER INSERT OR UPDATE OR DELETE ON event
+    FOR EACH ROW
+    EXECUTE PROCEDURE trf_notify_event_change();
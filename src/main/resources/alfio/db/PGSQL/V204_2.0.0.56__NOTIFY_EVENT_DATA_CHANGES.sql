@@ -0,0 +1,85 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- notify the application whenever data shown on the public event pages is modified, so that every node can
+-- update the version of the cached responses. The payload is the id of the event, or 0 if it is not known.
+CREATE OR REPLACE FUNCTION trf_notify_event_data_change()
+    RETURNS TRIGGER AS
+$body$
+DECLARE
+    row_data jsonb;
+    modified_event_id integer;
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        row_data := to_jsonb(OLD);
+    ELSE
+        row_data := to_jsonb(NEW);
+    END IF;
+    IF TG_TABLE_NAME = 'ticket_category' THEN
+        modified_event_id := (row_data ->> 'event_id')::integer;
+    ELSIF TG_TABLE_NAME = 'ticket_category_text' THEN
+        SELECT event_id INTO modified_event_id FROM ticket_category WHERE id = (row_data ->> 'ticket_category_id_fk')::integer;
+    ELSIF TG_TABLE_NAME = 'additional_service_description' THEN
+        SELECT event_id_fk INTO modified_event_id FROM additional_service WHERE id = (row_data ->> 'additional_service_id_fk')::integer;
+    ELSIF TG_TABLE_NAME <> 'organization' THEN
+        modified_event_id := (row_data ->> 'event_id_fk')::integer;
+    END IF;
+    PERFORM pg_notify('alfio_event', coalesce(modified_event_id, 0)::text);
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_notify_event_data_change
+    AFTER INSERT OR UPDATE OR DELETE ON ticket_category
+    FOR EACH ROW
+    EXECUTE PROCEDURE trf_notify_event_data_change();
+
+CREATE TRIGGER tr_notify_event_data_change
+    AFTER INSERT OR UPDATE OR DELETE ON ticket_category_text
+    FOR EACH ROW
+    EXECUTE PROCEDURE trf_notify_event_data_change();
+
+CREATE TRIGGER tr_notify_event_data_change
+    AFTER INSERT OR UPDATE OR DELETE ON event_description_text
+    FOR EACH ROW
+    EXECUTE PROCEDURE trf_notify_event_data_change();
+
+CREATE TRIGGER tr_notify_event_data_change
+    AFTER INSERT OR UPDATE OR DELETE ON additional_service
+    FOR EACH ROW
+    EXECUTE PROCEDURE trf_notify_event_data_change();
+
+CREATE TRIGGER tr_notify_event_data_change
+    AFTER INSERT OR UPDATE OR DELETE ON additional_service_description
+    FOR EACH ROW
+    EXECUTE PROCEDURE trf_notify_event_data_change();
+
+CREATE TRIGGER tr_notify_event_data_change
+    AFTER INSERT OR UPDATE OR DELETE ON promo_code
+    FOR EACH ROW
+    EXECUTE PROCEDURE trf_notify_event_data_change();
+
+CREATE TRIGGER tr_notify_event_data_change
+    AFTER INSERT OR UPDATE OR DELETE ON subscription_event
+    FOR EACH ROW
+    EXECUTE PROCEDURE trf_notify_event_data_change();
+
+CREATE TRIGGER tr_notify_event_data_change
+    AFTER INSERT OR UPDATE OR DELETE ON organization
+    FOR EACH ROW
+    EXECUTE PROCEDURE trf_notify_event_data_change();
@@ -0,0 +1,48 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- notify the application whenever an extension or its settings are modified, so that every node can invalidate
+-- its extension cache. The payload is the name of the modified table. Notifications are delivered on commit.
+CREATE OR REPLACE FUNCTION trf_notify_extension_change()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    PERFORM pg_notify('alfio_extension', TG_TABLE_NAME);
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_notify_extension_change
+    AFTER INSERT OR UPDATE OR DELETE ON extension_support
+    FOR EACH STATEMENT
+    EXECUTE PROCEDURE trf_notify_extension_change();
+
+CREATE TRIGGER tr_notify_extension_change
+    AFTER INSERT OR UPDATE OR DELETE ON extension_event
+    FOR EACH STATEMENT
+    EXECUTE PROCEDURE trf_notify_extension_change();
+
+CREATE TRIGGER tr_notify_extension_change
+    AFTER INSERT OR UPDATE OR DELETE ON extension_configuration_metadata
+    FOR EACH STATEMENT
+    EXECUTE PROCEDURE trf_notify_extension_change();
+
+CREATE TRIGGER tr_notify_extension_change
+    AFTER INSERT OR UPDATE OR DELETE ON extension_configuration_metadata_value
+    FOR EACH STATEMENT
+    EXECUTE PROCEDURE trf_notify_extension_change();
@@ -0,0 +1,79 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- row level security for event_dirty_flag
+alter table event_dirty_flag add column organization_id_fk integer constraint event_dirty_flag_organization_id_fk references organization(id);
+update event_dirty_flag set organization_id_fk = (select org_id from event where event.id = event_id_fk);
+alter table event_dirty_flag alter column organization_id_fk set not null;
+
+alter table event_dirty_flag enable row level security;
+alter table event_dirty_flag force row level security;
+create policy event_dirty_flag_access_policy on event_dirty_flag to public
+    using (alfio_check_row_access(organization_id_fk))
+    with check (alfio_check_row_access(organization_id_fk));
+
+-- the statement level triggers defined in V204_2.0.0.51 build the transition tables for every insert/update on ticket,
+-- including the ones which cannot affect the flags (e.g. tickets being reserved). Row level triggers with a WHEN
+-- condition are evaluated without calling the trigger function, so they cost nothing for the other updates.
+drop trigger tr_flag_dirty_events_for_updated_tickets on ticket;
+drop trigger tr_flag_dirty_events_for_inserted_tickets on ticket;
+drop function trf_flag_dirty_events_for_updated_tickets();
+drop function trf_flag_dirty_events_for_inserted_tickets();
+
+-- released tickets are already handled by the triggers defined in V204_2.0.0.50, so we reuse them
+CREATE OR REPLACE FUNCTION trf_notify_released_tickets()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    insert into event_dirty_flag(event_id_fk, organization_id_fk, job_name) values (NEW.event_id, NEW.organization_id_fk, 'WAITING_LIST')
+        on conflict do nothing;
+    PERFORM pg_notify('alfio_released_tickets', NEW.event_id::text);
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION trf_flag_dirty_events_for_assigned_tickets()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    insert into event_dirty_flag(event_id_fk, organization_id_fk, job_name)
+        values (NEW.event_id, NEW.organization_id_fk, 'TICKET_ASSIGNMENT_REMINDER'), (NEW.event_id, NEW.organization_id_fk, 'OPTIONAL_DATA_REMINDER')
+        on conflict do nothing;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_flag_dirty_events_for_assigned_tickets
+    AFTER UPDATE OF status, email_address, full_name ON ticket
+    FOR EACH ROW
+    WHEN (NEW.status IN ('ACQUIRED', 'TO_BE_PAID')
+        AND (OLD.status <> NEW.status OR OLD.email_address IS DISTINCT FROM NEW.email_address OR OLD.full_name IS DISTINCT FROM NEW.full_name))
+    EXECUTE PROCEDURE trf_flag_dirty_events_for_assigned_tickets();
+
+CREATE OR REPLACE FUNCTION trf_flag_dirty_events_for_offline_payments()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    insert into event_dirty_flag(event_id_fk, organization_id_fk, job_name)
+        values (NEW.event_id_fk, coalesce(NEW.organization_id_fk, (select org_id from event where id = NEW.event_id_fk)), 'OFFLINE_PAYMENTS')
+        on conflict do nothing;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
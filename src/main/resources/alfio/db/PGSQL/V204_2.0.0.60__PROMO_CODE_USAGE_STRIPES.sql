@@ -0,0 +1,129 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- the promo code usage counters are split into stripes, so that concurrent confirmations for the same promo code
+-- and category update different rows. The stripe is chosen from the backend pid, so that concurrent transactions
+-- (which use different connections) most likely hit different stripes. Readers sum all the stripes.
+alter table promo_code_usage add column stripe integer not null default 0;
+alter table promo_code_usage drop constraint promo_code_usage_pkey;
+alter table promo_code_usage add primary key(promo_code_id_fk, category_id, stripe);
+
+alter table promo_code_usage add column organization_id_fk integer constraint promo_code_usage_organization_id_fk references organization(id);
+update promo_code_usage u set organization_id_fk = (select p.organization_id_fk from promo_code p where p.id = u.promo_code_id_fk);
+alter table promo_code_usage alter column organization_id_fk set not null;
+
+alter table promo_code_usage enable row level security;
+alter table promo_code_usage force row level security;
+create policy promo_code_usage_access_policy on promo_code_usage to public
+    using (alfio_check_row_access(organization_id_fk))
+    with check (alfio_check_row_access(organization_id_fk));
+
+-- promo codes follow their event when it is transferred to another organization
+CREATE OR REPLACE FUNCTION trf_propagate_promo_code_organization_change()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    update promo_code_usage set organization_id_fk = NEW.organization_id_fk where promo_code_id_fk = NEW.id;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_propagate_promo_code_organization_change
+    AFTER UPDATE OF organization_id_fk ON promo_code
+    FOR EACH ROW
+    WHEN (OLD.organization_id_fk <> NEW.organization_id_fk)
+    EXECUTE PROCEDURE trf_propagate_promo_code_organization_change();
+
+-- adds the given delta to the counter, if the reservation is confirmed and has a promo code
+CREATE OR REPLACE FUNCTION alfio_add_promo_code_usage(p_reservation_id varchar, p_category_id integer, p_delta integer)
+    RETURNS void AS
+$body$
+BEGIN
+    insert into promo_code_usage as u (promo_code_id_fk, category_id, stripe, organization_id_fk, confirmed_tickets)
+        select p.id, p_category_id, pg_backend_pid() % 8, p.organization_id_fk, p_delta from tickets_reservation r
+            join promo_code p on p.id = r.promo_code_id_fk
+        where r.id = p_reservation_id and r.status in ('OFFLINE_PAYMENT', 'DEFERRED_OFFLINE_PAYMENT', 'COMPLETE', 'STUCK')
+    on conflict (promo_code_id_fk, category_id, stripe) do update set confirmed_tickets = u.confirmed_tickets + excluded.confirmed_tickets;
+END
+$body$
+    LANGUAGE plpgsql;
+
+-- the statement level triggers defined in V204_2.0.0.52 build the transition tables for every change on ticket.
+-- The counters are affected only by tickets entering or leaving a reservation, or changing category, therefore
+-- row level triggers filtered by WHEN are enough, and cost nothing for the other updates (e.g. status changes).
+DROP TRIGGER tr_update_promo_code_usage_for_inserted_tickets ON ticket;
+DROP TRIGGER tr_update_promo_code_usage_for_updated_tickets ON ticket;
+DROP TRIGGER tr_update_promo_code_usage_for_deleted_tickets ON ticket;
+DROP FUNCTION trf_update_promo_code_usage_for_tickets();
+
+CREATE OR REPLACE FUNCTION trf_update_promo_code_usage_for_ticket()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    IF TG_OP <> 'INSERT' AND OLD.tickets_reservation_id IS NOT NULL THEN
+        PERFORM alfio_add_promo_code_usage(OLD.tickets_reservation_id, coalesce(OLD.category_id, 0), -1);
+    END IF;
+    IF TG_OP <> 'DELETE' AND NEW.tickets_reservation_id IS NOT NULL THEN
+        PERFORM alfio_add_promo_code_usage(NEW.tickets_reservation_id, coalesce(NEW.category_id, 0), 1);
+    END IF;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_update_promo_code_usage_for_inserted_ticket
+    AFTER INSERT ON ticket
+    FOR EACH ROW
+    WHEN (NEW.tickets_reservation_id IS NOT NULL)
+    EXECUTE PROCEDURE trf_update_promo_code_usage_for_ticket();
+
+CREATE TRIGGER tr_update_promo_code_usage_for_updated_ticket
+    AFTER UPDATE OF tickets_reservation_id, category_id ON ticket
+    FOR EACH ROW
+    WHEN (OLD.tickets_reservation_id IS DISTINCT FROM NEW.tickets_reservation_id OR OLD.category_id IS DISTINCT FROM NEW.category_id)
+    EXECUTE PROCEDURE trf_update_promo_code_usage_for_ticket();
+
+CREATE TRIGGER tr_update_promo_code_usage_for_deleted_ticket
+    AFTER DELETE ON ticket
+    FOR EACH ROW
+    WHEN (OLD.tickets_reservation_id IS NOT NULL)
+    EXECUTE PROCEDURE trf_update_promo_code_usage_for_ticket();
+
+-- reservation confirmed, cancelled or expired, or promo code changed
+CREATE OR REPLACE FUNCTION trf_update_promo_code_usage_for_reservation()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    insert into promo_code_usage as u (promo_code_id_fk, category_id, stripe, organization_id_fk, confirmed_tickets)
+        select changes.promo_code_id_fk, changes.category_id, pg_backend_pid() % 8, p.organization_id_fk, sum(changes.delta) from (
+            select NEW.promo_code_id_fk as promo_code_id_fk, coalesce(t.category_id, 0) as category_id, 1 as delta from ticket t
+            where t.tickets_reservation_id = NEW.id and NEW.promo_code_id_fk is not null
+                and NEW.status in ('OFFLINE_PAYMENT', 'DEFERRED_OFFLINE_PAYMENT', 'COMPLETE', 'STUCK')
+            union all
+            select OLD.promo_code_id_fk as promo_code_id_fk, coalesce(t.category_id, 0) as category_id, -1 as delta from ticket t
+            where t.tickets_reservation_id = OLD.id and OLD.promo_code_id_fk is not null
+                and OLD.status in ('OFFLINE_PAYMENT', 'DEFERRED_OFFLINE_PAYMENT', 'COMPLETE', 'STUCK')
+        ) changes
+        join promo_code p on p.id = changes.promo_code_id_fk
+        group by changes.promo_code_id_fk, changes.category_id, p.organization_id_fk
+        having sum(changes.delta) <> 0
+    on conflict (promo_code_id_fk, category_id, stripe) do update set confirmed_tickets = u.confirmed_tickets + excluded.confirmed_tickets;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
@@ -0,0 +1,105 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- a reservation can bind several tokens in the same transaction, therefore it can keep the locks on some stripes
+-- while looking for another one. Waiting for a stripe locked by another transaction is safe only if the current
+-- transaction does not hold any stripe yet, otherwise two reservations could wait for each other.
+-- The transaction-local setting "alfio.access_code_stripe_locked" records whether a stripe has been locked.
+-- A stripe could be full once we get its lock, so the lookup is retried instead of failing.
+CREATE OR REPLACE FUNCTION trf_allocate_access_code_stripe()
+    RETURNS TRIGGER AS
+$body$
+DECLARE
+    v_attempt integer = 0;
+BEGIN
+    IF NEW.access_code_id_fk IS NOT DISTINCT FROM OLD.access_code_id_fk AND NEW.access_code_stripe IS NOT DISTINCT FROM OLD.access_code_stripe THEN
+        RETURN NEW;
+    END IF;
+    IF OLD.access_code_id_fk IS NOT NULL THEN
+        update access_code_stripe set allocated = allocated - 1
+            where access_code_id_fk = OLD.access_code_id_fk and stripe = coalesce(OLD.access_code_stripe, 0) and allocated > 0;
+        PERFORM set_config('alfio.access_code_stripe_locked', 'true', true);
+    END IF;
+    IF NEW.access_code_id_fk IS NULL THEN
+        NEW.access_code_stripe = NULL;
+        RETURN NEW;
+    END IF;
+    IF NOT EXISTS (select 1 from access_code_stripe where access_code_id_fk = NEW.access_code_id_fk) THEN
+        -- no max usage defined
+        NEW.access_code_stripe = NULL;
+        RETURN NEW;
+    END IF;
+    IF NEW.access_code_stripe IS NOT NULL THEN
+        -- explicitly assigned stripe
+        update access_code_stripe set allocated = allocated + 1
+            where access_code_id_fk = NEW.access_code_id_fk and stripe = NEW.access_code_stripe and allocated < quota;
+        IF NOT FOUND THEN
+            raise EXCEPTION USING MESSAGE = ('Max usage exceeded for access code ' || NEW.access_code_id_fk);
+        END IF;
+        PERFORM set_config('alfio.access_code_stripe_locked', 'true', true);
+        RETURN NEW;
+    END IF;
+    LOOP
+        -- stripes already locked by the current transaction are returned as well
+        NEW.access_code_stripe = (select stripe from access_code_stripe
+            where access_code_id_fk = NEW.access_code_id_fk and allocated < quota order by stripe limit 1 for update skip locked);
+        EXIT WHEN NEW.access_code_stripe IS NOT NULL;
+        -- every stripe with capacity left, if any, is locked by another transaction
+        IF NOT EXISTS (select 1 from access_code_stripe where access_code_id_fk = NEW.access_code_id_fk and allocated < quota) THEN
+            raise EXCEPTION USING MESSAGE = ('Max usage exceeded for access code ' || NEW.access_code_id_fk);
+        END IF;
+        v_attempt = v_attempt + 1;
+        IF coalesce(current_setting('alfio.access_code_stripe_locked', true), '') <> 'true' THEN
+            -- we don't hold any stripe, so we can safely wait. The stripe might be full once we get it
+            PERFORM 1 from access_code_stripe
+                where access_code_id_fk = NEW.access_code_id_fk and allocated < quota order by stripe limit 1 for update;
+            PERFORM set_config('alfio.access_code_stripe_locked', 'true', true);
+        ELSIF v_attempt > 50 THEN
+            raise EXCEPTION USING MESSAGE = ('Max usage exceeded for access code ' || NEW.access_code_id_fk);
+        ELSE
+            -- waiting while holding a stripe could lead to a deadlock, so we back off and try again
+            PERFORM pg_sleep(0.002 * least(v_attempt, 10));
+        END IF;
+    END LOOP;
+    update access_code_stripe set allocated = allocated + 1
+        where access_code_id_fk = NEW.access_code_id_fk and stripe = NEW.access_code_stripe and allocated < quota;
+    IF NOT FOUND THEN
+        raise EXCEPTION USING MESSAGE = ('Max usage exceeded for access code ' || NEW.access_code_id_fk);
+    END IF;
+    PERFORM set_config('alfio.access_code_stripe_locked', 'true', true);
+    RETURN NEW;
+END
+$body$
+    LANGUAGE plpgsql;
+
+-- deleted tokens give their slot back to their stripe
+CREATE OR REPLACE FUNCTION trf_release_access_code_stripe()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    update access_code_stripe set allocated = allocated - 1
+        where access_code_id_fk = OLD.access_code_id_fk and stripe = coalesce(OLD.access_code_stripe, 0) and allocated > 0;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_release_access_code_stripe
+    AFTER DELETE ON special_price
+    FOR EACH ROW
+    WHEN (OLD.access_code_id_fk IS NOT NULL)
+    EXECUTE PROCEDURE trf_release_access_code_stripe();
@@ -0,0 +1,43 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- the slots of an access code are now claimed by the application before binding the tokens
+-- (see PromoCodeDiscountRepository.claimAccessCodeSlots), in a single statement which locks the stripes in order
+-- and never waits for other transactions. The trigger only gives the slot of the previous binding back, and rejects
+-- the bindings without a stripe.
+CREATE OR REPLACE FUNCTION trf_allocate_access_code_stripe()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    IF NEW.access_code_id_fk IS NOT DISTINCT FROM OLD.access_code_id_fk AND NEW.access_code_stripe IS NOT DISTINCT FROM OLD.access_code_stripe THEN
+        RETURN NEW;
+    END IF;
+    IF OLD.access_code_id_fk IS NOT NULL THEN
+        update access_code_stripe set allocated = allocated - 1
+            where access_code_id_fk = OLD.access_code_id_fk and stripe = coalesce(OLD.access_code_stripe, 0) and allocated > 0;
+    END IF;
+    IF NEW.access_code_id_fk IS NULL THEN
+        NEW.access_code_stripe = NULL;
+        RETURN NEW;
+    END IF;
+    IF NEW.access_code_stripe IS NULL AND EXISTS (select 1 from access_code_stripe where access_code_id_fk = NEW.access_code_id_fk) THEN
+        raise EXCEPTION USING MESSAGE = ('No slot has been claimed for access code ' || NEW.access_code_id_fk);
+    END IF;
+    RETURN NEW;
+END
+$body$
+    LANGUAGE plpgsql;
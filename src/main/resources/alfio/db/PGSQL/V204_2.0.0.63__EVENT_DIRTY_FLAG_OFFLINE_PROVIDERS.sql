@@ -0,0 +1,77 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- the offline payments job skips the events without an active offline provider, and clears their flag.
+-- A change to the provider configuration must therefore flag again the events it applies to.
+CREATE OR REPLACE FUNCTION alfio_is_offline_provider_key(varchar)
+    RETURNS boolean AS
+$$
+    select $1 in ('BANK_TRANSFER_ENABLED', 'REVOLUT_ENABLED', 'REVOLUT_API_KEY', 'REVOLUT_LIVE_MODE')
+$$ language sql immutable;
+
+CREATE OR REPLACE FUNCTION trf_flag_dirty_events_for_offline_providers()
+    RETURNS TRIGGER AS
+$body$
+DECLARE
+    r_key varchar;
+    r_organization_id integer;
+    r_event_id integer;
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        r_key = OLD.c_key;
+        IF TG_TABLE_NAME = 'configuration_organization' OR TG_TABLE_NAME = 'configuration_event' THEN
+            r_organization_id = OLD.organization_id_fk;
+        END IF;
+        IF TG_TABLE_NAME = 'configuration_event' THEN
+            r_event_id = OLD.event_id_fk;
+        END IF;
+    ELSE
+        r_key = NEW.c_key;
+        IF TG_TABLE_NAME = 'configuration_organization' OR TG_TABLE_NAME = 'configuration_event' THEN
+            r_organization_id = NEW.organization_id_fk;
+        END IF;
+        IF TG_TABLE_NAME = 'configuration_event' THEN
+            r_event_id = NEW.event_id_fk;
+        END IF;
+    END IF;
+    IF alfio_is_offline_provider_key(r_key) THEN
+        insert into event_dirty_flag(event_id_fk, organization_id_fk, job_name)
+            select e.id, e.org_id, 'OFFLINE_PAYMENTS' from event e
+            where e.end_ts > now()
+                and (r_organization_id is null or e.org_id = r_organization_id)
+                and (r_event_id is null or e.id = r_event_id)
+            on conflict do nothing;
+    END IF;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_flag_dirty_events_for_offline_providers
+    AFTER INSERT OR UPDATE OR DELETE ON configuration
+    FOR EACH ROW
+    EXECUTE PROCEDURE trf_flag_dirty_events_for_offline_providers();
+
+CREATE TRIGGER tr_flag_dirty_events_for_offline_providers
+    AFTER INSERT OR UPDATE OR DELETE ON configuration_organization
+    FOR EACH ROW
+    EXECUTE PROCEDURE trf_flag_dirty_events_for_offline_providers();
+
+CREATE TRIGGER tr_flag_dirty_events_for_offline_providers
+    AFTER INSERT OR UPDATE OR DELETE ON configuration_event
+    FOR EACH ROW
+    EXECUTE PROCEDURE trf_flag_dirty_events_for_offline_providers();
@@ -0,0 +1,85 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- shared version of the data shown on the public pages, used to build the ETags of the public API responses.
+-- The counters are incremented in the same transaction as the change, by the triggers which notify the change,
+-- so that every node builds the same ETags and a new version is never visible before the data.
+create table public_data_version (
+    channel varchar(64) primary key not null,
+    version bigint not null default 0
+);
+insert into public_data_version(channel) values ('alfio_event'), ('alfio_configuration');
+
+CREATE OR REPLACE FUNCTION alfio_increment_public_data_version(varchar)
+    RETURNS void AS
+$$
+    update public_data_version set version = version + 1 where channel = $1
+$$ language sql;
+
+CREATE OR REPLACE FUNCTION trf_notify_configuration_change()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    PERFORM alfio_increment_public_data_version('alfio_configuration');
+    PERFORM pg_notify('alfio_configuration', TG_TABLE_NAME);
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION trf_notify_event_change()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    PERFORM alfio_increment_public_data_version('alfio_event');
+    IF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('alfio_event', OLD.id::text);
+    ELSE
+        PERFORM pg_notify('alfio_event', NEW.id::text);
+    END IF;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION trf_notify_event_data_change()
+    RETURNS TRIGGER AS
+$body$
+DECLARE
+    row_data jsonb;
+    modified_event_id integer;
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        row_data := to_jsonb(OLD);
+    ELSE
+        row_data := to_jsonb(NEW);
+    END IF;
+    IF TG_TABLE_NAME = 'ticket_category' THEN
+        modified_event_id := (row_data ->> 'event_id')::integer;
+    ELSIF TG_TABLE_NAME = 'ticket_category_text' THEN
+        SELECT event_id INTO modified_event_id FROM ticket_category WHERE id = (row_data ->> 'ticket_category_id_fk')::integer;
+    ELSIF TG_TABLE_NAME = 'additional_service_description' THEN
+        SELECT event_id_fk INTO modified_event_id FROM additional_service WHERE id = (row_data ->> 'additional_service_id_fk')::integer;
+    ELSIF TG_TABLE_NAME <> 'organization' THEN
+        modified_event_id := (row_data ->> 'event_id_fk')::integer;
+    END IF;
+    PERFORM alfio_increment_public_data_version('alfio_event');
+    PERFORM pg_notify('alfio_event', coalesce(modified_event_id, 0)::text);
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
@@ -17,14 +17,14 @@
 
 create view events_statistics as (select
       event.id,
-      (select count(id) from ticket where event_id = event.id and status not in ('INVALIDATED', 'EXPIRED')) as available_seats,
-      case(contains_unbounded_categories) when true then 0 else (select count(id) from ticket where event_id = event.id and status not in ('INVALIDATED', 'EXPIRED')) - allocated_count end as not_allocated_tickets,
+      ((select count(id) from ticket where event_id = event.id and status not in ('INVALIDATED', 'EXPIRED')) + not_materialized_count) as available_seats,
+      case(contains_unbounded_categories) when true then 0 else ((select count(id) from ticket where event_id = event.id and status not in ('INVALIDATED', 'EXPIRED')) + not_materialized_count) - allocated_count end as not_allocated_tickets,
       pending_count as pending_tickets,
       sold_tickets_count as sold_tickets,
       (select released_count + count(id) from ticket where event_id = event.id and status = 'RELEASED' and category_id is null) as released_tickets,
       stats.checked_in_count as checked_in_tickets,
       case(contains_unbounded_categories) when true then
-        (select count(id) from ticket where event_id = event.id and status not in ('INVALIDATED', 'EXPIRED'))
+        ((select count(id) from ticket where event_id = event.id and status not in ('INVALIDATED', 'EXPIRED')) + not_materialized_count)
           - allocated_count
           - released_count
           - sold_tickets_count_unbounded
@@ -47,6 +47,7 @@ from
 	sum(checked_in_count) as checked_in_count,
 	sum(pending_count) as pending_count,
 	sum(released_count) as released_count,
+	sum(not_materialized_tickets) as not_materialized_count,
 	sum(case (bounded) when true then checked_in_count else 0 end) as checked_in_count_bounded,
 	sum(case (bounded = false) when true then checked_in_count else 0 end) as checked_in_count_unbounded,
 	sum(case (bounded) when true then max_tickets else 0 end) as allocated_count,
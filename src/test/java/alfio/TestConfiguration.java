@@ -16,42 +16,61 @@
  */
 package alfio;
 
+import alfio.controller.api.v2.user.support.PublishedEventsCache;
+import alfio.extension.ExtensionCache;
+import alfio.manager.system.ConfigurationCache;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.DatabaseNotificationListener;
+import alfio.manager.system.EventCache;
 import alfio.manager.system.ExternalConfiguration;
 import alfio.manager.user.UserManager;
-import alfio.model.system.ConfigurationKeys;
 import alfio.repository.EventRepository;
 import alfio.repository.system.ConfigurationRepository;
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
+import alfio.util.ClockProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.env.Environment;
 
 import java.time.Duration;
-import java.util.Map;
-import java.util.Set;
 
 
 @Configuration(proxyBeanMethods = false)
 @Import(BaseTestConfiguration.class)
 public class TestConfiguration {
 
+    @Bean
+    ConfigurationCache configurationCache(DatabaseNotificationListener databaseNotificationListener) {
+        return new ConfigurationCache(Duration.ZERO, databaseNotificationListener);
+    }
+
+    @Bean
+    EventCache eventCache(EventRepository eventRepository, DatabaseNotificationListener databaseNotificationListener) {
+        return new EventCache(eventRepository, Duration.ZERO, databaseNotificationListener);
+    }
+
+    @Bean
+    ExtensionCache extensionCache(DatabaseNotificationListener databaseNotificationListener) {
+        return new ExtensionCache(Duration.ZERO, databaseNotificationListener);
+    }
+
+    @Bean
+    PublishedEventsCache publishedEventsCache(DatabaseNotificationListener databaseNotificationListener, ClockProvider clockProvider) {
+        return new PublishedEventsCache(Duration.ZERO, databaseNotificationListener, clockProvider);
+    }
+
     @Bean
     ConfigurationManager configurationManager(ConfigurationRepository configurationRepository,
                                               UserManager userManager,
                                               EventRepository eventRepository,
                                               ExternalConfiguration externalConfiguration,
-                                              Environment environment) {
-        Cache<Set<ConfigurationKeys>, Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration>> cache = Caffeine.newBuilder()
-            .expireAfterWrite(Duration.ZERO)
-            .build();
+                                              Environment environment,
+                                              ConfigurationCache configurationCache) {
         return new ConfigurationManager(configurationRepository,
             userManager,
             eventRepository,
             externalConfiguration,
             environment,
-            cache);
+            configurationCache);
     }
 }
@@ -203,7 +203,7 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
             extensionService.createOrUpdate(null, null, new Extension("-", "syncName", concatenation.replace("placeHolder", "false"), true));
             extensionService.createOrUpdate(null, null, new Extension("-", "asyncName", concatenation.replace("placeHolder", "true"), true));
         }
-        List<BasicEventInfo> body = eventApiV2Controller.listEvents(SearchOptions.empty()).getBody();
+        List<BasicEventInfo> body = eventApiV2Controller.listEvents(SearchOptions.empty(), null).getBody();
         assertNotNull(body);
         assertTrue(body.isEmpty());
 
@@ -227,12 +227,14 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
 
         //
         assertEquals(ContentLanguage.ALL_LANGUAGES.size(), translationsApiController.getSupportedLanguages().size());
-        assertEquals("or", translationsApiController.getPublicTranslations("en", true).get("common.or"));
-        assertEquals("o", translationsApiController.getPublicTranslations("it", true).get("common.or"));
-        assertEquals("oder", translationsApiController.getPublicTranslations("de", true).get("common.or"));
+        assertEquals("or", getPublicTranslations("en").get("common.or"));
+        assertEquals("o", getPublicTranslations("it").get("common.or"));
+        assertEquals("oder", getPublicTranslations("de").get("common.or"));
+        assertEquals(translationsApiController.getPublicTranslations("en", true).getHeaders().getETag(),
+            translationsApiController.getPublicTranslations("en", true).getHeaders().getETag());
 
         // check all public translations
-        ContentLanguage.ALL_LANGUAGES.forEach(cl -> assertFalse(translationsApiController.getPublicTranslations(cl.getLanguage(), true).isEmpty()));
+        ContentLanguage.ALL_LANGUAGES.forEach(cl -> assertFalse(getPublicTranslations(cl.getLanguage()).isEmpty()));
 
         var alfioInfo = infoApiController.getInfo(new MockHttpSession());
         assertFalse(alfioInfo.isDemoModeEnabled());
@@ -258,7 +260,7 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
         //
 
 
-        assertTrue(requireNonNull(eventApiV2Controller.listEvents(SearchOptions.empty()).getBody()).isEmpty());
+        assertTrue(requireNonNull(eventApiV2Controller.listEvents(SearchOptions.empty(), null).getBody()).isEmpty());
 
 
         //
@@ -279,19 +281,20 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
         eventManager.toggleActiveFlag(context.event.getId(), context.userId, true);
         //
 
-        var resListEvents = eventApiV2Controller.listEvents(SearchOptions.empty());
+        var resListEvents = eventApiV2Controller.listEvents(SearchOptions.empty(), null);
         var events = resListEvents.getBody();
 
         assertEquals(HttpStatus.OK, resListEvents.getStatusCode());
         assertNotNull(events);
         assertEquals(1, events.size());
         assertEquals(context.event.getShortName(), events.get(0).getShortName());
+        assertEquals(HttpStatus.NOT_MODIFIED, eventApiV2Controller.listEvents(SearchOptions.empty(), resListEvents.getHeaders().getETag()).getStatusCode());
 
         //
-        assertEquals(HttpStatus.NOT_FOUND, eventApiV2Controller.getEvent("NOT_EXISTS", new MockHttpSession()).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, eventApiV2Controller.getEvent("NOT_EXISTS", new MockHttpSession(), null).getStatusCode());
         //
 
-        var eventRes = eventApiV2Controller.getEvent(context.event.getShortName(), new MockHttpSession());
+        var eventRes = eventApiV2Controller.getEvent(context.event.getShortName(), new MockHttpSession(), null);
         assertEquals(HttpStatus.OK, eventRes.getStatusCode());
         var selectedEvent = eventRes.getBody();
         assertNotNull(selectedEvent);
@@ -306,7 +309,7 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
 
         configurationRepository.insert("TRANSLATION_OVERRIDE", Json.toJson(Map.of("en", Map.of("show-context.event.tickets.left", "{0} left!"))), "");
         configurationRepository.insertEventLevel(context.event.getOrganizationId(), context.event.getId(),"TRANSLATION_OVERRIDE", Json.toJson(Map.of("en", Map.of("common.vat", "context.event.vat"))), "");
-        eventRes = eventApiV2Controller.getEvent(context.event.getShortName(), new MockHttpSession());
+        eventRes = eventApiV2Controller.getEvent(context.event.getShortName(), new MockHttpSession(), null);
         selectedEvent = eventRes.getBody();
         assertNotNull(selectedEvent);
         assertFalse(selectedEvent.getI18nOverride().isEmpty());
@@ -341,6 +344,7 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
             var htmlParser = new Parser();
             var docWithoutOpenGraph = htmlParser.parse(new String(res.getContentAsByteArray(), StandardCharsets.UTF_8));
             assertTrue(docWithoutOpenGraph.getAllNodesMatching(Selector.select().element("meta").attrValEq("name", "twitter:card").toMatcher()).isEmpty());
+            assertFalse(docWithoutOpenGraph.getAllNodesMatching(Selector.select().element("script").attrValEq("id", "preload-event").toMatcher()).isEmpty());
 
             res = new MockHttpServletResponse();
             indexController.replyToIndex(context.event.getShortName(), null,"Twitterbot/42", "en", new ServletWebRequest(new MockHttpServletRequest()), res, new MockHttpSession());
@@ -355,10 +359,13 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
 
 
         // check ticket & all, we have 2 ticket categories, 1 hidden
-        assertEquals(HttpStatus.NOT_FOUND, eventApiV2Controller.getTicketCategories("NOT_EXISTING", null).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, eventApiV2Controller.getTicketCategories("NOT_EXISTING", null, null).getStatusCode());
         {
-            var itemsRes = eventApiV2Controller.getTicketCategories(context.event.getShortName(), null);
+            var itemsRes = eventApiV2Controller.getTicketCategories(context.event.getShortName(), null, null);
             assertEquals(HttpStatus.OK, itemsRes.getStatusCode());
+            var notModified = eventApiV2Controller.getTicketCategories(context.event.getShortName(), null, itemsRes.getHeaders().getETag());
+            assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+            assertNull(notModified.getBody());
 
             var items = itemsRes.getBody();
 
@@ -388,7 +395,7 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
             var tc = ticketCategoryRepository.getById(visibleCat.getId());
             ticketCategoryRepository.fixDates(visibleCat.getId(), tc.getInception(context.event.getZoneId()).plusDays(2), tc.getExpiration(context.event.getZoneId()));
             //
-            items = eventApiV2Controller.getTicketCategories(context.event.getShortName(), null).getBody();
+            items = eventApiV2Controller.getTicketCategories(context.event.getShortName(), null, null).getBody();
             assertNotNull(items);
             assertTrue(items.isWaitingList());
             assertTrue(items.isPreSales());
@@ -431,7 +438,7 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
             var ticketReservation = new TicketReservationModification();
             form.setPromoCode("DYNAMIC_CODE");
             ticketReservation.setAmount(1);
-            ticketReservation.setTicketCategoryId(eventApiV2Controller.getTicketCategories(context.event.getShortName(), null).getBody().getTicketCategories().get(0).getId());
+            ticketReservation.setTicketCategoryId(eventApiV2Controller.getTicketCategories(context.event.getShortName(), null, null).getBody().getTicketCategories().get(0).getId());
             form.setReservation(Collections.singletonList(ticketReservation));
             var res = eventApiV2Controller.reserveTickets(context.event.getShortName(), "en", form, new BeanPropertyBindingResult(form, "reservation"), new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse()), null);
             assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, res.getStatusCode());
@@ -448,7 +455,7 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
             assertNotNull(hiddenCode);
             assertEquals(EventCode.EventCodeType.ACCESS, hiddenCode.getValue().getType());
 
-            var itemsRes2 = eventApiV2Controller.getTicketCategories(context.event.getShortName(), HIDDEN_CODE);
+            var itemsRes2 = eventApiV2Controller.getTicketCategories(context.event.getShortName(), HIDDEN_CODE, null);
             var items2 = itemsRes2.getBody();
             assertNotNull(items2);
             assertEquals(2, items2.getTicketCategories().size());
@@ -571,7 +578,7 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
             var discountCode = discountCodeRes.getBody();
             assertNotNull(discountCode);
             assertEquals(EventCode.EventCodeType.DISCOUNT, discountCode.getValue().getType());
-            var itemsRes3 = eventApiV2Controller.getTicketCategories(context.event.getShortName(), PROMO_CODE);
+            var itemsRes3 = eventApiV2Controller.getTicketCategories(context.event.getShortName(), PROMO_CODE, null);
 
             var items3 = itemsRes3.getBody();
             assertNotNull(items3);
@@ -601,7 +608,7 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
             var form = new ReservationForm();
             var ticketReservation = new TicketReservationModification();
             ticketReservation.setAmount(1);
-            ticketReservation.setTicketCategoryId(eventApiV2Controller.getTicketCategories(context.event.getShortName(), null).getBody().getTicketCategories().get(0).getId());
+            ticketReservation.setTicketCategoryId(eventApiV2Controller.getTicketCategories(context.event.getShortName(), null, null).getBody().getTicketCategories().get(0).getId());
             form.setReservation(Collections.singletonList(ticketReservation));
             var res = eventApiV2Controller.reserveTickets(context.event.getShortName(), "en", form, new BeanPropertyBindingResult(form, "reservation"), new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse()), context.getPublicUser());
             assertEquals(HttpStatus.OK, res.getStatusCode());
@@ -622,7 +629,7 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
         //check blacklist payment methods
         {
             var form = new ReservationForm();
-            var categories = eventApiV2Controller.getTicketCategories(context.event.getShortName(), HIDDEN_CODE).getBody().getTicketCategories();
+            var categories = eventApiV2Controller.getTicketCategories(context.event.getShortName(), HIDDEN_CODE, null).getBody().getTicketCategories();
 
             var c1 = new TicketReservationModification();
             c1.setAmount(1);
@@ -657,7 +664,7 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
             var form = new ReservationForm();
             var ticketReservation = new TicketReservationModification();
             ticketReservation.setAmount(2);
-            ticketReservation.setTicketCategoryId(eventApiV2Controller.getTicketCategories(context.event.getShortName(), null).getBody().getTicketCategories().get(0).getId());
+            ticketReservation.setTicketCategoryId(eventApiV2Controller.getTicketCategories(context.event.getShortName(), null, null).getBody().getTicketCategories().get(0).getId());
             form.setReservation(Collections.singletonList(ticketReservation));
 
             var additionalService = new AdditionalServiceReservationModification();
@@ -743,7 +750,7 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
             var form = new ReservationForm();
             var ticketReservation = new TicketReservationModification();
             ticketReservation.setAmount(1);
-            ticketReservation.setTicketCategoryId(eventApiV2Controller.getTicketCategories(context.event.getShortName(), null).getBody().getTicketCategories().get(0).getId());
+            ticketReservation.setTicketCategoryId(eventApiV2Controller.getTicketCategories(context.event.getShortName(), null, null).getBody().getTicketCategories().get(0).getId());
             form.setReservation(Collections.singletonList(ticketReservation));
             var res = eventApiV2Controller.reserveTickets(context.event.getShortName(), "en", form, new BeanPropertyBindingResult(form, "reservation"), new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse()), context.getPublicUser());
             assertEquals(HttpStatus.OK, res.getStatusCode());
@@ -1206,7 +1213,7 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
         var form = new ReservationForm();
         var ticketReservation = new TicketReservationModification();
         ticketReservation.setQuantity(numberOfTickets);
-        var categoriesResponse = eventApiV2Controller.getTicketCategories(context.event.getShortName(), null);
+        var categoriesResponse = eventApiV2Controller.getTicketCategories(context.event.getShortName(), null, null);
         assertTrue(categoriesResponse.getStatusCode().is2xxSuccessful());
         assertNotNull(categoriesResponse.getBody());
         ticketReservation.setTicketCategoryId(categoriesResponse.getBody().getTicketCategories().get(0).getId());
@@ -1298,6 +1305,10 @@ public abstract class BaseReservationFlowTest extends BaseIntegrationTest {
         triggerEmailProcessingAndCheck(context, reservationId);
     }
 
+    private Map<String, String> getPublicTranslations(String lang) {
+        return Json.fromJson(translationsApiController.getPublicTranslations(lang, true).getBody(), new TypeReference<Map<String, String>>() {});
+    }
+
     private void triggerEmailProcessingAndCheck(ReservationFlowContext context, String reservationId) {
         int result = notificationManager.sendWaitingMessages();
         assertTrue(result > 0);
@@ -0,0 +1,94 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.v2.user.support;
+
+import alfio.manager.system.ConfigurationCache;
+import alfio.manager.system.DatabaseNotificationListener;
+import alfio.manager.system.EventCache;
+import alfio.repository.system.PublicDataVersionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PublicDataVersionTest {
+
+    private DatabaseNotificationListener listener;
+    private PublicDataVersionRepository repository;
+    private PublicDataVersion publicDataVersion;
+
+    @BeforeEach
+    void setUp() {
+        listener = mock(DatabaseNotificationListener.class);
+        repository = mock(PublicDataVersionRepository.class);
+        when(repository.loadVersions()).thenReturn("alfio_configuration:0|alfio_event:0");
+        publicDataVersion = new PublicDataVersion(listener, repository);
+    }
+
+    @Test
+    void eTagChangesWithVersions() {
+        var eTag = publicDataVersion.current().eTag("event", 1);
+        assertEquals(eTag, publicDataVersion.current().eTag("event", 1));
+        assertNotEquals(eTag, publicDataVersion.current().eTag("event", 2));
+        when(repository.loadVersions()).thenReturn("alfio_configuration:0|alfio_event:1");
+        when(listener.getVersion(EventCache.CHANNEL)).thenReturn(1L);
+        var eventChanged = publicDataVersion.current().eTag("event", 1);
+        assertNotEquals(eTag, eventChanged);
+        when(repository.loadVersions()).thenReturn("alfio_configuration:1|alfio_event:1");
+        when(listener.getVersion(ConfigurationCache.CHANNEL)).thenReturn(1L);
+        assertNotEquals(eventChanged, publicDataVersion.current().eTag("event", 1));
+    }
+
+    @Test
+    void sharedVersionIsLoadedOnlyAfterNotifications() {
+        publicDataVersion.current();
+        publicDataVersion.current();
+        verify(repository, times(1)).loadVersions();
+        when(listener.getVersion(EventCache.CHANNEL)).thenReturn(1L);
+        publicDataVersion.current();
+        verify(repository, times(2)).loadVersions();
+    }
+
+    @Test
+    void eTagIsValidAcrossNodes() {
+        // the local versions of another node are unrelated
+        var otherListener = mock(DatabaseNotificationListener.class);
+        when(otherListener.getVersion(EventCache.CHANNEL)).thenReturn(42L);
+        var other = new PublicDataVersion(otherListener, repository);
+        assertEquals(publicDataVersion.current().eTag("event"), other.current().eTag("event"));
+    }
+
+    @Test
+    void matchIfNoneMatch() {
+        var eTag = publicDataVersion.current().eTag("event");
+        assertTrue(PublicDataVersion.isNotModified(eTag, eTag));
+        assertTrue(PublicDataVersion.isNotModified("\"other\", W/" + eTag, eTag));
+        assertTrue(PublicDataVersion.isNotModified("*", eTag));
+        assertFalse(PublicDataVersion.isNotModified(null, eTag));
+        assertFalse(PublicDataVersion.isNotModified("\"other\"", eTag));
+    }
+
+    @Test
+    void matchWeakETag() {
+        var weakETag = publicDataVersion.current().weakETag("event");
+        assertTrue(weakETag.startsWith("W/\""));
+        assertTrue(PublicDataVersion.isNotModified(weakETag, weakETag));
+        assertTrue(PublicDataVersion.isNotModified(publicDataVersion.current().eTag("event"), weakETag));
+        assertFalse(PublicDataVersion.isNotModified("W/\"other\"", weakETag));
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.v2.user.support;
+
+import alfio.controller.api.v2.model.BasicEventInfo;
+import alfio.controller.api.v2.model.DatesWithTimeZoneOffset;
+import alfio.controller.form.SearchOptions;
+import alfio.manager.system.DatabaseNotificationListener;
+import alfio.manager.system.EventCache;
+import alfio.test.util.TestUtil;
+import alfio.util.ClockProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PublishedEventsCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private DatabaseNotificationListener listener;
+    private PublishedEventsCache cache;
+    private ClockProvider clockProvider;
+
+    @BeforeEach
+    void setUp() {
+        listener = mock(DatabaseNotificationListener.class);
+        clockProvider = TestUtil.clockProvider();
+        cache = new PublishedEventsCache(Duration.ofMinutes(1), listener, clockProvider);
+    }
+
+    @Test
+    void cacheBySearchOptions() {
+        var searchOptions = SearchOptions.empty();
+        get(searchOptions, Duration.ofDays(1));
+        get(SearchOptions.empty(), Duration.ofDays(1));
+        assertEquals(1, loads.get());
+        searchOptions.setOrganizer(1);
+        get(searchOptions, Duration.ofDays(1));
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getStatistics().getHitCount());
+    }
+
+    @Test
+    void doNotCacheAfterFirstEventEnd() {
+        get(SearchOptions.empty(), Duration.ofDays(-1));
+        get(SearchOptions.empty(), Duration.ofDays(-1));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void invalidateOnEventChange() {
+        cache.afterPropertiesSet();
+        ArgumentCaptor<Consumer<String>> captor = ArgumentCaptor.forClass(Consumer.class);
+        verify(listener).subscribe(eq(EventCache.CHANNEL), captor.capture());
+        get(SearchOptions.empty(), Duration.ofDays(1));
+        captor.getValue().accept("1");
+        get(SearchOptions.empty(), Duration.ofDays(1));
+        assertEquals(2, loads.get());
+    }
+
+    private List<BasicEventInfo> get(SearchOptions searchOptions, Duration endFromNow) {
+        return cache.get(searchOptions, () -> {
+            loads.incrementAndGet();
+            var event = mock(BasicEventInfo.class);
+            var end = clockProvider.getClock().millis() + endFromNow.toMillis();
+            when(event.getDatesWithOffset()).thenReturn(new DatesWithTimeZoneOffset(end, 0, end, 0));
+            return List.of(event);
+        });
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.support;
+
+import ch.digitalfondue.jfiveparse.JFiveParse;
+import ch.digitalfondue.jfiveparse.Text;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StaticPageTemplateTest {
+
+    @Test
+    void renderInsertionPoints() throws IOException {
+        var document = JFiveParse.parse("<!DOCTYPE html><html><head><script src=\"main.js\"></script></head><body></body></html>");
+        document.getElementsByTagName("script").forEach(e -> e.setAttribute("nonce", StaticPageTemplate.placeholder("nonce")));
+        document.getElementsByTagName("head").get(0).appendChild(new Text(StaticPageTemplate.placeholder("head")));
+        var template = StaticPageTemplate.from(document);
+
+        assertEquals("<!DOCTYPE html><html><head><script src=\"main.js\" nonce=\"abcd\"></script><style></style></head><body></body></html>",
+            render(template, Map.of("nonce", "abcd", "head", "<style></style>")));
+        assertEquals("<!DOCTYPE html><html><head><script src=\"main.js\" nonce=\"\"></script></head><body></body></html>",
+            render(template, Map.of()));
+    }
+
+    @Test
+    void repeatedInsertionPoints() throws IOException {
+        var template = StaticPageTemplate.from("a" + StaticPageTemplate.placeholder("x") + "b" + StaticPageTemplate.placeholder("x"));
+        assertEquals("a1b1", render(template, Map.of("x", "1")));
+    }
+
+    private static String render(StaticPageTemplate template, Map<String, String> values) throws IOException {
+        var os = new ByteArrayOutputStream();
+        template.render(os, values);
+        return os.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.extension;
+
+import alfio.manager.system.DatabaseNotificationListener;
+import alfio.model.ExtensionSupport.ScriptPathNameHash;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ExtensionCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private DatabaseNotificationListener listener;
+    private ExtensionCache cache;
+
+    @BeforeEach
+    void setUp() {
+        listener = mock(DatabaseNotificationListener.class);
+        cache = new ExtensionCache(Duration.ofMinutes(1), listener);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void cacheActiveScriptsByEventPathAndAsyncFlag() {
+        activeScripts("-1-1", false);
+        activeScripts("-1-1", false);
+        assertEquals(1, loads.get());
+        activeScripts("-1-1", true);
+        activeScripts("-1-2", false);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void cacheParameters() {
+        cache.getParameters("name", "-", "-1-1", this::loadParameters);
+        cache.getParameters("name", "-", "-1-1", this::loadParameters);
+        cache.getMandatoryParameters("name", "-", this::loadMandatoryParameters);
+        cache.getMandatoryParameters("name", "-", this::loadMandatoryParameters);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void noCacheAlwaysLoads() {
+        cache = ExtensionCache.noCache();
+        activeScripts("-1-1", false);
+        activeScripts("-1-1", false);
+        cache.invalidate();
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidateOnNotification() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Consumer<String>> handler = ArgumentCaptor.forClass(Consumer.class);
+        cache.afterPropertiesSet();
+        verify(listener).subscribe(eq(ExtensionCache.CHANNEL), handler.capture());
+        activeScripts("-1-1", false);
+        cache.getParameters("name", "-", "-1-1", this::loadParameters);
+        handler.getValue().accept("extension_support");
+        activeScripts("-1-1", false);
+        cache.getParameters("name", "-", "-1-1", this::loadParameters);
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void bypassCacheWhileTransactionHasPendingChanges() {
+        TransactionSynchronizationManager.initSynchronization();
+        activeScripts("-1-1", false);
+        cache.invalidate();
+        activeScripts("-1-1", false);
+        activeScripts("-1-1", false);
+        assertEquals(3, loads.get());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        activeScripts("-1-1", false);
+        activeScripts("-1-1", false);
+        assertEquals(4, loads.get());
+    }
+
+    private void activeScripts(String basePath, boolean async) {
+        cache.getActiveScripts("RESERVATION_CONFIRMED", basePath, async, () -> {
+            loads.incrementAndGet();
+            return List.of(new ScriptPathNameHash("-", "name", "hash"));
+        });
+    }
+
+    private Map<String, String> loadParameters() {
+        loads.incrementAndGet();
+        return Map.of("key", "value");
+    }
+
+    private Set<String> loadMandatoryParameters() {
+        loads.incrementAndGet();
+        return Set.of("key");
+    }
+}
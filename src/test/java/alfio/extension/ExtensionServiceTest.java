@@ -41,7 +41,7 @@ class ExtensionServiceTest {
 
     @BeforeEach
     void setUp() {
-        extensionService = new ExtensionService(null, null, null, mock(PlatformTransactionManager.class), mock(ExternalConfiguration.class), mock(NamedParameterJdbcTemplate.class));
+        extensionService = new ExtensionService(null, null, null, mock(PlatformTransactionManager.class), mock(ExternalConfiguration.class), mock(NamedParameterJdbcTemplate.class), mock(ExtensionCache.class));
     }
 
     @Test
@@ -17,12 +17,14 @@
 package alfio.extension;
 
 import alfio.extension.exception.*;
+import alfio.extension.support.SandboxContextFactory;
 import alfio.manager.system.AdminJobManager;
 import alfio.repository.system.AdminJobQueueRepository;
 import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import org.mozilla.javascript.Context;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -34,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -58,12 +61,14 @@ public class ScriptingExecutionServiceTest {
      * @throws IOException
      */
     private String getScriptContent(String file) throws IOException {
-        String concatenation;
+        return readScript(file)+"\n;executeScript(extensionEvent)";
+    }
+
+    private String readScript(String file) throws IOException {
         try(var input = getClass().getResourceAsStream("/rhino-scripts/" + file)) {
             List<String> extensionStream = IOUtils.readLines(new InputStreamReader(Objects.requireNonNull(input), StandardCharsets.UTF_8));
-            concatenation = String.join("\n", extensionStream)+"\n;executeScript(extensionEvent)";
+            return String.join("\n", extensionStream);
         }
-        return concatenation;
     }
 
     @Test
@@ -73,6 +78,37 @@ public class ScriptingExecutionServiceTest {
         verify(extensionLogger).logInfo("test");
     }
 
+    @Test
+    void compileScriptOncePerHash() throws IOException {
+        String script = readScript("base.js");
+        var fetches = new AtomicInteger();
+        Supplier<String> scriptFetcher = () -> {
+            fetches.incrementAndGet();
+            return script;
+        };
+        var hash = "compileScriptOncePerHash";
+        scriptingExecutionService.executeScript("name", hash, scriptFetcher, "executeScript(extensionEvent);", false, Map.of("extensionEvent", "first"), Void.class, extensionLogger);
+        scriptingExecutionService.executeScript("name", hash, scriptFetcher, "executeScript(extensionEvent);", false, Map.of("extensionEvent", "second"), Void.class, extensionLogger);
+        assertEquals(1, fetches.get());
+        // each execution has its own scope
+        verify(extensionLogger).logInfo("first");
+        verify(extensionLogger).logInfo("second");
+    }
+
+    @Test
+    void executeTrustedScriptInOptimizedMode() throws IOException {
+        var optimizedService = new ScriptingExecutionService(Mockito.mock(HttpClient.class), Mockito.mock(AdminJobQueueRepository.class), () -> Runnable::run, true);
+        try {
+            String script = readScript("base.js");
+            var invocation = "var res = executeScript(extensionEvent); res = GSON.fromJson(JSON.stringify(res), returnClass);";
+            var result = optimizedService.executeScript("name", "executeTrustedScriptInOptimizedMode", () -> script, invocation, true, Map.of("extensionEvent", "INVOICE_GENERATION"), Map.class, extensionLogger);
+            assertEquals("blabla", result.get("invoiceNumber"));
+            verify(extensionLogger).logInfo("INVOICE_GENERATION");
+        } finally {
+            optimizedService.destroy();
+        }
+    }
+
     @Test
     void testExecutionTimeout() {
         assertTimeoutPreemptively(Duration.ofSeconds(16L), () -> {
@@ -86,6 +122,35 @@ public class ScriptingExecutionServiceTest {
         });
     }
 
+    @Test
+    void testExecutionTimeoutInOptimizedMode() {
+        var optimizedService = new ScriptingExecutionService(Mockito.mock(HttpClient.class), Mockito.mock(AdminJobQueueRepository.class), () -> Runnable::run, true);
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(16L), () -> {
+                String script = readScript("timeout.js");
+                var e = assertThrows(IllegalStateException.class, () ->
+                    optimizedService.executeScript("name", "testExecutionTimeoutInOptimizedMode", () -> script, "executeScript(extensionEvent);", true, Map.of("extensionEvent", "test"), Void.class, extensionLogger));
+                assertTrue(e.getCause() instanceof ExecutionTimeoutException);
+            });
+        } finally {
+            optimizedService.destroy();
+        }
+    }
+
+    @Test
+    void compiledScriptsObserveTheExecutionTime() {
+        // runs on the calling thread, without the deadline of the optimized executor
+        assertTimeoutPreemptively(Duration.ofSeconds(16L), () -> {
+            Context cx = new SandboxContextFactory(true).enterContext();
+            try {
+                var scope = cx.initSafeStandardObjects();
+                assertThrows(ExecutionTimeoutException.class, () -> cx.evaluateString(scope, "while (true) {}", "timeout", 1, null));
+            } finally {
+                Context.exit();
+            }
+        });
+    }
+
     @Test
     void testOutOfBoundariesReflection() throws Exception {
         try {
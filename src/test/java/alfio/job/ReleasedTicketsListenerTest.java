@@ -0,0 +1,72 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.job;
+
+import alfio.manager.WaitingQueueSubscriptionProcessor;
+import alfio.manager.system.DatabaseNotificationListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.ExecutorService;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ReleasedTicketsListenerTest {
+
+    private DatabaseNotificationListener databaseNotificationListener;
+    private WaitingQueueSubscriptionProcessor processor;
+    private ExecutorService executor;
+    private ReleasedTicketsListener listener;
+
+    @BeforeEach
+    void setUp() {
+        databaseNotificationListener = mock(DatabaseNotificationListener.class);
+        processor = mock(WaitingQueueSubscriptionProcessor.class);
+        executor = mock(ExecutorService.class);
+        listener = new ReleasedTicketsListener(databaseNotificationListener, processor, executor);
+    }
+
+    @Test
+    void subscribeToChannel() {
+        listener.afterPropertiesSet();
+        verify(databaseNotificationListener).subscribe(eq(ReleasedTicketsListener.CHANNEL), any());
+    }
+
+    @Test
+    void coalesceNotificationsForTheSameEvent() {
+        listener.onTicketsReleased("1");
+        listener.onTicketsReleased("1");
+        listener.onTicketsReleased("2");
+        var captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor, times(2)).execute(captor.capture());
+        captor.getAllValues().forEach(Runnable::run);
+        verify(processor).handleReleasedTickets(1);
+        verify(processor).handleReleasedTickets(2);
+        // once the execution has started, a new notification must be handled again
+        listener.onTicketsReleased("1");
+        verify(executor, times(3)).execute(any());
+    }
+
+    @Test
+    void ignoreInvalidPayload() {
+        listener.onTicketsReleased("not-a-number");
+        verifyNoInteractions(executor);
+    }
+}
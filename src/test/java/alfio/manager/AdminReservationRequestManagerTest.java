@@ -0,0 +1,216 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.model.AdminReservationRequest;
+import alfio.model.AdminReservationRequestStats;
+import alfio.model.Event;
+import alfio.model.TicketCategory;
+import alfio.model.modification.AdminReservationModification;
+import alfio.model.modification.AttendeeImportRow;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.result.ErrorCode;
+import alfio.model.result.Result;
+import alfio.model.user.User;
+import alfio.repository.AdminReservationRequestRepository;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketFieldRepository;
+import alfio.repository.user.UserRepository;
+import alfio.util.AttendeeImportReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AdminReservationRequestManagerTest {
+
+    private AdminReservationManager adminReservationManager;
+    private EventManager eventManager;
+    private TicketFieldRepository ticketFieldRepository;
+    private UserRepository userRepository;
+    private AdminReservationRequestRepository requestRepository;
+    private EventRepository eventRepository;
+    private ExecutorService executor;
+    private AdminReservationRequestManager manager;
+
+    @BeforeEach
+    void setUp() {
+        adminReservationManager = mock(AdminReservationManager.class);
+        eventManager = mock(EventManager.class);
+        ticketFieldRepository = mock(TicketFieldRepository.class);
+        userRepository = mock(UserRepository.class);
+        requestRepository = mock(AdminReservationRequestRepository.class);
+        eventRepository = mock(EventRepository.class);
+        var transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        executor = Executors.newFixedThreadPool(2);
+        manager = new AdminReservationRequestManager(adminReservationManager, eventManager, userRepository,
+            requestRepository, eventRepository, transactionManager, ticketFieldRepository, executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void nothingToDo() {
+        when(requestRepository.findEventsWithPendingRequests()).thenReturn(List.of());
+        var result = manager.processPendingReservations();
+        assertEquals(0, result.getLeft());
+        assertEquals(0, result.getRight());
+        verify(requestRepository, never()).findPendingIdsForEvent(anyLong(), anyInt());
+    }
+
+    @Test
+    void processEachEventSeparately() {
+        when(requestRepository.findEventsWithPendingRequests()).thenReturn(List.of(1L, 2L));
+        when(requestRepository.findPendingIdsForEvent(eq(1L), anyInt())).thenReturn(List.of(10L, 11L, 12L));
+        when(requestRepository.findPendingIdsForEvent(eq(2L), anyInt())).thenReturn(List.of(20L));
+
+        var event = mock(Event.class);
+        when(event.getShortName()).thenReturn("event");
+        when(eventRepository.findOptionalById(1)).thenReturn(Optional.of(event));
+        when(eventRepository.findOptionalById(2)).thenReturn(Optional.empty());
+        var user = mock(User.class);
+        when(user.getUsername()).thenReturn("user");
+        when(userRepository.findOptionalById(5)).thenReturn(Optional.of(user));
+
+        var first = request(10L);
+        var second = request(11L);
+        var otherEvent = request(20L);
+        when(requestRepository.lockPendingById(10L)).thenReturn(Optional.of(first));
+        when(requestRepository.lockPendingById(11L)).thenReturn(Optional.of(second));
+        // already taken by another node
+        when(requestRepository.lockPendingById(12L)).thenReturn(Optional.empty());
+        when(requestRepository.lockPendingById(20L)).thenReturn(Optional.of(otherEvent));
+        when(adminReservationManager.createReservation(any(), eq("event"), eq("user"))).thenReturn(Result.error(ErrorCode.ReservationError.UPDATE_FAILED));
+
+        var result = manager.processPendingReservations();
+        assertEquals(0, result.getLeft());
+        assertEquals(3, result.getRight());
+
+        verify(adminReservationManager, times(2)).createReservation(any(), eq("event"), eq("user"));
+        verify(userRepository, times(1)).findOptionalById(5);
+        verify(requestRepository, times(3)).updateStatus(argThat(list -> list.size() == 1 && "ERROR".equals(list.get(0).getValue("status"))));
+        verify(requestRepository).updateStatus(argThat((List<MapSqlParameterSource> list) -> Long.valueOf(20L).equals(list.get(0).getValue("id"))
+            && ErrorCode.EventError.NOT_FOUND.getCode().equals(list.get(0).getValue("failureCode"))));
+    }
+
+    @Test
+    void failureDoesNotStopThePartition() {
+        when(requestRepository.findEventsWithPendingRequests()).thenReturn(List.of(1L));
+        when(requestRepository.findPendingIdsForEvent(eq(1L), anyInt())).thenReturn(List.of(10L, 11L));
+        when(eventRepository.findOptionalById(1)).thenReturn(Optional.empty());
+        when(requestRepository.lockPendingById(10L)).thenThrow(new IllegalStateException("boom"));
+        var request = request(11L);
+        when(requestRepository.lockPendingById(11L)).thenReturn(Optional.of(request));
+
+        var result = manager.processPendingReservations();
+        assertEquals(0, result.getLeft());
+        assertEquals(2, result.getRight());
+        verify(requestRepository, times(1)).updateStatus(anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void importAttendeesInChunks() {
+        var event = mock(Event.class);
+        when(event.getId()).thenReturn(1);
+        when(eventManager.getOptionalByName("event", "user")).thenReturn(Optional.of(event));
+        when(requestRepository.findStatsByRequestIdAndEventId("request", 1)).thenReturn(Optional.empty());
+        when(userRepository.findIdByUserName("user")).thenReturn(Optional.of(5));
+        var category = mock(TicketCategory.class);
+        when(category.getId()).thenReturn(10);
+        when(category.getName()).thenReturn("Full");
+        when(eventManager.loadTicketCategories(event)).thenReturn(List.of(category));
+        when(ticketFieldRepository.getExistingFields(eq(1), anySet())).thenReturn(List.of("jobtitle"));
+
+        int validRows = AdminReservationRequestManager.IMPORT_CHUNK_SIZE;
+        var rows = Stream.concat(IntStream.range(0, validRows).mapToObj(i -> row("full", "ref-" + i, Map.of("jobTitle", List.of("Developer")))),
+            Stream.of(
+                row("unknown", null, Map.of()),
+                row(null, "ref-0", Map.of()),
+                row(null, null, Map.of("shoeSize", List.of("42"))),
+                Result.<AttendeeImportRow>error(AttendeeImportReader.INVALID_ROW)));
+
+        var result = manager.importAttendees("event", "request", template(), rows, "user");
+        assertTrue(result.isSuccess());
+        assertEquals("request", result.getData());
+
+        var captor = ArgumentCaptor.forClass(List.class);
+        verify(requestRepository, times(2)).insertImportedRequests(eq("request"), eq(5L), eq(event), captor.capture());
+        List<List<Result<AdminReservationModification>>> chunks = (List) captor.getAllValues();
+        assertEquals(validRows, chunks.get(0).size());
+        assertTrue(chunks.get(0).stream().allMatch(Result::isSuccess));
+        assertEquals(10, chunks.get(0).get(0).getData().getTicketsInfo().get(0).getCategory().getExistingCategoryId());
+        assertEquals(List.of("error.notfound.category", "DUPLICATE_REFERENCE", "error.notfound.shoesize", "error.invalid.row"),
+            chunks.get(1).stream().map(r -> r.getFirstErrorOrNull().getCode()).collect(Collectors.toList()));
+        // known fields are not looked up again
+        verify(ticketFieldRepository).getExistingFields(eq(1), eq(Set.of("jobtitle")));
+        verify(ticketFieldRepository).getExistingFields(eq(1), eq(Set.of("shoesize")));
+    }
+
+    @Test
+    void importAttendeesDuplicateRequestId() {
+        var event = mock(Event.class);
+        when(event.getId()).thenReturn(1);
+        when(eventManager.getOptionalByName("event", "user")).thenReturn(Optional.of(event));
+        when(requestRepository.findStatsByRequestIdAndEventId("request", 1)).thenReturn(Optional.of(mock(AdminReservationRequestStats.class)));
+        var result = manager.importAttendees("event", "request", template(), Stream.empty(), "user");
+        assertFalse(result.isSuccess());
+        verify(requestRepository, never()).insertImportedRequests(any(), anyLong(), any(), anyList());
+    }
+
+    private static AdminReservationModification template() {
+        var category = new AdminReservationModification.Category(10, null, null, null);
+        return new AdminReservationModification(new DateTimeModification(LocalDate.now(), LocalTime.NOON), null,
+            List.of(new AdminReservationModification.TicketsInfo(category, List.of(), false, false)), "en", false, false, null,
+            AdminReservationModification.Notification.EMPTY, null, null);
+    }
+
+    private static Result<AttendeeImportRow> row(String category, String reference, Map<String, List<String>> additionalInfo) {
+        return Result.success(new AttendeeImportRow(category, "Jane", "Doe", "jane@example.org", null, null, reference, null, additionalInfo));
+    }
+
+    private static AdminReservationRequest request(long id) {
+        var request = mock(AdminReservationRequest.class);
+        when(request.getId()).thenReturn(id);
+        when(request.getUserId()).thenReturn(5L);
+        when(request.getBody()).thenReturn(mock(AdminReservationModification.class));
+        return request;
+    }
+}
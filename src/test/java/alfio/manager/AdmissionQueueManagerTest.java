@@ -0,0 +1,142 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.AdmissionQueueToken;
+import alfio.model.Event;
+import alfio.model.system.ConfigurationKeyValuePathLevel;
+import alfio.model.system.ConfigurationKeys;
+import alfio.repository.AdmissionQueueRepository;
+import alfio.util.ClockProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static alfio.model.system.ConfigurationKeys.*;
+import static alfio.test.util.TestUtil.clockProvider;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AdmissionQueueManagerTest {
+
+    private static final int EVENT_ID = 1;
+
+    private AdmissionQueueRepository repository;
+    private ConfigurationManager configurationManager;
+    private Event event;
+    private ZonedDateTime now;
+    private AdmissionQueueManager manager;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(AdmissionQueueRepository.class);
+        configurationManager = mock(ConfigurationManager.class);
+        event = mock(Event.class);
+        now = ZonedDateTime.now(clockProvider().getClock());
+        when(event.getId()).thenReturn(EVENT_ID);
+        when(event.now(any(ClockProvider.class))).thenReturn(now);
+        configure(ENABLE_ADMISSION_QUEUE, "true");
+        configure(ADMISSION_QUEUE_RATE_PER_MINUTE, "120");
+        configure(ADMISSION_QUEUE_TOKEN_VALIDITY, "10");
+        manager = new AdmissionQueueManager(repository, configurationManager, clockProvider());
+    }
+
+    @Test
+    void enqueueUsesConfiguredRate() {
+        when(repository.enqueue(any(), eq(EVENT_ID), anyInt(), anyString(), eq(now), anyLong())).thenReturn(1);
+        when(repository.findToken(any(), eq(EVENT_ID))).thenAnswer(invocation -> Optional.of(token(invocation.getArgument(0), 3, now.plusSeconds(1))));
+        when(repository.findLastAdmittedPosition(EVENT_ID, now)).thenReturn(1L);
+        var status = manager.enqueue(event, null, "client").orElseThrow();
+        verify(repository).enqueue(any(), eq(EVENT_ID), anyInt(), anyString(), eq(now), eq(500L));
+        assertEquals(3, status.getPosition());
+        assertEquals(1, status.getPeopleAhead());
+        assertFalse(status.isAdmitted());
+        assertEquals(1, status.getEstimatedWaitSeconds());
+    }
+
+    @Test
+    void reuseValidToken() {
+        var existing = UUID.randomUUID();
+        when(repository.findToken(existing, EVENT_ID)).thenReturn(Optional.of(token(existing, 2, now.plusSeconds(30))));
+        var status = manager.enqueue(event, existing.toString(), "client").orElseThrow();
+        assertEquals(existing.toString(), status.getToken());
+        assertEquals(2, status.getPosition());
+        verify(repository, never()).enqueue(any(), anyInt(), anyInt(), any(), any(), anyLong());
+    }
+
+    @Test
+    void replaceExpiredToken() {
+        var expired = UUID.randomUUID();
+        when(repository.findToken(expired, EVENT_ID)).thenReturn(Optional.of(token(expired, 2, now.minusMinutes(11))));
+        when(repository.enqueue(any(), eq(EVENT_ID), anyInt(), anyString(), eq(now), anyLong())).thenReturn(1);
+        when(repository.findToken(argThat(t -> !expired.equals(t)), eq(EVENT_ID))).thenAnswer(invocation -> Optional.of(token(invocation.getArgument(0), 3, now.plusSeconds(1))));
+        var status = manager.enqueue(event, expired.toString(), "client").orElseThrow();
+        assertNotEquals(expired.toString(), status.getToken());
+        verify(repository).enqueue(any(), eq(EVENT_ID), anyInt(), anyString(), eq(now), anyLong());
+    }
+
+    @Test
+    void limitNewTokensPerClient() {
+        when(repository.enqueue(any(), eq(EVENT_ID), anyInt(), anyString(), eq(now), anyLong())).thenReturn(1);
+        when(repository.findToken(any(), eq(EVENT_ID))).thenAnswer(invocation -> Optional.of(token(invocation.getArgument(0), 1, now)));
+        when(repository.countTokensCreatedByClientSince(EVENT_ID, "client", now.minusMinutes(1))).thenReturn(AdmissionQueueManager.MAX_NEW_TOKENS_PER_CLIENT - 1);
+        assertTrue(manager.enqueue(event, null, "client").isPresent());
+        when(repository.countTokensCreatedByClientSince(EVENT_ID, "client", now.minusMinutes(1))).thenReturn(AdmissionQueueManager.MAX_NEW_TOKENS_PER_CLIENT);
+        assertThrows(AdmissionQueueManager.TooManyAdmissionRequestsException.class, () -> manager.enqueue(event, null, "client"));
+        assertTrue(manager.enqueue(event, null, "another-client").isPresent());
+        verify(repository, times(3)).lockQueue(eq(EVENT_ID), anyInt(), eq(now));
+        verify(repository).enqueue(any(), eq(EVENT_ID), anyInt(), eq("client"), eq(now), anyLong());
+        verify(repository).enqueue(any(), eq(EVENT_ID), anyInt(), eq("another-client"), eq(now), anyLong());
+    }
+
+    @Test
+    void nothingToDoIfDisabled() {
+        configure(ENABLE_ADMISSION_QUEUE, "false");
+        assertTrue(manager.enqueue(event, null, "client").isEmpty());
+        assertTrue(manager.canProceed(event, null));
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void canProceedOnlyWhenAdmittedAndNotExpired() {
+        var admitted = UUID.randomUUID();
+        var waiting = UUID.randomUUID();
+        var expired = UUID.randomUUID();
+        when(repository.findToken(admitted, EVENT_ID)).thenReturn(Optional.of(token(admitted, 1, now.minusMinutes(1))));
+        when(repository.findToken(waiting, EVENT_ID)).thenReturn(Optional.of(token(waiting, 2, now.plusMinutes(1))));
+        when(repository.findToken(expired, EVENT_ID)).thenReturn(Optional.of(token(expired, 3, now.minusMinutes(11))));
+        assertTrue(manager.canProceed(event, admitted.toString()));
+        assertFalse(manager.canProceed(event, waiting.toString()));
+        assertFalse(manager.canProceed(event, expired.toString()));
+        assertFalse(manager.canProceed(event, null));
+        assertFalse(manager.canProceed(event, "not-a-token"));
+    }
+
+    private AdmissionQueueToken token(UUID uuid, long position, ZonedDateTime admission) {
+        return new AdmissionQueueToken(uuid, EVENT_ID, position, now.minusMinutes(5), admission);
+    }
+
+    private void configure(ConfigurationKeys key, String value) {
+        when(configurationManager.getFor(eq(key), any()))
+            .thenReturn(new ConfigurationManager.MaybeConfiguration(key, new ConfigurationKeyValuePathLevel(key.name(), value, null)));
+    }
+}
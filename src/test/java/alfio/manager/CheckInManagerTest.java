@@ -19,6 +19,8 @@ package alfio.manager;
 import alfio.manager.support.CheckInStatistics;
 import alfio.manager.system.ConfigurationLevel;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.DatabaseNotificationListener;
+import alfio.manager.system.EventCache;
 import alfio.model.Event;
 import alfio.model.system.ConfigurationKeyValuePathLevel;
 import alfio.model.user.Organization;
@@ -28,6 +30,7 @@ import alfio.test.util.TestUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.util.Date;
 import java.util.Optional;
 
@@ -64,7 +67,8 @@ class CheckInManagerTest {
         when(organization.getId()).thenReturn(ORG_ID);
         when(eventRepository.retrieveCheckInStatisticsForEvent(EVENT_ID)).thenReturn(new CheckInStatistics(0, 0, new Date()));
         checkInManager = new CheckInManager(null, eventRepository, null, null, null, null,
-            null, configurationManager, organizationRepository, null, null, null, null, null, TestUtil.clockProvider());
+            null, configurationManager, organizationRepository, null, null, null, null, null, TestUtil.clockProvider(),
+            new EventCache(eventRepository, Duration.ZERO, mock(DatabaseNotificationListener.class)));
     }
 
     @Test
@@ -0,0 +1,126 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.repository.DirtyEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static alfio.manager.DirtyEventTracker.Job.OFFLINE_PAYMENTS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DirtyEventTrackerTest {
+
+    private DirtyEventRepository dirtyEventRepository;
+    private PlatformTransactionManager transactionManager;
+    private DirtyEventTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        dirtyEventRepository = mock(DirtyEventRepository.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        tracker = new DirtyEventTracker(dirtyEventRepository, transactionManager);
+        when(dirtyEventRepository.findDirtyEvents(OFFLINE_PAYMENTS.name())).thenReturn(List.of(1, 2));
+    }
+
+    @Test
+    void visitOnlyDirtyEvents() {
+        var visited = new ArrayList<Integer>();
+        int count = tracker.visitDirtyEvents(OFFLINE_PAYMENTS, eventId -> {
+            visited.add(eventId);
+            return false;
+        });
+        assertEquals(2, count);
+        assertEquals(List.of(1, 2), visited);
+        verify(dirtyEventRepository).clear(1, OFFLINE_PAYMENTS.name());
+        verify(dirtyEventRepository).clear(2, OFFLINE_PAYMENTS.name());
+        verify(dirtyEventRepository, never()).markDirty(anyInt(), anyString());
+        // the flag is cleared in a separate transaction
+        verify(transactionManager, times(2)).getTransaction(any());
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    void clearFlagBeforeVisiting() {
+        tracker.visitDirtyEvents(OFFLINE_PAYMENTS, eventId -> {
+            verify(dirtyEventRepository).clear(eventId, OFFLINE_PAYMENTS.name());
+            return false;
+        });
+    }
+
+    @Test
+    void keepFlagIfThereIsPendingWork() {
+        tracker.visitDirtyEvents(OFFLINE_PAYMENTS, eventId -> eventId == 2);
+        verify(dirtyEventRepository, never()).markDirty(eq(1), anyString());
+        InOrder inOrder = inOrder(dirtyEventRepository);
+        inOrder.verify(dirtyEventRepository).clear(2, OFFLINE_PAYMENTS.name());
+        inOrder.verify(dirtyEventRepository).markDirty(2, OFFLINE_PAYMENTS.name());
+    }
+
+    @Test
+    void setFlagAgainIfCallerRollsBack() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            tracker.visitDirtyEvents(OFFLINE_PAYMENTS, eventId -> false);
+            verify(dirtyEventRepository, never()).markDirty(anyInt(), anyString());
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+            verify(dirtyEventRepository).markDirty(1, OFFLINE_PAYMENTS.name());
+            verify(dirtyEventRepository).markDirty(2, OFFLINE_PAYMENTS.name());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void keepFlagClearedIfCallerCommits() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            tracker.visitDirtyEvents(OFFLINE_PAYMENTS, eventId -> eventId == 2);
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+            verify(dirtyEventRepository, never()).markDirty(eq(1), anyString());
+            verify(dirtyEventRepository).markDirty(2, OFFLINE_PAYMENTS.name());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void keepFlagIfVisitFails() {
+        var visited = new ArrayList<Integer>();
+        tracker.visitDirtyEvents(OFFLINE_PAYMENTS, eventId -> {
+            visited.add(eventId);
+            if(eventId == 1) {
+                throw new IllegalStateException("error");
+            }
+            return false;
+        });
+        assertEquals(List.of(1, 2), visited);
+        verify(dirtyEventRepository).markDirty(1, OFFLINE_PAYMENTS.name());
+        verify(dirtyEventRepository, never()).markDirty(eq(2), anyString());
+    }
+}
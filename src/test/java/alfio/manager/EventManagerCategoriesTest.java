@@ -16,6 +16,7 @@
  */
 package alfio.manager;
 
+import alfio.manager.system.EventCache;
 import alfio.model.Event;
 import alfio.model.Ticket;
 import alfio.model.TicketCategory;
@@ -58,7 +59,7 @@ public class EventManagerCategoriesTest {
         EventRepository eventRepository = mock(EventRepository.class);
         event = mock(Event.class);
         when(event.getId()).thenReturn(eventId);
-        eventManager = new EventManager(null, eventRepository, null, ticketCategoryRepository, ticketCategoryDescriptionRepository, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, clockProvider(), mock(SubscriptionRepository.class));
+        eventManager = new EventManager(null, eventRepository, null, ticketCategoryRepository, ticketCategoryDescriptionRepository, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, clockProvider(), mock(SubscriptionRepository.class), mock(TicketRowMaterializer.class), mock(EventCache.class), mock(TicketInventoryGate.class));
         when(eventRepository.countExistingTickets(0)).thenReturn(availableSeats);
         when(event.getZoneId()).thenReturn(ZoneId.systemDefault());
     }
@@ -98,4 +99,15 @@ public class EventManagerCategoriesTest {
         assertTrue(Arrays.stream(parameterSources).allMatch(ps -> Ticket.TicketStatus.FREE.name().equals(ps.getValue("status"))));
     }
 
+    @Test
+    @DisplayName("do not create tickets for the bounded categories if rows are created on demand")
+    void createTicketsOnDemand() {
+        List<TicketCategory> categories = generateCategoryStream().limit(2).collect(Collectors.toList());
+        when(ticketCategoryRepository.findAllTicketCategories(eq(eventId))).thenReturn(categories);
+        MapSqlParameterSource[] parameterSources = eventManager.prepareTicketsBulkInsertParameters(ZonedDateTime.now(clockProvider().getClock()), event, availableSeats, Ticket.TicketStatus.FREE, true);
+        assertNotNull(parameterSources);
+        assertEquals(availableSeats - 4, parameterSources.length);
+        assertTrue(Arrays.stream(parameterSources).allMatch(p -> p.getValue("categoryId") == null));
+    }
+
 }
@@ -16,6 +16,7 @@
  */
 package alfio.manager;
 
+import alfio.manager.system.EventCache;
 import alfio.model.Event;
 import alfio.model.Ticket;
 import alfio.model.TicketCategory;
@@ -30,6 +31,7 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 import static alfio.test.util.TestUtil.clockProvider;
 import static java.util.Collections.singletonList;
@@ -44,6 +46,7 @@ public class EventManagerHandleTicketModificationTest {
     private TicketCategory original;
     private TicketCategory updated;
     private TicketRepository ticketRepository;
+    private TicketRowMaterializer ticketRowMaterializer;
     private EventManager eventManager;
     private final int eventId = 10;
     private int originalCategoryId = 20;
@@ -56,10 +59,11 @@ public class EventManagerHandleTicketModificationTest {
         original = mock(TicketCategory.class);
         updated = mock(TicketCategory.class);
         ticketRepository = mock(TicketRepository.class);
+        ticketRowMaterializer = mock(TicketRowMaterializer.class);
 
         when(event.getId()).thenReturn(eventId);
         when(event.now(any(ClockProvider.class))).thenReturn(ZonedDateTime.now(clockProvider().getClock().withZone(ZoneId.systemDefault())));
-        eventManager = new EventManager(null, null, null, null, null, ticketRepository, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, clockProvider(), mock(SubscriptionRepository.class));
+        eventManager = new EventManager(null, null, null, null, null, ticketRepository, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, clockProvider(), mock(SubscriptionRepository.class), ticketRowMaterializer, mock(EventCache.class), mock(TicketInventoryGate.class));
         when(original.getId()).thenReturn(originalCategoryId);
         when(updated.getId()).thenReturn(updatedCategoryId);
         when(original.getSrcPriceCts()).thenReturn(1000);
@@ -87,6 +91,26 @@ public class EventManagerHandleTicketModificationTest {
         verify(ticketRepository, times(1)).invalidateTickets(ids);
     }
 
+    @Test
+    @DisplayName("reduce the capacity which has not been created yet before invalidating tickets")
+    void shrinkNotMaterializedCapacityFirst() {
+        when(ticketRowMaterializer.shrinkToMaxTickets(updatedCategoryId)).thenReturn(Optional.of(0));
+        eventManager.handleTicketNumberModification(event, updated, -2, false);
+        verify(ticketRepository, never()).lockTicketsToInvalidate(anyInt(), anyInt(), anyInt());
+        verify(ticketRepository, never()).invalidateTickets(anyList());
+        // the seats go back to the event anyway
+        verify(ticketRepository).bulkTicketInitialization(argThat(p -> p.length == 2));
+    }
+
+    @Test
+    @DisplayName("invalidate only the existing tickets exceeding the new size")
+    void invalidateOnlyExceedingRows() {
+        when(ticketRowMaterializer.shrinkToMaxTickets(updatedCategoryId)).thenReturn(Optional.of(1));
+        when(ticketRepository.lockTicketsToInvalidate(eventId, updatedCategoryId, 1)).thenReturn(singletonList(1));
+        eventManager.handleTicketNumberModification(event, updated, -2, false);
+        verify(ticketRepository).invalidateTickets(singletonList(1));
+    }
+
     @Test
     @DisplayName("do nothing if the difference is zero")
     void doNothingIfZero() {
@@ -102,6 +126,7 @@ public class EventManagerHandleTicketModificationTest {
         eventManager.handleTicketNumberModification(event, updated, 1, false);
         verify(ticketRepository, never()).invalidateTickets(anyList());
         verify(ticketRepository, times(1)).bulkTicketUpdate(any(), any());
+        verify(ticketRowMaterializer).ticketsMovedIn(updatedCategoryId, 1);
     }
 
     @Test
@@ -126,6 +151,19 @@ public class EventManagerHandleTicketModificationTest {
         verify(ticketRepository, never()).updateTicketPrice(anyInt(), anyInt(), anyInt(), eq(0), eq(0), eq(0), anyString());
     }
 
+    @Test
+    @DisplayName("check only the existing tickets before updating the price")
+    void checkOnlyExistingTicketsForPriceChange() {
+        when(original.getCurrencyCode()).thenReturn("CHF");
+        when(original.getSrcPriceCts()).thenReturn(10);
+        when(updated.getSrcPriceCts()).thenReturn(11);
+        when(updated.getMaxTickets()).thenReturn(100);
+        when(ticketRowMaterializer.countNotMaterialized(updatedCategoryId)).thenReturn(98);
+        when(ticketRepository.selectTicketInCategoryForUpdate(eq(eventId), eq(updatedCategoryId), eq(2), eq(singletonList(Ticket.TicketStatus.FREE.name())))).thenReturn(Arrays.asList(1, 2));
+        eventManager.handlePriceChange(event, original, updated);
+        verify(ticketRepository, times(1)).updateTicketPrice(updatedCategoryId, eventId, 11, 0, 0, 0, "CHF");
+    }
+
     @Test
     @DisplayName("update tickets if constraints are verified")
     void updateTicketsIfConstraintsVerified() {
@@ -16,6 +16,7 @@
  */
 package alfio.manager;
 
+import alfio.manager.system.EventCache;
 import alfio.manager.user.UserManager;
 import alfio.model.Event;
 import alfio.model.Ticket;
@@ -58,6 +59,7 @@ public class EventManagerUnbindTicketsTest {
     private TicketCategory ticketCategory;
     private Organization organization;
     private OrganizationRepository organizationRepository;
+    private TicketInventoryGate ticketInventoryGate;
     private EventManager eventManager;
 
     @BeforeEach
@@ -73,6 +75,7 @@ public class EventManagerUnbindTicketsTest {
         ticketCategory = mock(TicketCategory.class);
         organization = mock(Organization.class);
         organizationRepository = mock(OrganizationRepository.class);
+        ticketInventoryGate = mock(TicketInventoryGate.class);
 
 
         when(specialPriceRepository.findAllByCategoryId(eq(categoryId))).thenReturn(Collections.emptyList());
@@ -88,7 +91,7 @@ public class EventManagerUnbindTicketsTest {
             null, null, null,
             null, null, organizationRepository,
             null, null, null, null, null,
-            null, TestUtil.clockProvider(), mock(SubscriptionRepository.class));
+            null, TestUtil.clockProvider(), mock(SubscriptionRepository.class), mock(TicketRowMaterializer.class), mock(EventCache.class), ticketInventoryGate);
     }
 
     @Test
@@ -145,5 +148,6 @@ public class EventManagerUnbindTicketsTest {
         verify(ticketRepository).selectTicketInCategoryForUpdate(eq(eventId), eq(categoryId), eq(notSold), eq(singletonList(Ticket.TicketStatus.FREE.name())));
         verify(ticketRepository).unbindTicketsFromCategory(eq(eventId), eq(categoryId), eq(lockedTickets));
         verify(ticketCategoryRepository).updateSeatsAvailability(eq(categoryId), eq(0));
+        verify(ticketInventoryGate).invalidate(eq(eventId));
     }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.model.TicketReservation;
+import alfio.repository.TicketReservationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static alfio.manager.ExpiredReservationSweeper.BATCH_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ExpiredReservationSweeperTest {
+
+    private final Date expiration = new Date();
+    private TicketReservationManager ticketReservationManager;
+    private TicketReservationRepository ticketReservationRepository;
+    private ExecutorService executor;
+    private ExpiredReservationSweeper sweeper;
+
+    @BeforeEach
+    void setUp() {
+        ticketReservationManager = mock(TicketReservationManager.class);
+        ticketReservationRepository = mock(TicketReservationRepository.class);
+        executor = Executors.newFixedThreadPool(2);
+        sweeper = new ExpiredReservationSweeper(ticketReservationManager, ticketReservationRepository, executor, Duration.ofMillis(200));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void nothingToDo() {
+        when(ticketReservationRepository.claimExpiredReservations(eq(expiration), eq(""), eq(BATCH_SIZE), anyInt())).thenReturn(List.of());
+        var result = sweeper.sweep(expiration);
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(ticketReservationManager);
+    }
+
+    @Test
+    void processInBatches() {
+        // the claimed IDs are not returned in order
+        var firstBatch = IntStream.range(0, BATCH_SIZE).mapToObj(i -> String.format("a%03d", BATCH_SIZE - 1 - i)).collect(Collectors.toList());
+        var secondBatch = List.of("b000", "b001");
+        when(ticketReservationRepository.claimExpiredReservations(eq(expiration), eq(""), eq(BATCH_SIZE), anyInt())).thenReturn(firstBatch);
+        when(ticketReservationRepository.claimExpiredReservations(eq(expiration), eq("a099"), eq(BATCH_SIZE), anyInt())).thenReturn(secondBatch);
+        when(ticketReservationManager.cleanupExpiredReservationsBatch(eq(firstBatch), eq(expiration), anySet())).thenReturn(BATCH_SIZE);
+        when(ticketReservationManager.cleanupExpiredReservationsBatch(eq(secondBatch), eq(expiration), anySet())).thenReturn(1);
+        var result = sweeper.sweep(expiration);
+        assertEquals(2, result.getBatches());
+        assertEquals(BATCH_SIZE + 2, result.getExpiredReservations());
+        assertEquals(BATCH_SIZE + 1, result.getRemovedReservations());
+        var statistics = sweeper.getStatistics();
+        assertEquals(1, statistics.getRuns());
+        assertEquals(BATCH_SIZE + 2, statistics.getExpiredReservations());
+        assertEquals(BATCH_SIZE + 1, statistics.getRemovedReservations());
+        assertSame(result, statistics.getLastRun());
+    }
+
+    @Test
+    void skipReservationsIfPaymentCheckTimesOut() throws Exception {
+        var slow = reservation("slow");
+        var fast = reservation("fast");
+        var paid = reservation("paid");
+        var candidates = List.of("fast", "paid", "slow");
+        var latch = new CountDownLatch(1);
+        when(ticketReservationRepository.claimExpiredReservations(eq(expiration), eq(""), eq(BATCH_SIZE), anyInt())).thenReturn(candidates);
+        when(ticketReservationRepository.findReservationsWithPendingTransaction(candidates)).thenReturn(List.of(fast, paid, slow));
+        when(ticketReservationManager.checkPendingTransactionBeforeExpiration(fast)).thenReturn(true);
+        when(ticketReservationManager.checkPendingTransactionBeforeExpiration(paid)).thenReturn(false);
+        when(ticketReservationManager.checkPendingTransactionBeforeExpiration(slow)).thenAnswer(invocation -> {
+            latch.await();
+            return true;
+        });
+        try {
+            var result = sweeper.sweep(expiration);
+            assertEquals(3, result.getPaymentChecks());
+            assertEquals(1, result.getPaymentCheckTimeouts());
+            verify(ticketReservationManager).cleanupExpiredReservationsBatch(candidates, expiration, Set.of("fast"));
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    private static TicketReservation reservation(String id) {
+        var reservation = mock(TicketReservation.class);
+        when(reservation.getId()).thenReturn(id);
+        return reservation;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.EventAndOrganizationId;
+import alfio.model.SpecialPrice;
+import alfio.model.TicketCategory;
+import alfio.model.system.ConfigurationKeys;
+import alfio.repository.EventRepository;
+import alfio.repository.SpecialPriceRepository;
+import alfio.repository.TicketCategoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SpecialPriceTokenGeneratorTest {
+
+    private static final int CATEGORY_ID = 1;
+    private static final int EVENT_ID = 2;
+
+    private SpecialPriceRepository specialPriceRepository;
+    private ConfigurationManager configurationManager;
+    private PlatformTransactionManager transactionManager;
+    private SpecialPriceTokenGenerator generator;
+
+    @BeforeEach
+    void setUp() {
+        specialPriceRepository = mock(SpecialPriceRepository.class);
+        configurationManager = mock(ConfigurationManager.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        var ticketCategoryRepository = mock(TicketCategoryRepository.class);
+        var eventRepository = mock(EventRepository.class);
+        var category = mock(TicketCategory.class);
+        when(category.getId()).thenReturn(CATEGORY_ID);
+        when(category.getEventId()).thenReturn(EVENT_ID);
+        when(ticketCategoryRepository.getByIdAndActive(CATEGORY_ID)).thenReturn(Optional.of(category));
+        when(eventRepository.findEventAndOrganizationIdById(EVENT_ID)).thenReturn(mock(EventAndOrganizationId.class));
+        when(configurationManager.getFor(eq(ConfigurationKeys.SPECIAL_PRICE_CODE_LENGTH), any()))
+            .thenReturn(new ConfigurationManager.MaybeConfiguration(ConfigurationKeys.SPECIAL_PRICE_CODE_LENGTH));
+        generator = new SpecialPriceTokenGenerator(configurationManager, specialPriceRepository, ticketCategoryRepository, eventRepository, transactionManager);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void generateCodesInBatchAndRetryDuplicates() {
+        when(specialPriceRepository.findWaitingElementsForCategory(CATEGORY_ID)).thenReturn(List.of(
+            new SpecialPrice.SpecialPriceTicketCategoryId(10, CATEGORY_ID),
+            new SpecialPrice.SpecialPriceTicketCategoryId(11, CATEGORY_ID),
+            new SpecialPrice.SpecialPriceTicketCategoryId(12, CATEGORY_ID)
+        ));
+        when(specialPriceRepository.lockWaitingTokens(List.of(10, 11, 12))).thenReturn(List.of(10, 11, 12));
+        // the second code is already in use
+        when(specialPriceRepository.updateWaitingCodes(anyList(), anyList()))
+            .thenReturn(List.of(10, 12))
+            .thenReturn(List.of(11));
+
+        generator.generatePendingCodesForCategory(CATEGORY_ID);
+
+        ArgumentCaptor<List<Integer>> ids = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<String>> codes = ArgumentCaptor.forClass(List.class);
+        verify(specialPriceRepository, times(2)).updateWaitingCodes(ids.capture(), codes.capture());
+        assertEquals(List.of(List.of(10, 11, 12), List.of(11)), ids.getAllValues());
+        var allCodes = codes.getAllValues().stream().flatMap(List::stream).collect(Collectors.toList());
+        assertEquals(4, new HashSet<>(allCodes).size());
+        assertTrue(allCodes.stream().allMatch(c -> c.length() == 6));
+
+        verify(specialPriceRepository, never()).countByCode(anyString());
+        // the configuration is resolved once per category
+        verify(configurationManager, times(1)).getFor(eq(ConfigurationKeys.SPECIAL_PRICE_CODE_LENGTH), any());
+        // the batch is committed on its own
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void skipTokensLockedByOthers() {
+        when(specialPriceRepository.findWaitingElementsForCategory(CATEGORY_ID)).thenReturn(List.of(
+            new SpecialPrice.SpecialPriceTicketCategoryId(10, CATEGORY_ID),
+            new SpecialPrice.SpecialPriceTicketCategoryId(11, CATEGORY_ID)
+        ));
+        when(specialPriceRepository.lockWaitingTokens(List.of(10, 11))).thenReturn(List.of(11));
+        when(specialPriceRepository.updateWaitingCodes(anyList(), anyList())).thenReturn(List.of(11));
+
+        generator.generatePendingCodesForCategory(CATEGORY_ID);
+
+        verify(specialPriceRepository).updateWaitingCodes(eq(List.of(11)), anyList());
+    }
+}
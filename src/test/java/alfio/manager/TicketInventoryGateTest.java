@@ -0,0 +1,163 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.model.EventStatisticView;
+import alfio.model.FreeTicketsByCategory;
+import alfio.model.TicketCategory;
+import alfio.model.TicketCategoryStatisticView;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TicketInventoryGateTest {
+
+    private static final int EVENT_ID = 1;
+    private static final int CATEGORY_ID = 2;
+
+    private TicketRepository ticketRepository;
+    private TicketCategoryRepository ticketCategoryRepository;
+    private EventRepository eventRepository;
+    private TicketInventoryGate gate;
+    private TicketCategory bounded;
+    private TicketCategory unbounded;
+
+    @BeforeEach
+    void setUp() {
+        ticketRepository = mock(TicketRepository.class);
+        ticketCategoryRepository = mock(TicketCategoryRepository.class);
+        eventRepository = mock(EventRepository.class);
+        gate = new TicketInventoryGate(ticketRepository, ticketCategoryRepository, eventRepository);
+        bounded = mock(TicketCategory.class);
+        when(bounded.getId()).thenReturn(CATEGORY_ID);
+        when(bounded.isBounded()).thenReturn(true);
+        unbounded = mock(TicketCategory.class);
+        when(unbounded.getId()).thenReturn(CATEGORY_ID + 1);
+        when(unbounded.isBounded()).thenReturn(false);
+    }
+
+    @Test
+    void acceptIfEnoughTickets() {
+        when(ticketRepository.countFreeTickets(EVENT_ID, CATEGORY_ID)).thenReturn(2);
+        gate.ensureAvailability(EVENT_ID, bounded, 2);
+        gate.ensureAvailability(EVENT_ID, bounded, 1);
+        verify(ticketRepository, times(1)).countFreeTickets(EVENT_ID, CATEGORY_ID);
+    }
+
+    @Test
+    void rejectIfNotEnoughTickets() {
+        when(ticketRepository.countFreeTickets(EVENT_ID, CATEGORY_ID)).thenReturn(1);
+        assertThrows(TicketReservationManager.NotEnoughTicketsException.class, () -> gate.ensureAvailability(EVENT_ID, bounded, 2));
+    }
+
+    @Test
+    void decrementAfterReservation() {
+        when(ticketRepository.countFreeTickets(EVENT_ID, CATEGORY_ID)).thenReturn(2);
+        gate.ensureAvailability(EVENT_ID, bounded, 2);
+        gate.ticketsReserved(EVENT_ID, bounded, 2);
+        assertThrows(TicketReservationManager.NotEnoughTicketsException.class, () -> gate.ensureAvailability(EVENT_ID, bounded, 1));
+    }
+
+    @Test
+    void resyncAfterInvalidation() {
+        when(ticketRepository.countFreeTickets(EVENT_ID, CATEGORY_ID)).thenReturn(0, 1);
+        assertThrows(TicketReservationManager.NotEnoughTicketsException.class, () -> gate.ensureAvailability(EVENT_ID, bounded, 1));
+        gate.invalidate(EVENT_ID);
+        gate.ensureAvailability(EVENT_ID, bounded, 1);
+        verify(ticketRepository, times(2)).countFreeTickets(EVENT_ID, CATEGORY_ID);
+    }
+
+    @Test
+    void unboundedCategoriesShareThePool() {
+        when(ticketRepository.countFreeTicketsForUnbounded(EVENT_ID)).thenReturn(1);
+        var other = mock(TicketCategory.class);
+        when(other.getId()).thenReturn(CATEGORY_ID + 2);
+        when(other.isBounded()).thenReturn(false);
+        gate.ensureAvailability(EVENT_ID, unbounded, 1);
+        gate.ticketsReserved(EVENT_ID, unbounded, 1);
+        assertThrows(TicketReservationManager.NotEnoughTicketsException.class, () -> gate.ensureAvailability(EVENT_ID, other, 1));
+        verify(ticketRepository, times(1)).countFreeTicketsForUnbounded(EVENT_ID);
+        verify(ticketRepository, never()).countFreeTickets(anyInt(), anyInt());
+    }
+
+    @Test
+    void rejectConcurrentRequestsDuringSellOut() throws Exception {
+        when(ticketRepository.countFreeTickets(EVENT_ID, CATEGORY_ID)).thenReturn(0);
+        int threads = 8;
+        int requestsPerThread = 10_000;
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                tasks.add(() -> {
+                    int rejected = 0;
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        try {
+                            gate.ensureAvailability(EVENT_ID, bounded, 1);
+                        } catch (TicketReservationManager.NotEnoughTicketsException e) {
+                            rejected++;
+                        }
+                    }
+                    return rejected;
+                });
+            }
+            int rejected = 0;
+            for (Future<Integer> f : executor.invokeAll(tasks)) {
+                rejected += f.get();
+            }
+            assertEquals(threads * requestsPerThread, rejected);
+            // the database has been hit only once, all the other requests have been rejected in memory
+            verify(ticketRepository, times(1)).countFreeTickets(EVENT_ID, CATEGORY_ID);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void loadAvailabilitySnapshotOnce() {
+        when(ticketRepository.countFreeTicketsByCategory(EVENT_ID)).thenReturn(List.of(new FreeTicketsByCategory(CATEGORY_ID, 3), new FreeTicketsByCategory(null, 5)));
+        when(ticketCategoryRepository.findAllTicketCategories(EVENT_ID)).thenReturn(List.of(bounded));
+        var statistics = mock(TicketCategoryStatisticView.class);
+        when(statistics.isBounded()).thenReturn(true);
+        when(statistics.getNotSoldTicketsCount()).thenReturn(3);
+        when(ticketCategoryRepository.findStatisticsForEventIdByCategoryId(EVENT_ID)).thenReturn(Map.of(CATEGORY_ID, statistics));
+        when(eventRepository.findStatisticsFor(EVENT_ID)).thenReturn(mock(EventStatisticView.class));
+
+        var snapshot = gate.getAvailabilitySnapshot(EVENT_ID);
+        assertEquals(3, snapshot.countAvailableTickets(bounded));
+        assertEquals(5, snapshot.countAvailableTickets(unbounded));
+        assertFalse(snapshot.isNoSeatsAvailable());
+        assertSame(snapshot, gate.getAvailabilitySnapshot(EVENT_ID));
+        verify(ticketRepository, times(1)).countFreeTicketsByCategory(EVENT_ID);
+
+        gate.ticketsReserved(EVENT_ID, bounded, 1);
+        gate.getAvailabilitySnapshot(EVENT_ID);
+        verify(ticketRepository, times(2)).countFreeTicketsByCategory(EVENT_ID);
+    }
+}
@@ -38,6 +38,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -51,7 +53,9 @@ import java.time.LocalTime;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static alfio.manager.TicketReservationManagerIntegrationTest.DESCRIPTION;
@@ -66,6 +70,7 @@ import static org.junit.jupiter.api.Assertions.*;
 public class TicketReservationManagerConcurrentTest {
 
     private static final String ACCESS_CODE = "MY_ACCESS_CODE";
+    private static final String LIMITED_ACCESS_CODE = "MY_LIMITED_ACCESS_CODE";
 
     @Autowired
     private OrganizationRepository organizationRepository;
@@ -76,6 +81,8 @@ public class TicketReservationManagerConcurrentTest {
     @Autowired
     private TicketReservationManager ticketReservationManager;
     @Autowired
+    private ExpiredReservationSweeper expiredReservationSweeper;
+    @Autowired
     private EventRepository eventRepository;
     @Autowired
     private PromoCodeDiscountRepository promoCodeDiscountRepository;
@@ -87,6 +94,8 @@ public class TicketReservationManagerConcurrentTest {
     private PlatformTransactionManager platformTransactionManager;
     @Autowired
     private SpecialPriceRepository specialPriceRepository;
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
 
     private Event event;
     private String username;
@@ -152,6 +161,68 @@ public class TicketReservationManagerConcurrentTest {
         assertEquals(AVAILABLE_SEATS, count);
     }
 
+    @Test
+    public void testConcurrentAccessCodeWithLimitedUsage() throws InterruptedException {
+        int maxUsage = AVAILABLE_SEATS - 5;
+        var limitedAccessCode = transactionTemplate.execute(tx -> {
+            promoCodeDiscountRepository.addPromoCode(LIMITED_ACCESS_CODE, event.getId(), event.getOrganizationId(), ZonedDateTime.now(clockProvider().getClock()), ZonedDateTime.now(clockProvider().getClock()).plusDays(1), 0, PromoCodeDiscount.DiscountType.NONE, null, maxUsage, null, null, PromoCodeDiscount.CodeType.ACCESS, firstCategoryId);
+            return promoCodeDiscountRepository.findPublicPromoCodeInEventOrOrganization(event.getId(), LIMITED_ACCESS_CODE).orElseThrow();
+        });
+        var pool = Executors.newFixedThreadPool(AVAILABLE_SEATS);
+        var callableList = new ArrayList<Callable<List<SpecialPrice>>>();
+        for (int i = 0; i < AVAILABLE_SEATS; i++) {
+            callableList.add(() -> ticketReservationManager.retryIfAccessCodeIsBusy(() -> {
+                TicketReservationModification tr = new TicketReservationModification();
+                tr.setAmount(1);
+                tr.setTicketCategoryId(firstCategoryId);
+                TicketReservationWithOptionalCodeModification mod = new TicketReservationWithOptionalCodeModification(tr, Optional.empty());
+                return ticketReservationManager.reserveTokensForAccessCode(mod, limitedAccessCode);
+            }));
+        }
+        var codes = new HashSet<String>();
+        int failed = 0;
+        for (var future : pool.invokeAll(callableList)) {
+            try {
+                future.get().forEach(sp -> assertTrue(codes.add(sp.getCode())));
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TicketReservationManager.TooManyTicketsForDiscountCodeException);
+                failed++;
+            }
+        }
+        pool.shutdown();
+
+        // no over-allocation, and no request has been rejected while there was capacity left
+        assertEquals(maxUsage, codes.size());
+        assertEquals(AVAILABLE_SEATS - maxUsage, failed);
+        assertEquals(maxUsage, specialPriceRepository.findAllByCategoryId(firstCategoryId).stream()
+            .filter(sp -> Integer.valueOf(limitedAccessCode.getId()).equals(sp.getAccessCodeId()))
+            .count());
+    }
+
+    @Test
+    public void releaseAccessCodeUsageWhenTokensAreDeleted() {
+        int maxUsage = 2;
+        var limitedAccessCode = transactionTemplate.execute(tx -> {
+            promoCodeDiscountRepository.addPromoCode(LIMITED_ACCESS_CODE, event.getId(), event.getOrganizationId(), ZonedDateTime.now(clockProvider().getClock()), ZonedDateTime.now(clockProvider().getClock()).plusDays(1), 0, PromoCodeDiscount.DiscountType.NONE, null, maxUsage, null, null, PromoCodeDiscount.CodeType.ACCESS, firstCategoryId);
+            return promoCodeDiscountRepository.findPublicPromoCodeInEventOrOrganization(event.getId(), LIMITED_ACCESS_CODE).orElseThrow();
+        });
+        TicketReservationModification tr = new TicketReservationModification();
+        tr.setAmount(maxUsage);
+        tr.setTicketCategoryId(firstCategoryId);
+        TicketReservationWithOptionalCodeModification mod = new TicketReservationWithOptionalCodeModification(tr, Optional.empty());
+        var bound = transactionTemplate.execute(tx -> ticketReservationManager.reserveTokensForAccessCode(mod, limitedAccessCode));
+        assertEquals(maxUsage, bound.size());
+        assertThrows(TicketReservationManager.TooManyTicketsForDiscountCodeException.class,
+            () -> transactionTemplate.execute(tx -> ticketReservationManager.reserveTokensForAccessCode(mod, limitedAccessCode)));
+
+        transactionTemplate.execute(tx -> jdbcTemplate.update("delete from special_price where id in (:ids)",
+            new MapSqlParameterSource("ids", bound.stream().map(SpecialPrice::getId).collect(Collectors.toList()))));
+
+        // the deleted tokens gave their slots back
+        var rebound = transactionTemplate.execute(tx -> ticketReservationManager.reserveTokensForAccessCode(mod, limitedAccessCode));
+        assertEquals(maxUsage, rebound.size());
+    }
+
     @Test
     public void testExpirationDuringReservation() {
         TicketReservationModification tr = new TicketReservationModification();
@@ -162,7 +233,7 @@ public class TicketReservationManagerConcurrentTest {
         var id1 = ticketReservationManager.createTicketReservation(event, List.of(mod), List.of(), DateUtils.addHours(new Date(), -1), Optional.of(ACCESS_CODE), Locale.ENGLISH, false, null);
         var id2 = ticketReservationManager.createTicketReservation(event, List.of(mod), List.of(), DateUtils.addHours(new Date(), 1), Optional.of(ACCESS_CODE), Locale.ENGLISH, false, null);
 
-        ticketReservationManager.cleanupExpiredReservations(new Date());
+        expiredReservationSweeper.sweep(new Date());
 
         assertTrue(ticketReservationManager.findById(id1).isEmpty());
         Optional<TicketReservation> res2 = ticketReservationManager.findById(id2);
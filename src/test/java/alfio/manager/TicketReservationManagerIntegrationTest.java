@@ -23,6 +23,7 @@ import alfio.manager.payment.PaymentSpecification;
 import alfio.manager.support.PaymentResult;
 import alfio.manager.user.UserManager;
 import alfio.model.*;
+import alfio.model.decorator.TicketPriceContainer;
 import alfio.model.metadata.AlfioMetadata;
 import alfio.model.modification.*;
 import alfio.model.transaction.PaymentMethod;
@@ -59,6 +60,7 @@ import static alfio.model.system.ConfigurationKeys.AUTOMATIC_REMOVAL_EXPIRED_OFF
 import static alfio.model.system.ConfigurationKeys.DEFERRED_BANK_TRANSFER_ENABLED;
 import static alfio.test.util.IntegrationTestUtil.AVAILABLE_SEATS;
 import static alfio.test.util.IntegrationTestUtil.initEvent;
+import static alfio.util.MonetaryUtil.unitToCents;
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
@@ -72,6 +74,8 @@ public class TicketReservationManagerIntegrationTest extends BaseIntegrationTest
 
     @Autowired
     private EventManager eventManager;
+    @Autowired
+    private ExpiredReservationSweeper expiredReservationSweeper;
 
     @Autowired
     private OrganizationRepository organizationRepository;
@@ -102,6 +106,8 @@ public class TicketReservationManagerIntegrationTest extends BaseIntegrationTest
     private WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor;
     @Autowired
     private PurchaseContextSearchManager purchaseContextSearchManager;
+    @Autowired
+    private PromoCodeDiscountRepository promoCodeDiscountRepository;
 
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
@@ -330,6 +336,7 @@ public class TicketReservationManagerIntegrationTest extends BaseIntegrationTest
         assertEquals(27, totalPrice.getVAT());
         assertEquals(-300, totalPrice.getDiscount());
         assertEquals(1, totalPrice.getDiscountAppliedCount());
+        assertSamePriceAsTicketPriceContainer(reservationId, event, priceAndDiscount.getRight().get(), totalPrice);
 
         OrderSummary orderSummary = ticketReservationManager.orderSummaryForReservationId(reservationId, event);
         assertEquals("27.00", orderSummary.getTotalPrice());
@@ -354,6 +361,7 @@ public class TicketReservationManagerIntegrationTest extends BaseIntegrationTest
         assertEquals(30, totalPriceFixed.getVAT());
         assertEquals(-15, totalPriceFixed.getDiscount());
         assertEquals(3, totalPriceFixed.getDiscountAppliedCount());
+        assertSamePriceAsTicketPriceContainer(reservationIdFixed, event, priceAndDiscountFixed.getRight().get(), totalPriceFixed);
 
         OrderSummary orderSummaryFixed = ticketReservationManager.orderSummaryForReservationId(reservationIdFixed, event);
         assertEquals("29.85", orderSummaryFixed.getTotalPrice());
@@ -371,6 +379,20 @@ public class TicketReservationManagerIntegrationTest extends BaseIntegrationTest
             () -> ticketReservationManager.createTicketReservation(event, Collections.singletonList(modTooMuch ), Collections.emptyList(), DateUtils.addDays(new Date(), 1), Optional.of("MYPROMOCODE"), Locale.ENGLISH, false, null));
     }
 
+    private void assertSamePriceAsTicketPriceContainer(String reservationId, Event event, PromoCodeDiscount discount, TotalPrice totalPrice) {
+        List<Ticket> tickets = ticketRepository.findTicketsInReservation(reservationId);
+        int finalPriceCts = 0;
+        for (Ticket ticket : tickets) {
+            var priceContainer = TicketPriceContainer.from(ticket, null, event.getVat(), event.getVatStatus(), discount);
+            String currencyCode = priceContainer.getCurrencyCode();
+            assertEquals(unitToCents(priceContainer.getFinalPrice(), currencyCode), ticket.getFinalPriceCts());
+            assertEquals(unitToCents(priceContainer.getVAT(), currencyCode), ticket.getVatCts());
+            assertEquals(unitToCents(priceContainer.getAppliedDiscount(), currencyCode), ticket.getDiscountCts());
+            finalPriceCts += unitToCents(priceContainer.getFinalPrice(), currencyCode);
+        }
+        assertEquals(totalPrice.getPriceWithVAT(), finalPriceCts);
+    }
+
     @Test
     public void testAdditionalServiceWithDiscount() {
         List<TicketCategoryModification> categories = Collections.singletonList(
@@ -491,6 +513,24 @@ public class TicketReservationManagerIntegrationTest extends BaseIntegrationTest
 
     }
 
+    @Test
+    public void testPromoCodeUsageCounter() {
+        var triple = testTicketsWithAccessCode();
+        var event = triple.getLeft();
+        var reservationId = triple.getRight();
+        var promoCode = promoCodeDiscountRepository.findPromoCodeInEventOrOrganization(event.getId(), ACCESS_CODE).orElseThrow();
+        var categories = List.of(triple.getMiddle().getId());
+        assertEquals(0, (int) promoCodeDiscountRepository.countConfirmedPromoCode(promoCode.getId(), null, null, null));
+
+        ticketReservationRepository.updateReservationStatus(reservationId, TicketReservation.TicketReservationStatus.COMPLETE.name());
+        assertEquals(3, (int) promoCodeDiscountRepository.countConfirmedPromoCode(promoCode.getId(), null, null, null));
+        assertEquals(3, (int) promoCodeDiscountRepository.countConfirmedPromoCode(promoCode.getId(), categories, null, "X"));
+        assertEquals(0, (int) promoCodeDiscountRepository.countConfirmedPromoCode(promoCode.getId(), null, reservationId, null));
+
+        ticketReservationRepository.updateReservationStatus(reservationId, TicketReservation.TicketReservationStatus.CANCELLED.name());
+        assertEquals(0, (int) promoCodeDiscountRepository.countConfirmedPromoCode(promoCode.getId(), null, null, null));
+    }
+
     @Test
     public void testWithAdditionalServices() {
         List<TicketCategoryModification> categories = Collections.singletonList(
@@ -647,7 +687,7 @@ public class TicketReservationManagerIntegrationTest extends BaseIntegrationTest
             tickets.forEach(ticket -> assertEquals(category.getId(), ticket.getCategoryId()));
             var ticketIds = tickets.stream().map(Ticket::getId).collect(Collectors.toList());
 
-            ticketReservationManager.cleanupExpiredReservations(now);
+            expiredReservationSweeper.sweep(now);
             assertTrue(idsPendingQuery.get().isEmpty());
 
             // check that category ID has been handled correctly
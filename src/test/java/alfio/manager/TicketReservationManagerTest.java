@@ -111,6 +111,8 @@ class TicketReservationManagerTest {
     private EventRepository eventRepository;
     private OrganizationRepository organizationRepository;
     private TicketRepository ticketRepository;
+    private TicketRowMaterializer ticketRowMaterializer;
+    private DirtyEventRepository dirtyEventRepository;
     private TicketCategoryRepository ticketCategoryRepository;
     private TicketCategoryDescriptionRepository ticketCategoryDescriptionRepository;
     private PaymentManager paymentManager;
@@ -151,6 +153,8 @@ class TicketReservationManagerTest {
         eventRepository = mock(EventRepository.class);
         organizationRepository = mock(OrganizationRepository.class);
         ticketRepository = mock(TicketRepository.class);
+        ticketRowMaterializer = mock(TicketRowMaterializer.class);
+        dirtyEventRepository = mock(DirtyEventRepository.class);
         ticketCategoryRepository = mock(TicketCategoryRepository.class);
         ticketCategoryDescriptionRepository = mock(TicketCategoryDescriptionRepository.class);
         paymentManager = mock(PaymentManager.class);
@@ -242,7 +246,11 @@ class TicketReservationManagerTest {
             TestUtil.clockProvider(),
             purchaseContextManager,
             mock(SubscriptionRepository.class),
-            mock(UserManager.class));
+            mock(UserManager.class),
+            mock(TicketInventoryGate.class),
+            mock(TicketSelectionCoalescer.class),
+            ticketRowMaterializer,
+            new DirtyEventTracker(dirtyEventRepository, transactionManager));
 
         when(event.getId()).thenReturn(EVENT_ID);
         when(event.getOrganizationId()).thenReturn(ORGANIZATION_ID);
@@ -258,6 +266,8 @@ class TicketReservationManagerTest {
         when(specialPrice.getId()).thenReturn(SPECIAL_PRICE_ID);
         when(eventRepository.findByReservationId(eq(RESERVATION_ID))).thenReturn(event);
         when(eventRepository.findAll()).thenReturn(Collections.singletonList(event));
+        when(eventRepository.findOptionalById(EVENT_ID)).thenReturn(Optional.of(event));
+        when(dirtyEventRepository.findDirtyEvents(anyString())).thenReturn(List.of(EVENT_ID));
         var baseUrlConf = new MaybeConfiguration(ConfigurationKeys.BASE_URL, new ConfigurationKeyValuePathLevel(null, BASE_URL, null));
         when(configurationManager.baseUrl(any())).thenReturn(StringUtils.removeEnd(BASE_URL, "/"));
         when(configurationManager.getForSystem(ConfigurationKeys.BASE_URL)).thenReturn(baseUrlConf);
@@ -500,6 +510,29 @@ class TicketReservationManagerTest {
         verify(notificationManager, never()).sendSimpleEmail(eq(event), anyString(), anyString(), anyString(), any(TemplateGenerator.class));
     }
 
+    @Test
+    void keepDirtyFlagIfReminderIsTooEarly() {
+        when(configurationManager.getFor(eq(ASSIGNMENT_REMINDER_START), any())).thenReturn(new MaybeConfiguration(ASSIGNMENT_REMINDER_START));
+        when(event.getZoneId()).thenReturn(ZoneId.of("UTC-8"));
+        when(event.getBegin()).thenReturn(ZonedDateTime.now(ZoneId.of("UTC-8")).plusMonths(3).plusDays(1));
+        when(ticketRepository.findAllReservationsConfirmedButNotAssignedForUpdate(anyInt())).thenReturn(singleton("abcd"));
+        trm.sendReminderForTicketAssignment();
+        verify(notificationManager, never()).sendSimpleEmail(eq(event), anyString(), anyString(), anyString(), any(TemplateGenerator.class));
+        // the reminder will be sent later
+        verify(dirtyEventRepository).markDirty(EVENT_ID, DirtyEventTracker.Job.TICKET_ASSIGNMENT_REMINDER.name());
+    }
+
+    @Test
+    void clearDirtyFlagAfterEventStart() {
+        when(configurationManager.getFor(eq(ASSIGNMENT_REMINDER_START), any())).thenReturn(new MaybeConfiguration(ASSIGNMENT_REMINDER_START));
+        when(event.getZoneId()).thenReturn(ClockProvider.clock().getZone());
+        when(event.getBegin()).thenReturn(ZonedDateTime.now(ClockProvider.clock()).minusDays(1));
+        trm.sendReminderForTicketAssignment();
+        verify(dirtyEventRepository).clear(EVENT_ID, DirtyEventTracker.Job.TICKET_ASSIGNMENT_REMINDER.name());
+        verify(dirtyEventRepository, never()).markDirty(anyInt(), anyString());
+        verify(ticketRepository, never()).findAllReservationsConfirmedButNotAssignedForUpdate(anyInt());
+    }
+
     private void initOfflinePaymentTest() {
         when(configurationManager.getFor(eq(OFFLINE_PAYMENT_DAYS), any()))
             .thenReturn(new MaybeConfiguration(OFFLINE_PAYMENT_DAYS, new ConfigurationKeyValuePathLevel(OFFLINE_PAYMENT_DAYS.getValue(), "2", null)));
@@ -575,7 +608,6 @@ class TicketReservationManagerTest {
         when(ticketCategoryRepository.isAccessRestricted(eq(TICKET_CATEGORY_ID))).thenReturn(true);
         when(ticketReservation.getSrcPriceCts()).thenReturn(1000);
         when(ticket.getSrcPriceCts()).thenReturn(1000);
-        when(promoCodeDiscountRepository.lockAccessCodeForUpdate(eq(accessCodeId))).thenReturn(accessCodeId);
         when(specialPriceRepository.bindToAccessCode(eq(TICKET_CATEGORY_ID), eq(accessCodeId), eq(2))).thenReturn(List.of(
             new SpecialPrice(1, "AAAA", 0, TICKET_CATEGORY_ID, SpecialPrice.Status.FREE.name(), null, null, null, accessCodeId),
             new SpecialPrice(2, "BBBB", 0, TICKET_CATEGORY_ID, SpecialPrice.Status.FREE.name(), null, null, null, accessCodeId)
@@ -589,6 +621,44 @@ class TicketReservationManagerTest {
         verify(specialPriceRepository).batchUpdateStatus(eq(List.of(1,2)), eq(SpecialPrice.Status.PENDING), eq(accessCodeId));
     }
 
+    @Test
+    void reserveTokensForAccessCodeWithLimitedUsage() {
+        var accessCode = limitedAccessCode();
+        when(promoCodeDiscountRepository.claimAccessCodeSlots(666, 2)).thenReturn(List.of(0, 1));
+        var tokens = List.of(
+            new SpecialPrice(1, "AAAA", 0, TICKET_CATEGORY_ID, SpecialPrice.Status.FREE.name(), null, null, null, 666),
+            new SpecialPrice(2, "BBBB", 0, TICKET_CATEGORY_ID, SpecialPrice.Status.FREE.name(), null, null, null, 666));
+        when(specialPriceRepository.bindToAccessCodeStripes(TICKET_CATEGORY_ID, 666, List.of(0, 1), 2)).thenReturn(tokens);
+        Assertions.assertEquals(tokens, trm.reserveTokensForAccessCode(reservationModification, accessCode));
+        verify(specialPriceRepository, never()).bindToAccessCode(anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    void reserveTokensForAccessCodeWhileSlotsAreLocked() {
+        var accessCode = limitedAccessCode();
+        when(promoCodeDiscountRepository.claimAccessCodeSlots(666, 2)).thenReturn(List.of());
+        when(promoCodeDiscountRepository.countAvailableAccessCodeSlots(666)).thenReturn(2);
+        assertThrows(TicketReservationManager.AccessCodeSlotsBusyException.class, () -> trm.reserveTokensForAccessCode(reservationModification, accessCode));
+        verify(specialPriceRepository, never()).bindToAccessCodeStripes(anyInt(), anyInt(), anyList(), anyInt());
+    }
+
+    @Test
+    void reserveTokensForAccessCodeOverMaxUsage() {
+        var accessCode = limitedAccessCode();
+        when(promoCodeDiscountRepository.claimAccessCodeSlots(666, 2)).thenReturn(List.of());
+        when(promoCodeDiscountRepository.countAvailableAccessCodeSlots(666)).thenReturn(1);
+        assertThrows(TicketReservationManager.TooManyTicketsForDiscountCodeException.class, () -> trm.reserveTokensForAccessCode(reservationModification, accessCode));
+    }
+
+    private PromoCodeDiscount limitedAccessCode() {
+        PromoCodeDiscount accessCode = mock(PromoCodeDiscount.class);
+        when(accessCode.getId()).thenReturn(666);
+        when(accessCode.getMaxUsage()).thenReturn(10);
+        when(reservationModification.getTicketCategoryId()).thenReturn(TICKET_CATEGORY_ID);
+        when(reservationModification.getQuantity()).thenReturn(2);
+        return accessCode;
+    }
+
     //reserve tickets for category
 
 
@@ -596,76 +666,107 @@ class TicketReservationManagerTest {
     void reserveTicketsForBoundedCategories() {
         when(ticketCategory.isBounded()).thenReturn(true);
         List<Integer> ids = singletonList(1);
-        when(ticketRepository.selectTicketInCategoryForUpdateSkipLocked(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(1), eq(singletonList(Ticket.TicketStatus.FREE.name())))).thenReturn(ids);
+        List<String> statuses = singletonList(Ticket.TicketStatus.FREE.name());
+        when(ticketRepository.reserveAndPriceTickets(eq(true), eq(1), eq(statuses), any())).thenReturn(ids);
         when(reservationModification.getQuantity()).thenReturn(1);
         when(reservationModification.getTicketCategoryId()).thenReturn(TICKET_CATEGORY_ID);
-        when(ticketRepository.findById(1, TICKET_CATEGORY_ID)).thenReturn(ticket);
-        when(ticketRepository.reserveTickets(eq("trid"), eq(ids), same(ticketCategory), eq(Locale.ENGLISH.getLanguage()), any(), any()))
-            .thenReturn(1);
         trm.reserveTicketsForCategory(event, "trid", reservationModification, Locale.ENGLISH, false, null, null);
-        verify(ticketRepository).reserveTickets(eq("trid"), eq(ids), eq(ticketCategory), eq(Locale.ENGLISH.getLanguage()), any(), any());
+        verify(ticketRepository).reserveAndPriceTickets(eq(true), eq(1), eq(statuses), any());
+        verify(ticketRepository, never()).findById(anyInt(), anyInt());
     }
 
     @Test
     void reserveTicketsForBoundedCategoriesWaitingQueue() {
         when(ticketCategory.isBounded()).thenReturn(true);
         List<Integer> ids = singletonList(1);
-        when(ticketRepository.selectTicketInCategoryForUpdateSkipLocked(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(1), eq(asList(TicketStatus.RELEASED.name(), TicketStatus.PRE_RESERVED.name())))).thenReturn(ids);
+        List<String> statuses = asList(TicketStatus.RELEASED.name(), TicketStatus.PRE_RESERVED.name());
+        when(ticketRepository.reserveAndPriceTickets(eq(true), eq(1), eq(statuses), any())).thenReturn(ids);
         when(reservationModification.getQuantity()).thenReturn(1);
         when(reservationModification.getTicketCategoryId()).thenReturn(TICKET_CATEGORY_ID);
-        when(ticketRepository.findById(1, TICKET_CATEGORY_ID)).thenReturn(ticket);
-        when(ticketRepository.reserveTickets(eq("trid"), eq(ids), same(ticketCategory), eq(Locale.ENGLISH.getLanguage()), any(), any()))
-            .thenReturn(1);
         trm.reserveTicketsForCategory(event, "trid", reservationModification, Locale.ENGLISH, true, null, null);
-        verify(ticketRepository).reserveTickets(eq("trid"), eq(ids), eq(ticketCategory), eq(Locale.ENGLISH.getLanguage()), any(), any());
+        verify(ticketRepository).reserveAndPriceTickets(eq(true), eq(1), eq(statuses), any());
     }
 
     @Test
     void reserveTicketsForUnboundedCategories() {
         when(ticketCategory.isBounded()).thenReturn(false);
         List<Integer> ids = singletonList(1);
-        when(ticketRepository.selectNotAllocatedTicketsForUpdateSkipLocked(eq(EVENT_ID), eq(1), eq(singletonList(Ticket.TicketStatus.FREE.name())))).thenReturn(ids);
+        List<String> statuses = singletonList(Ticket.TicketStatus.FREE.name());
+        when(ticketRepository.reserveAndPriceTickets(eq(false), eq(1), eq(statuses), any())).thenReturn(ids);
         when(reservationModification.getQuantity()).thenReturn(1);
         when(reservationModification.getTicketCategoryId()).thenReturn(TICKET_CATEGORY_ID);
-        when(ticketRepository.findById(1, TICKET_CATEGORY_ID)).thenReturn(ticket);
-        when(ticketRepository.reserveTickets(eq("trid"), eq(ids), eq(ticketCategory), eq(Locale.ENGLISH.getLanguage()), any(), any()))
-            .thenReturn(1);
         trm.reserveTicketsForCategory(event, "trid", reservationModification, Locale.ENGLISH, false, null, null);
-        verify(ticketRepository).reserveTickets(eq("trid"), eq(ids), eq(ticketCategory), eq(Locale.ENGLISH.getLanguage()), any(), any());
+        verify(ticketRepository).reserveAndPriceTickets(eq(false), eq(1), eq(statuses), any());
     }
 
     @Test
     void reserveTicketsForUnboundedCategoriesWaitingQueue() {
         when(ticketCategory.isBounded()).thenReturn(false);
         List<Integer> ids = singletonList(1);
-        when(ticketRepository.selectNotAllocatedTicketsForUpdateSkipLocked(eq(EVENT_ID), eq(1), eq(asList(TicketStatus.RELEASED.name(), TicketStatus.PRE_RESERVED.name())))).thenReturn(ids);
+        List<String> statuses = asList(TicketStatus.RELEASED.name(), TicketStatus.PRE_RESERVED.name());
+        when(ticketRepository.reserveAndPriceTickets(eq(false), eq(1), eq(statuses), any())).thenReturn(ids);
         when(reservationModification.getQuantity()).thenReturn(1);
         when(reservationModification.getTicketCategoryId()).thenReturn(TICKET_CATEGORY_ID);
-        when(ticketRepository.findById(1, TICKET_CATEGORY_ID)).thenReturn(ticket);
-        when(ticketRepository.reserveTickets(eq("trid"), eq(ids), same(ticketCategory), eq(Locale.ENGLISH.getLanguage()), any(), any()))
-            .thenReturn(1);
         trm.reserveTicketsForCategory(event, "trid", reservationModification, Locale.ENGLISH, true, null, null);
-        verify(ticketRepository).reserveTickets(eq("trid"), eq(ids), eq(ticketCategory), eq(Locale.ENGLISH.getLanguage()), any(), any());
+        verify(ticketRepository).reserveAndPriceTickets(eq(false), eq(1), eq(statuses), any());
+    }
+
+    @Test
+    void notEnoughTicketsForCategory() {
+        when(ticketCategory.isBounded()).thenReturn(true);
+        when(ticketRepository.reserveAndPriceTickets(eq(true), eq(2), anyList(), any())).thenReturn(singletonList(1));
+        when(reservationModification.getQuantity()).thenReturn(2);
+        when(reservationModification.getTicketCategoryId()).thenReturn(TICKET_CATEGORY_ID);
+        assertThrows(TicketReservationManager.NotEnoughTicketsException.class,
+            () -> trm.reserveTicketsForCategory(event, "trid", reservationModification, Locale.ENGLISH, false, null, null));
+    }
+
+    @Test
+    void materializeTicketsIfCategoryIsExhausted() {
+        when(ticketCategory.isBounded()).thenReturn(true);
+        when(ticketRepository.reserveAndPriceTickets(eq(true), eq(2), anyList(), any())).thenReturn(singletonList(1));
+        when(ticketRowMaterializer.materialize(event, ticketCategory, 1)).thenReturn(50);
+        when(ticketRepository.reserveAndPriceTickets(eq(true), eq(1), anyList(), any())).thenReturn(singletonList(2));
+        when(reservationModification.getQuantity()).thenReturn(2);
+        when(reservationModification.getTicketCategoryId()).thenReturn(TICKET_CATEGORY_ID);
+        trm.reserveTicketsForCategory(event, "trid", reservationModification, Locale.ENGLISH, false, null, null);
+        verify(ticketRowMaterializer).materialize(event, ticketCategory, 1);
+        verify(ticketRepository).reserveAndPriceTickets(eq(true), eq(1), anyList(), any());
     }
 
     //cleanup expired reservations
 
     @Test
-    void doNothingIfNoReservations() {
+    void doNothingIfReservationsAreLocked() {
         Date now = new Date(Instant.now(ClockProvider.clock()).getEpochSecond());
-        when(ticketReservationRepository.findExpiredReservationForUpdate(eq(now))).thenReturn(Collections.emptyList());
-        trm.cleanupExpiredReservations(now);
-        verify(ticketReservationRepository).findExpiredReservationForUpdate(eq(now));
+        List<String> candidates = singletonList("reservation-id");
+        when(ticketReservationRepository.lockExpiredReservationsForUpdate(candidates, now)).thenReturn(Collections.emptyList());
+        assertEquals(0, trm.cleanupExpiredReservationsBatch(candidates, now, Set.of()));
+        verify(ticketReservationRepository).lockExpiredReservationsForUpdate(candidates, now);
         verifyNoMoreInteractions(ticketReservationRepository, specialPriceRepository, ticketRepository, waitingQueueManager);
     }
 
+    @Test
+    void cleanupExpiredReservationsBatchSkipsUncheckedTransactions() {
+        Date now = new Date(Instant.now(ClockProvider.clock()).getEpochSecond());
+        List<String> candidates = asList("r1", "r2", "r3");
+        var pending = mock(TicketReservation.class);
+        when(pending.getId()).thenReturn("r3");
+        when(ticketReservationRepository.lockExpiredReservationsForUpdate(candidates, now)).thenReturn(asList("r1", "r3"));
+        when(ticketReservationRepository.findReservationsWithPendingTransaction(asList("r1", "r3"))).thenReturn(singletonList(pending));
+        assertEquals(1, trm.cleanupExpiredReservationsBatch(candidates, now, Set.of()));
+        List<String> expected = singletonList("r1");
+        verify(ticketRepository).freeFromReservation(expected);
+        verify(ticketReservationRepository).remove(expected);
+    }
+
     @Test
     void cancelExpiredReservations() {
         Date now = new Date(Instant.now(ClockProvider.clock()).getEpochSecond());
         List<String> reservationIds = singletonList("reservation-id");
-        when(ticketReservationRepository.findExpiredReservationForUpdate(now)).thenReturn(reservationIds);
-        trm.cleanupExpiredReservations(now);
-        verify(ticketReservationRepository).findExpiredReservationForUpdate(now);
+        when(ticketReservationRepository.lockExpiredReservationsForUpdate(reservationIds, now)).thenReturn(reservationIds);
+        assertEquals(1, trm.cleanupExpiredReservationsBatch(reservationIds, now, Set.of()));
+        verify(ticketReservationRepository).lockExpiredReservationsForUpdate(reservationIds, now);
         verify(specialPriceRepository).resetToFreeAndCleanupForReservation(reservationIds);
         verify(ticketRepository).resetCategoryIdForUnboundedCategories(reservationIds);
         verify(ticketRepository).freeFromReservation(reservationIds);
@@ -1352,7 +1453,7 @@ class TicketReservationManagerTest {
 
         @BeforeEach
         void setUp() {
-            when(ticketReservationRepository.findExpiredReservationForUpdate(now)).thenReturn(reservationIds);
+            when(ticketReservationRepository.lockExpiredReservationsForUpdate(reservationIds, now)).thenReturn(reservationIds);
             pendingReservationMock = mock(TicketReservation.class);
             when(pendingReservationMock.getId()).thenReturn(PENDING_RESERVATION_ID);
             when(pendingReservationMock.getSrcPriceCts()).thenReturn(100);
@@ -1373,6 +1474,12 @@ class TicketReservationManagerTest {
                 .thenReturn(Optional.of(transactionMock));
         }
 
+        // same sequence as ExpiredReservationSweeper
+        private void sweep() {
+            var checked = trm.checkPendingTransactionBeforeExpiration(pendingReservationMock) ? Set.of(PENDING_RESERVATION_ID) : Set.<String>of();
+            trm.cleanupExpiredReservationsBatch(reservationIds, now, checked);
+        }
+
         @Test
         void cancelExpiredReservationsPendingPaymentConfirmed() {
             var stripeManager = mock(StripeWebhookPaymentManager.class);
@@ -1380,8 +1487,8 @@ class TicketReservationManagerTest {
                 .thenReturn(Optional.of(stripeManager));
             when(stripeManager.forceTransactionCheck(eq(pendingReservationMock), eq(transactionMock), any()))
                 .thenReturn(PaymentWebhookResult.successful(new StripeCreditCardToken("")));
-            trm.cleanupExpiredReservations(now);
-            verify(ticketReservationRepository).findExpiredReservationForUpdate(now);
+            sweep();
+            verify(ticketReservationRepository).lockExpiredReservationsForUpdate(reservationIds, now);
             verify(specialPriceRepository).resetToFreeAndCleanupForReservation(expiredReservationIds);
             verify(ticketRepository).resetCategoryIdForUnboundedCategories(expiredReservationIds);
             verify(ticketRepository).freeFromReservation(expiredReservationIds);
@@ -1411,8 +1518,8 @@ class TicketReservationManagerTest {
                 .thenReturn(Optional.of(transactionMock));
             when(ticketReservationRepository.updateReservationStatus(PENDING_RESERVATION_ID, TicketReservationStatus.PENDING.toString()))
                 .thenReturn(1);
-            trm.cleanupExpiredReservations(now);
-            verify(ticketReservationRepository).findExpiredReservationForUpdate(now);
+            sweep();
+            verify(ticketReservationRepository).lockExpiredReservationsForUpdate(reservationIds, now);
             verify(specialPriceRepository).resetToFreeAndCleanupForReservation(reservationIds);
             verify(ticketRepository).resetCategoryIdForUnboundedCategories(reservationIds);
             verify(ticketRepository).freeFromReservation(reservationIds);
@@ -158,7 +158,11 @@ class TicketReservationManagerUnitTest {
             TestUtil.clockProvider(),
             purchaseContextManager,
             mock(SubscriptionRepository.class),
-            mock(UserManager.class));
+            mock(UserManager.class),
+            mock(TicketInventoryGate.class),
+            mock(TicketSelectionCoalescer.class),
+            mock(TicketRowMaterializer.class),
+            mock(DirtyEventTracker.class));
 
     }
 
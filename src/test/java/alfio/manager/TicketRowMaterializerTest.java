@@ -0,0 +1,114 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.EventAndOrganizationId;
+import alfio.model.TicketCategory;
+import alfio.repository.TicketCategoryCapacityRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.util.Optional;
+
+import static alfio.manager.TicketRowMaterializer.MATERIALIZATION_CHUNK;
+import static alfio.test.util.TestUtil.clockProvider;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TicketRowMaterializerTest {
+
+    private static final int EVENT_ID = 1;
+    private static final int CATEGORY_ID = 2;
+
+    private TicketCategoryCapacityRepository capacityRepository;
+    private TicketRepository ticketRepository;
+    private TicketCategoryRepository ticketCategoryRepository;
+    private EventAndOrganizationId event;
+    private TicketCategory category;
+    private TicketRowMaterializer materializer;
+
+    @BeforeEach
+    void setUp() {
+        capacityRepository = mock(TicketCategoryCapacityRepository.class);
+        ticketRepository = mock(TicketRepository.class);
+        ticketCategoryRepository = mock(TicketCategoryRepository.class);
+        event = mock(EventAndOrganizationId.class);
+        category = mock(TicketCategory.class);
+        when(event.getId()).thenReturn(EVENT_ID);
+        when(category.getId()).thenReturn(CATEGORY_ID);
+        when(category.isBounded()).thenReturn(true);
+        when(category.getSrcPriceCts()).thenReturn(1000);
+        materializer = new TicketRowMaterializer(capacityRepository, ticketRepository, ticketCategoryRepository, mock(ConfigurationManager.class), clockProvider());
+    }
+
+    @Test
+    void materializeAtLeastOneChunk() {
+        when(capacityRepository.tryReserveCapacity(CATEGORY_ID, MATERIALIZATION_CHUNK)).thenReturn(Optional.of(MATERIALIZATION_CHUNK));
+        assertEquals(MATERIALIZATION_CHUNK, materializer.materialize(event, category, 2));
+        var captor = ArgumentCaptor.forClass(MapSqlParameterSource[].class);
+        verify(ticketRepository).bulkTicketInitialization(captor.capture());
+        var params = captor.getValue();
+        assertEquals(MATERIALIZATION_CHUNK, params.length);
+        assertEquals(CATEGORY_ID, params[0].getValue("categoryId"));
+        assertEquals(1000, params[0].getValue("srcPriceCts"));
+    }
+
+    @Test
+    void nothingToDoIfCapacityIsExhausted() {
+        when(capacityRepository.tryReserveCapacity(eq(CATEGORY_ID), anyInt())).thenReturn(Optional.empty());
+        assertEquals(0, materializer.materialize(event, category, 2));
+        verify(ticketRepository, never()).bulkTicketInitialization(any());
+    }
+
+    @Test
+    void nothingToDoForUnboundedCategories() {
+        when(category.isBounded()).thenReturn(false);
+        assertEquals(0, materializer.materialize(event, category, 2));
+        verifyNoInteractions(capacityRepository, ticketRepository);
+    }
+
+    @Test
+    void materializeCategoryRemovesCapacity() {
+        when(ticketCategoryRepository.getById(CATEGORY_ID)).thenReturn(category);
+        when(capacityRepository.reserveCapacity(CATEGORY_ID, Integer.MAX_VALUE)).thenReturn(Optional.of(10));
+        materializer.materializeCategory(event, CATEGORY_ID);
+        verify(ticketRepository).bulkTicketInitialization(argThat(p -> p.length == 10));
+        verify(capacityRepository).delete(CATEGORY_ID);
+    }
+
+    @Test
+    void materializeCategoryNothingToDoIfAlreadyCreated() {
+        when(capacityRepository.reserveCapacity(CATEGORY_ID, Integer.MAX_VALUE)).thenReturn(Optional.empty());
+        materializer.materializeCategory(event, CATEGORY_ID);
+        verify(ticketRepository, never()).bulkTicketInitialization(any());
+        verify(ticketCategoryRepository, never()).getById(anyInt());
+    }
+
+    @Test
+    void accountMovedTickets() {
+        materializer.ticketsMovedIn(CATEGORY_ID, 0);
+        verify(capacityRepository, never()).addMaterializedTickets(anyInt(), anyInt());
+        materializer.ticketsMovedIn(CATEGORY_ID, 3);
+        verify(capacityRepository).addMaterializedTickets(CATEGORY_ID, 3);
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.model.TicketCategory;
+import alfio.repository.TicketRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TicketSelectionCoalescerTest {
+
+    private static final int EVENT_ID = 1;
+    private static final int CATEGORY_ID = 2;
+
+    private TicketRepository ticketRepository;
+    private TicketSelectionCoalescer coalescer;
+    private TicketCategory bounded;
+
+    @BeforeEach
+    void setUp() {
+        ticketRepository = mock(TicketRepository.class);
+        coalescer = new TicketSelectionCoalescer(ticketRepository);
+        bounded = mock(TicketCategory.class);
+        when(bounded.getId()).thenReturn(CATEGORY_ID);
+        when(bounded.isBounded()).thenReturn(true);
+    }
+
+    @Test
+    void claimCandidatesSingleRequest() {
+        when(ticketRepository.findFreeTicketCandidatesInCategory(EVENT_ID, CATEGORY_ID, 2)).thenReturn(List.of(10, 11));
+        assertEquals(List.of(10, 11), coalescer.claimCandidates(EVENT_ID, bounded, 2));
+    }
+
+    @Test
+    void unboundedCategoriesUseNotAllocatedTickets() {
+        var unbounded = mock(TicketCategory.class);
+        when(unbounded.isBounded()).thenReturn(false);
+        when(ticketRepository.findFreeNotAllocatedTicketCandidates(EVENT_ID, 1)).thenReturn(List.of(10));
+        assertEquals(List.of(10), coalescer.claimCandidates(EVENT_ID, unbounded, 1));
+        verify(ticketRepository, never()).findFreeTicketCandidatesInCategory(anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    void dropStateAfterCompletion() {
+        when(ticketRepository.findFreeTicketCandidatesInCategory(EVENT_ID, CATEGORY_ID, 1)).thenReturn(List.of(10), List.of(10));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertEquals(List.of(10), coalescer.claimCandidates(EVENT_ID, bounded, 1));
+            assertEquals(1, coalescer.countTrackedCategories());
+            // the candidate is still in flight: it cannot be handed out again
+            assertTrue(coalescer.claimCandidates(EVENT_ID, bounded, 1).isEmpty());
+            TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(0, coalescer.countTrackedCategories());
+        assertEquals(List.of(10), coalescer.claimCandidates(EVENT_ID, bounded, 1));
+        assertEquals(0, coalescer.countTrackedCategories());
+    }
+
+    @Test
+    void noCandidatesIfQueryFails() {
+        when(ticketRepository.findFreeTicketCandidatesInCategory(anyInt(), anyInt(), anyInt())).thenThrow(new IllegalStateException());
+        assertTrue(coalescer.claimCandidates(EVENT_ID, bounded, 1).isEmpty());
+    }
+
+    @Test
+    void coalesceConcurrentRequests() throws Exception {
+        Set<Integer> taken = ConcurrentHashMap.newKeySet();
+        when(ticketRepository.findFreeTicketCandidatesInCategory(eq(EVENT_ID), eq(CATEGORY_ID), anyInt())).thenAnswer(invocation -> {
+            // simulate a slow query, so that other requests can pile up in the meantime
+            Thread.sleep(20);
+            int amount = invocation.getArgument(2);
+            return IntStream.rangeClosed(1, 1000).boxed().filter(id -> !taken.contains(id)).limit(amount).collect(Collectors.toList());
+        });
+        int threads = 16;
+        var start = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<List<Integer>>> tasks = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                tasks.add(() -> {
+                    start.await();
+                    TransactionSynchronizationManager.initSynchronization();
+                    try {
+                        var ids = coalescer.claimCandidates(EVENT_ID, bounded, 1);
+                        // reserve the tickets, then commit
+                        taken.addAll(ids);
+                        TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+                        return ids;
+                    } finally {
+                        TransactionSynchronizationManager.clearSynchronization();
+                    }
+                });
+            }
+            var futures = new ArrayList<Future<List<Integer>>>();
+            tasks.forEach(t -> futures.add(executor.submit(t)));
+            start.countDown();
+            Set<Integer> allIds = new HashSet<>();
+            for (Future<List<Integer>> f : futures) {
+                var ids = f.get();
+                // callers which didn't get the turn within the batch window fall back to the standard query
+                assertTrue(ids.size() <= 1);
+                // each caller must get a different candidate
+                assertTrue(allIds.addAll(ids) || ids.isEmpty());
+            }
+            verify(ticketRepository, atMost(threads - 1)).findFreeTicketCandidatesInCategory(eq(EVENT_ID), eq(CATEGORY_ID), anyInt());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void waitForRunningQueryIsCapped() throws Exception {
+        var queryStarted = new CountDownLatch(1);
+        var releaseQuery = new CountDownLatch(1);
+        when(ticketRepository.findFreeTicketCandidatesInCategory(EVENT_ID, CATEGORY_ID, 1)).thenAnswer(invocation -> {
+            queryStarted.countDown();
+            releaseQuery.await();
+            return List.of(10);
+        });
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var first = executor.submit(() -> coalescer.claimCandidates(EVENT_ID, bounded, 1));
+            assertTrue(queryStarted.await(1, TimeUnit.SECONDS));
+            long start = System.nanoTime();
+            // the selection query is still running: we give up instead of waiting for it
+            assertTrue(coalescer.claimCandidates(EVENT_ID, bounded, 1).isEmpty());
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(200));
+            releaseQuery.countDown();
+            assertEquals(List.of(10), first.get());
+            verify(ticketRepository, times(1)).findFreeTicketCandidatesInCategory(EVENT_ID, CATEGORY_ID, 1);
+        } finally {
+            releaseQuery.countDown();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -23,6 +23,7 @@ import alfio.model.Event;
 import alfio.model.WaitingQueueSubscription;
 import alfio.model.modification.TicketReservationWithOptionalCodeModification;
 import alfio.model.system.ConfigurationKeyValuePathLevel;
+import alfio.repository.DirtyEventRepository;
 import alfio.repository.TicketRepository;
 import alfio.repository.WaitingQueueRepository;
 import alfio.util.TemplateManager;
@@ -60,6 +61,7 @@ public class WaitingQueueSubscriptionProcessorTest {
     private WaitingQueueSubscriptionProcessor processor;
     private TicketRepository ticketRepository;
     private MessageSourceManager messageSourceManager;
+    private DirtyEventRepository dirtyEventRepository;
 
 
     @BeforeEach
@@ -78,12 +80,16 @@ public class WaitingQueueSubscriptionProcessorTest {
         subscription = mock(WaitingQueueSubscription.class);
         reservation = mock(TicketReservationWithOptionalCodeModification.class);
         ticketRepository = mock(TicketRepository.class);
+        dirtyEventRepository = mock(DirtyEventRepository.class);
         int eventId = 1;
         when(event.getId()).thenReturn(eventId);
         when(event.getZoneId()).thenReturn(ZoneId.systemDefault());
         when(eventManager.getActiveEvents()).thenReturn(Collections.singletonList(event));
+        when(eventManager.getActiveEventById(eventId)).thenReturn(Optional.of(event));
+        when(dirtyEventRepository.findDirtyEvents(DirtyEventTracker.Job.WAITING_LIST.name())).thenReturn(List.of(eventId));
         when(messageSourceManager.getMessageSourceFor(any())).thenReturn(messageSource);
         when(messageSourceManager.getRootMessageSource()).thenReturn(messageSource);
+        when(waitingQueueRepository.tryLockForDistribution(anyInt())).thenReturn(true);
         processor = new WaitingQueueSubscriptionProcessor(eventManager,
             ticketReservationManager,
             configurationManager,
@@ -94,7 +100,9 @@ public class WaitingQueueSubscriptionProcessorTest {
             templateManager,
             ticketRepository,
             transactionManager,
-            clockProvider());
+            clockProvider(),
+            mock(TicketInventoryGate.class),
+            new DirtyEventTracker(dirtyEventRepository, transactionManager));
     }
 
     @Test
@@ -129,4 +137,73 @@ public class WaitingQueueSubscriptionProcessorTest {
         verify(ticketReservationManager).createTicketReservation(eq(event), eq(Collections.singletonList(reservation)), anyList(), eq(Date.from(expiration.toInstant())), eq(Optional.empty()), eq(Locale.ENGLISH), eq(true), isNull());
         verify(notificationManager).sendSimpleEmail(eq(event), eq(reservationId), eq("me"), eq("subject"), any(TemplateGenerator.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void handleReleasedTicketsForSingleEvent() {
+        when(configurationManager.getFor(eq(Set.of(ENABLE_WAITING_QUEUE, ENABLE_PRE_REGISTRATION)), any()))
+            .thenReturn(Map.of(
+                ENABLE_WAITING_QUEUE, new ConfigurationManager.MaybeConfiguration(ENABLE_WAITING_QUEUE, new ConfigurationKeyValuePathLevel( "", "true", null)),
+                ENABLE_PRE_REGISTRATION, new ConfigurationManager.MaybeConfiguration(ENABLE_PRE_REGISTRATION)
+            ));
+        when(eventManager.getActiveEventById(1)).thenReturn(Optional.of(event));
+        when(waitingQueueManager.distributeSeats(eq(event))).thenReturn(Stream.empty());
+        processor.handleReleasedTickets(1);
+        verify(waitingQueueManager).distributeSeats(eq(event));
+        verify(eventManager, never()).getActiveEvents();
+    }
+
+    @Test
+    void skipEventBeingProcessedByAnotherNode() {
+        when(configurationManager.getFor(eq(Set.of(ENABLE_WAITING_QUEUE, ENABLE_PRE_REGISTRATION)), any()))
+            .thenReturn(Map.of(
+                ENABLE_WAITING_QUEUE, new ConfigurationManager.MaybeConfiguration(ENABLE_WAITING_QUEUE, new ConfigurationKeyValuePathLevel( "", "true", null)),
+                ENABLE_PRE_REGISTRATION, new ConfigurationManager.MaybeConfiguration(ENABLE_PRE_REGISTRATION)
+            ));
+        when(waitingQueueRepository.tryLockForDistribution(1)).thenReturn(false);
+        processor.handleWaitingTickets();
+        verify(waitingQueueManager, never()).distributeSeats(any());
+        // the event must be processed again by the next run
+        verify(dirtyEventRepository).markDirty(1, DirtyEventTracker.Job.WAITING_LIST.name());
+    }
+
+    @Test
+    void ignoreReleasedTicketsForInactiveEvent() {
+        when(eventManager.getActiveEventById(1)).thenReturn(Optional.empty());
+        processor.handleReleasedTickets(1);
+        verifyNoInteractions(waitingQueueManager, configurationManager);
+    }
+
+    @Test
+    void processOnlyDirtyEventsOrEventsWithSubscribers() {
+        when(configurationManager.getFor(eq(Set.of(ENABLE_WAITING_QUEUE, ENABLE_PRE_REGISTRATION)), any()))
+            .thenReturn(Map.of(
+                ENABLE_WAITING_QUEUE, new ConfigurationManager.MaybeConfiguration(ENABLE_WAITING_QUEUE, new ConfigurationKeyValuePathLevel( "", "true", null)),
+                ENABLE_PRE_REGISTRATION, new ConfigurationManager.MaybeConfiguration(ENABLE_PRE_REGISTRATION)
+            ));
+        var eventWithSubscribers = mock(Event.class);
+        when(eventWithSubscribers.getId()).thenReturn(2);
+        when(eventManager.getActiveEventById(2)).thenReturn(Optional.of(eventWithSubscribers));
+        when(waitingQueueRepository.findEventsWithWaitingSubscribers(any(), any())).thenReturn(List.of(1, 2));
+        when(waitingQueueManager.distributeSeats(any())).thenReturn(Stream.empty());
+        when(ticketRepository.countWaiting(1)).thenReturn(0);
+        processor.handleWaitingTickets();
+        verify(waitingQueueManager).distributeSeats(eq(event));
+        verify(waitingQueueManager).distributeSeats(eq(eventWithSubscribers));
+        verify(eventManager, never()).getActiveEvents();
+        verify(dirtyEventRepository).clear(1, DirtyEventTracker.Job.WAITING_LIST.name());
+        verify(dirtyEventRepository, never()).markDirty(anyInt(), anyString());
+    }
+
+    @Test
+    void keepEventDirtyIfReleasedTicketsAreLeft() {
+        when(configurationManager.getFor(eq(Set.of(ENABLE_WAITING_QUEUE, ENABLE_PRE_REGISTRATION)), any()))
+            .thenReturn(Map.of(
+                ENABLE_WAITING_QUEUE, new ConfigurationManager.MaybeConfiguration(ENABLE_WAITING_QUEUE, new ConfigurationKeyValuePathLevel( "", "true", null)),
+                ENABLE_PRE_REGISTRATION, new ConfigurationManager.MaybeConfiguration(ENABLE_PRE_REGISTRATION)
+            ));
+        when(waitingQueueManager.distributeSeats(eq(event))).thenReturn(Stream.empty());
+        when(ticketRepository.countWaiting(1)).thenReturn(3);
+        processor.handleWaitingTickets();
+        verify(dirtyEventRepository).markDirty(1, DirtyEventTracker.Job.WAITING_LIST.name());
+    }
+}
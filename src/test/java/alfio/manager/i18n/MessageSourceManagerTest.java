@@ -16,11 +16,20 @@
  */
 package alfio.manager.i18n;
 
+import alfio.manager.system.ConfigurationCache;
+import alfio.manager.system.DatabaseNotificationListener;
+import alfio.model.system.ConfigurationPathLevel;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.util.CustomResourceBundleMessageSource;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
 
 class MessageSourceManagerTest {
 
@@ -38,4 +47,37 @@ class MessageSourceManagerTest {
         assertEquals("blabla{1}", MessageSourceManager.cleanArguments("blabla{1}", "{$1}"));
         assertEquals("blabla{1}", MessageSourceManager.cleanArguments("blabla{{{{{{1}}", "{$1}"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void cacheEventOverride() {
+        var configurationRepository = mock(ConfigurationRepository.class);
+        when(configurationRepository.getEventOverrideMessages(1, 2)).thenReturn(Map.of("en", Map.of("common.vat", "GST {{0}}")));
+        var configurationCache = new ConfigurationCache(Duration.ofMinutes(1), mock(DatabaseNotificationListener.class));
+        var manager = new MessageSourceManager(mock(CustomResourceBundleMessageSource.class), configurationRepository, configurationCache);
+
+        assertEquals("GST 42", manager.getMessageSourceFor(1, 2).getMessage("common.vat", new Object[] {"42"}, Locale.ENGLISH));
+        assertEquals("GST 43", manager.getMessageSourceFor(1, 2).getMessage("common.vat", new Object[] {"43"}, Locale.ENGLISH));
+        verify(configurationRepository, times(1)).getEventOverrideMessages(1, 2);
+    }
+
+    @Test
+    void serializeBundleOncePerOverride() {
+        var configurationRepository = mock(ConfigurationRepository.class);
+        when(configurationRepository.getSystemOverrideMessages()).thenReturn(Map.of("en", Map.of("common.vat", "GST")));
+        var configurationCache = new ConfigurationCache(Duration.ofMinutes(1), mock(DatabaseNotificationListener.class));
+        var messageSource = mock(CustomResourceBundleMessageSource.class);
+        when(messageSource.getKeys("alfio.i18n.public", Locale.ENGLISH)).thenReturn(Set.of("common.vat"));
+        var manager = new MessageSourceManager(messageSource, configurationRepository, configurationCache);
+
+        var bundle = manager.getSerializedBundle("alfio.i18n.public", true, "en");
+        assertEquals("{\"common.vat\":\"GST\"}", bundle.getJson());
+        assertSame(bundle, manager.getSerializedBundle("alfio.i18n.public", true, "en"));
+        verify(messageSource, times(1)).getKeys("alfio.i18n.public", Locale.ENGLISH);
+
+        when(configurationRepository.getSystemOverrideMessages()).thenReturn(Map.of("en", Map.of("common.vat", "VAT")));
+        configurationCache.invalidate(ConfigurationPathLevel.SYSTEM);
+        var updated = manager.getSerializedBundle("alfio.i18n.public", true, "en");
+        assertEquals("{\"common.vat\":\"VAT\"}", updated.getJson());
+        assertNotEquals(bundle.getEtag(), updated.getEtag());
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.model.EventAndOrganizationId;
+import alfio.model.system.ConfigurationKeys;
+import alfio.model.system.ConfigurationPathLevel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static alfio.model.system.ConfigurationKeys.BASE_URL;
+import static alfio.model.system.ConfigurationKeys.SUPPORTED_LANGUAGES;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class ConfigurationCacheTest {
+
+    private final EventAndOrganizationId event = new EventAndOrganizationId(1, 2);
+    private final AtomicInteger loads = new AtomicInteger();
+    private DatabaseNotificationListener listener;
+    private ConfigurationCache cache;
+
+    @BeforeEach
+    void setUp() {
+        listener = mock(DatabaseNotificationListener.class);
+        cache = new ConfigurationCache(Duration.ofMinutes(1), listener);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void subscribeToNotifications() {
+        cache.afterPropertiesSet();
+        verify(listener).subscribe(eq(ConfigurationCache.CHANNEL), any());
+    }
+
+    @Test
+    void cacheByLevelAndKeys() {
+        get(ConfigurationLevel.event(event), Set.of(BASE_URL));
+        get(ConfigurationLevel.event(event), Set.of(BASE_URL));
+        assertEquals(1, loads.get());
+        get(ConfigurationLevel.event(new EventAndOrganizationId(3, 2)), Set.of(BASE_URL));
+        get(ConfigurationLevel.event(event), Set.of(BASE_URL, SUPPORTED_LANGUAGES));
+        assertEquals(3, loads.get());
+        var statistics = cache.getStatistics().get(0);
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(3, statistics.getMissCount());
+    }
+
+    @Test
+    void resultCannotModifyCache() {
+        get(ConfigurationLevel.system(), Set.of(BASE_URL)).remove(BASE_URL);
+        assertTrue(get(ConfigurationLevel.system(), Set.of(BASE_URL)).containsKey(BASE_URL));
+    }
+
+    @Test
+    void invalidateSameAndMoreSpecificLevels() {
+        get(ConfigurationLevel.system(), Set.of(BASE_URL));
+        get(ConfigurationLevel.organization(2), Set.of(BASE_URL));
+        get(ConfigurationLevel.event(event), Set.of(BASE_URL));
+        get(ConfigurationLevel.ticketCategory(event, 4), Set.of(BASE_URL));
+        assertEquals(4, loads.get());
+
+        cache.invalidate(ConfigurationPathLevel.EVENT);
+        get(ConfigurationLevel.system(), Set.of(BASE_URL));
+        get(ConfigurationLevel.organization(2), Set.of(BASE_URL));
+        assertEquals(4, loads.get());
+        get(ConfigurationLevel.event(event), Set.of(BASE_URL));
+        get(ConfigurationLevel.ticketCategory(event, 4), Set.of(BASE_URL));
+        assertEquals(6, loads.get());
+    }
+
+    @Test
+    void invalidateOnNotification() {
+        get(ConfigurationLevel.system(), Set.of(BASE_URL));
+        get(ConfigurationLevel.organization(2), Set.of(BASE_URL));
+        cache.onConfigurationChanged("configuration_organization");
+        get(ConfigurationLevel.system(), Set.of(BASE_URL));
+        assertEquals(2, loads.get());
+        get(ConfigurationLevel.organization(2), Set.of(BASE_URL));
+        assertEquals(3, loads.get());
+        cache.onConfigurationChanged("configuration");
+        get(ConfigurationLevel.system(), Set.of(BASE_URL));
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void bypassCacheWhileTransactionHasPendingChanges() {
+        TransactionSynchronizationManager.initSynchronization();
+        get(ConfigurationLevel.system(), Set.of(BASE_URL));
+        cache.invalidate(ConfigurationPathLevel.SYSTEM);
+        get(ConfigurationLevel.system(), Set.of(BASE_URL));
+        get(ConfigurationLevel.system(), Set.of(BASE_URL));
+        assertEquals(3, loads.get());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        get(ConfigurationLevel.system(), Set.of(BASE_URL));
+        get(ConfigurationLevel.system(), Set.of(BASE_URL));
+        assertEquals(4, loads.get());
+    }
+
+    private Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> get(ConfigurationLevel level, Set<ConfigurationKeys> keys) {
+        return cache.get(level, keys, () -> {
+            loads.incrementAndGet();
+            var result = new EnumMap<ConfigurationKeys, ConfigurationManager.MaybeConfiguration>(ConfigurationKeys.class);
+            keys.forEach(k -> result.put(k, new ConfigurationManager.MaybeConfiguration(k)));
+            return result;
+        });
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.model.Event;
+import alfio.repository.EventRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class EventCacheTest {
+
+    private static final String SHORT_NAME = "event";
+    private static final int EVENT_ID = 1;
+    private EventRepository eventRepository;
+    private DatabaseNotificationListener listener;
+    private EventCache cache;
+    private Event event;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository = mock(EventRepository.class);
+        listener = mock(DatabaseNotificationListener.class);
+        event = mock(Event.class);
+        when(event.getId()).thenReturn(EVENT_ID);
+        when(eventRepository.findOptionalById(EVENT_ID)).thenReturn(Optional.of(event));
+        when(eventRepository.findOptionalByShortName(SHORT_NAME)).thenReturn(Optional.of(event));
+        cache = new EventCache(eventRepository, Duration.ofMinutes(1), listener);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void subscribeToNotifications() {
+        cache.afterPropertiesSet();
+        verify(listener).subscribe(eq(EventCache.CHANNEL), any());
+    }
+
+    @Test
+    void cacheByIdAndShortName() {
+        assertSame(event, cache.findOptionalById(EVENT_ID).orElseThrow());
+        assertSame(event, cache.findOptionalById(EVENT_ID).orElseThrow());
+        assertSame(event, cache.findOptionalByShortName(SHORT_NAME).orElseThrow());
+        assertSame(event, cache.findOptionalByShortName(SHORT_NAME).orElseThrow());
+        verify(eventRepository, times(1)).findOptionalById(EVENT_ID);
+        verify(eventRepository, times(1)).findOptionalByShortName(SHORT_NAME);
+        assertEquals(1, cache.getStatistics().get(0).getHitCount());
+    }
+
+    @Test
+    void doNotCacheMissingEvents() {
+        when(eventRepository.findOptionalByShortName("missing")).thenReturn(Optional.empty());
+        assertTrue(cache.findOptionalByShortName("missing").isEmpty());
+        assertTrue(cache.findOptionalByShortName("missing").isEmpty());
+        verify(eventRepository, times(2)).findOptionalByShortName("missing");
+    }
+
+    @Test
+    void invalidateOnNotification() {
+        cache.findOptionalById(EVENT_ID);
+        cache.findOptionalByShortName(SHORT_NAME);
+        cache.onEventChanged("2");
+        cache.findOptionalById(EVENT_ID);
+        cache.findOptionalByShortName(SHORT_NAME);
+        verify(eventRepository, times(1)).findOptionalById(EVENT_ID);
+        verify(eventRepository, times(1)).findOptionalByShortName(SHORT_NAME);
+
+        cache.onEventChanged(String.valueOf(EVENT_ID));
+        cache.findOptionalById(EVENT_ID);
+        cache.findOptionalByShortName(SHORT_NAME);
+        verify(eventRepository, times(2)).findOptionalById(EVENT_ID);
+        verify(eventRepository, times(2)).findOptionalByShortName(SHORT_NAME);
+    }
+
+    @Test
+    void bypassCacheWhileTransactionHasPendingChanges() {
+        TransactionSynchronizationManager.initSynchronization();
+        cache.findOptionalByShortName(SHORT_NAME);
+        cache.invalidate(EVENT_ID);
+        cache.findOptionalByShortName(SHORT_NAME);
+        cache.findOptionalByShortName(SHORT_NAME);
+        verify(eventRepository, times(3)).findOptionalByShortName(SHORT_NAME);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        cache.findOptionalByShortName(SHORT_NAME);
+        cache.findOptionalByShortName(SHORT_NAME);
+        verify(eventRepository, times(4)).findOptionalByShortName(SHORT_NAME);
+    }
+}
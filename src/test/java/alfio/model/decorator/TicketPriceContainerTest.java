@@ -0,0 +1,81 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model.decorator;
+
+import alfio.model.PriceContainer.VatStatus;
+import alfio.model.PromoCodeDiscount;
+import alfio.model.Ticket;
+import alfio.model.TicketCategory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TicketPriceContainerTest {
+
+    private static final int CATEGORY_ID = 1;
+
+    private TicketCategory category;
+    private Ticket ticket;
+    private PromoCodeDiscount discount;
+
+    @BeforeEach
+    void setUp() {
+        category = mock(TicketCategory.class);
+        when(category.getId()).thenReturn(CATEGORY_ID);
+        when(category.getSrcPriceCts()).thenReturn(1000);
+        when(category.getCurrencyCode()).thenReturn("CHF");
+        ticket = mock(Ticket.class);
+        when(ticket.getCategoryId()).thenReturn(CATEGORY_ID);
+        when(ticket.getSrcPriceCts()).thenReturn(1000);
+        when(ticket.getCurrencyCode()).thenReturn("CHF");
+        discount = mock(PromoCodeDiscount.class);
+        when(discount.getDiscountType()).thenReturn(PromoCodeDiscount.DiscountType.PERCENTAGE);
+        when(discount.getDiscountAmount()).thenReturn(10);
+        when(discount.getCategories()).thenReturn(Set.of());
+    }
+
+    @Test
+    void sameResultAsReservedTicket() {
+        for (VatStatus vatStatus : VatStatus.values()) {
+            for (PromoCodeDiscount d : new PromoCodeDiscount[] { null, discount }) {
+                when(ticket.getVatStatus()).thenReturn(vatStatus);
+                var expected = TicketPriceContainer.from(ticket, null, new BigDecimal("7.7"), vatStatus, d);
+                var actual = TicketPriceContainer.forReservation(category, new BigDecimal("7.7"), vatStatus, d);
+                assertEquals(0, expected.getFinalPrice().compareTo(actual.getFinalPrice()), "final price for " + vatStatus);
+                assertEquals(0, expected.getVAT().compareTo(actual.getVAT()), "VAT for " + vatStatus);
+                assertEquals(0, expected.getAppliedDiscount().compareTo(actual.getAppliedDiscount()), "discount for " + vatStatus);
+                assertEquals(0, expected.getTaxablePrice().compareTo(actual.getTaxablePrice()), "taxable price for " + vatStatus);
+            }
+        }
+    }
+
+    @Test
+    void ignoreDiscountForOtherCategories() {
+        when(discount.getCategories()).thenReturn(Set.of(CATEGORY_ID + 1));
+        var priceContainer = TicketPriceContainer.forReservation(category, BigDecimal.ZERO, VatStatus.INCLUDED, discount);
+        assertTrue(priceContainer.getDiscount().isEmpty());
+        assertEquals(0, new BigDecimal("10.00").compareTo(priceContainer.getFinalPrice()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(priceContainer.getAppliedDiscount()));
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.config.WebSecurityConfig;
+import alfio.manager.EventManager;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.TicketCategory;
+import alfio.model.metadata.AlfioMetadata;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.repository.user.OrganizationRepository;
+import alfio.util.BaseIntegrationTest;
+import alfio.util.ClockProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+import static alfio.test.util.IntegrationTestUtil.DESCRIPTION;
+import static alfio.test.util.IntegrationTestUtil.initEvent;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ContextConfiguration(classes = {DataSourceConfiguration.class, WebSecurityConfig.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+@Transactional
+class AdmissionQueueRepositoryIntegrationTest extends BaseIntegrationTest {
+
+    private static final long SLOT_MILLIS = 500L;
+
+    @Autowired
+    private AdmissionQueueRepository admissionQueueRepository;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private EventRepository eventRepository;
+
+    private Event event;
+    private ZonedDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        List<TicketCategoryModification> categories = List.of(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, 10,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", false, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        event = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository).getKey();
+        now = ZonedDateTime.now(ClockProvider.clock()).truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    @Test
+    void assignConsecutiveSlots() {
+        var first = enqueue(now);
+        var second = enqueue(now);
+        var third = enqueue(now);
+
+        var firstToken = admissionQueueRepository.findToken(first, event.getId()).orElseThrow();
+        var secondToken = admissionQueueRepository.findToken(second, event.getId()).orElseThrow();
+        var thirdToken = admissionQueueRepository.findToken(third, event.getId()).orElseThrow();
+        assertEquals(1, firstToken.getPosition());
+        assertEquals(2, secondToken.getPosition());
+        assertEquals(3, thirdToken.getPosition());
+        assertTrue(firstToken.getAdmission().isEqual(now));
+        assertTrue(secondToken.getAdmission().isEqual(now.plus(SLOT_MILLIS, ChronoUnit.MILLIS)));
+        assertTrue(thirdToken.getAdmission().isEqual(now.plus(2 * SLOT_MILLIS, ChronoUnit.MILLIS)));
+
+        assertEquals(1L, admissionQueueRepository.findLastAdmittedPosition(event.getId(), now));
+        assertEquals(2L, admissionQueueRepository.findLastAdmittedPosition(event.getId(), now.plus(SLOT_MILLIS, ChronoUnit.MILLIS)));
+        assertEquals(0L, admissionQueueRepository.findLastAdmittedPosition(event.getId(), now.minusSeconds(1)));
+        assertTrue(admissionQueueRepository.findToken(first, event.getId() + 1).isEmpty());
+    }
+
+    @Test
+    void idleQueueRestartsFromNow() {
+        enqueue(now.minusHours(1));
+        var later = enqueue(now);
+        var token = admissionQueueRepository.findToken(later, event.getId()).orElseThrow();
+        assertEquals(2, token.getPosition());
+        assertTrue(token.getAdmission().isEqual(now));
+    }
+
+    @Test
+    void cleanup() {
+        var old = enqueue(now.minusDays(2));
+        var current = enqueue(now);
+        assertEquals(1, admissionQueueRepository.deleteTokensAdmittedBefore(now.minusDays(1)));
+        assertTrue(admissionQueueRepository.findToken(old, event.getId()).isEmpty());
+        assertTrue(admissionQueueRepository.findToken(current, event.getId()).isPresent());
+        assertEquals(0, admissionQueueRepository.deleteQueuesIdleSince(now.minusDays(1)));
+        assertEquals(1, admissionQueueRepository.deleteQueuesIdleSince(now.plusDays(1)));
+    }
+
+    @Test
+    void countTokensByClient() {
+        enqueue(now.minusMinutes(2), "client");
+        enqueue(now.minusSeconds(30), "client");
+        enqueue(now, "client");
+        enqueue(now, "another-client");
+        assertEquals(2, admissionQueueRepository.countTokensCreatedByClientSince(event.getId(), "client", now.minusMinutes(1)));
+        assertEquals(1, admissionQueueRepository.countTokensCreatedByClientSince(event.getId(), "another-client", now.minusMinutes(1)));
+        assertEquals(0, admissionQueueRepository.countTokensCreatedByClientSince(event.getId() + 1, "client", now.minusMinutes(1)));
+    }
+
+    @Test
+    void lockDoesNotChangeQueue() {
+        assertEquals(1, admissionQueueRepository.lockQueue(event.getId(), event.getOrganizationId(), now));
+        var first = enqueue(now);
+        assertEquals(1, admissionQueueRepository.lockQueue(event.getId(), event.getOrganizationId(), now));
+        var second = enqueue(now);
+        assertEquals(1, admissionQueueRepository.findToken(first, event.getId()).orElseThrow().getPosition());
+        var secondToken = admissionQueueRepository.findToken(second, event.getId()).orElseThrow();
+        assertEquals(2, secondToken.getPosition());
+        assertTrue(secondToken.getAdmission().isEqual(now.plus(SLOT_MILLIS, ChronoUnit.MILLIS)));
+    }
+
+    private UUID enqueue(ZonedDateTime timestamp) {
+        return enqueue(timestamp, "client");
+    }
+
+    private UUID enqueue(ZonedDateTime timestamp, String clientId) {
+        var token = UUID.randomUUID();
+        assertEquals(1, admissionQueueRepository.enqueue(token, event.getId(), event.getOrganizationId(), clientId, timestamp, SLOT_MILLIS));
+        return token;
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttendeeImportReaderTest {
+
+    @Test
+    void parseCsv() throws Exception {
+        var csv = "category,firstName,lastName,emailAddress,reference,jobTitle\n" +
+            "1,Jane,Doe,jane@example.org,ref-1,Developer\n" +
+            ",,,,,\n" +
+            "Full,John,Doe,john@example.org,,\n";
+        var rows = AttendeeImportReader.csv(new StringReader(csv)).collect(Collectors.toList());
+        assertEquals(2, rows.size());
+        assertTrue(rows.stream().allMatch(r -> r.isSuccess()));
+        var first = rows.get(0).getData();
+        assertEquals("1", first.getCategory());
+        assertEquals("Jane", first.getAttendee().getFirstName());
+        assertEquals("ref-1", first.getAttendee().getReference());
+        assertEquals(List.of("Developer"), first.getAttendee().getAdditionalInfo().get("jobTitle"));
+        var second = rows.get(1).getData();
+        assertEquals("Full", second.getCategory());
+        assertNull(second.getAttendee().getReference());
+        assertTrue(second.getAttendee().getAdditionalInfo().isEmpty());
+    }
+
+    @Test
+    void invalidCsvRow() throws Exception {
+        var csv = "firstName,lastName,emailAddress,subscriptionId\n" +
+            "Jane,Doe,jane@example.org,not-a-uuid\n";
+        var rows = AttendeeImportReader.csv(new StringReader(csv)).collect(Collectors.toList());
+        assertEquals(1, rows.size());
+        assertFalse(rows.get(0).isSuccess());
+        assertEquals(AttendeeImportReader.INVALID_ROW, rows.get(0).getFirstErrorOrNull());
+    }
+
+    @Test
+    void emptyCsv() throws Exception {
+        assertEquals(0, AttendeeImportReader.csv(new StringReader("")).count());
+    }
+
+    @Test
+    void parseNdjson() {
+        var ndjson = "{\"category\":\"1\",\"firstName\":\"Jane\",\"lastName\":\"Doe\",\"emailAddress\":\"jane@example.org\",\"additionalInfo\":{\"jobTitle\":[\"Developer\"]}}\n" +
+            "\n" +
+            "{not json}\n";
+        var rows = AttendeeImportReader.ndjson(new StringReader(ndjson)).collect(Collectors.toList());
+        assertEquals(2, rows.size());
+        assertTrue(rows.get(0).isSuccess());
+        assertEquals("jane@example.org", rows.get(0).getData().getAttendee().getEmailAddress());
+        assertEquals(List.of("Developer"), rows.get(0).getData().getAttendee().getAdditionalInfo().get("jobTitle"));
+        assertFalse(rows.get(1).isSuccess());
+    }
+}
@@ -27,6 +27,7 @@ import java.util.Locale;
 
 import static alfio.util.MustacheCustomTag.ADDITIONAL_FIELD_VALUE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.Mockito.*;
 
 public class MustacheCustomTagTest {
@@ -87,4 +88,15 @@ public class MustacheCustomTagTest {
         //for absolute link we add target="_blank"
         assertEquals("<p>link <a href=\"http://test\" target=\"_blank\" rel=\"nofollow noopener noreferrer\">bla</a> link</p>\n", MustacheCustomTag.renderToHtmlCommonmarkEscaped("link [bla](http://test) link"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testHtmlMarkDownIsRenderedOnce() {
+        String input = "cached **markdown** " + System.nanoTime();
+        long hits = MustacheCustomTag.getCommonmarkCacheStatistics().getHitCount();
+        String first = MustacheCustomTag.renderToHtmlCommonmarkEscaped(input);
+        String second = MustacheCustomTag.renderToHtmlCommonmarkEscaped(input);
+        assertSame(first, second);
+        assertEquals(hits + 1, MustacheCustomTag.getCommonmarkCacheStatistics().getHitCount());
+        assertEquals("<p>cached <strong>markdown</strong>", first.substring(0, first.lastIndexOf(' ')));
+    }
+}
@@ -18,6 +18,7 @@ package alfio.util;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
 
 public class RequestUtilsTest {
 
@@ -29,4 +30,13 @@ public class RequestUtilsTest {
         Assertions.assertTrue(RequestUtils.isSocialMediaShareUA("Twitterbot/1.0"));
         Assertions.assertFalse(RequestUtils.isSocialMediaShareUA("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/74.0.3729.169 Safari/537.36"));
     }
+
+    @Test
+    public void testClientAddress() {
+        var request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.1");
+        Assertions.assertEquals("10.0.0.1", RequestUtils.getClientAddress(request));
+        request.addHeader("X-Forwarded-For", "203.0.113.7, 10.0.0.2");
+        Assertions.assertEquals("203.0.113.7", RequestUtils.getClientAddress(request));
+    }
 }